@@ -22,6 +22,8 @@ import androidx.appcompat.widget.Toolbar;
 
 import com.google.android.material.snackbar.Snackbar;
 
+import java.util.List;
+
 import io.github.tjg1.library.norilib.clients.SearchClient;
 import io.github.tjg1.library.norilib.service.ServiceTypeDetectionService;
 import io.github.tjg1.nori.adapter.APISettingsListAdapter;
@@ -43,7 +45,7 @@ public class APISettingsActivity extends AppCompatActivity
 
     //region Constants
     /**
-     * A new row will be inserted into the database when this row ID value is passed to {@link #editService(long, String, String, String, String)}.
+     * A new row will be inserted into the database when this row ID value is passed to {@link #editService(long, String, String, String, String, List)}.
      */
     private static final long ROW_ID_INSERT = -1L;
     //endregion
@@ -123,12 +125,13 @@ public class APISettingsActivity extends AppCompatActivity
 
     //region EditAPISettingDialogFragment.Listener methods
     @Override
-    public void addService(String name, String url, String username, String passphrase) {
-        editService(ROW_ID_INSERT, name, url, username, passphrase);
+    public void addService(String name, String url, String username, String passphrase, List<String> mirrors) {
+        editService(ROW_ID_INSERT, name, url, username, passphrase, mirrors);
     }
 
     @Override
-    public void editService(final long rowId, final String name, final String url, final String username, final String passphrase) {
+    public void editService(final long rowId, final String name, final String url, final String username, final String passphrase,
+                            final List<String> mirrors) {
         // Show progress dialog during the service type detection process.
         final ProgressDialog dialog = new ProgressDialog(this);
         dialog.setIndeterminate(true);
@@ -148,7 +151,7 @@ public class APISettingsActivity extends AppCompatActivity
                     SearchClient.Settings.APIType apiType =
                             SearchClient.Settings.APIType.values()[intent.getIntExtra(ServiceTypeDetectionService.API_TYPE, 0)];
                     String endpointUrl = intent.getStringExtra(ServiceTypeDetectionService.ENDPOINT_URL);
-                    final SearchClient.Settings settings = new SearchClient.Settings(apiType, name, endpointUrl, username, passphrase);
+                    final SearchClient.Settings settings = new SearchClient.Settings(apiType, name, endpointUrl, username, passphrase, mirrors);
                     new Thread(() -> {
                         APISettingsDatabase database = new APISettingsDatabase(APISettingsActivity.this);
                         if (rowId == ROW_ID_INSERT) {
@@ -22,10 +22,12 @@ import android.widget.FrameLayout;
 import android.widget.ProgressBar;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.app.ActivityCompat;
+import androidx.lifecycle.Lifecycle;
 import androidx.viewpager.widget.ViewPager;
 
 import com.google.android.material.appbar.AppBarLayout;
@@ -37,21 +39,24 @@ import io.github.tjg1.library.norilib.Image;
 import io.github.tjg1.library.norilib.SearchResult;
 import io.github.tjg1.library.norilib.Tag;
 import io.github.tjg1.library.norilib.clients.SearchClient;
+import io.github.tjg1.library.norilib.clients.SearchClientRegistry;
 import io.github.tjg1.nori.adapter.ImagePagerAdapter;
 import io.github.tjg1.nori.fragment.ImageFragment;
+import io.github.tjg1.nori.session.SearchSession;
+import io.github.tjg1.nori.session.SearchSessionStore;
 import io.github.tjg1.nori.view.ImageViewerPager;
 
 /**
  * Activity used to display full-screen images.
  */
 public class ImageViewerActivity extends AppCompatActivity implements ViewPager.OnPageChangeListener,
-        ImageFragment.ImageFragmentListener, ImagePagerAdapter.Listener {
+        ImageFragment.ImageFragmentListener, ImagePagerAdapter.Listener, SearchSession.Listener {
 
     //region Bundle IDs
     /**
-     * Identifier used to keep the displayed {@link io.github.tjg1.library.norilib.SearchResult} in {@link #onSaveInstanceState(android.os.Bundle)}.
+     * Identifier used to keep the {@link SearchSessionStore} handle of the displayed {@link io.github.tjg1.library.norilib.SearchResult} in {@link #onSaveInstanceState(android.os.Bundle)}.
      */
-    private static final String BUNDLE_ID_SEARCH_RESULT = "io.github.tjg1.nori.SearchResult";
+    private static final String BUNDLE_ID_SEARCH_SESSION = "io.github.tjg1.nori.SearchSession";
     /**
      * Identifier used to keep the position of the selected {@link io.github.tjg1.library.norilib.Image} in {@link #onSaveInstanceState(android.os.Bundle)}.
      */
@@ -87,9 +92,13 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
      */
     private ImageViewerPager viewPager;
     /**
-     * Search result shown by the {@link androidx.fragment.app.FragmentStatePagerAdapter}.
+     * Search session shared with {@link SearchActivity}. Its search result is shown by the {@link androidx.fragment.app.FragmentStatePagerAdapter}.
      */
-    private SearchResult searchResult;
+    private SearchSession searchSession;
+    /**
+     * {@link SearchSessionStore} handle of {@link #searchSession}.
+     */
+    private String searchSessionHandle;
     /**
      * Adapter used to populate the {@link androidx.viewpager.widget.ViewPager} used to display and flip through the images.
      */
@@ -98,10 +107,6 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
      * Search API client used to retrieve more search results for infinite scrolling.
      */
     private SearchClient searchClient;
-    /**
-     * Callback waiting to receive another page of {@link io.github.tjg1.library.norilib.Image}s for the current {@link io.github.tjg1.library.norilib.SearchResult}.
-     */
-    private SearchClient.SearchCallback searchCallback;
     /**
      * {@link android.widget.ProgressBar} used to indicated Search API activity.
      */
@@ -118,6 +123,10 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
      * True if the {@link AppBarLayout} is currently collapsed.
      */
     private boolean appBarCollapsed = false;
+    /**
+     * Index of the image to show once the search session is available.
+     */
+    private int initialImageIndex;
     //endregion
 
     //region Activity lifecycle
@@ -133,12 +142,12 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
         // state.
         int imageIndex;
         if (savedInstanceState != null && savedInstanceState.containsKey(BUNDLE_ID_IMAGE_INDEX) &&
-                savedInstanceState.containsKey(BUNDLE_ID_SEARCH_RESULT)) {
+                savedInstanceState.containsKey(BUNDLE_ID_SEARCH_SESSION)) {
             imageIndex = savedInstanceState.getInt(BUNDLE_ID_IMAGE_INDEX);
-            searchResult = savedInstanceState.getParcelable(BUNDLE_ID_SEARCH_RESULT);
+            searchSessionHandle = savedInstanceState.getString(BUNDLE_ID_SEARCH_SESSION);
             SearchClient.Settings searchClientSettings = savedInstanceState.getParcelable(BUNDLE_ID_SEARCH_CLIENT_SETTINGS);
             if (searchClientSettings != null) {
-                searchClient = searchClientSettings.createSearchClient(this);
+                searchClient = SearchClientRegistry.get(this, searchClientSettings);
             }
             if (savedInstanceState.containsKey(BUNDLE_ID_QUEUED_DOWNLOAD_REQUEST)) {
                 String fileUrl = savedInstanceState.getString(BUNDLE_ID_QUEUED_DOWNLOAD_REQUEST);
@@ -149,9 +158,14 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
         } else {
             final Intent intent = getIntent();
             imageIndex = intent.getIntExtra(SearchActivity.BUNDLE_ID_IMAGE_INDEX, 0);
-            searchResult = intent.getParcelableExtra(SearchActivity.BUNDLE_ID_SEARCH_RESULT);
-            searchClient = ((SearchClient.Settings) intent.getParcelableExtra(SearchActivity.BUNDLE_ID_SEARCH_CLIENT_SETTINGS))
-                    .createSearchClient(this);
+            searchSessionHandle = intent.getStringExtra(SearchActivity.BUNDLE_ID_SEARCH_SESSION);
+            searchClient = SearchClientRegistry.get(this,
+                    (SearchClient.Settings) intent.getParcelableExtra(SearchActivity.BUNDLE_ID_SEARCH_CLIENT_SETTINGS));
+        }
+
+        if (searchClient == null || searchSessionHandle == null) {
+            finish();
+            return;
         }
 
         // Keep screen on, if enabled by the user.
@@ -179,7 +193,6 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
         viewPager = (ImageViewerPager) findViewById(R.id.image_pager);
         viewPager.setAdapter(imagePagerAdapter);
         viewPager.addOnPageChangeListener(this);
-        viewPager.setCurrentItem(imageIndex);
 
         // Collapse the ActionBar.
         final AppBarLayout appBarLayout = (AppBarLayout) findViewById(R.id.appBarLayout);
@@ -199,8 +212,62 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
         });
         appBarLayout.setExpanded(false, true);
 
-        // Set activity title.
-        setTitle(searchResult.getImages()[imageIndex]);
+        // Get the search session shared by SearchActivity (or restored from its on-disk snapshot).
+        // Show the loading state while the snapshot is read from disk.
+        this.initialImageIndex = imageIndex;
+        searchProgressBar.setVisibility(View.VISIBLE);
+        SearchSessionStore.getInstance(this).restore(this, searchSessionHandle, searchClient,
+                this::onSearchSessionRestored);
+    }
+
+    /**
+     * Called when the search session shared by SearchActivity is available.
+     *
+     * @param session Search session. Null if it could not be restored.
+     */
+    private void onSearchSessionRestored(@Nullable SearchSession session) {
+        if (isDestroyed()) {
+            return;
+        } else if (session == null || session.getSearchResult() == null) {
+            finish();
+            return;
+        }
+
+        // Show the image selected in SearchActivity.
+        searchSession = session;
+        imagePagerAdapter.notifyDataSetChanged();
+        viewPager.setCurrentItem(initialImageIndex, false);
+        setTitle(getSearchResult().getImage(initialImageIndex));
+        if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+            // Restored after onStart(), subscribe now.
+            subscribeToSearchSession();
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        subscribeToSearchSession();
+    }
+
+    /**
+     * Subscribe to the search session and catch up with pages received while in the background.
+     */
+    private void subscribeToSearchSession() {
+        if (searchSession != null) {
+            searchSession.addListener(this);
+            imagePagerAdapter.notifyDataSetChanged();
+            searchProgressBar.setVisibility(searchSession.isLoading() ? View.VISIBLE : View.GONE);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        if (searchSession != null) {
+            searchSession.removeListener(this);
+        }
     }
 
     @Override
@@ -218,8 +285,10 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
         super.onSaveInstanceState(outState);
 
         // Keep search result and the index of currently displayed image.
-        outState.putParcelable(BUNDLE_ID_SEARCH_RESULT, searchResult);
-        outState.putInt(BUNDLE_ID_IMAGE_INDEX, viewPager.getCurrentItem());
+        // Only the session handle is kept in the Bundle, the search result itself is written to disk.
+        SearchSessionStore.getInstance(this).persist(searchSessionHandle);
+        outState.putString(BUNDLE_ID_SEARCH_SESSION, searchSessionHandle);
+        outState.putInt(BUNDLE_ID_IMAGE_INDEX, searchSession != null ? viewPager.getCurrentItem() : initialImageIndex);
         outState.putParcelable(BUNDLE_ID_SEARCH_CLIENT_SETTINGS, searchClient.getSettings());
         if (queuedDownloadRequestUrl != null) {
             outState.putString(BUNDLE_ID_QUEUED_DOWNLOAD_REQUEST, queuedDownloadRequestUrl);
@@ -251,12 +320,15 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
     @Override
     public void onPageSelected(int position) {
         // Set activity title to image metadata.
-        setTitle(searchResult.getImages()[position]);
-
-        // Fetch more images for infinite scrolling, if available and there isn't another search request being waited on.
-        if (searchCallback == null && searchResult.hasNextPage()
-                && (searchResult.getImages().length - position) <= INFINITE_SCROLLING_THRESHOLD) {
-            fetchMoreImages();
+        final SearchResult searchResult = getSearchResult();
+        setTitle(searchResult.getImage(position));
+        searchSession.setViewportPosition(position);
+
+        // Fetch more images for infinite scrolling, if available.
+        // Ignored by the search session if there is another search request being waited on.
+        if (searchResult.hasNextPage()
+                && (searchResult.getImageCount() - position) <= INFINITE_SCROLLING_THRESHOLD) {
+            searchSession.fetchNextPage();
         }
     }
 
@@ -274,7 +346,7 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
 
     @Override
     public SearchResult getSearchResult() {
-        return searchResult;
+        return searchSession != null ? searchSession.getSearchResult() : null;
     }
 
     @Override
@@ -305,6 +377,10 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
      * @param image Image to get the metadata from.
      */
     private void setTitle(Image image) {
+        if (image == null) {
+            // Page is being read back from disk, the title is set once it's available.
+            return;
+        }
         String title = String.format(getString(R.string.activity_image_viewer_titleFormat),
                 image.id, Tag.stringFromArray(image.tags));
 
@@ -366,85 +442,31 @@ public class ImageViewerActivity extends AppCompatActivity implements ViewPager.
     }
     //endregion
 
-    //region Infinite scrolling
-
-    /**
-     * Fetch images from the next page of the {@link io.github.tjg1.library.norilib.SearchResult}, if available.
-     */
-    private void fetchMoreImages() {
-        // Ignore request if there is another API request pending.
-        if (searchCallback != null) {
-            return;
+    //region SearchSession.Listener methods (infinite scrolling)
+    @Override
+    public void onSearchResultChanged(@NonNull SearchSession session) {
+        // Notify the ViewPager adapter that the data set has changed.
+        imagePagerAdapter.notifyDataSetChanged();
+        // Set the title if the current image was being read back from disk.
+        final SearchResult searchResult = session.getSearchResult();
+        if (searchResult != null && viewPager.getCurrentItem() < searchResult.getImageCount()) {
+            setTitle(searchResult.getImage(viewPager.getCurrentItem()));
         }
-        // Show the indeterminate progress bar in the action bar.
-        searchProgressBar.setVisibility(View.VISIBLE);
-        // Request search result from API client.
-        searchCallback = new InfiniteScrollingSearchCallback(searchResult);
-        searchClient.search(Tag.stringFromArray(searchResult.getQuery()), searchResult.getCurrentOffset() + 1, searchCallback);
     }
 
-    /**
-     * Callback waiting to receive more images for infinite scrolling.
-     */
-    private class InfiniteScrollingSearchCallback implements SearchClient.SearchCallback {
-        private final SearchResult searchResult;
-
-        /**
-         * Create a new InfiniteScrollingSearchCallback.
-         *
-         * @param searchResult Search result to append new results to.
-         */
-        public InfiniteScrollingSearchCallback(SearchResult searchResult) {
-            this.searchResult = searchResult;
-        }
-
-        @Override
-        public void onFailure(IOException e) {
-            // Clear the active search callback and hide the progress bar in the action bar.
-            searchCallback = null;
-            searchProgressBar.setVisibility(View.GONE);
-
-            // Display error toast notification to the user.
-            Snackbar.make(findViewById(R.id.root),
-                    String.format(getString(R.string.toast_infiniteScrollingFetchError),
-                            e.getLocalizedMessage()), Snackbar.LENGTH_LONG
-            ).show();
-        }
-
-        @Override
-        public void onSuccess(SearchResult searchResult) {
-            // Clear the active search callback and hide the progress bar in the action bar.
-            searchCallback = null;
-            searchProgressBar.setVisibility(View.GONE);
-
-            if (searchResult.getImages().length == 0) {
-                // Just mark the current SearchResult as having reached the last page.
-                this.searchResult.onLastPage();
-            } else {
-                // Filter the received SearchResult.
-                if (sharedPreferences.contains(getString(R.string.preference_safeSearch_key))) {
-                    // Get filter from shared preferences.
-                    searchResult.filter(Image.SafeSearchRating.arrayFromStrings(
-                            sharedPreferences.getString(getString(R.string.preference_safeSearch_key), "").split(" ")));
-                } else {
-                    // Get default filter from resources.
-                    searchResult.filter(Image.SafeSearchRating.arrayFromStrings(getResources().getStringArray(R.array.preference_safeSearch_defaultValues)));
-                }
-                if (sharedPreferences.contains(getString(R.string.preference_tagFilter_key))) {
-                    // Get tag filters from shared preferences and filter the result.
-                    searchResult.filter(Tag.arrayFromString(sharedPreferences.getString(getString(R.string.preference_tagFilter_key), "")));
-                }
-
-                // Update the search result and notify the ViewPager adapter that the data set has changed.
-                this.searchResult.addImages(searchResult.getImages(), searchResult.getCurrentOffset());
-                imagePagerAdapter.notifyDataSetChanged();
+    @Override
+    public void onLoadingStateChanged(@NonNull SearchSession session, boolean isLoading) {
+        // Show the indeterminate progress bar in the action bar while more images are fetched.
+        searchProgressBar.setVisibility(isLoading ? View.VISIBLE : View.GONE);
+    }
 
-                // If all images in the current search result were filtered out, try fetching the next page.
-                if (searchResult.getImages().length == 0) {
-                    fetchMoreImages();
-                }
-            }
-        }
+    @Override
+    public void onSearchFailed(@NonNull SearchSession session, @NonNull IOException e) {
+        // Display error toast notification to the user.
+        Snackbar.make(findViewById(R.id.root),
+                String.format(getString(R.string.toast_infiniteScrollingFetchError),
+                        e.getLocalizedMessage()), Snackbar.LENGTH_LONG
+        ).show();
     }
     //endregion
 }
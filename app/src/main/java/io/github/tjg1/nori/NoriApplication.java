@@ -5,9 +5,10 @@
  */
 package io.github.tjg1.nori;
 
-
 import android.app.Application;
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
 import android.util.Log;
 
 import org.acra.ACRA;
@@ -17,6 +18,9 @@ import org.acra.config.ACRAConfiguration;
 import org.acra.config.ACRAConfigurationException;
 import org.acra.config.ConfigurationBuilder;
 
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+import io.github.tjg1.nori.database.APISettingsRepository;
+import io.github.tjg1.nori.util.ConnectivityMonitor;
 import io.github.tjg1.nori.util.HockeyIonSender;
 
 import static org.acra.ReportField.ANDROID_VERSION;
@@ -52,6 +56,17 @@ import static org.acra.ReportField.USER_CRASH_DATE;
 public class NoriApplication extends Application {
     public static final String LOG_TAG = "io.github.tjg1.nori";
 
+    /**
+     * Applies the request hedging preference when it is changed.
+     * Kept in a field, because SharedPreferences only holds weak references to its listeners.
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener hedgeRequestsListener =
+            (sharedPreferences, key) -> {
+                if (getString(R.string.preference_hedgeRequests_key).equals(key)) {
+                    applyHedgeRequestsPreference(sharedPreferences);
+                }
+            };
+
     @Override
     protected void attachBaseContext(Context base) {
         super.attachBaseContext(base);
@@ -85,4 +100,31 @@ public class NoriApplication extends Application {
             Log.e(LOG_TAG, "Failed to initialise ACRA", e);
         }
     }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Warm up the API settings cache on a background thread, so the service dropdown in
+        // SearchActivity can be populated without waiting for database I/O.
+        new Thread(() -> APISettingsRepository.getInstance(this).getAll()).start();
+
+        // Start tracking the default network early, so its state is known before the first image loads.
+        ConnectivityMonitor.getInstance(this);
+
+        // Hedge slow API requests, if enabled by the user.
+        final SharedPreferences sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        applyHedgeRequestsPreference(sharedPreferences);
+        sharedPreferences.registerOnSharedPreferenceChangeListener(hedgeRequestsListener);
+    }
+
+    /**
+     * Enable or disable request hedging in norilib, depending on the user's preference.
+     *
+     * @param sharedPreferences Default shared preferences.
+     */
+    private void applyHedgeRequestsPreference(SharedPreferences sharedPreferences) {
+        EndpointHealth.getInstance().setHedgingEnabled(
+                sharedPreferences.getBoolean(getString(R.string.preference_hedgeRequests_key), false));
+    }
 }
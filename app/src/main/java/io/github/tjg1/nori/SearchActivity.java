@@ -12,7 +12,6 @@ import android.content.SharedPreferences;
 import android.database.Cursor;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
-import android.text.TextUtils;
 import android.view.KeyEvent;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -22,12 +21,14 @@ import android.widget.Spinner;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.SearchView;
 import androidx.appcompat.widget.Toolbar;
 import androidx.core.view.MenuItemCompat;
 import androidx.cursoradapter.widget.CursorAdapter;
+import androidx.lifecycle.Lifecycle;
 
 import com.google.android.material.snackbar.Snackbar;
 
@@ -35,25 +36,27 @@ import java.io.IOException;
 
 import io.github.tjg1.library.norilib.Image;
 import io.github.tjg1.library.norilib.SearchResult;
-import io.github.tjg1.library.norilib.Tag;
 import io.github.tjg1.library.norilib.clients.SearchClient;
+import io.github.tjg1.library.norilib.clients.SearchClientRegistry;
 import io.github.tjg1.nori.adapter.ServiceDropdownAdapter;
 import io.github.tjg1.nori.database.SearchSuggestionDatabase;
 import io.github.tjg1.nori.fragment.SearchResultGridFragment;
+import io.github.tjg1.nori.session.SearchSession;
+import io.github.tjg1.nori.session.SearchSessionStore;
 
 /**
  * Searches for images and displays the results in a scrollable grid of thumbnails.
  */
 public class SearchActivity extends AppCompatActivity
         implements SearchResultGridFragment.OnSearchResultGridFragmentInteractionListener,
-        ServiceDropdownAdapter.Listener {
+        ServiceDropdownAdapter.Listener, SearchSession.Listener {
 
     //region Bundle IDs
     /**
-     * Identifier used to send the active {@link io.github.tjg1.library.norilib.SearchResult}
-     * to {@link io.github.tjg1.nori.ImageViewerActivity}.
+     * Identifier used to send the {@link SearchSessionStore} handle of the active
+     * {@link io.github.tjg1.library.norilib.SearchResult} to {@link io.github.tjg1.nori.ImageViewerActivity}.
      */
-    public static final String BUNDLE_ID_SEARCH_RESULT = "io.github.tjg1.nori.SearchResult";
+    public static final String BUNDLE_ID_SEARCH_SESSION = "io.github.tjg1.nori.SearchSession";
     /**
      * Identifier used to send the position of the selected {@link io.github.tjg1.library.norilib.Image}
      * to {@link io.github.tjg1.nori.ImageViewerActivity}.
@@ -108,6 +111,10 @@ public class SearchActivity extends AppCompatActivity
      * Search result grid fragment shown in this activity.
      */
     private SearchResultGridFragment searchResultGridFragment;
+    /**
+     * Adapter populating the service picker dropdown.
+     */
+    private ServiceDropdownAdapter serviceDropdownAdapter;
     //endregion
 
     //region Instance fields
@@ -122,9 +129,17 @@ public class SearchActivity extends AppCompatActivity
      */
     private SearchClient searchClient;
     /**
-     * Search callback currently awaiting a response from the Search API.
+     * Search session displayed in the grid and shared with {@link ImageViewerActivity}.
+     */
+    private SearchSession searchSession;
+    /**
+     * {@link SearchSessionStore} handle of {@link #searchSession}.
      */
-    private SearchResultCallback searchCallback;
+    private String searchSessionHandle;
+    /**
+     * True if the query should be added to the search history once the first page is received.
+     */
+    private boolean addSearchHistoryEntry = false;
     /**
      * Bundle used when restoring saved instance state (after screen rotation, app restored from background, etc.)
      */
@@ -154,9 +169,18 @@ public class SearchActivity extends AppCompatActivity
             if (this.searchClient == null && savedInstanceState.containsKey(BUNDLE_ID_SEARCH_CLIENT_SETTINGS)) {
                 searchClientSettings = savedInstanceState.getParcelable(BUNDLE_ID_SEARCH_CLIENT_SETTINGS);
                 if (searchClientSettings != null) {
-                    searchClient = searchClientSettings.createSearchClient(this);
+                    searchClient = SearchClientRegistry.get(this, searchClientSettings);
                 }
             }
+            // Resume the search session, instead of fetching the search result again.
+            searchSessionHandle = savedInstanceState.getString(BUNDLE_ID_SEARCH_SESSION);
+            if (searchClient != null && searchSessionHandle != null) {
+                // Show the loading state while the session snapshot is read from disk.
+                searchProgressBar.setVisibility(View.VISIBLE);
+                final String handle = searchSessionHandle;
+                SearchSessionStore.getInstance(this).restore(this, handle, searchClient,
+                        session -> onSearchSessionRestored(handle, session));
+            }
         } else {
             Intent intent = getIntent();
             // If the activity was started from a Search intent, create the SearchClient object and submit search.
@@ -166,7 +190,7 @@ public class SearchActivity extends AppCompatActivity
                     searchResultGridFragment.getSearchResult() == null
             ) {
                 searchClientSettings = intent.getParcelableExtra(BUNDLE_ID_SEARCH_CLIENT_SETTINGS);
-                searchClient = searchClientSettings.createSearchClient(this);
+                searchClient = SearchClientRegistry.get(this, searchClientSettings);
                 doSearch(intent.getStringExtra(BUNDLE_ID_SEARCH_QUERY));
             }
         }
@@ -175,13 +199,71 @@ public class SearchActivity extends AppCompatActivity
         setUpActionBar();
     }
 
+    /**
+     * Called when the search session from the saved instance state is available.
+     *
+     * @param handle  {@link SearchSessionStore} handle of the session.
+     * @param session Restored search session. Null if it could not be restored.
+     */
+    private void onSearchSessionRestored(@NonNull String handle, @Nullable SearchSession session) {
+        if (!handle.equals(searchSessionHandle)) {
+            // A new search was started in the meantime, which replaced the restored session.
+            if (session != null) {
+                SearchSessionStore.getInstance(this).remove(handle);
+            }
+            return;
+        } else if (isDestroyed()) {
+            return;
+        }
+        searchSession = session;
+        if (session == null) {
+            searchProgressBar.setVisibility(View.GONE);
+        } else if (getLifecycle().getCurrentState().isAtLeast(Lifecycle.State.STARTED)) {
+            // Restored after onStart(), subscribe now.
+            subscribeToSearchSession();
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        subscribeToSearchSession();
+    }
+
+    /**
+     * Subscribe to the search session and catch up with pages fetched by ImageViewerActivity.
+     */
+    private void subscribeToSearchSession() {
+        if (searchSession != null) {
+            searchSession.addListener(this);
+            if (searchSession.getSearchResult() != null) {
+                searchResultGridFragment.setSearchResult(searchSession.getSearchResult());
+            }
+            searchProgressBar.setVisibility(searchSession.isLoading() ? View.VISIBLE : View.GONE);
+        }
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+
+        if (searchSession != null) {
+            searchSession.removeListener(this);
+        }
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
 
-        // Cancel pending API callbacks.
-        if (searchCallback != null) {
-            searchCallback.cancel();
+        // Stop listening for service health changes.
+        if (serviceDropdownAdapter != null) {
+            serviceDropdownAdapter.onDestroy();
+        }
+
+        // Cancel pending API requests and release the search session.
+        if (isFinishing() && searchSessionHandle != null) {
+            SearchSessionStore.getInstance(this).remove(searchSessionHandle);
         }
     }
 
@@ -204,6 +286,11 @@ public class SearchActivity extends AppCompatActivity
                 outState.putParcelable(BUNDLE_ID_SEARCH_CLIENT_SETTINGS, searchClient.getSettings());
             }
         }
+        // Preserve the search session.
+        if (searchSessionHandle != null) {
+            SearchSessionStore.getInstance(this).persist(searchSessionHandle);
+            outState.putString(BUNDLE_ID_SEARCH_SESSION, searchSessionHandle);
+        }
     }
 
     @Override
@@ -259,7 +346,7 @@ public class SearchActivity extends AppCompatActivity
         // create one now and search for the default query. Only do this if SearchSearch
         // filter is enabled.
         if (searchClient == null && searchResultGridFragment.getSearchResult() == null) {
-            searchClient = settings.createSearchClient(this);
+            searchClient = SearchClientRegistry.get(this, settings);
             if (shouldLoadDefaultQuery()) {
                 doSearch(searchClient.getDefaultQuery());
             } else if (searchMenuItem != null) {
@@ -274,42 +361,36 @@ public class SearchActivity extends AppCompatActivity
     public void onImageSelected(Image image, int position) {
         // Open ImageViewerActivity.
         final Intent intent = new Intent(SearchActivity.this, ImageViewerActivity.class);
-        intent.putExtra(BUNDLE_ID_SEARCH_RESULT,
-                searchResultGridFragment.getSearchResult().getSearchResultForPage(image.searchPage));
-        intent.putExtra(BUNDLE_ID_IMAGE_INDEX, image.searchPagePosition);
+        intent.putExtra(BUNDLE_ID_SEARCH_SESSION, searchSessionHandle);
+        intent.putExtra(BUNDLE_ID_IMAGE_INDEX, position);
         intent.putExtra(BUNDLE_ID_SEARCH_CLIENT_SETTINGS, searchClient.getSettings());
         startActivity(intent);
     }
 
     @Override
     public void fetchMoreImages(SearchResult searchResult) {
-        // Ignore request if there is another API request pending.
-        if (searchCallback != null) {
-            return;
+        // Ignored by the search session if there is another API request pending.
+        if (searchSession != null) {
+            searchSession.fetchNextPage();
+        }
+    }
+
+    @Override
+    public void onGridScrolled(int firstVisiblePosition) {
+        if (searchSession != null) {
+            searchSession.setViewportPosition(firstVisiblePosition);
         }
-        // Show progress bar in ActionBar.
-        searchProgressBar.setVisibility(View.VISIBLE);
-        // Request search result from API client.
-        searchCallback = new SearchResultCallback(searchResult);
-        searchClient.search(
-                Tag.stringFromArray(searchResult.getQuery()),
-                searchResult.getCurrentOffset() + 1, searchCallback
-        );
     }
 
     @Override
     public void onRestoreSearchGridState(@NonNull String savedQuery, int firstVisiblePageOffset) {
-        // Ignore request if there is another API request pending.
-        if (searchCallback != null) {
+        // Ignore request if the search session has been resumed or there is another API request pending.
+        if (searchSession != null) {
             return;
         }
 
-        // Show progress bar in ActionBar.
-        searchProgressBar.setVisibility(View.VISIBLE);
-
         // Request previous SearchResult from API client.
-        searchCallback = new SearchResultCallback();
-        searchClient.search(savedQuery, firstVisiblePageOffset, searchCallback);
+        startSearchSession(savedQuery, firstVisiblePageOffset);
     }
     //endregion
 
@@ -430,7 +511,7 @@ public class SearchActivity extends AppCompatActivity
 
         // Set up service list spinner.
         Spinner serviceSpinner = (Spinner) toolBar.findViewById(R.id.spinner_service);
-        ServiceDropdownAdapter serviceDropdownAdapter = new ServiceDropdownAdapter(
+        serviceDropdownAdapter = new ServiceDropdownAdapter(
                 this,
                 sharedPreferences,
                 getSupportLoaderManager(),
@@ -449,13 +530,27 @@ public class SearchActivity extends AppCompatActivity
      * @param query Query string (a space-separated list of tags).
      */
     private void doSearch(String query) {
-        // Show progress bar in ActionBar.
-        if (searchProgressBar != null) {
-            searchProgressBar.setVisibility(View.VISIBLE);
-        }
         // Request a search result from the API client.
-        searchCallback = new SearchResultCallback();
-        searchClient.search(query, searchCallback);
+        startSearchSession(query, 0);
+    }
+
+    /**
+     * Replace the current search session with a new one and fetch its first page.
+     *
+     * @param query Query string (a space-separated list of tags).
+     * @param page  Page to start the search from.
+     */
+    private void startSearchSession(String query, int page) {
+        final SearchSessionStore searchSessionStore = SearchSessionStore.getInstance(this);
+        if (searchSessionHandle != null) {
+            searchSessionStore.remove(searchSessionHandle);
+        }
+
+        searchSession = new SearchSession(this, searchClient, query);
+        searchSessionHandle = searchSessionStore.put(searchSession);
+        searchSession.addListener(this);
+        addSearchHistoryEntry = true;
+        searchSession.search(page);
     }
     //endregion
 
@@ -473,133 +568,60 @@ public class SearchActivity extends AppCompatActivity
     }
     //endregion
 
-    //region Inner class: Search callback
-
-    /**
-     * Callback waiting for a SearchResult received on a background thread from the Search API.
-     */
-    private class SearchResultCallback implements SearchClient.SearchCallback {
-
-        //region Instance methods
-        /**
-         * Search result to extend when fetching more images for endless scrolling.
-         */
-        private final SearchResult searchResult;
-        /**
-         * Callback cancelled and should no longer respond to received SearchResult.
-         */
-        private boolean isCancelled = false;
-        //endregion
-
-        //region Constructors
-
-        /**
-         * Default constructor.
-         */
-        public SearchResultCallback() {
-            this.searchResult = null;
+    //region SearchSession.Listener methods
+    @Override
+    public void onSearchResultChanged(@NonNull SearchSession session) {
+        final SearchResult searchResult = session.getSearchResult();
+        if (searchResult == null) {
+            return;
         }
 
-        /**
-         * Constructor used to add more images to an existing SearchResult to implement endless scrolling.
-         */
-        public SearchResultCallback(SearchResult searchResult) {
-            this.searchResult = searchResult;
-        }
-        //endregion
-
-        //region SearchClient.SearchCallback methods
-        @Override
-        public void onFailure(IOException e) {
-            if (!isCancelled) {
-                // Show error message to user.
-                Snackbar.make(findViewById(R.id.root), String.format(getString(R.string.toast_networkError),
-                        e.getLocalizedMessage()), Snackbar.LENGTH_INDEFINITE).show();
-                // Clear callback and hide progress indicator in Action Bar.
-                searchProgressBar.setVisibility(View.GONE);
-                searchCallback = null;
+        // Add query to search history once the first page of results is received.
+        if (addSearchHistoryEntry) {
+            addSearchHistoryEntry = false;
+            if (searchResult.getImageCount() != 0 || searchResult.hasNextPage()) {
+                addSearchHistoryEntry(session.getQuery());
             }
         }
 
-        @Override
-        public void onSuccess(SearchResult searchResult) {
-            if (!isCancelled) {
-                // Clear callback and hide progress indicator in Action Bar.
-                searchProgressBar.setVisibility(View.GONE);
-                searchCallback = null;
-
-                // Filter the received SearchResult.
-                final int resultCount = searchResult.getImages().length;
-                if (sharedPreferences.contains(getString(R.string.preference_safeSearch_key)) &&
-                        !TextUtils.isEmpty(sharedPreferences.getString(getString(R.string.preference_safeSearch_key), "").trim())) {
-                    // Get filter from shared preferences.
-                    searchResult.filter(Image.SafeSearchRating.arrayFromStrings(
-                            sharedPreferences.getString(getString(R.string.preference_safeSearch_key), "").split(" ")));
-                } else {
-                    // Get default filter from resources.
-                    searchResult.filter(
-                            Image.SafeSearchRating.arrayFromStrings(
-                                    getResources().getStringArray(R.array.preference_safeSearch_defaultValues)
-                            )
-                    );
-                }
-                if (sharedPreferences.contains(getString(R.string.preference_tagFilter_key))) {
-                    // Get tag filters from shared preferences and filter the result.
-                    searchResult.filter(Tag.arrayFromString(sharedPreferences.getString(getString(R.string.preference_tagFilter_key), "")));
-                }
+        // Show search result.
+        searchResultGridFragment.setSearchResult(searchResult);
+    }
 
-                if (this.searchResult != null) {
-                    // Set onLastPage if no more images were fetched.
-                    if (resultCount == 0) {
-                        this.searchResult.onLastPage();
-                    } else {
-                        // Extend existing search result for endless scrolling.
-                        this.searchResult.addImages(searchResult.getImages(), searchResult.getCurrentOffset());
-                        searchResultGridFragment.setSearchResult(this.searchResult);
-                    }
-                } else {
-                    // Show search result.
-                    if (resultCount == 0) {
-                        searchResult.onLastPage();
-                    } else {
-                        addSearchHistoryEntry(Tag.stringFromArray(searchResult.getQuery()));
-                    }
-                    searchResultGridFragment.setSearchResult(searchResult);
-                }
-            }
-        }
-        //endregion
-
-        //region Search history
-
-        /**
-         * Adds a new entry to the {@link SearchSuggestionDatabase} on a background thread
-         * (to prevent blocking the UI thread with database I/O).
-         *
-         * @param query Query string searched for by the user.
-         */
-        private void addSearchHistoryEntry(final String query) {
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    // Add query string to the database.
-                    SearchSuggestionDatabase searchSuggestionDatabase = new SearchSuggestionDatabase(SearchActivity.this);
-                    searchSuggestionDatabase.insert(query);
-                    searchSuggestionDatabase.close();
-                }
-            }).start();
+    @Override
+    public void onLoadingStateChanged(@NonNull SearchSession session, boolean isLoading) {
+        // Show progress bar in ActionBar while waiting for the Search API.
+        if (searchProgressBar != null) {
+            searchProgressBar.setVisibility(isLoading ? View.VISIBLE : View.GONE);
         }
-        //endregion
+    }
 
-        //region Cancel method
+    @Override
+    public void onSearchFailed(@NonNull SearchSession session, @NonNull IOException e) {
+        // Show error message to user.
+        Snackbar.make(findViewById(R.id.root), String.format(getString(R.string.toast_networkError),
+                e.getLocalizedMessage()), Snackbar.LENGTH_INDEFINITE).show();
+    }
+    //endregion
 
-        /**
-         * Cancels this callback.
-         */
-        public void cancel() {
-            this.isCancelled = true;
-        }
-        //endregion
+    //region Search history
+
+    /**
+     * Adds a new entry to the {@link SearchSuggestionDatabase} on a background thread
+     * (to prevent blocking the UI thread with database I/O).
+     *
+     * @param query Query string searched for by the user.
+     */
+    private void addSearchHistoryEntry(final String query) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                // Add query string to the database.
+                SearchSuggestionDatabase searchSuggestionDatabase = new SearchSuggestionDatabase(SearchActivity.this);
+                searchSuggestionDatabase.insert(query);
+                searchSuggestionDatabase.close();
+            }
+        }).start();
     }
     //endregion
 }
@@ -54,9 +54,12 @@ public class ImagePagerAdapter extends FragmentStatePagerAdapter {
     @Override
     public Fragment getItem(int position) {
         // Create a new instance of ImageFragment for the given image.
-        Image image = listener.getSearchResult().getImages()[position];
+        Image image = listener.getSearchResult().getImage(position);
 
-        if (shouldUseVideoPlayerFragment(image)) {
+        if (image == null) {
+            // Page is being read back from disk, replaced in getItemPosition() once it's available.
+            return new Fragment();
+        } else if (shouldUseVideoPlayerFragment(image)) {
             return VideoPlayerFragment.newInstance(image);
         } else {
             return RemoteImageFragment.newInstance(image);
@@ -70,18 +73,26 @@ public class ImagePagerAdapter extends FragmentStatePagerAdapter {
             if (activeFragment != null) {
                 activeFragment.onHidden();
             }
-            activeFragment = (ImageFragment) object;
-            activeFragment.onShown();
+            activeFragment = object instanceof ImageFragment ? (ImageFragment) object : null;
+            if (activeFragment != null) {
+                activeFragment.onShown();
+            }
         }
     }
 
+    @Override
+    public int getItemPosition(Object object) {
+        // Replace placeholders for images that weren't available yet when the data set changes.
+        return object instanceof ImageFragment ? POSITION_UNCHANGED : POSITION_NONE;
+    }
+
     @Override
     public int getCount() {
         // Return the search result count.
         if (listener.getSearchResult() == null) {
             return 0;
         }
-        return listener.getSearchResult().getImages().length;
+        return listener.getSearchResult().getImageCount();
     }
     //endregion
 
@@ -91,8 +102,7 @@ public class ImagePagerAdapter extends FragmentStatePagerAdapter {
      * Returns true if the {@link Image} object is a WebM/MP4 animation.
      */
     private static boolean shouldUseVideoPlayerFragment(Image image) {
-        String fileExt = image.getFileExtension();
-        return "mp4".equals(fileExt) || "webm".equals(fileExt);
+        return image.getMediaType().isVideo();
     }
     //endregion
 
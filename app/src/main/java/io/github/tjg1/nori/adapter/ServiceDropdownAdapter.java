@@ -11,6 +11,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Pair;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -27,6 +29,7 @@ import androidx.loader.content.Loader;
 import java.util.List;
 
 import io.github.tjg1.library.norilib.clients.SearchClient;
+import io.github.tjg1.library.norilib.http.EndpointHealth;
 import io.github.tjg1.nori.APISettingsActivity;
 import io.github.tjg1.nori.R;
 import io.github.tjg1.nori.database.APISettingsDatabase;
@@ -36,7 +39,7 @@ import io.github.tjg1.nori.database.APISettingsDatabase;
  */
 public class ServiceDropdownAdapter extends BaseAdapter
         implements LoaderManager.LoaderCallbacks<List<Pair<Integer, SearchClient.Settings>>>,
-        AdapterView.OnItemSelectedListener {
+        AdapterView.OnItemSelectedListener, EndpointHealth.Listener {
 
     //region Loader IDs
     /**
@@ -45,6 +48,17 @@ public class ServiceDropdownAdapter extends BaseAdapter
     private static final int LOADER_ID_API_SETTINGS = 0x00;
     //endregion
 
+    //region Item IDs
+    /**
+     * Item ID of the APISettingsActivity View.
+     */
+    private static final long ITEM_ID_SETTINGS = -1L;
+    /**
+     * Item ID of the item searching all services at once.
+     */
+    private static final long ITEM_ID_ALL_SERVICES = -2L;
+    //endregion
+
     //region SharedPreferences keys
     /**
      * Shared preference key used to store the last active {@link io.github.tjg1.library.norilib.clients.SearchClient}.
@@ -69,6 +83,10 @@ public class ServiceDropdownAdapter extends BaseAdapter
      * Listener used to interact with the {@link android.app.Activity} using this adapter.
      */
     private final ServiceDropdownAdapter.Listener listener;
+    /**
+     * Handler used to refresh the dropdown on the main thread when the health of a service changes.
+     */
+    private final Handler handler = new Handler(Looper.getMainLooper());
 
     /**
      * List of service settings loaded from {@link io.github.tjg1.nori.database.APISettingsDatabase}.
@@ -105,6 +123,19 @@ public class ServiceDropdownAdapter extends BaseAdapter
         lastSelectedItem = this.sharedPreferences.getLong(SHARED_PREFERENCE_LAST_SELECTED_INDEX, 1L);
         // Initialize the search client settings database loader.
         loaderManager.initLoader(LOADER_ID_API_SETTINGS, null, this);
+        // Show when a service stops responding.
+        EndpointHealth.getInstance().addListener(this);
+    }
+    //endregion
+
+    //region Lifecycle
+
+    /**
+     * Stop listening for service health changes. Should be called when the parent Activity is destroyed.
+     */
+    public void onDestroy() {
+        EndpointHealth.getInstance().removeListener(this);
+        handler.removeCallbacksAndMessages(null);
     }
     //endregion
 
@@ -113,6 +144,8 @@ public class ServiceDropdownAdapter extends BaseAdapter
     public int getCount() {
         if (settingsList == null) {
             return 1;
+        } else if (hasAllServicesItem()) {
+            return settingsList.size() + 2;
         } else {
             return settingsList.size() + 1;
         }
@@ -120,15 +153,19 @@ public class ServiceDropdownAdapter extends BaseAdapter
 
     @Override
     public SearchClient.Settings getItem(int position) {
-        if (settingsList == null || position == settingsList.size()) // APISettingActivity View.
+        if (settingsList == null || position == getCount() - 1) // APISettingActivity View.
             return null;
+        if (position == settingsList.size()) // Search all services.
+            return getAllServicesSettings();
         return settingsList.get(position).second;
     }
 
     @Override
     public long getItemId(int position) {
-        if (settingsList == null || position == settingsList.size()) // APISettingActivity View.
-            return -1;
+        if (settingsList == null || position == getCount() - 1) // APISettingActivity View.
+            return ITEM_ID_SETTINGS;
+        if (position == settingsList.size()) // Search all services.
+            return ITEM_ID_ALL_SERVICES;
         // Return database row ID.
         return settingsList.get(position).first;
     }
@@ -143,7 +180,7 @@ public class ServiceDropdownAdapter extends BaseAdapter
         TextView text1 = (TextView) view.findViewById(android.R.id.text1);
         SearchClient.Settings settings = getItem(position);
         if (settings != null) {
-            text1.setText(settings.getName());
+            text1.setText(getServiceLabel(settings));
         } else {
             text1.setText(R.string.service_dropdown_settings);
             view.setOnClickListener(new View.OnClickListener() {
@@ -197,7 +234,7 @@ public class ServiceDropdownAdapter extends BaseAdapter
     @Override
     public void onItemSelected(AdapterView<?> adapterView, View view, int position, long id) {
         // Save last active item to SharedPreferences.
-        if (id != -1) {
+        if (id != ITEM_ID_SETTINGS) {
             // Notify parent activity.
             listener.onSearchAPISelected(getItem(position), id != lastSelectedItem);
             // Update last selected item id.
@@ -212,6 +249,61 @@ public class ServiceDropdownAdapter extends BaseAdapter
     }
     //endregion
 
+    //region EndpointHealth.Listener methods
+    @Override
+    public void onCircuitStateChanged(@NonNull String endpoint, @NonNull EndpointHealth.CircuitState state) {
+        // Called on a background thread.
+        handler.post(this::notifyDataSetChanged);
+    }
+
+    /**
+     * Get the label of a service, including its health status if it is not responding.
+     *
+     * @param settings Service settings.
+     * @return Service name, followed by its status if requests to it are failing.
+     */
+    @NonNull
+    private String getServiceLabel(@NonNull SearchClient.Settings settings) {
+        if (settings.getApiType() == SearchClient.Settings.APIType.FEDERATED) {
+            return settings.getName();
+        }
+        switch (EndpointHealth.getInstance().getState(settings.getEndpoint())) {
+            case OPEN:
+                return context.getString(R.string.service_dropdown_status_unavailable, settings.getName());
+            case HALF_OPEN:
+                return context.getString(R.string.service_dropdown_status_recovering, settings.getName());
+            default:
+                return settings.getName();
+        }
+    }
+    //endregion
+
+    //region Search all services
+
+    /**
+     * Check if the item searching all services at once should be shown.
+     *
+     * @return True if more than one service is configured.
+     */
+    private boolean hasAllServicesItem() {
+        return settingsList != null && settingsList.size() > 1;
+    }
+
+    /**
+     * Get settings of the client searching all configured services at once.
+     *
+     * @return Federated search client settings.
+     */
+    @NonNull
+    private SearchClient.Settings getAllServicesSettings() {
+        final SearchClient.Settings[] services = new SearchClient.Settings[settingsList.size()];
+        for (int i = 0; i < services.length; i++) {
+            services[i] = settingsList.get(i).second;
+        }
+        return new SearchClient.Settings(context.getString(R.string.service_dropdown_all_services), services);
+    }
+    //endregion
+
     //region Get adapter item position by SQLite database row ID
 
     /**
@@ -14,17 +14,20 @@ import android.content.IntentFilter;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.text.TextUtils;
 import android.util.Pair;
 
 import androidx.loader.content.AsyncTaskLoader;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 
 import io.github.tjg1.library.norilib.clients.Flickr;
 import io.github.tjg1.library.norilib.clients.SearchClient;
+import io.github.tjg1.library.norilib.clients.SearchClientRegistry;
 
 /**
  * Utility class providing access to the SQLite API endpoint settings database.
@@ -71,10 +74,14 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
      * Password/API key column.
      */
     private static final String COLUMN_PASSPHRASE = "passphrase";
+    /**
+     * Mirror endpoint URLs column (one URL per line). Added in schema version 2.
+     */
+    private static final String COLUMN_MIRRORS = "mirrors";
     /**
      * Database schema version.
      */
-    private static final int SCHEMA_VERSION = 1;
+    private static final int SCHEMA_VERSION = 2;
     //endregion
 
     //region Instance fields (Context)
@@ -102,8 +109,8 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
     public void onCreate(SQLiteDatabase db) {
         // SQL query used to create the database schema.
         String createSQL = String.format(Locale.US,
-                "CREATE TABLE %s (%s INTEGER PRIMARY KEY AUTOINCREMENT, %s TEXT NOT NULL, %s INTEGER NOT NULL, %s TEXT NOT NULL, %s TEXT, %s TEXT);",
-                TABLE_NAME, COLUMN_ID, COLUMN_NAME, COLUMN_TYPE, COLUMN_ENDPOINT_URL, COLUMN_USERNAME, COLUMN_PASSPHRASE);
+                "CREATE TABLE %s (%s INTEGER PRIMARY KEY AUTOINCREMENT, %s TEXT NOT NULL, %s INTEGER NOT NULL, %s TEXT NOT NULL, %s TEXT, %s TEXT, %s TEXT);",
+                TABLE_NAME, COLUMN_ID, COLUMN_NAME, COLUMN_TYPE, COLUMN_ENDPOINT_URL, COLUMN_USERNAME, COLUMN_PASSPHRASE, COLUMN_MIRRORS);
         db.execSQL(createSQL);
 
         // SQL query used to populate the database with initial data (when the app is first launched).
@@ -115,7 +122,9 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        // Do nothing.
+        if (oldVersion < 2) {
+            db.execSQL(String.format(Locale.US, "ALTER TABLE %s ADD COLUMN %s TEXT;", TABLE_NAME, COLUMN_MIRRORS));
+        }
     }
     //endregion
 
@@ -135,6 +144,7 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
         contentValues.put(COLUMN_ENDPOINT_URL, settings.getEndpoint());
         contentValues.put(COLUMN_USERNAME, settings.getUsername());
         contentValues.put(COLUMN_PASSPHRASE, settings.getPassword());
+        contentValues.put(COLUMN_MIRRORS, settings.getMirrors().isEmpty() ? null : TextUtils.join("\n", settings.getMirrors()));
         return contentValues;
     }
 
@@ -145,12 +155,14 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
      * @return {@link SearchClient.Settings} object.
      */
     private static SearchClient.Settings cursorToSearchClientSettings(Cursor c) {
+        final String mirrors = c.getString(c.getColumnIndex(COLUMN_MIRRORS));
         return new SearchClient.Settings(
                 SearchClient.Settings.APIType.values()[c.getInt(c.getColumnIndex(COLUMN_TYPE))],
                 c.getString(c.getColumnIndex(COLUMN_NAME)),
                 c.getString(c.getColumnIndex(COLUMN_ENDPOINT_URL)),
                 c.getString(c.getColumnIndex(COLUMN_USERNAME)),
-                c.getString(c.getColumnIndex(COLUMN_PASSPHRASE)));
+                c.getString(c.getColumnIndex(COLUMN_PASSPHRASE)),
+                TextUtils.isEmpty(mirrors) ? null : Arrays.asList(mirrors.split("\n")));
     }
     //endregion
 
@@ -158,6 +170,8 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
 
     /**
      * Get single instance of {@link SearchClient.Settings} from the database.
+     * Opens the database on each call: use {@link APISettingsRepository#get(long)} instead,
+     * which is served from memory.
      *
      * @param id Row ID.
      * @return Search client settings object. Null if given ID does not exist in the database.
@@ -224,12 +238,20 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
      * @return Number of rows affected.
      */
     public int update(long id, SearchClient.Settings settings) {
+        // Served from the repository cache, so the database isn't opened twice.
+        final SearchClient.Settings oldSettings = APISettingsRepository.getInstance(context).get(id);
+
         // Update data in the database.
         SQLiteDatabase db = getWritableDatabase();
         final int rows = db.update(TABLE_NAME, searchClientSettingsToContentValues(settings), COLUMN_ID + " = ?",
                 new String[]{Long.toString(id)});
         db.close();
 
+        // Don't keep the client created for the old settings around.
+        if (oldSettings != null) {
+            SearchClientRegistry.remove(oldSettings);
+        }
+
         sendUpdateNotification();
         return rows;
     }
@@ -241,11 +263,19 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
      * @return Number of rows affected.
      */
     public int delete(long id) {
+        // Served from the repository cache, so the database isn't opened twice.
+        final SearchClient.Settings oldSettings = APISettingsRepository.getInstance(context).get(id);
+
         // Remove row from the database.
         SQLiteDatabase db = getWritableDatabase();
         final int rows = db.delete(TABLE_NAME, COLUMN_ID + " = ?", new String[]{Long.toString(id)});
         db.close();
 
+        // Don't keep the client created for the removed service around.
+        if (oldSettings != null) {
+            SearchClientRegistry.remove(oldSettings);
+        }
+
         sendUpdateNotification();
         return rows;
     }
@@ -265,6 +295,8 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
 
     /**
      * Loader class used to asynchronously offload database access to a background thread.
+     * Data is served from the process-wide {@link APISettingsRepository}, so the database is only
+     * read when its contents have changed.
      */
     public static class Loader extends AsyncTaskLoader<List<Pair<Integer, SearchClient.Settings>>> {
         /**
@@ -277,9 +309,9 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
             }
         };
         /**
-         * Database access helper.
+         * In-memory copy of the database contents shared by all loaders.
          */
-        private APISettingsDatabase db;
+        private final APISettingsRepository repository;
         /**
          * Cached result.
          */
@@ -292,14 +324,19 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
          */
         public Loader(Context context) {
             super(context);
+            // The repository has to be created before the Loader's receiver is registered, so it
+            // always drops its cache before the Loader reloads.
+            this.repository = APISettingsRepository.getInstance(context);
         }
 
         @Override
         protected void onStartLoading() {
             super.onStartLoading();
 
-            // Create database instance.
-            this.db = new APISettingsDatabase(getContext());
+            // Use the data cached by the repository, if there is no result cached by this loader yet.
+            if (settingsList == null) {
+                settingsList = repository.getCached();
+            }
 
             // If there is a cached result available, deliver it immediately.
             if (settingsList != null) {
@@ -322,7 +359,6 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
 
             // Release resources.
             settingsList = null;
-            db.close();
 
             // Unregister broadcast receiver handling database change notifications.
             LocalBroadcastManager.getInstance(getContext()).unregisterReceiver(contentChangedBroadcastReceiver);
@@ -330,7 +366,7 @@ public class APISettingsDatabase extends SQLiteOpenHelper {
 
         @Override
         public List<Pair<Integer, SearchClient.Settings>> loadInBackground() {
-            settingsList = db.getAll();
+            settingsList = repository.getAll();
             return settingsList;
         }
     }
@@ -0,0 +1,164 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: GNU GPLv2
+ */
+
+package io.github.tjg1.nori.database;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.Pair;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+import androidx.localbroadcastmanager.content.LocalBroadcastManager;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.github.tjg1.library.norilib.clients.SearchClient;
+
+/**
+ * Process-wide, in-memory copy of the {@link APISettingsDatabase} contents.
+ * <p/>
+ * The database is only read once per process (and again after each {@link APISettingsDatabase#BROADCAST_UPDATE}),
+ * so Activities and Loaders can look up {@link SearchClient.Settings} without any disk I/O.
+ */
+public class APISettingsRepository {
+
+    //region Static fields (Singleton)
+    /**
+     * Shared instance of the repository.
+     */
+    private static APISettingsRepository instance;
+    //endregion
+
+    //region Instance fields
+    /**
+     * Application context (used to access the database).
+     */
+    private final Context context;
+    /**
+     * Cached database contents. Null if the cache has been invalidated and has to be re-read.
+     */
+    private volatile List<Pair<Integer, SearchClient.Settings>> settingsList;
+    /**
+     * Incremented each time the cache is invalidated. Used to discard stale database reads.
+     */
+    private int version = 0;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new repository and register it as an observer of database changes.
+     *
+     * @param context Application context.
+     */
+    private APISettingsRepository(@NonNull Context context) {
+        this.context = context;
+
+        // Drop the cached contents each time the database is modified.
+        LocalBroadcastManager.getInstance(context).registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        }, new IntentFilter(APISettingsDatabase.BROADCAST_UPDATE));
+    }
+
+    /**
+     * Get the shared instance of the repository.
+     *
+     * @param context Android context.
+     * @return Process-wide settings repository.
+     */
+    @NonNull
+    public static synchronized APISettingsRepository getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new APISettingsRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+    //endregion
+
+    //region Getters
+
+    /**
+     * Get all {@link SearchClient.Settings} objects, reading them from the database only if they are not cached.
+     *
+     * @return Unmodifiable list of pairs mapping database IDs to {@link SearchClient.Settings} objects.
+     */
+    @WorkerThread
+    @NonNull
+    public List<Pair<Integer, SearchClient.Settings>> getAll() {
+        List<Pair<Integer, SearchClient.Settings>> cached = settingsList;
+        if (cached != null) {
+            return cached;
+        }
+
+        final int readVersion;
+        synchronized (this) {
+            if (settingsList != null) {
+                return settingsList;
+            }
+            readVersion = version;
+        }
+
+        // Read the database outside of the lock, so invalidations are never blocked by disk I/O.
+        APISettingsDatabase database = new APISettingsDatabase(context);
+        cached = Collections.unmodifiableList(database.getAll());
+        database.close();
+
+        synchronized (this) {
+            // Only cache the result if the database wasn't modified while it was being read.
+            if (readVersion == version) {
+                settingsList = cached;
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Get the cached {@link SearchClient.Settings} objects without touching the database.
+     *
+     * @return Cached list, or null if the database has not been read yet.
+     */
+    @Nullable
+    public List<Pair<Integer, SearchClient.Settings>> getCached() {
+        return settingsList;
+    }
+
+    /**
+     * Get single instance of {@link SearchClient.Settings}.
+     *
+     * @param id Row ID.
+     * @return Search client settings object. Null if given ID does not exist in the database.
+     */
+    @WorkerThread
+    @Nullable
+    public SearchClient.Settings get(long id) {
+        for (Pair<Integer, SearchClient.Settings> pair : getAll()) {
+            if (pair.first == id) {
+                return pair.second;
+            }
+        }
+        return null;
+    }
+    //endregion
+
+    //region Cache invalidation
+
+    /**
+     * Drop the cached database contents. The next read will query the database again.
+     */
+    public synchronized void invalidate() {
+        settingsList = null;
+        version++;
+    }
+    //endregion
+}
@@ -13,6 +13,7 @@ import android.content.Context;
 import android.net.Uri;
 import android.os.Bundle;
 import android.text.Editable;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -24,6 +25,9 @@ import android.widget.EditText;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.DialogFragment;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import io.github.tjg1.library.norilib.clients.SearchClient;
 import io.github.tjg1.library.norilib.util.HashUtils;
 import io.github.tjg1.nori.R;
@@ -78,6 +82,10 @@ public class EditAPISettingDialogFragment extends DialogFragment
      * Service authentication password/API key field.
      */
     private EditText passphrase;
+    /**
+     * Service mirror URLs field (one URL per line).
+     */
+    private EditText mirrors;
     //endregion
 
     //region newInstance static methods
@@ -144,6 +152,7 @@ public class EditAPISettingDialogFragment extends DialogFragment
         uri = (EditText) view.findViewById(R.id.uri);
         username = (EditText) view.findViewById(R.id.username);
         passphrase = (EditText) view.findViewById(R.id.passphrase);
+        mirrors = (EditText) view.findViewById(R.id.mirrors);
 
         // Set service name autosuggestion adapter.
         name.setAdapter(new ArrayAdapter<>(getContext(), R.layout.api_suggestion_dropdown_item, getResources().getStringArray(R.array.service_suggestions_names)));
@@ -166,6 +175,7 @@ public class EditAPISettingDialogFragment extends DialogFragment
                 uri.setText(settings.getEndpoint());
                 username.setText(settings.getUsername());
                 passphrase.setText(settings.getPassword());
+                mirrors.setText(TextUtils.join("\n", settings.getMirrors()));
             }
         }
 
@@ -224,15 +234,30 @@ public class EditAPISettingDialogFragment extends DialogFragment
         // Send input to the parent Context, so that it can be added or edited in the database.
         if (rowId < 0) {
             listener.addService(name.getText().toString(), uri.getText().toString(),
-                    username.getText().toString(), passphrase.getText().toString());
+                    username.getText().toString(), passphrase.getText().toString(), getMirrors());
         } else {
             listener.editService(rowId, name.getText().toString(), uri.getText().toString(),
-                    username.getText().toString(), passphrase.getText().toString());
+                    username.getText().toString(), passphrase.getText().toString(), getMirrors());
         }
 
         // Dismiss dialog.
         dismiss();
     }
+
+    /**
+     * Get the mirror URLs entered by the user.
+     *
+     * @return Non-empty lines of the mirrors input field.
+     */
+    private List<String> getMirrors() {
+        final List<String> mirrorList = new ArrayList<>();
+        for (String line : mirrors.getText().toString().split("\n")) {
+            if (!line.trim().isEmpty()) {
+                mirrorList.add(line.trim());
+            }
+        }
+        return mirrorList;
+    }
     //endregion
 
     //region TextWatcher methods
@@ -288,8 +313,9 @@ public class EditAPISettingDialogFragment extends DialogFragment
          * @param url        Service endpoint uri.
          * @param username   Service authentication username (optional).
          * @param passphrase Service authentication passphrase (optional).
+         * @param mirrors    Service mirror endpoint uris (optional).
          */
-        void addService(String name, String url, String username, String passphrase);
+        void addService(String name, String url, String username, String passphrase, List<String> mirrors);
 
         /**
          * Edit an existing service in the database.
@@ -299,8 +325,10 @@ public class EditAPISettingDialogFragment extends DialogFragment
          * @param url        Service endpoint uri.
          * @param username   Service authentication username (optional).
          * @param passphrase Service authentication passphrase (optional).
+         * @param mirrors    Service mirror endpoint uris (optional).
          */
-        void editService(long rowId, String name, String url, String username, String passphrase);
+        void editService(long rowId, String name, String url, String username, String passphrase,
+                         List<String> mirrors);
     }
     //endregion
 }
@@ -180,7 +180,7 @@ public abstract class ImageFragment extends Fragment {
     protected Intent getShareIntent() {
         // Send web URL to image.
         Intent intent = new Intent(Intent.ACTION_SEND);
-        intent.putExtra(Intent.EXTRA_TEXT, image.webUrl);
+        intent.putExtra(Intent.EXTRA_TEXT, image.getWebUrl());
         intent.setType("text/plain");
         return intent;
     }
@@ -198,7 +198,7 @@ public abstract class ImageFragment extends Fragment {
      */
     protected void downloadImage() {
         if (listener != null) {
-            listener.downloadImage(image.fileUrl);
+            listener.downloadImage(image.getFileUrl());
         }
     }
 
@@ -207,7 +207,7 @@ public abstract class ImageFragment extends Fragment {
      */
     protected void viewOnWeb() {
         // Create and send intent to display the image in the web browser.
-        Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(image.webUrl));
+        Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(image.getWebUrl()));
         startActivity(intent);
     }
 
@@ -235,7 +235,7 @@ public abstract class ImageFragment extends Fragment {
     protected void setAsWallpaper() {
         // Fetch and set full-screen image as wallpaper on background thread.
         final Context context = getContext();
-        final String imageUrl = image.fileUrl;
+        final String imageUrl = image.getFileUrl();
         final WallpaperManager wallpaperManager = WallpaperManager.getInstance(getContext());
 
         new AsyncTask<Void, Void, Exception>() {
@@ -20,6 +20,7 @@ import com.koushikdutta.ion.Ion;
 import com.koushikdutta.ion.builder.AnimateGifMode;
 
 import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.http.BandwidthMeter;
 import io.github.tjg1.nori.BuildConfig;
 import io.github.tjg1.nori.R;
 
@@ -94,7 +95,7 @@ public class RemoteImageFragment extends ImageFragment {
         this.photoView.setOnViewTapListener((view1, x, y) -> listener.onViewTap(view1, x, y));
 
         // Defer loading GIF images until the fragment is active.
-        if (!"gif".equals(image.getFileExtension()) || this.isActive) {
+        if (image.getMediaType() != Image.MediaType.ANIMATED_GIF || this.isActive) {
             loadImage();
         }
 
@@ -137,12 +138,14 @@ public class RemoteImageFragment extends ImageFragment {
         }
 
         // Load image into the view.
-        String imageUrl = shouldLoadImageSamples() ? image.sampleUrl : image.fileUrl;
+        String imageUrl = shouldLoadImageSamples() ? image.getSampleUrl() : image.getFileUrl();
+        final BandwidthMeter.Transfer transfer = BandwidthMeter.getInstance().startTransfer();
         imageLoadingFuture = Ion.with(this)
                 .load(imageUrl)
                 .progressBar(progressBar)
+                .progressHandler((downloaded, total) -> transfer.onProgress(downloaded))
                 .userAgent("nori/" + BuildConfig.VERSION_NAME)
-                .addHeader("Referer", image.previewUrl)
+                .addHeader("Referer", image.getPreviewUrl())
                 .withBitmap()
                 .animateGif(AnimateGifMode.ANIMATE)
                 //.deepZoom() // (disabled due to poor scaling quality)
@@ -151,6 +154,9 @@ public class RemoteImageFragment extends ImageFragment {
                     if (e != null) {
                         errorTextView.setVisibility(View.VISIBLE);
                         errorTextView.setText(e.getLocalizedMessage());
+                    } else {
+                        // Measure the download to pick the quality of the next images.
+                        transfer.finish();
                     }
                     progressBar.setProgress(100); // for cached images.
                     progressBar.setVisibility(View.GONE);
@@ -70,6 +70,10 @@ public class SearchResultGridFragment extends Fragment implements AdapterView.On
      * Previous first visible item's position, restored from saved instance state.
      */
     private int firstVisibleSearchPagePosition = 0;
+    /**
+     * First visible item reported to the parent activity in {@link #onScroll(AbsListView, int, int, int)}.
+     */
+    private int lastFirstVisibleItem = -1;
     /**
      * Previous search query, restored from saved instance state.
      */
@@ -84,18 +88,21 @@ public class SearchResultGridFragment extends Fragment implements AdapterView.On
             if (searchResult == null) {
                 return 0;
             }
-            return searchResult.getImages().length;
+            return searchResult.getImageCount();
         }
 
         @Override
         public Image getItem(int position) {
             // Return image at given position.
-            return searchResult.getImages()[position];
+            return searchResult.getImage(position);
         }
 
         @Override
         public long getItemId(int position) {
-            return Long.parseLong(getItem(position).id);
+            final Image image = getItem(position);
+            // Images on pages being read back from disk are not available yet, and some IDs aren't numeric.
+            final long id = image != null ? image.getUniqueId() : -1;
+            return id != -1 ? id : position;
         }
 
         @Override
@@ -112,9 +119,15 @@ public class SearchResultGridFragment extends Fragment implements AdapterView.On
             }
             int previewSize = gridView.getColumnWidth();
 
+            if (image == null) {
+                // Page is being read back from disk, the grid is refreshed once it's available.
+                imageView.setImageResource(R.color.network_thumbnail_placeholder);
+                return imageView;
+            }
+
             // Load image into view.
             Ion.with(getContext())
-                    .load(image.previewUrl)
+                    .load(image.getPreviewUrl())
                     .userAgent("nori/" + BuildConfig.VERSION_NAME)
                     .withBitmap()
                     .resize(previewSize, previewSize)
@@ -143,10 +156,9 @@ public class SearchResultGridFragment extends Fragment implements AdapterView.On
         super.onSaveInstanceState(outState);
         // Preserve currently displayed SearchResult.
         if (searchResult != null) {
-            if (gridView.getCount() > 0) {
-                final Image firstVisibleImage =
-                        (Image) gridView.getItemAtPosition(gridView.getFirstVisiblePosition());
-
+            final Image firstVisibleImage = gridView.getCount() > 0 ?
+                    (Image) gridView.getItemAtPosition(gridView.getFirstVisiblePosition()) : null;
+            if (firstVisibleImage != null) {
                 final int firstVisibleSearchPage = firstVisibleImage.searchPage;
                 final int firstVisibleSearchPagePosition = firstVisibleImage.searchPagePosition;
 
@@ -221,9 +233,11 @@ public class SearchResultGridFragment extends Fragment implements AdapterView.On
     //region AdapterView.OnItemClickListener methods (starting ImageViewerActivity)
     @Override
     public void onItemClick(AdapterView<?> adapterView, View view, int position, long l) {
-        if (mListener != null) {
+        final Image image = (Image) gridAdapter.getItem(position);
+        // Ignore clicks on images still being read back from disk.
+        if (mListener != null && image != null) {
             // Notify parent Context that image has been clicked.
-            mListener.onImageSelected((Image) gridAdapter.getItem(position), position);
+            mListener.onImageSelected(image, position);
         }
     }
     //endregion
@@ -236,6 +250,11 @@ public class SearchResultGridFragment extends Fragment implements AdapterView.On
 
     @Override
     public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount, int totalItemCount) {
+        if (firstVisibleItem != lastFirstVisibleItem && mListener != null) {
+            lastFirstVisibleItem = firstVisibleItem;
+            mListener.onGridScrolled(firstVisibleItem);
+        }
+
         // Implement endless scrolling.
         // Fetch more images if near the end of the list and more images are available for the SearchResult.
         if ((totalItemCount - visibleItemCount) <= (firstVisibleItem + 10) && searchResult != null
@@ -323,6 +342,14 @@ public class SearchResultGridFragment extends Fragment implements AdapterView.On
          */
         void fetchMoreImages(SearchResult searchResult);
 
+        /**
+         * Called when the first visible item in the thumbnail {@link android.widget.GridView} changes.
+         * Used to keep the images close to the viewport in memory.
+         *
+         * @param firstVisiblePosition Position of the first visible image in the {@link SearchResult}.
+         */
+        void onGridScrolled(int firstVisiblePosition);
+
         /**
          * Called when the {@link SearchResult} has to fetched to restore this SearchResultGridFragment's saved instance state.
          *
@@ -150,9 +150,9 @@ public class VideoPlayerFragment extends ImageFragment {
             HashMap<String, String> headers = new HashMap<>(1);
             headers.put("User-Agent", "nori/" + BuildConfig.VERSION_NAME);
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                videoView.setVideoURI(Uri.parse(image.fileUrl), headers);
+                videoView.setVideoURI(Uri.parse(image.getFileUrl()), headers);
             } else {
-                videoView.setVideoURI(Uri.parse(image.fileUrl));
+                videoView.setVideoURI(Uri.parse(image.getFileUrl()));
             }
             videoView.setOnPreparedListener(mediaPlayer -> {
                 // Start video, if the fragment is active.
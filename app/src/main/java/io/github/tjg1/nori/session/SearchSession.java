@@ -0,0 +1,653 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: GNU GPLv2
+ */
+
+package io.github.tjg1.nori.session;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.preference.PreferenceManager;
+import android.text.TextUtils;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.Tag;
+import io.github.tjg1.library.norilib.clients.QueryPlanner;
+import io.github.tjg1.library.norilib.clients.SearchClient;
+import io.github.tjg1.library.norilib.util.PageSpillStore;
+import io.github.tjg1.nori.R;
+
+/**
+ * Live search shared between the search result grid and the image viewer.
+ * <p/>
+ * Owns the accumulated {@link SearchResult}, the in-flight page request and the filter pipeline,
+ * so each page is only fetched and filtered once, no matter which screen asked for it.
+ * All methods must be called from the main thread.
+ */
+@MainThread
+public class SearchSession {
+
+    //region Constants
+    /**
+     * Number of pages kept in memory on either side of the viewport, unless the system is low on memory.
+     */
+    private static final int DEFAULT_WINDOW_RADIUS = 5;
+    /**
+     * Time without memory trim requests after which the window grows back to {@link #DEFAULT_WINDOW_RADIUS}. (ms)
+     */
+    private static final long WINDOW_RADIUS_RECOVERY_DELAY = 60000;
+    /**
+     * Number of images the viewport has to move by before the window is trimmed again.
+     */
+    private static final int WINDOW_TRIM_STEP = 50;
+    /**
+     * Number of visible images each fetch should return: about a screenful of thumbnails.
+     */
+    private static final int TARGET_VISIBLE_IMAGE_COUNT = 50;
+    /**
+     * Maximum number of pages fetched at once, when most images are filtered out.
+     * Pages are merged into as few requests as the API's maximum page size allows.
+     */
+    private static final int MAX_PAGES_PER_FETCH = 4;
+    //endregion
+
+    //region Instance fields
+    /**
+     * Application context (used to access resources).
+     */
+    private final Context context;
+    /**
+     * Default shared preferences (used to get the SafeSearch and tag filter settings).
+     */
+    private final SharedPreferences sharedPreferences;
+    /**
+     * Search API client.
+     */
+    private final SearchClient searchClient;
+    /**
+     * Search query. (space-separated list of tags)
+     */
+    private final String query;
+    /**
+     * Query rewritten to exclude filtered images on the server. Null until the search is started.
+     */
+    private QueryPlanner.Plan queryPlan;
+    /**
+     * Accumulated search result. Null until the first page is received.
+     */
+    private SearchResult searchResult;
+    /**
+     * Callback awaiting a response from the Search API. Null if there is no request in flight.
+     */
+    private PageCallback pendingCallback;
+    /**
+     * Listeners subscribed to this session.
+     */
+    private final List<Listener> listeners = new ArrayList<>();
+    /**
+     * Store used to spill pages far away from the viewport to disk. Null if windowing is disabled.
+     */
+    private PageSpillStore pageSpillStore;
+    /**
+     * Executor used to trim the window off the main thread.
+     */
+    private Executor windowExecutor;
+    /**
+     * Number of pages kept in memory on either side of the viewport.
+     */
+    private int windowRadius = DEFAULT_WINDOW_RADIUS;
+    /**
+     * Time the window was last shrunk by {@link #onTrimMemory(int)}. ({@link SystemClock#elapsedRealtime()})
+     */
+    private long windowShrunkAt;
+    /**
+     * Handler used to notify listeners of pages read back from disk on the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /**
+     * Position of the image closest to the viewport.
+     */
+    private int viewportPosition = 0;
+    /**
+     * Viewport position the window was last trimmed at.
+     */
+    private int trimmedViewportPosition = 0;
+    /**
+     * Number of images received from the API for this query, before filtering.
+     */
+    private int receivedImageCount = 0;
+    /**
+     * Number of images received from the API for this query that passed the filters.
+     */
+    private int visibleImageCount = 0;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new search session. Call {@link #search(int)} to fetch the first page.
+     *
+     * @param context      Android context.
+     * @param searchClient Search API client.
+     * @param query        Search query.
+     */
+    public SearchSession(@NonNull Context context, @NonNull SearchClient searchClient, @NonNull String query) {
+        this.context = context.getApplicationContext();
+        this.sharedPreferences = PreferenceManager.getDefaultSharedPreferences(this.context);
+        this.searchClient = searchClient;
+        this.query = query;
+    }
+
+    /**
+     * Resume a search session from a previously fetched search result.
+     *
+     * @param context      Android context.
+     * @param searchClient Search API client.
+     * @param searchResult Previously fetched and filtered search result.
+     */
+    public SearchSession(@NonNull Context context, @NonNull SearchClient searchClient, @NonNull SearchResult searchResult) {
+        this(context, searchClient, Tag.stringFromArray(searchResult.getQuery()));
+        this.searchResult = searchResult;
+        this.searchResult.compactUrls();
+    }
+    //endregion
+
+    //region Windowing
+
+    /**
+     * Keep only pages close to the viewport in memory, spilling the rest to disk.
+     *
+     * @param pageSpillStore Store the pages are written to.
+     * @param executor       Executor used to write and read pages off the main thread.
+     */
+    void enableWindowing(@NonNull PageSpillStore pageSpillStore, @NonNull Executor executor) {
+        this.pageSpillStore = pageSpillStore;
+        this.windowExecutor = executor;
+        if (searchResult != null) {
+            setPageSpillStore(searchResult);
+        }
+    }
+
+    /**
+     * Let a search result spill pages to the {@link #pageSpillStore}, if windowing is enabled.
+     * Spilled pages are read back on the {@link #windowExecutor}, and listeners are notified once they're available.
+     *
+     * @param searchResult Search result.
+     */
+    private void setPageSpillStore(@NonNull SearchResult searchResult) {
+        searchResult.setPageSpillStore(pageSpillStore, windowExecutor, result -> mainHandler.post(() -> {
+            if (this.searchResult == result) {
+                notifySearchResultChanged();
+            }
+        }));
+    }
+
+    /**
+     * Report the position of the image currently shown to the user.
+     * Pages far away from it are spilled to disk, and spilled pages close to it are read back.
+     *
+     * @param position Position of the image in the search result.
+     */
+    public void setViewportPosition(int position) {
+        viewportPosition = position;
+        if (Math.abs(position - trimmedViewportPosition) >= WINDOW_TRIM_STEP) {
+            trimWindow();
+        }
+    }
+
+    /**
+     * Shrink the window when the system is running low on memory.
+     * It grows back {@link #WINDOW_RADIUS_RECOVERY_DELAY} ms after the last trim request.
+     * Called by {@link SearchSessionStore} from {@link ComponentCallbacks2#onTrimMemory(int)}.
+     *
+     * @param level Memory trim level.
+     */
+    void onTrimMemory(int level) {
+        final int radius;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            radius = 0;
+        } else if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            radius = 1;
+        } else {
+            radius = 2;
+        }
+
+        windowShrunkAt = SystemClock.elapsedRealtime();
+        if (radius < windowRadius) {
+            windowRadius = radius;
+            trimWindow();
+        }
+    }
+
+    /**
+     * Trim the search result to the window around the viewport in the background.
+     */
+    private void trimWindow() {
+        if (windowExecutor == null || searchResult == null) {
+            return;
+        }
+
+        // Grow the window back once the system stops asking for memory.
+        if (windowRadius < DEFAULT_WINDOW_RADIUS
+                && SystemClock.elapsedRealtime() - windowShrunkAt >= WINDOW_RADIUS_RECOVERY_DELAY) {
+            windowRadius = DEFAULT_WINDOW_RADIUS;
+        }
+
+        final SearchResult searchResult = this.searchResult;
+        final int position = viewportPosition;
+        final int radius = windowRadius;
+        trimmedViewportPosition = position;
+        windowExecutor.execute(() -> searchResult.trimToWindow(position, radius));
+    }
+    //endregion
+
+    //region Listeners
+
+    /**
+     * Subscribe to changes in this session.
+     *
+     * @param listener Listener to add.
+     */
+    public void addListener(@NonNull Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    /**
+     * Unsubscribe from changes in this session.
+     *
+     * @param listener Listener to remove.
+     */
+    public void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+    //endregion
+
+    //region Fetching pages
+
+    /**
+     * Fetch a page of results, replacing the current search result.
+     * Used to start the search, or to resume it from a given page.
+     *
+     * @param page Page number. (zero-indexed)
+     */
+    public void search(int page) {
+        cancel();
+        pendingCallback = new PageCallback(false);
+        notifyLoadingStateChanged();
+        // Have the API exclude as many filtered images as possible, so they aren't downloaded at all.
+        queryPlan = searchClient.getQueryPlanner().plan(query, getSafeSearchRatings(), getTagFilter());
+        searchClient.search(queryPlan.query, page, pendingCallback);
+    }
+
+    /**
+     * Fetch the next page of results and append it to the search result.
+     * Ignored if a request is already in flight or the last page has been reached.
+     */
+    public void fetchNextPage() {
+        if (pendingCallback != null || searchResult == null || !searchResult.hasNextPage()) {
+            return;
+        }
+
+        pendingCallback = new PageCallback(true);
+        notifyLoadingStateChanged();
+        searchClient.searchNextPages(searchResult, getPagesPerFetch(), pendingCallback);
+    }
+
+    /**
+     * Ignore the response to the request currently in flight.
+     */
+    public void cancel() {
+        if (pendingCallback != null) {
+            pendingCallback.cancel();
+            pendingCallback = null;
+            notifyLoadingStateChanged();
+        }
+    }
+    //endregion
+
+    //region Filtering
+
+    /**
+     * Remove images hidden by the user's SafeSearch and tag filter settings from a page of results.
+     * Filters already applied by the API, as part of the {@link #queryPlan}, are skipped.
+     *
+     * @param page Page of results received from the API.
+     */
+    private void filter(@NonNull SearchResult page) {
+        if (queryPlan != null) {
+            page.filter(queryPlan.safeSearchRatings);
+            page.filter(queryPlan.tagFilter);
+        } else {
+            page.filter(getSafeSearchRatings());
+            page.filter(getTagFilter());
+        }
+    }
+
+    /**
+     * Show the query entered by the user, rather than the query rewritten by the {@link #queryPlan},
+     * on a page of results. The following pages are still fetched using the rewritten query.
+     *
+     * @param page Page of results received from the API.
+     */
+    private void setUserQuery(@NonNull SearchResult page) {
+        if (queryPlan != null && !queryPlan.query.equals(query)) {
+            page.setUserQuery(Tag.arrayFromString(query));
+        }
+    }
+
+    /**
+     * Record the number of images that passed the filters, to adapt the number of pages fetched at once.
+     *
+     * @param receivedCount Number of images received from the API.
+     * @param visibleCount  Number of images left after filtering.
+     */
+    private void recordFilterPassRate(int receivedCount, int visibleCount) {
+        receivedImageCount += receivedCount;
+        visibleImageCount += visibleCount;
+    }
+
+    /**
+     * Get the number of pages to fetch at once, so that about {@link #TARGET_VISIBLE_IMAGE_COUNT}
+     * images are left after filtering, based on the share of images that passed the filters so far.
+     * {@link SearchClient#searchNextPages(SearchResult, int, SearchClient.SearchCallback)} fetches them with
+     * larger requests, up to the API's maximum page size, and with several requests beyond that, so APIs
+     * whose maximum page size is the default page size (e.g. Gelbooru) still get more pages per fetch.
+     *
+     * @return Number of pages, between 1 and {@link #MAX_PAGES_PER_FETCH}.
+     */
+    private int getPagesPerFetch() {
+        if (receivedImageCount == 0) {
+            return 1;
+        }
+        // Expected number of visible images per page.
+        final double visiblePerPage = (double) searchClient.getDefaultLimit() * visibleImageCount / receivedImageCount;
+        if (visiblePerPage < 1) {
+            return MAX_PAGES_PER_FETCH;
+        }
+        return Math.max(1, Math.min(MAX_PAGES_PER_FETCH, (int) Math.ceil(TARGET_VISIBLE_IMAGE_COUNT / visiblePerPage)));
+    }
+
+    /**
+     * Get the SafeSearch ratings the user wants to see.
+     *
+     * @return SafeSearch ratings from shared preferences, or the default ratings.
+     */
+    @NonNull
+    private Image.SafeSearchRating[] getSafeSearchRatings() {
+        final String safeSearchKey = context.getString(R.string.preference_safeSearch_key);
+        if (sharedPreferences.contains(safeSearchKey) &&
+                !TextUtils.isEmpty(sharedPreferences.getString(safeSearchKey, "").trim())) {
+            // Get filter from shared preferences.
+            return Image.SafeSearchRating.arrayFromStrings(
+                    sharedPreferences.getString(safeSearchKey, "").split(" "));
+        } else {
+            // Get default filter from resources.
+            return Image.SafeSearchRating.arrayFromStrings(
+                    context.getResources().getStringArray(R.array.preference_safeSearch_defaultValues));
+        }
+    }
+
+    /**
+     * Get the tags the user doesn't want to see.
+     *
+     * @return Tag filter from shared preferences.
+     */
+    @NonNull
+    private Tag[] getTagFilter() {
+        final String tagFilterKey = context.getString(R.string.preference_tagFilter_key);
+        return Tag.arrayFromString(sharedPreferences.getString(tagFilterKey, ""));
+    }
+    //endregion
+
+    //region Getters
+
+    /**
+     * Get the Search API client used by this session.
+     *
+     * @return Search API client.
+     */
+    @NonNull
+    public SearchClient getSearchClient() {
+        return searchClient;
+    }
+
+    /**
+     * Get the search query.
+     *
+     * @return Search query. (space-separated list of tags)
+     */
+    @NonNull
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * Get the accumulated search result.
+     *
+     * @return Filtered search result. Null if the first page hasn't been received yet.
+     */
+    @Nullable
+    public SearchResult getSearchResult() {
+        return searchResult;
+    }
+
+    /**
+     * Check if there is a request in flight.
+     *
+     * @return True if waiting for a response from the Search API.
+     */
+    public boolean isLoading() {
+        return pendingCallback != null;
+    }
+    //endregion
+
+    //region Notifying listeners
+
+    /**
+     * Notify listeners that the search result has changed.
+     */
+    private void notifySearchResultChanged() {
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onSearchResultChanged(this);
+        }
+    }
+
+    /**
+     * Notify listeners that a request has started or finished.
+     */
+    private void notifyLoadingStateChanged() {
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onLoadingStateChanged(this, isLoading());
+        }
+    }
+
+    /**
+     * Notify listeners that a request has failed.
+     *
+     * @param e Error returned by the Search API client.
+     */
+    private void notifySearchFailed(IOException e) {
+        for (Listener listener : new ArrayList<>(listeners)) {
+            listener.onSearchFailed(this, e);
+        }
+    }
+    //endregion
+
+    //region Inner class: Page callback
+
+    /**
+     * Callback waiting for a page of results received from the Search API.
+     * Partial results received when searching several services at once are shown as they arrive.
+     */
+    private class PageCallback implements SearchClient.StreamingSearchCallback {
+        /**
+         * True if the page should be appended to the current search result.
+         */
+        private final boolean appendToSearchResult;
+        /**
+         * Callback cancelled and should no longer respond to received SearchResult.
+         */
+        private boolean isCancelled = false;
+        /**
+         * True if partial results have already been added to the current search result.
+         */
+        private boolean receivedPartialResult = false;
+        /**
+         * Number of images in the partial results received, after filtering.
+         */
+        private int partialImageCount = 0;
+
+        /**
+         * Create a new page callback.
+         *
+         * @param appendToSearchResult True if the page should be appended to the current search result.
+         */
+        public PageCallback(boolean appendToSearchResult) {
+            this.appendToSearchResult = appendToSearchResult;
+        }
+
+        @Override
+        public void onFailure(IOException e) {
+            if (!isCancelled) {
+                pendingCallback = null;
+                notifyLoadingStateChanged();
+                notifySearchFailed(e);
+            }
+        }
+
+        @Override
+        public void onPartialResult(SearchResult partialResult) {
+            if (isCancelled) {
+                return;
+            }
+
+            final int resultCount = partialResult.getImageCount();
+            setUserQuery(partialResult);
+            filter(partialResult);
+            recordFilterPassRate(resultCount, partialResult.getImageCount());
+            partialResult.compactUrls();
+            if (!appendToSearchResult && !receivedPartialResult) {
+                searchResult = partialResult;
+                setPageSpillStore(searchResult);
+                viewportPosition = trimmedViewportPosition = 0;
+            } else {
+                searchResult.addImages(partialResult.getImages(), partialResult.getCurrentOffset(),
+                        partialResult.getNextPageCursor());
+            }
+            receivedPartialResult = true;
+            partialImageCount += partialResult.getImageCount();
+
+            notifySearchResultChanged();
+        }
+
+        @Override
+        public void onSuccess(SearchResult page) {
+            if (isCancelled) {
+                return;
+            }
+            pendingCallback = null;
+
+            final int resultCount = page.getImageCount();
+            if (receivedPartialResult) {
+                // Images were already added to the search result as they arrived.
+                if (!page.hasNextPage()) {
+                    searchResult.onLastPage();
+                }
+                notifyLoadingStateChanged();
+                notifySearchResultChanged();
+                // If all images on the page were filtered out, try fetching the next page.
+                if (resultCount != 0 && partialImageCount == 0) {
+                    fetchNextPage();
+                }
+                return;
+            }
+
+            setUserQuery(page);
+            filter(page);
+            recordFilterPassRate(resultCount, page.getImageCount());
+            // Endless scrolling sessions can hold thousands of images, most of them off-screen.
+            page.compactUrls();
+
+            if (!appendToSearchResult) {
+                searchResult = page;
+                setPageSpillStore(searchResult);
+                viewportPosition = trimmedViewportPosition = 0;
+                if (resultCount == 0) {
+                    searchResult.onLastPage();
+                }
+            } else if (resultCount == 0) {
+                // Mark the search result as having reached the last page.
+                searchResult.onLastPage();
+            } else {
+                // Extend the search result for endless scrolling.
+                searchResult.addImages(page.getImages(), page.getCurrentOffset(), page.getNextPageCursor());
+            }
+
+            notifyLoadingStateChanged();
+            notifySearchResultChanged();
+
+            // If all images on the page were filtered out, try fetching the next page.
+            if (resultCount != 0 && page.getImageCount() == 0) {
+                fetchNextPage();
+            }
+        }
+
+        /**
+         * Cancels this callback.
+         */
+        public void cancel() {
+            this.isCancelled = true;
+        }
+    }
+    //endregion
+
+    //region Listener interface
+
+    /**
+     * Interface implemented by screens displaying the search session.
+     */
+    public interface Listener {
+        /**
+         * Called when the first page of results is received, more images are appended
+         * or the last page has been reached.
+         *
+         * @param session Search session.
+         */
+        void onSearchResultChanged(@NonNull SearchSession session);
+
+        /**
+         * Called when a request to the Search API starts or finishes.
+         *
+         * @param session   Search session.
+         * @param isLoading True if a request is in flight.
+         */
+        void onLoadingStateChanged(@NonNull SearchSession session, boolean isLoading);
+
+        /**
+         * Called when a request to the Search API fails.
+         *
+         * @param session Search session.
+         * @param e       Error returned by the Search API client.
+         */
+        void onSearchFailed(@NonNull SearchSession session, @NonNull IOException e);
+    }
+    //endregion
+}
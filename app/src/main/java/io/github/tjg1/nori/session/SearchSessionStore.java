@@ -0,0 +1,343 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: GNU GPLv2
+ */
+
+package io.github.tjg1.nori.session;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.clients.SearchClient;
+import io.github.tjg1.library.norilib.util.PageSpillStore;
+import io.github.tjg1.library.norilib.util.SearchResultCodec;
+import io.github.tjg1.nori.NoriApplication;
+
+/**
+ * Process-wide store of {@link SearchSession}s shared between Activities.
+ * <p/>
+ * Activities pass around short session handles instead of parceling the search results into
+ * Intents and saved instance state Bundles. Snapshots of the results are written to the cache
+ * directory, so they can be restored after the app process has been killed.
+ * <p/>
+ * Sessions are windowed: pages far away from the viewport are spilled to the cache directory,
+ * and the window shrinks when the system asks the app to trim its memory usage.
+ */
+public class SearchSessionStore implements ComponentCallbacks2 {
+
+    //region Constants
+    /**
+     * Name of the cache subdirectory used to store session snapshots.
+     */
+    private static final String SNAPSHOT_DIRECTORY = "search_sessions";
+    /**
+     * Snapshots older than this are removed when the store is created.
+     */
+    private static final long SNAPSHOT_MAX_AGE = TimeUnit.DAYS.toMillis(1);
+    /**
+     * Suffix of the directories used to store pages spilled to disk by each session.
+     */
+    private static final String PAGE_DIRECTORY_SUFFIX = ".pages";
+    //endregion
+
+    //region Static fields (Singleton)
+    /**
+     * Shared instance of the store.
+     */
+    private static SearchSessionStore instance;
+    //endregion
+
+    //region Instance fields
+    /**
+     * Search sessions mapped to their handles.
+     */
+    private final Map<String, SearchSession> sessions = new ConcurrentHashMap<>();
+    /**
+     * Directory used to store session snapshots.
+     */
+    private final File snapshotDirectory;
+    /**
+     * Executor used to write and remove snapshots off the main thread.
+     * A single thread makes sure a snapshot is never removed before it is written.
+     */
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    /**
+     * Handler used to deliver restored sessions on the main thread.
+     */
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new store and remove stale snapshots left behind by previous processes.
+     *
+     * @param context Application context.
+     */
+    private SearchSessionStore(@NonNull Context context) {
+        this.snapshotDirectory = new File(context.getCacheDir(), SNAPSHOT_DIRECTORY);
+        context.registerComponentCallbacks(this);
+
+        diskExecutor.execute(() -> {
+            final File[] snapshots = snapshotDirectory.listFiles();
+            if (snapshots != null) {
+                final long now = System.currentTimeMillis();
+                for (File snapshot : snapshots) {
+                    if (snapshot.isDirectory()) {
+                        // Pages spilled by a previous process can't be matched to its search results anymore.
+                        new PageSpillStore(snapshot).clear();
+                    } else if (now - snapshot.lastModified() > SNAPSHOT_MAX_AGE) {
+                        //noinspection ResultOfMethodCallIgnored
+                        snapshot.delete();
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Get the shared instance of the store.
+     *
+     * @param context Android context.
+     * @return Process-wide search session store.
+     */
+    @NonNull
+    public static synchronized SearchSessionStore getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new SearchSessionStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+    //endregion
+
+    //region Sessions
+
+    /**
+     * Add a search session to the store.
+     *
+     * @param session Search session to share.
+     * @return Session handle used to retrieve the session.
+     */
+    @NonNull
+    public String put(@NonNull SearchSession session) {
+        final String handle = UUID.randomUUID().toString();
+        session.enableWindowing(getPageSpillStore(handle), diskExecutor);
+        sessions.put(handle, session);
+        return handle;
+    }
+
+    /**
+     * Get the search session with the given handle.
+     *
+     * @param handle Session handle.
+     * @return Search session. Null if the session does not exist in this process.
+     */
+    @Nullable
+    public SearchSession get(@Nullable String handle) {
+        return handle != null ? sessions.get(handle) : null;
+    }
+
+    /**
+     * Get the search session with the given handle.
+     * Falls back to resuming the session from its on-disk snapshot, if it was started by a previous process.
+     * The snapshot is read and decoded on a background thread.
+     *
+     * @param context      Android context.
+     * @param handle       Session handle.
+     * @param searchClient Search API client used to resume the session.
+     * @param callback     Callback receiving the session on the main thread. Called straight away
+     *                     if the session exists in this process.
+     */
+    public void restore(@NonNull Context context, @Nullable final String handle,
+                        @NonNull final SearchClient searchClient, @NonNull final RestoreCallback callback) {
+        final SearchSession session = get(handle);
+        if (session != null || handle == null) {
+            callback.onSessionRestored(session);
+            return;
+        }
+
+        final Context applicationContext = context.getApplicationContext();
+        diskExecutor.execute(() -> {
+            final SearchResult searchResult = readSnapshot(handle);
+            mainHandler.post(() -> {
+                // The session could have been restored by another Activity in the meantime.
+                SearchSession restoredSession = get(handle);
+                if (restoredSession == null && searchResult != null) {
+                    restoredSession = new SearchSession(applicationContext, searchClient, searchResult);
+                    restoredSession.enableWindowing(getPageSpillStore(handle), diskExecutor);
+                    sessions.put(handle, restoredSession);
+                }
+                callback.onSessionRestored(restoredSession);
+            });
+        });
+    }
+
+    /**
+     * Write a snapshot of the session to disk in the background, so it survives process death.
+     * Should be called from {@link android.app.Activity#onSaveInstanceState(android.os.Bundle)}.
+     *
+     * @param handle Session handle.
+     */
+    public void persist(@Nullable String handle) {
+        final SearchSession session = get(handle);
+        final SearchResult searchResult = session != null ? session.getSearchResult() : null;
+        if (searchResult == null) {
+            return;
+        }
+
+        // Copy the result, so it can't be modified while it's being written.
+        final SearchResult snapshot = searchResult.copy();
+        diskExecutor.execute(() -> writeSnapshot(handle, snapshot));
+    }
+
+    /**
+     * Remove the session and its on-disk snapshot from the store.
+     *
+     * @param handle Session handle.
+     */
+    public void remove(@NonNull String handle) {
+        final SearchSession session = sessions.remove(handle);
+        if (session != null) {
+            session.cancel();
+        }
+        diskExecutor.execute(() -> {
+            //noinspection ResultOfMethodCallIgnored
+            getSnapshotFile(handle).delete();
+            getPageSpillStore(handle).clear();
+        });
+    }
+    //endregion
+
+    //region ComponentCallbacks2 methods (memory management)
+    @Override
+    public void onTrimMemory(int level) {
+        for (SearchSession session : sessions.values()) {
+            session.onTrimMemory(level);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        // Do nothing.
+    }
+    //endregion
+
+    //region Snapshots
+
+    /**
+     * Get the file used to store the snapshot of a session.
+     *
+     * @param handle Session handle.
+     * @return Snapshot file.
+     */
+    private File getSnapshotFile(String handle) {
+        return new File(snapshotDirectory, handle);
+    }
+
+    /**
+     * Get the store used to spill pages of a session to disk.
+     *
+     * @param handle Session handle.
+     * @return Page spill store.
+     */
+    private PageSpillStore getPageSpillStore(String handle) {
+        return new PageSpillStore(new File(snapshotDirectory, handle + PAGE_DIRECTORY_SUFFIX));
+    }
+
+    /**
+     * Write a snapshot of a search result to disk.
+     *
+     * @param handle       Session handle.
+     * @param searchResult Search result to write.
+     */
+    private void writeSnapshot(String handle, SearchResult searchResult) {
+        if (!snapshotDirectory.isDirectory() && !snapshotDirectory.mkdirs()) {
+            return;
+        }
+
+        // Write to a temporary file first, so a partially written snapshot never replaces a valid one.
+        final File snapshotFile = getSnapshotFile(handle);
+        final File temporaryFile = new File(snapshotDirectory, handle + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            SearchResultCodec.write(out, searchResult);
+        } catch (IOException e) {
+            Log.w(NoriApplication.LOG_TAG, "Could not write search session snapshot.", e);
+            //noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+            return;
+        } finally {
+            // Writing the snapshot re-builds the compacted URLs of every image, so compact them again.
+            searchResult.compactUrls();
+        }
+        //noinspection ResultOfMethodCallIgnored
+        temporaryFile.renameTo(snapshotFile);
+    }
+
+    /**
+     * Read the snapshot of a search result from disk.
+     *
+     * @param handle Session handle.
+     * @return Search result. Null if the snapshot does not exist or could not be read.
+     */
+    @Nullable
+    private SearchResult readSnapshot(String handle) {
+        final File snapshotFile = getSnapshotFile(handle);
+        if (!snapshotFile.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(snapshotFile)))) {
+            return SearchResultCodec.read(in);
+        } catch (IOException e) {
+            Log.w(NoriApplication.LOG_TAG, "Could not read search session snapshot.", e);
+            return null;
+        }
+    }
+    //endregion
+
+    //region Restore callback interface
+
+    /**
+     * Receives search sessions restored using {@link #restore(Context, String, SearchClient, RestoreCallback)}.
+     */
+    public interface RestoreCallback {
+        /**
+         * Called on the main thread when the session is available.
+         *
+         * @param session Search session. Null if the session does not exist.
+         */
+        void onSessionRestored(@Nullable SearchSession session);
+    }
+    //endregion
+}
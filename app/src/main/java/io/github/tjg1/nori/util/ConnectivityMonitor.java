@@ -0,0 +1,252 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: GNU GPLv2
+ */
+
+package io.github.tjg1.nori.util;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+
+import androidx.annotation.NonNull;
+
+import io.github.tjg1.library.norilib.http.BandwidthMeter;
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+
+/**
+ * Keeps track of the default network and decides which image quality it can handle.
+ * <p/>
+ * Connectivity state is cached from {@link ConnectivityManager.NetworkCallback} events, so it can be
+ * queried cheaply. Link speed comes from the {@link BandwidthMeter}, fed by measured page and image
+ * transfers. The bandwidth advertised by the network is only used until the first measurement.
+ * Quality decisions have hysteresis, so a link hovering around a threshold doesn't flip between
+ * qualities from one image to the next.
+ */
+public class ConnectivityMonitor {
+
+    //region Constants
+    /**
+     * Throughput needed to fetch image samples, in bits per second.
+     */
+    private static final long SAMPLE_MIN_BPS = 1000000;
+    /**
+     * Throughput needed to fetch original images and videos, in bits per second.
+     */
+    private static final long ORIGINAL_MIN_BPS = 5000000;
+    /**
+     * Factor applied to a threshold before switching to a better quality.
+     */
+    private static final double UPGRADE_FACTOR = 1.25;
+    /**
+     * Factor applied to a threshold before switching to a worse quality.
+     */
+    private static final double DOWNGRADE_FACTOR = 0.8;
+    //endregion
+
+    //region Static fields
+    /**
+     * Shared instance.
+     */
+    private static ConnectivityMonitor instance;
+    //endregion
+
+    //region Instance fields
+    /**
+     * Bandwidth meter estimating the link speed.
+     */
+    private final BandwidthMeter bandwidthMeter;
+    /**
+     * True if the screen is low density, where image samples look as good as the originals.
+     */
+    private final boolean isLowDensityScreen;
+    /**
+     * Current default network. Null when disconnected.
+     */
+    private Network network;
+    /**
+     * True if the user pays for bandwidth on the current network.
+     */
+    private boolean isMetered = false;
+    /**
+     * Downstream bandwidth advertised by the current network, in bits per second. -1 if unknown.
+     */
+    private long advertisedBps = -1;
+    /**
+     * Image quality the link can handle, before applying the metered network and screen density limits.
+     */
+    private ImageQuality linkQuality = ImageQuality.SAMPLE;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new connectivity monitor, and start listening for network changes.
+     *
+     * @param context Android context.
+     */
+    private ConnectivityMonitor(@NonNull Context context) {
+        this.bandwidthMeter = BandwidthMeter.getInstance();
+        this.isLowDensityScreen = context.getResources().getDisplayMetrics().density <= 1.0;
+
+        final ConnectivityManager cm = (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        cm.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onCapabilitiesChanged(@NonNull Network network, @NonNull NetworkCapabilities capabilities) {
+                onNetworkChanged(network, capabilities);
+            }
+
+            @Override
+            public void onLost(@NonNull Network network) {
+                onNetworkLost(network);
+            }
+        });
+    }
+
+    /**
+     * Get the connectivity monitor shared by the whole app.
+     *
+     * @param context Android context.
+     * @return Shared instance.
+     */
+    @NonNull
+    public static synchronized ConnectivityMonitor getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new ConnectivityMonitor(context.getApplicationContext());
+        }
+        return instance;
+    }
+    //endregion
+
+    //region Quality policy
+
+    /**
+     * Get the quality of images that should be fetched on the current network.
+     *
+     * @return {@link ImageQuality#ORIGINAL} on fast, unmetered links. {@link ImageQuality#SAMPLE}
+     * on metered networks, low density screens and average links. {@link ImageQuality#PREVIEW} on
+     * very slow links.
+     */
+    @NonNull
+    public synchronized ImageQuality getImageQuality() {
+        linkQuality = getLinkQuality(linkQuality, getEstimatedBps());
+
+        ImageQuality quality = linkQuality;
+        if ((network == null || isMetered || isLowDensityScreen) && quality == ImageQuality.ORIGINAL) {
+            quality = ImageQuality.SAMPLE;
+        }
+        return quality;
+    }
+
+    /**
+     * Check if videos should be downloaded on the current network.
+     *
+     * @return True on fast, unmetered links.
+     */
+    public synchronized boolean isVideoAllowed() {
+        linkQuality = getLinkQuality(linkQuality, getEstimatedBps());
+        return network != null && !isMetered && linkQuality == ImageQuality.ORIGINAL;
+    }
+
+    /**
+     * Get the image quality a link can handle, with hysteresis.
+     *
+     * @param current     Quality decided last time.
+     * @param estimateBps Estimated throughput, in bits per second. -1 if unknown.
+     * @return New quality. Unchanged if the throughput is unknown.
+     */
+    @NonNull
+    private static ImageQuality getLinkQuality(@NonNull ImageQuality current, long estimateBps) {
+        if (estimateBps < 0) {
+            return current;
+        }
+        final long[] thresholds = {0, SAMPLE_MIN_BPS, ORIGINAL_MIN_BPS};
+        final ImageQuality[] qualities = ImageQuality.values();
+
+        int level = current.ordinal();
+        while (level < qualities.length - 1 && estimateBps >= thresholds[level + 1] * UPGRADE_FACTOR) {
+            level++;
+        }
+        while (level > 0 && estimateBps < thresholds[level] * DOWNGRADE_FACTOR) {
+            level--;
+        }
+        return qualities[level];
+    }
+
+    /**
+     * Get the estimated throughput of the current network.
+     *
+     * @return Measured throughput, or the bandwidth advertised by the network if nothing has been
+     * measured yet, in bits per second. -1 if unknown.
+     */
+    private long getEstimatedBps() {
+        final long measuredBps = bandwidthMeter.getEstimate();
+        return measuredBps >= 0 ? measuredBps : advertisedBps;
+    }
+    //endregion
+
+    //region Network callbacks
+
+    /**
+     * Update the cached connectivity state.
+     *
+     * @param network      New default network. Null when disconnected.
+     * @param capabilities Capabilities of the new default network. Null when disconnected.
+     */
+    private synchronized void onNetworkChanged(Network network, NetworkCapabilities capabilities) {
+        if (network == null || !network.equals(this.network)) {
+            // Measurements made on the previous network say nothing about this one.
+            bandwidthMeter.reset();
+            linkQuality = ImageQuality.SAMPLE;
+            if (network != null) {
+                // Neither do requests that failed while the device was offline or on another network.
+                EndpointHealth.getInstance().reset();
+            }
+        }
+        this.network = network;
+        if (capabilities != null) {
+            isMetered = !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED);
+            advertisedBps = capabilities.getLinkDownstreamBandwidthKbps() > 0 ?
+                    capabilities.getLinkDownstreamBandwidthKbps() * 1000L : -1;
+        } else {
+            isMetered = false;
+            advertisedBps = -1;
+        }
+    }
+
+    /**
+     * Clear the cached connectivity state when the default network is lost.
+     *
+     * @param network Lost network.
+     */
+    private synchronized void onNetworkLost(@NonNull Network network) {
+        // Ignore networks lost after the device has already switched to another one.
+        if (network.equals(this.network)) {
+            onNetworkChanged(null, null);
+        }
+    }
+    //endregion
+
+    //region Image quality enumeration
+
+    /**
+     * Image qualities, from the smallest to the largest download.
+     */
+    public enum ImageQuality {
+        /**
+         * Thumbnail-sized preview images.
+         */
+        PREVIEW,
+        /**
+         * Scaled-down ("sample") images.
+         */
+        SAMPLE,
+        /**
+         * Full-size images.
+         */
+        ORIGINAL
+    }
+    //endregion
+}
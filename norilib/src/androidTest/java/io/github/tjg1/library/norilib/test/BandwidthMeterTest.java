@@ -0,0 +1,60 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.test.AndroidTestCase;
+
+import io.github.tjg1.library.norilib.http.BandwidthMeter;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link BandwidthMeter} class.
+ */
+public class BandwidthMeterTest extends AndroidTestCase {
+
+    /**
+     * Verify that no estimate is returned before the first measurement, and after a reset.
+     */
+    public void testNoSamples() throws Exception {
+        final BandwidthMeter bandwidthMeter = new BandwidthMeter();
+        assertThat(bandwidthMeter.getEstimate()).isEqualTo(-1);
+
+        bandwidthMeter.addSample(1000000, 1000);
+        assertThat(bandwidthMeter.getEstimate()).isEqualTo(8000000);
+
+        bandwidthMeter.reset();
+        assertThat(bandwidthMeter.getEstimate()).isEqualTo(-1);
+    }
+
+    /**
+     * Verify that small and near-instant transfers are ignored.
+     */
+    public void testIgnoredSamples() throws Exception {
+        final BandwidthMeter bandwidthMeter = new BandwidthMeter();
+        bandwidthMeter.addSample(1024, 1000);
+        bandwidthMeter.addSample(1000000, 1);
+        assertThat(bandwidthMeter.getEstimate()).isEqualTo(-1);
+    }
+
+    /**
+     * Verify that the estimate is the weighted median, which isn't thrown off by a single outlier.
+     */
+    public void testWeightedMedian() throws Exception {
+        final BandwidthMeter bandwidthMeter = new BandwidthMeter();
+        bandwidthMeter.addSample(1000000, 1000); // 8 Mbps
+        bandwidthMeter.addSample(1000000, 1000); // 8 Mbps
+        bandwidthMeter.addSample(1000000, 100000); // 80 kbps (stalled)
+        assertThat(bandwidthMeter.getEstimate()).isEqualTo(8000000);
+
+        // Large transfers count for more than small ones.
+        final BandwidthMeter weightedMeter = new BandwidthMeter();
+        weightedMeter.addSample(100000, 1000); // 800 kbps
+        weightedMeter.addSample(10000000, 10000); // 8 Mbps
+        assertThat(weightedMeter.getEstimate()).isEqualTo(8000000);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import java.util.Locale;
+
+/**
+ * Builds Danbooru 2.x API responses served by the local HTTP server in client tests.
+ */
+final class DanbooruPosts {
+
+    /**
+     * This class only has static methods and should not be instantiated.
+     */
+    private DanbooruPosts() {
+    }
+
+    /**
+     * Create a JSON array of posts, sorted by ID in descending order, as returned by the API.
+     *
+     * @param firstId ID of the first (newest) post.
+     * @param count   Number of posts.
+     * @return JSON response body.
+     */
+    static String json(int firstId, int count) {
+        final StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            final int id = firstId - i;
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append(String.format(Locale.US, "{\"id\":%d,\"created_at\":\"2016-01-01T00:00:00.000-05:00\"," +
+                    "\"rating\":\"s\",\"file_url\":\"https://example.com/%1$d.jpg\",\"file_ext\":\"jpg\"," +
+                    "\"md5\":\"%032x\",\"image_width\":1000,\"image_height\":1000," +
+                    "\"preview_file_url\":\"https://example.com/preview/%1$d.jpg\"," +
+                    "\"large_file_url\":\"https://example.com/sample/%1$d.jpg\",\"source\":\"\"," +
+                    "\"tag_string_artist\":\"\",\"tag_string_character\":\"\",\"tag_string_copyright\":\"\"," +
+                    "\"tag_string_general\":\"tag\",\"tag_string_meta\":\"\",\"parent_id\":null,\"score\":1}", id, id));
+        }
+        return json.append(']').toString();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.github.tjg1.library.norilib.http.CircuitOpenException;
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+import io.github.tjg1.library.norilib.http.FailoverTransport;
+import io.github.tjg1.library.norilib.http.HttpCall;
+import io.github.tjg1.library.norilib.http.HttpRequest;
+import io.github.tjg1.library.norilib.http.HttpResponse;
+import io.github.tjg1.library.norilib.http.HttpTransport;
+import io.github.tjg1.library.norilib.http.OkHttpTransport;
+import io.github.tjg1.library.norilib.http.RateLimiter;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link FailoverTransport} class, using a local HTTP server as the endpoint and another as its mirror.
+ */
+public class FailoverTransportTest extends AndroidTestCase {
+
+    /**
+     * Local HTTP server used as the primary endpoint.
+     */
+    private MockWebServer endpoint;
+    /**
+     * Local HTTP server used as the mirror.
+     */
+    private MockWebServer mirror;
+    /**
+     * Endpoint health tracker used by the transport.
+     */
+    private EndpointHealth endpointHealth;
+    /**
+     * Transport under test.
+     */
+    private HttpTransport transport;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        endpoint = new MockWebServer();
+        endpoint.start();
+        mirror = new MockWebServer();
+        mirror.start();
+
+        endpointHealth = new EndpointHealth();
+        endpointHealth.setMirrors(endpoint.url("/").toString(), Collections.singletonList(mirror.url("/").toString()));
+        transport = new FailoverTransport(new OkHttpTransport(), endpointHealth, new RateLimiter());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        endpoint.shutdown();
+        mirror.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Verify that requests to an endpoint returning server errors are sent to its mirror,
+     * and the endpoint is skipped once it has failed several times in a row.
+     */
+    public void testFailover() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            endpoint.enqueue(new MockResponse().setResponseCode(500));
+            mirror.enqueue(new MockResponse().setBody("mirror"));
+            try (HttpResponse response = execute("/posts.json?page=" + i)) {
+                assertThat(response.getBodyAsString()).isEqualTo("mirror");
+            }
+            assertThat(mirror.takeRequest().getPath()).isEqualTo("/posts.json?page=" + i);
+        }
+
+        // The endpoint is now considered unhealthy, so the mirror is tried first.
+        mirror.enqueue(new MockResponse().setBody("mirror"));
+        try (HttpResponse response = execute("/posts.json")) {
+            assertThat(response.getBodyAsString()).isEqualTo("mirror");
+        }
+        assertThat(endpoint.getRequestCount()).isEqualTo(2);
+    }
+
+    /**
+     * Verify that the last server error is returned when all mirrors fail.
+     */
+    public void testAllEndpointsFail() throws Exception {
+        endpoint.enqueue(new MockResponse().setResponseCode(500));
+        mirror.enqueue(new MockResponse().setResponseCode(502));
+        try (HttpResponse response = execute("/")) {
+            assertThat(response.getCode()).isEqualTo(502);
+        }
+    }
+
+    /**
+     * Verify that the circuit of a failing endpoint without mirrors opens,
+     * and further requests fail straight away without reaching the server.
+     */
+    public void testCircuitBreaker() throws Exception {
+        final String url = mirror.url("/posts.json").toString();
+        assertThat(endpointHealth.getState(mirror.url("/").toString())).isEqualTo(EndpointHealth.CircuitState.CLOSED);
+
+        for (int i = 0; i < 2; i++) {
+            mirror.enqueue(new MockResponse().setResponseCode(500));
+            try (HttpResponse response = transport.newCall(new HttpRequest.Builder(url).build()).execute()) {
+                assertThat(response.getCode()).isEqualTo(500);
+            }
+        }
+        assertThat(endpointHealth.getState(mirror.url("/").toString())).isEqualTo(EndpointHealth.CircuitState.OPEN);
+
+        try {
+            transport.newCall(new HttpRequest.Builder(url).build()).execute().close();
+            fail("Request sent while the circuit is open.");
+        } catch (CircuitOpenException e) {
+            assertThat(e.getRetryAfterMillis()).isGreaterThan(0);
+        }
+        assertThat(mirror.getRequestCount()).isEqualTo(2);
+
+        // The service stays available while one of its mirrors is healthy.
+        assertThat(endpointHealth.getState(endpoint.url("/").toString())).isEqualTo(EndpointHealth.CircuitState.CLOSED);
+    }
+
+    /**
+     * Verify that resetting the endpoint health (i.e. when the device reconnects) closes open circuits.
+     */
+    public void testReset() throws Exception {
+        final String url = mirror.url("/posts.json").toString();
+        for (int i = 0; i < 2; i++) {
+            mirror.enqueue(new MockResponse().setResponseCode(500));
+            transport.newCall(new HttpRequest.Builder(url).build()).execute().close();
+        }
+        assertThat(endpointHealth.getState(mirror.url("/").toString())).isEqualTo(EndpointHealth.CircuitState.OPEN);
+
+        endpointHealth.reset();
+        assertThat(endpointHealth.getState(mirror.url("/").toString())).isEqualTo(EndpointHealth.CircuitState.CLOSED);
+        mirror.enqueue(new MockResponse().setBody("mirror"));
+        try (HttpResponse response = transport.newCall(new HttpRequest.Builder(url).build()).execute()) {
+            assertThat(response.getBodyAsString()).isEqualTo("mirror");
+        }
+    }
+
+    /**
+     * Verify that a slow asynchronous request is hedged to the mirror once enough response times are known,
+     * and the first response wins.
+     */
+    public void testHedging() throws Exception {
+        endpointHealth.setHedgingEnabled(true);
+
+        // Record enough fast response times to compute the hedge delay.
+        for (int i = 0; i < 16; i++) {
+            endpoint.enqueue(new MockResponse());
+            execute("/").close();
+        }
+
+        endpoint.enqueue(new MockResponse().setBody("endpoint").setHeadersDelay(5, TimeUnit.SECONDS));
+        mirror.enqueue(new MockResponse().setBody("mirror"));
+
+        final CountDownLatch lock = new CountDownLatch(1);
+        final AtomicReference<String> body = new AtomicReference<>();
+        final long startTime = System.currentTimeMillis();
+        transport.newCall(new HttpRequest.Builder(endpoint.url("/").toString()).build()).enqueue(new HttpCall.Callback() {
+            @Override
+            public void onFailure(IOException e) {
+                lock.countDown();
+            }
+
+            @Override
+            public void onResponse(HttpResponse response) {
+                try (HttpResponse r = response) {
+                    body.set(r.getBodyAsString());
+                } catch (IOException ignored) {
+                }
+                lock.countDown();
+            }
+        });
+
+        lock.await(10, TimeUnit.SECONDS);
+        assertThat(body.get()).isEqualTo("mirror");
+        assertThat(System.currentTimeMillis() - startTime).isLessThan(5000);
+    }
+
+    /**
+     * Send a synchronous request to the primary endpoint.
+     *
+     * @param path Request path.
+     * @return Response.
+     */
+    private HttpResponse execute(String path) throws IOException {
+        return transport.newCall(new HttpRequest.Builder(endpoint.url(path).toString()).build()).execute();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.test.AndroidTestCase;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.clients.FederatedSearchClient;
+import io.github.tjg1.library.norilib.clients.SearchClient;
+import io.github.tjg1.library.norilib.http.HttpCall;
+import io.github.tjg1.library.norilib.http.HttpRequest;
+import io.github.tjg1.library.norilib.http.HttpResponse;
+import io.github.tjg1.library.norilib.http.HttpTransport;
+import io.github.tjg1.library.norilib.http.HttpTransports;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link FederatedSearchClient} class, using a fake HTTP transport serving Danbooru API responses.
+ */
+public class FederatedSearchClientTest extends AndroidTestCase {
+
+    /**
+     * Response bodies served by the fake transport, keyed by endpoint URL.
+     * Requests to other endpoints never get a response.
+     */
+    private final Map<String, String> responses = new HashMap<>();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        HttpTransports.setDefault(new FakeTransport());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        HttpTransports.setDefault(null);
+        super.tearDown();
+    }
+
+    /**
+     * Verify that images from all services are merged, and images found on more than one service
+     * (with the same MD5 hash) are only returned once.
+     */
+    public void testSearchMergesServices() throws Throwable {
+        final SearchClient.Settings first = danbooru("https://first.federated.test");
+        final SearchClient.Settings second = danbooru("https://second.federated.test");
+        // Posts 1-3 on the first service.
+        responses.put(first.getEndpoint(), DanbooruPosts.json(3, 3));
+        // Posts 3-5 on the second one: post 3 is a different image with the same ID,
+        // post 5 is the same image as post 1 on the first service.
+        responses.put(second.getEndpoint(), DanbooruPosts.json(5, 3)
+                .replace(md5(3), md5(300))
+                .replace(md5(5), md5(1)));
+
+        final SearchResult searchResult = new FederatedSearchClient(getContext(),
+                new SearchClient.Settings("All services", first, second)).search("tag");
+
+        final Set<String> images = new HashSet<>();
+        for (Image image : searchResult.getImages()) {
+            images.add(image.serviceIndex + "/" + image.id);
+        }
+        assertThat(images).containsOnly("0/1", "0/2", "0/3", "1/3", "1/4");
+        assertThat(searchResult.getImageCount()).isEqualTo(5);
+    }
+
+    /**
+     * Verify that services that don't respond in time are skipped.
+     */
+    public void testSearchSkipsSlowServices() throws Throwable {
+        final SearchClient.Settings fast = danbooru("https://fast.federated.test");
+        final SearchClient.Settings slow = danbooru("https://slow.federated.test");
+        responses.put(fast.getEndpoint(), DanbooruPosts.json(2, 2));
+
+        final long startedAt = System.currentTimeMillis();
+        final SearchResult searchResult = new FederatedSearchClient(getContext(),
+                new SearchClient.Settings("All services", fast, slow), 500).search("tag");
+
+        assertThat(System.currentTimeMillis() - startedAt).isLessThan(5000);
+        assertThat(searchResult.getImageCount()).isEqualTo(2);
+        assertThat(searchResult.getImages()[0].serviceIndex).isEqualTo(0);
+    }
+
+    /**
+     * Create settings of a Danbooru service.
+     *
+     * @param endpoint Endpoint URL.
+     * @return Service settings.
+     */
+    private static SearchClient.Settings danbooru(String endpoint) {
+        return new SearchClient.Settings(SearchClient.Settings.APIType.DANBOARD, endpoint, endpoint);
+    }
+
+    /**
+     * Get the MD5 hash of a post created by {@link DanbooruPosts#json(int, int)}.
+     *
+     * @param id Post ID.
+     * @return MD5 hash.
+     */
+    private static String md5(int id) {
+        return String.format(Locale.US, "%032x", id);
+    }
+
+    /**
+     * Transport serving the {@link #responses} without any network access.
+     */
+    private class FakeTransport implements HttpTransport {
+        @NonNull
+        @Override
+        public HttpCall newCall(@NonNull final HttpRequest request) {
+            return new HttpCall() {
+                @NonNull
+                @Override
+                public HttpResponse execute() throws IOException {
+                    final String body = getResponse(request.getUrl());
+                    if (body == null) {
+                        throw new IOException("No response for " + request.getUrl());
+                    }
+                    return new FakeResponse(body);
+                }
+
+                @Override
+                public void enqueue(@NonNull final Callback callback) {
+                    final String body = getResponse(request.getUrl());
+                    if (body != null) {
+                        new Thread(() -> callback.onResponse(new FakeResponse(body))).start();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                }
+            };
+        }
+
+        /**
+         * Get the response body served for an URL.
+         *
+         * @param url Request URL.
+         * @return Response body. Null if the endpoint never responds.
+         */
+        @Nullable
+        private String getResponse(String url) {
+            for (Map.Entry<String, String> response : responses.entrySet()) {
+                if (url.startsWith(response.getKey())) {
+                    return response.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Successful response with a JSON body.
+     */
+    private static class FakeResponse implements HttpResponse {
+        /**
+         * Response body.
+         */
+        private final byte[] body;
+
+        /**
+         * Create a new response.
+         *
+         * @param body Response body.
+         */
+        FakeResponse(String body) {
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int getCode() {
+            return 200;
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(@NonNull String name) {
+            return "Content-Type".equalsIgnoreCase(name) ? "application/json" : null;
+        }
+
+        @NonNull
+        @Override
+        public InputStream getBody() {
+            return new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.github.tjg1.library.norilib.http.BandwidthMeter;
+import io.github.tjg1.library.norilib.http.HttpCall;
+import io.github.tjg1.library.norilib.http.HttpRequest;
+import io.github.tjg1.library.norilib.http.HttpResponse;
+import io.github.tjg1.library.norilib.http.HttpTransport;
+import io.github.tjg1.library.norilib.http.IonTransport;
+import io.github.tjg1.library.norilib.http.OkHttpTransport;
+import io.github.tjg1.library.norilib.http.RateLimitedTransport;
+import io.github.tjg1.library.norilib.http.RateLimiter;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link HttpTransport} implementations, using a local HTTP server.
+ */
+public class HttpTransportTest extends AndroidTestCase {
+
+    /**
+     * LogCat tag.
+     */
+    private static final String TAG = "norilib.test.HttpTransportTest";
+    /**
+     * Number of requests sent by {@link #testBenchmark()} through each transport.
+     */
+    private static final int BENCHMARK_REQUEST_COUNT = 50;
+    /**
+     * Local HTTP server.
+     */
+    private MockWebServer server;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        server.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Verify that the status code, headers and body are read from the response.
+     */
+    public void testExecute() throws Exception {
+        for (HttpTransport transport : createTransports()) {
+            server.enqueue(new MockResponse().setResponseCode(200).setHeader("ETag", "\"abc\"").setBody("nori"));
+            try (HttpResponse response = transport.newCall(new HttpRequest.Builder(server.url("/posts.json").toString())
+                    .header("Accept", "application/json").build()).execute()) {
+                assertThat(response.getCode()).isEqualTo(200);
+                assertThat(response.isSuccessful()).isTrue();
+                assertThat(response.getHeader("ETag")).isEqualTo("\"abc\"");
+                assertThat(response.getBodyAsString()).isEqualTo("nori");
+            }
+
+            final RecordedRequest request = server.takeRequest();
+            assertThat(request.getPath()).isEqualTo("/posts.json");
+            assertThat(request.getHeader("Accept")).isEqualTo("application/json");
+            assertThat(request.getHeader("User-Agent")).isNotEmpty();
+        }
+    }
+
+    /**
+     * Verify that response bodies are measured by the {@link BandwidthMeter} while they are
+     * downloaded, not after they have been buffered.
+     */
+    public void testBandwidthMeasurement() throws Exception {
+        final char[] body = new char[256 * 1024];
+        Arrays.fill(body, 'a');
+        for (HttpTransport transport : createTransports()) {
+            BandwidthMeter.getInstance().reset();
+            // About 5 Mbit/s.
+            server.enqueue(new MockResponse().setBody(new String(body))
+                    .throttleBody(64 * 1024, 100, TimeUnit.MILLISECONDS));
+            try (HttpResponse response = transport.newCall(new HttpRequest.Builder(server.url("/").toString())
+                    .build()).execute()) {
+                assertThat(response.getBodyAsString().length()).isEqualTo(body.length);
+            }
+            server.takeRequest();
+
+            assertThat(BandwidthMeter.getInstance().getEstimate())
+                    .isGreaterThan(1000000L)
+                    .isLessThan(50000000L);
+        }
+    }
+
+    /**
+     * Verify that unsuccessful status codes are returned instead of thrown.
+     */
+    public void testUnsuccessfulResponse() throws Exception {
+        for (HttpTransport transport : createTransports()) {
+            server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "5"));
+            try (HttpResponse response = transport.newCall(new HttpRequest.Builder(server.url("/").toString())
+                    .build()).execute()) {
+                assertThat(response.getCode()).isEqualTo(429);
+                assertThat(response.isSuccessful()).isFalse();
+                assertThat(response.getHeader("Retry-After")).isEqualTo("5");
+            }
+            server.takeRequest();
+        }
+    }
+
+    /**
+     * Verify that HTTP basic authentication credentials are sent, and empty credentials are ignored.
+     */
+    public void testBasicAuthentication() throws Exception {
+        for (HttpTransport transport : createTransports()) {
+            server.enqueue(new MockResponse());
+            server.enqueue(new MockResponse());
+            transport.newCall(new HttpRequest.Builder(server.url("/").toString())
+                    .basicAuthentication("nori", "hunter2").build()).execute().close();
+            transport.newCall(new HttpRequest.Builder(server.url("/").toString())
+                    .basicAuthentication("nori", "").build()).execute().close();
+
+            assertThat(server.takeRequest().getHeader("Authorization")).isEqualTo("Basic bm9yaTpodW50ZXIy");
+            assertThat(server.takeRequest().getHeader("Authorization")).isNull();
+        }
+    }
+
+    /**
+     * Verify that cancelled asynchronous calls fail.
+     */
+    public void testCancel() throws Exception {
+        for (HttpTransport transport : createTransports()) {
+            server.enqueue(new MockResponse().setBody("nori").setBodyDelay(5, TimeUnit.SECONDS));
+            final CountDownLatch lock = new CountDownLatch(1);
+            final AtomicReference<IOException> error = new AtomicReference<>();
+
+            final HttpCall call = transport.newCall(new HttpRequest.Builder(server.url("/").toString()).build());
+            call.enqueue(new HttpCall.Callback() {
+                @Override
+                public void onFailure(IOException e) {
+                    error.set(e);
+                    lock.countDown();
+                }
+
+                @Override
+                public void onResponse(HttpResponse response) {
+                    try (HttpResponse r = response) {
+                        r.getBodyAsString();
+                    } catch (IOException e) {
+                        error.set(e);
+                    }
+                    lock.countDown();
+                }
+            });
+            server.takeRequest();
+            call.cancel();
+
+            // Cancelled Ion requests never call back, so a timeout is acceptable as well.
+            lock.await(10, TimeUnit.SECONDS);
+            if (lock.getCount() == 0) {
+                assertThat(error.get()).isNotNull();
+            }
+        }
+    }
+
+    /**
+     * Verify that rate limited requests are retried after the delay asked for in the Retry-After header.
+     */
+    public void testRetryAfter() throws Exception {
+        for (HttpTransport transport : createTransports()) {
+            final HttpTransport rateLimitedTransport = new RateLimitedTransport(transport, new RateLimiter());
+            server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "1"));
+            server.enqueue(new MockResponse().setBody("nori"));
+
+            final long startTime = System.currentTimeMillis();
+            try (HttpResponse response = rateLimitedTransport.newCall(new HttpRequest.Builder(server.url("/").toString())
+                    .build()).execute()) {
+                assertThat(response.getCode()).isEqualTo(200);
+                assertThat(response.getBodyAsString()).isEqualTo("nori");
+            }
+            assertThat(System.currentTimeMillis() - startTime).isGreaterThanOrEqualTo(900);
+            server.takeRequest();
+            server.takeRequest();
+
+            // Requests asked to wait for too long fail straight away.
+            server.enqueue(new MockResponse().setResponseCode(429).setHeader("Retry-After", "3600"));
+            try (HttpResponse response = rateLimitedTransport.newCall(new HttpRequest.Builder(server.url("/").toString())
+                    .build()).execute()) {
+                assertThat(response.getCode()).isEqualTo(429);
+            }
+            server.takeRequest();
+        }
+    }
+
+    /**
+     * Compare the time spent sending sequential requests through each transport.
+     * Not a pass/fail test: timings are written to LogCat.
+     */
+    public void testBenchmark() throws Exception {
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            body.append("<post id=\"").append(i).append("\" md5=\"d41d8cd98f00b204e9800998ecf8427e\"/>");
+        }
+
+        for (HttpTransport transport : createTransports()) {
+            for (int i = 0; i < BENCHMARK_REQUEST_COUNT; i++) {
+                server.enqueue(new MockResponse().setBody(body.toString()));
+            }
+
+            final long startTime = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_REQUEST_COUNT; i++) {
+                try (HttpResponse response = transport.newCall(new HttpRequest.Builder(server.url("/").toString())
+                        .build()).execute()) {
+                    assertThat(response.getBodyAsString()).hasSize(body.length());
+                }
+            }
+            final long elapsedNanos = System.nanoTime() - startTime;
+
+            Log.i(TAG, String.format(Locale.US, "%s: %d requests in %.1f ms (%.2f ms/request)",
+                    transport.getClass().getSimpleName(), BENCHMARK_REQUEST_COUNT, elapsedNanos / 1e6,
+                    elapsedNanos / 1e6 / BENCHMARK_REQUEST_COUNT));
+        }
+    }
+
+    /**
+     * Create an instance of each transport implementation.
+     *
+     * @return Transports to test.
+     */
+    private HttpTransport[] createTransports() {
+        return new HttpTransport[]{new IonTransport(getContext()), new OkHttpTransport()};
+    }
+}
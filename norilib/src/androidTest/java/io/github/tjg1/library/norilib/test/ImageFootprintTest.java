@@ -0,0 +1,130 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.Tag;
+import io.github.tjg1.library.norilib.util.SearchResultCodec;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Memory and serialized size benchmark for a long endless scrolling session of {@link Image}s.
+ */
+public class ImageFootprintTest extends AndroidTestCase {
+
+    /**
+     * LogCat tag.
+     */
+    private static final String TAG = "norilib.test.ImageFootprintTest";
+    /**
+     * Number of images in the benchmark.
+     */
+    private static final int IMAGE_COUNT = 10000;
+    /**
+     * Number of tags on each image.
+     */
+    private static final int TAGS_PER_IMAGE = 20;
+    /**
+     * Number of distinct tags shared by the images.
+     */
+    private static final int DISTINCT_TAGS = 500;
+
+    /**
+     * Measure the heap, Parcel and snapshot size of 10,000 images with realistic, heavily repeated tags.
+     */
+    public void testFootprint() throws IOException {
+        final Runtime runtime = Runtime.getRuntime();
+        final long heapBefore = usedMemory(runtime);
+
+        final Image[] images = new Image[IMAGE_COUNT];
+        for (int i = 0; i < IMAGE_COUNT; i++) {
+            images[i] = getBenchmarkImage(i);
+        }
+        final SearchResult searchResult = new SearchResult(images, Tag.arrayFromString("duck"), 0);
+        searchResult.compactUrls();
+
+        final long heapAfter = usedMemory(runtime);
+
+        // Tags repeated on different images should be shared.
+        assertThat(images[0].tags[1]).isSameAs(images[DISTINCT_TAGS].tags[1]);
+
+        // Parcel size.
+        final Parcel parcel = Parcel.obtain();
+        searchResult.writeToParcel(parcel, 0);
+        final int parcelSize = parcel.dataSize();
+        parcel.recycle();
+
+        // Snapshot size.
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SearchResultCodec.write(new DataOutputStream(bytes), searchResult);
+        final int snapshotSize = bytes.size();
+
+        // The snapshot stores each tag once and Strings as UTF-8, so it should be smaller than the Parcel.
+        assertThat(snapshotSize).isLessThan(parcelSize);
+
+        Log.i(TAG, String.format(Locale.US, "%d images: ~%d heap bytes/image, %d parcel bytes/image, %d snapshot bytes/image",
+                IMAGE_COUNT, (heapAfter - heapBefore) / IMAGE_COUNT, parcelSize / IMAGE_COUNT, snapshotSize / IMAGE_COUNT));
+    }
+
+    /**
+     * Get an image similar to ones returned by the Danbooru API.
+     *
+     * @param i Image number.
+     * @return Benchmark image.
+     */
+    private static Image getBenchmarkImage(int i) {
+        final String md5 = String.format(Locale.US, "%032x", i);
+        final Image image = new Image();
+        image.setFileUrl("https://danbooru.donmai.us/data/" + md5.substring(0, 2) + "/" + md5.substring(2, 4) + "/" + md5 + ".jpg");
+        image.width = 1000;
+        image.height = 900;
+        image.setPreviewUrl("https://danbooru.donmai.us/data/preview/" + md5.substring(0, 2) + "/" + md5.substring(2, 4) + "/" + md5 + ".jpg");
+        image.previewWidth = 150;
+        image.previewHeight = 130;
+        image.setSampleUrl("https://danbooru.donmai.us/data/sample/" + md5.substring(0, 2) + "/" + md5.substring(2, 4) + "/sample-" + md5 + ".jpg");
+        image.sampleWidth = 850;
+        image.sampleHeight = 800;
+        image.id = Integer.toString(1000000 + i);
+        image.setWebUrl("https://danbooru.donmai.us/posts/" + image.id);
+        image.md5 = md5;
+        image.safeSearchRating = Image.SafeSearchRating.S;
+        image.score = i % 100;
+        image.searchPage = i / 100;
+        image.searchPagePosition = i % 100;
+        image.setCreatedAtMillis(1398902400000L + i * 1000L);
+
+        final Tag[] tags = new Tag[TAGS_PER_IMAGE];
+        for (int j = 0; j < TAGS_PER_IMAGE; j++) {
+            tags[j] = Tag.valueOf("benchmark_tag_" + ((i + j * 25) % DISTINCT_TAGS), Tag.Type.GENERAL);
+        }
+        image.tags = tags;
+        return image;
+    }
+
+    /**
+     * Get the amount of heap memory in use, after running the garbage collector.
+     *
+     * @param runtime Java runtime.
+     * @return Used heap memory, in bytes.
+     */
+    private static long usedMemory(Runtime runtime) {
+        runtime.gc();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -12,10 +12,12 @@ import android.util.Log;
 
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import io.github.tjg1.library.norilib.Image;
 import io.github.tjg1.library.norilib.Tag;
+import io.github.tjg1.library.norilib.util.CompactUrls;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -39,6 +41,10 @@ public class ImageTests extends AndroidTestCase {
      * RegEx pattern for matching numerical Strings (used for IDs).
      */
     private static final Pattern integerPattern = Pattern.compile("^\\d+$");
+    /**
+     * Number of mock images created. Used to generate unique image IDs.
+     */
+    private static final AtomicInteger mockImageCount = new AtomicInteger();
 
     /**
      * Test the {@link Image#writeToParcel(android.os.Parcel, int)} method.
@@ -58,19 +64,19 @@ public class ImageTests extends AndroidTestCase {
         assertThat(unParceled).isNotNull();
         if (unParceled != null) {
             verifyImage(unParceled);
-            assertThat(unParceled.fileUrl).isEqualTo(original.fileUrl);
+            assertThat(unParceled.getFileUrl()).isEqualTo(original.getFileUrl());
             assertThat(unParceled.width).isEqualTo(original.width);
             assertThat(unParceled.height).isEqualTo(original.height);
-            assertThat(unParceled.previewUrl).isEqualTo(original.previewUrl);
+            assertThat(unParceled.getPreviewUrl()).isEqualTo(original.getPreviewUrl());
             assertThat(unParceled.previewWidth).isEqualTo(original.previewWidth);
             assertThat(unParceled.previewHeight).isEqualTo(original.previewHeight);
-            assertThat(unParceled.sampleUrl).isEqualTo(original.sampleUrl);
+            assertThat(unParceled.getSampleUrl()).isEqualTo(original.getSampleUrl());
             assertThat(unParceled.sampleWidth).isEqualTo(original.sampleWidth);
             assertThat(unParceled.sampleHeight).isEqualTo(original.sampleHeight);
             assertThat(unParceled.tags).containsOnly(original.tags);
             assertThat(unParceled.id).isEqualTo(original.id);
             assertThat(unParceled.parentId).isEqualTo(original.parentId);
-            assertThat(unParceled.webUrl).isEqualTo(original.webUrl);
+            assertThat(unParceled.getWebUrl()).isEqualTo(original.getWebUrl());
             assertThat(unParceled.pixivId).isEqualTo(original.pixivId);
             assertThat(unParceled.safeSearchRating).isEqualTo(original.safeSearchRating);
             assertThat(unParceled.score).isEqualTo(original.score);
@@ -78,6 +84,7 @@ public class ImageTests extends AndroidTestCase {
             assertThat(unParceled.searchPage).isEqualTo(original.searchPage);
             assertThat(unParceled.searchPagePosition).isEqualTo(original.searchPagePosition);
             assertThat(unParceled.createdAt).isEqualTo(original.createdAt);
+            assertThat(unParceled.getMediaType()).isEqualTo(original.getMediaType());
         }
     }
 
@@ -92,20 +99,105 @@ public class ImageTests extends AndroidTestCase {
         Image image = getMockImage(Image.SafeSearchRating.S, new Tag("duck"), new Tag("bird"));
 
         assertThat(image.getFileExtension()).isEqualTo("png");
-        image.fileUrl = "http://awesomeboorusite.org/data/images/image.jpg";
+        image.setFileUrl("http://awesomeboorusite.org/data/images/image.jpg");
         assertThat(image.getFileExtension()).isEqualTo("jpg");
-        image.fileUrl = "http://awesomeboorusite.org/data/images/image.jpeg";
+        image.setFileUrl("http://awesomeboorusite.org/data/images/image.jpeg");
         assertThat(image.getFileExtension()).isEqualTo("jpg");
-        image.fileUrl = "http://awesomeboorusite.org/data/images/image.gif";
+        image.setFileUrl("http://awesomeboorusite.org/data/images/image.gif");
         assertThat(image.getFileExtension()).isEqualTo("gif");
-        image.fileUrl = "http://awesomeboorusite.org/data/images/image.webm";
+        image.setFileUrl("http://awesomeboorusite.org/data/images/image.webm");
         assertThat(image.getFileExtension()).isEqualTo("webm");
-        image.fileUrl = "http://awesomeboorusite.org/data/images/image";
+        image.setFileUrl("http://awesomeboorusite.org/data/images/image");
         assertThat(image.getFileExtension()).isEqualTo(null);
-        image.fileUrl = "http://awesomeboorusite.org";
+        image.setFileUrl("http://awesomeboorusite.org");
         assertThat(image.getFileExtension()).isEqualTo(null);
     }
 
+    /**
+     * Tests the {@link Image#getMediaType()} method and {@link Image.MediaType} classification.
+     */
+    public void testGetMediaType() {
+        Image image = getMockImage(Image.SafeSearchRating.S, new Tag("duck"), new Tag("bird"));
+
+        // Images not classified by the API client fall back to the file URL.
+        assertThat(image.getMediaType()).isEqualTo(Image.MediaType.IMAGE);
+        image = new Image();
+        image.setFileUrl("http://awesomeboorusite.org/data/images/image.webm?download=1");
+        assertThat(image.getMediaType()).isEqualTo(Image.MediaType.WEBM);
+        assertThat(image.getMediaType().isVideo()).isTrue();
+
+        // File extensions returned by the API take precedence over the URL.
+        image.setMediaType(Image.MediaType.fromFileExtensionOrUrl("mp4", image.getFileUrl()));
+        assertThat(image.getMediaType()).isEqualTo(Image.MediaType.MP4);
+        assertThat(Image.MediaType.fromFileExtensionOrUrl("", image.getFileUrl())).isEqualTo(Image.MediaType.WEBM);
+
+        assertThat(Image.MediaType.fromFileExtension("JPEG")).isEqualTo(Image.MediaType.IMAGE);
+        assertThat(Image.MediaType.fromFileExtension(".gif")).isEqualTo(Image.MediaType.ANIMATED_GIF);
+        assertThat(Image.MediaType.fromFileExtension("swf")).isEqualTo(Image.MediaType.UNKNOWN);
+        assertThat(Image.MediaType.fromUrl("cfaf278e8f522c72644cee2a753d2845.gif")).isEqualTo(Image.MediaType.ANIMATED_GIF);
+        assertThat(Image.MediaType.fromUrl("http://awesomeboorusite.org/data/images/image")).isEqualTo(Image.MediaType.UNKNOWN);
+        assertThat(Image.MediaType.fromUrl("http://awesomeboorusite.org")).isEqualTo(Image.MediaType.UNKNOWN);
+        assertThat(Image.MediaType.fromUrl(null)).isEqualTo(Image.MediaType.UNKNOWN);
+        assertThat(Image.MediaType.ANIMATED_GIF.isVideo()).isFalse();
+    }
+
+    /**
+     * Tests the {@link Image#compactUrls()} method.
+     */
+    public void testCompactUrls() {
+        final Image image = getMockImage(Image.SafeSearchRating.S, new Tag("duck"), new Tag("bird"));
+        image.setFileUrl("https://danbooru.donmai.us/data/cf/af/cfaf278e8f522c72644cee2a753d2845.jpg");
+        image.setPreviewUrl("https://danbooru.donmai.us/data/preview/cf/af/cfaf278e8f522c72644cee2a753d2845.jpg");
+        final String sampleUrl = image.getSampleUrl();
+        final String webUrl = image.getWebUrl();
+
+        image.compactUrls();
+
+        // URL fields should be cleared and the URLs re-built by the getters.
+        assertThat(image.fileUrl).isNull();
+        assertThat(image.previewUrl).isNull();
+        assertThat(image.getFileUrl()).isEqualTo("https://danbooru.donmai.us/data/cf/af/cfaf278e8f522c72644cee2a753d2845.jpg");
+        assertThat(image.getPreviewUrl()).isEqualTo("https://danbooru.donmai.us/data/preview/cf/af/cfaf278e8f522c72644cee2a753d2845.jpg");
+        assertThat(image.getSampleUrl()).isEqualTo(sampleUrl);
+        assertThat(image.getWebUrl()).isEqualTo(webUrl);
+        assertThat(image.getFileExtension()).isEqualTo("jpg");
+
+        // Re-built URLs should be kept in the fields, so they are only decoded once.
+        assertThat(image.fileUrl).isEqualTo(image.getFileUrl());
+        assertThat(image.getPreviewUrl()).isSameAs(image.getPreviewUrl());
+
+        // Compacting again should drop the re-built URLs.
+        image.compactUrls();
+        assertThat(image.fileUrl).isNull();
+
+        // Compacted URLs should survive parceling.
+        final Bundle bundle = new Bundle();
+        bundle.putParcelable("image", image);
+        final Image unParceled = bundle.getParcelable("image");
+        assertThat(unParceled).isNotNull();
+        if (unParceled != null) {
+            assertThat(unParceled.getFileUrl()).isEqualTo(image.getFileUrl());
+            assertThat(unParceled.getWebUrl()).isEqualTo(webUrl);
+        }
+    }
+
+    /**
+     * Hosts that rarely reuse URL prefixes should stop adding prefixes to the {@link CompactUrls} table.
+     */
+    public void testCompactUrlsSkipsUniquePrefixes() {
+        String encoded = null;
+        for (int i = 0; i < 100; i++) {
+            encoded = CompactUrls.encode(String.format(Locale.US, "https://farm%d.test.flickr.com/%d/image.jpg", i % 2, i), null);
+        }
+        assertThat(encoded).isNull();
+
+        // Hosts reusing their prefixes are still encoded.
+        for (int i = 0; i < 100; i++) {
+            encoded = CompactUrls.encode(String.format(Locale.US, "https://test.donmai.us/data/%d.jpg", i), null);
+        }
+        assertThat(CompactUrls.decode(encoded, null)).isEqualTo("https://test.donmai.us/data/99.jpg");
+    }
+
     /**
      * Tests the {@link Image.SafeSearchRating#fromString(String)} method.
      */
@@ -121,19 +213,20 @@ public class ImageTests extends AndroidTestCase {
      */
     public static Image getMockImage(Image.SafeSearchRating safeSearchRating, Tag... tags) {
         final Image image = new Image();
-        image.fileUrl = "http://awesomeboorusite.org/data/images/image.png";
+        image.setFileUrl("http://awesomeboorusite.org/data/images/image.png");
         image.width = 1000;
         image.height = 900;
-        image.previewUrl = "http://awesomeboorusite.org/data/previews/image.png";
+        image.setPreviewUrl("http://awesomeboorusite.org/data/previews/image.png");
         image.previewWidth = 150;
         image.previewHeight = 130;
-        image.sampleUrl = "http://awesomeboorusite.org/data/samples/image.png";
+        image.setSampleUrl("http://awesomeboorusite.org/data/samples/image.png");
         image.sampleWidth = 850;
         image.sampleHeight = 800;
         image.tags = tags.clone();
-        image.id = "123456";
+        // Images with the same ID are treated as duplicates by SearchResult.
+        image.id = Integer.toString(123456 + mockImageCount.getAndIncrement());
         image.parentId = "123455";
-        image.webUrl = "http://awesomeboorusite.org/post/view/image";
+        image.setWebUrl("http://awesomeboorusite.org/post/view/image");
         image.pixivId = "111222333";
         image.safeSearchRating = safeSearchRating;
         image.score = 23;
@@ -153,30 +246,30 @@ public class ImageTests extends AndroidTestCase {
      */
     public static void verifyImage(Image image) {
         // Verify URLs.
-        assertThat(image.fileUrl).matches(urlPattern);
-        assertThat(image.previewUrl).matches(urlPattern);
-        assertThat(image.sampleUrl).matches(urlPattern);
-        assertThat(image.webUrl).matches(urlPattern);
+        assertThat(image.getFileUrl()).matches(urlPattern);
+        assertThat(image.getPreviewUrl()).matches(urlPattern);
+        assertThat(image.getSampleUrl()).matches(urlPattern);
+        assertThat(image.getWebUrl()).matches(urlPattern);
 
         // Verify image sizes are set and that they are positive integers.
         assertThat(image.width).isPositive();
         assertThat(image.height).isPositive();
         if (image.previewWidth == 0)
-            Log.w(TAG, String.format(Locale.US, "Preview width was 0 for image: %s", image.webUrl));
+            Log.w(TAG, String.format(Locale.US, "Preview width was 0 for image: %s", image.getWebUrl()));
         assertThat(image.previewWidth).isGreaterThanOrEqualTo(0);
         if (image.previewHeight == 0)
-            Log.w(TAG, String.format(Locale.US, "Preview height was 0 for image: %s", image.webUrl));
+            Log.w(TAG, String.format(Locale.US, "Preview height was 0 for image: %s", image.getWebUrl()));
         assertThat(image.previewHeight).isGreaterThanOrEqualTo(0);
         if (image.sampleWidth == 0)
-            Log.w(TAG, String.format(Locale.US, "Sample width was 0 for image: %s", image.webUrl));
+            Log.w(TAG, String.format(Locale.US, "Sample width was 0 for image: %s", image.getWebUrl()));
         assertThat(image.sampleWidth).isGreaterThanOrEqualTo(0);
         if (image.sampleHeight == 0)
-            Log.w(TAG, String.format(Locale.US, "Sample height was 0 for image: %s", image.webUrl));
+            Log.w(TAG, String.format(Locale.US, "Sample height was 0 for image: %s", image.getWebUrl()));
         assertThat(image.sampleHeight).isGreaterThanOrEqualTo(0);
 
         // Verify tags.
         if (image.tags.length == 0)
-            Log.w(TAG, String.format(Locale.US, "No tags for image: %s", image.webUrl));
+            Log.w(TAG, String.format(Locale.US, "No tags for image: %s", image.getWebUrl()));
         for (Tag tag : image.tags) {
             assertThat(tag.getName()).isNotEmpty();
             assertThat(tag.getType()).isNotNull();
@@ -187,22 +280,22 @@ public class ImageTests extends AndroidTestCase {
         if (image.parentId != null && !image.parentId.isEmpty())
             assertThat(image.parentId).matches(integerPattern);
         else
-            Log.w(TAG, String.format(Locale.US, "No parent ID for image: %s", image.webUrl));
+            Log.w(TAG, String.format(Locale.US, "No parent ID for image: %s", image.getWebUrl()));
         if (image.pixivId != null)
             assertThat(image.pixivId).isNotEmpty().matches(integerPattern);
         else
-            Log.w(TAG, String.format(Locale.US, "No Pixiv ID for image: %s", image.webUrl));
+            Log.w(TAG, String.format(Locale.US, "No Pixiv ID for image: %s", image.getWebUrl()));
 
         // Misc stuff.
         assertThat(image.safeSearchRating).isNotNull();
         if (image.source == null || image.source.isEmpty())
-            Log.w(TAG, String.format(Locale.US, "No source for image: %s", image.webUrl));
+            Log.w(TAG, String.format(Locale.US, "No source for image: %s", image.getWebUrl()));
         else
             assertThat(image.source).isNotEmpty();
         assertThat(image.md5).hasSize(32); // MD5 hashes are always 32 characters long.
         assertThat(image.searchPage).isNotNegative();
         assertThat(image.searchPagePosition).isNotNegative();
-        assertThat(image.createdAt).overridingErrorMessage("createdAt null for image: %s", image.webUrl).isNotNull();
+        assertThat(image.createdAt).overridingErrorMessage("createdAt null for image: %s", image.getWebUrl()).isNotNull();
     }
 
 }
@@ -0,0 +1,132 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.test.AndroidTestCase;
+
+import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.clients.Danbooru;
+import io.github.tjg1.library.norilib.clients.SearchClient;
+import io.github.tjg1.library.norilib.http.HttpTransports;
+import io.github.tjg1.library.norilib.http.OkHttpTransport;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for multi-page searches ({@link SearchClient#search(String, int, int, int)}), using a local HTTP server
+ * as a Danbooru API endpoint.
+ */
+public class PagedSearchTest extends AndroidTestCase {
+
+    /**
+     * Local HTTP server.
+     */
+    private MockWebServer server;
+    /**
+     * Client sending requests to the local server.
+     */
+    private SearchClient client;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        server = new MockWebServer();
+        server.start();
+        HttpTransports.setDefault(new OkHttpTransport());
+        client = new Danbooru(getContext(), "Danbooru", server.url("").toString().replaceAll("/$", ""));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        HttpTransports.setDefault(null);
+        server.shutdown();
+        super.tearDown();
+    }
+
+    /**
+     * Verify that adjacent pages are fetched with a single request, and the next page cursor is kept.
+     */
+    public void testSearchMultiplePages() throws Throwable {
+        server.enqueue(new MockResponse().setBody(DanbooruPosts.json(1000, 200)));
+
+        final SearchResult searchResult = client.search("tag", 0, 2, 100);
+        assertThat(server.getRequestCount()).isEqualTo(1);
+        assertThat(server.takeRequest().getPath()).contains("limit=200");
+        assertThat(searchResult.getImages()).hasSize(200);
+        assertThat(searchResult.getImages()[150].searchPage).isEqualTo(1);
+        assertThat(searchResult.getCurrentOffset()).isEqualTo(1);
+        assertThat(searchResult.hasNextPage()).isTrue();
+        assertThat(searchResult.getNextPageCursor()).isEqualTo("b801");
+    }
+
+    /**
+     * Verify that a request returning fewer images than requested (i.e. with hidden or deleted posts)
+     * doesn't end the search.
+     */
+    public void testSearchShortPage() throws Throwable {
+        server.enqueue(new MockResponse().setBody(DanbooruPosts.json(1000, 30)));
+
+        final SearchResult searchResult = client.search("tag", 0, 2, 100);
+        assertThat(searchResult.getImages()).hasSize(30);
+        assertThat(searchResult.getCurrentOffset()).isEqualTo(1);
+        assertThat(searchResult.hasNextPage()).isTrue();
+        assertThat(searchResult.getNextPageCursor()).isEqualTo("b971");
+    }
+
+    /**
+     * Verify that a request returning no images is treated as the end of the results.
+     */
+    public void testSearchEmptyPage() throws Throwable {
+        server.enqueue(new MockResponse().setBody("[]"));
+
+        final SearchResult searchResult = client.search("tag", 2, 2, 100);
+        assertThat(searchResult.getImages()).isEmpty();
+        assertThat(searchResult.getCurrentOffset()).isEqualTo(2);
+        assertThat(searchResult.hasNextPage()).isFalse();
+    }
+
+    /**
+     * Verify that the order: metatag disables the next page cursor.
+     */
+    public void testNoCursorWithOrder() throws Throwable {
+        assertThat(searchWithMetatag("order:score").getNextPageCursor()).isNull();
+    }
+
+    /**
+     * Verify that the ordfav: metatag disables the next page cursor.
+     */
+    public void testNoCursorWithOrdfav() throws Throwable {
+        assertThat(searchWithMetatag("ordfav:user").getNextPageCursor()).isNull();
+    }
+
+    /**
+     * Verify that the ordpool: metatag disables the next page cursor.
+     */
+    public void testNoCursorWithOrdpool() throws Throwable {
+        assertThat(searchWithMetatag("ordpool:1").getNextPageCursor()).isNull();
+    }
+
+    /**
+     * Verify that the random: metatag disables the next page cursor.
+     */
+    public void testNoCursorWithRandom() throws Throwable {
+        assertThat(searchWithMetatag("random:20").getNextPageCursor()).isNull();
+    }
+
+    /**
+     * Search for a tag and a metatag changing the order of the results.
+     *
+     * @param metatag Metatag.
+     * @return First page of results.
+     */
+    private SearchResult searchWithMetatag(String metatag) throws Throwable {
+        server.enqueue(new MockResponse().setBody(DanbooruPosts.json(1000, 100)));
+        return client.search("tag " + metatag, 0);
+    }
+}
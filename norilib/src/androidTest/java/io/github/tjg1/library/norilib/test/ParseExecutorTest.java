@@ -0,0 +1,78 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.github.tjg1.library.norilib.util.ParseExecutor;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link ParseExecutor} class.
+ */
+public class ParseExecutorTest extends AndroidTestCase {
+
+    /**
+     * LogCat tag.
+     */
+    private static final String TAG = "norilib.test.ParseExecutorTest";
+
+    /**
+     * Verify that parsed values and exceptions are delivered to the right callbacks, and parse times are recorded.
+     */
+    public void testParse() throws InterruptedException {
+        final ParseExecutor parseExecutor = ParseExecutor.getInstance();
+        parseExecutor.resetMetrics();
+
+        // Submit more tasks than the queue can hold, so some of them run on this thread.
+        final Object[] results = new Object[200];
+        final CountDownLatch latch = new CountDownLatch(results.length);
+        for (int i = 0; i < results.length; i++) {
+            final int value = i;
+            parseExecutor.parse(() -> {
+                if (value % 10 == 9) {
+                    throw new IOException("Malformed response.");
+                }
+                return value;
+            }, new ParseExecutor.Callback<Integer>() {
+                @Override
+                public void onParsed(Integer parsed) {
+                    results[value] = parsed;
+                    latch.countDown();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    results[value] = e;
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        for (int i = 0; i < results.length; i++) {
+            if (i % 10 == 9) {
+                assertThat(results[i]).isInstanceOf(IOException.class);
+            } else {
+                assertThat(results[i]).isEqualTo(i);
+            }
+        }
+
+        // Metrics are recorded before the callbacks are called.
+        final ParseExecutor.Metrics metrics = parseExecutor.getMetrics();
+        Log.i(TAG, metrics.toString());
+        assertThat(metrics.taskCount).isEqualTo(200);
+        assertThat(metrics.failedTaskCount).isEqualTo(20);
+        assertThat(metrics.maxParseNanos).isGreaterThanOrEqualTo(metrics.getAverageParseNanos());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.test.AndroidTestCase;
+
+import java.util.Arrays;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.Tag;
+import io.github.tjg1.library.norilib.clients.QueryPlanner;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link QueryPlanner} class.
+ */
+public class QueryPlannerTest extends AndroidTestCase {
+
+    /**
+     * Default SafeSearch setting: safe and unrated images.
+     */
+    private static final Image.SafeSearchRating[] SAFE_RATINGS = {Image.SafeSearchRating.S, Image.SafeSearchRating.U};
+    /**
+     * Planner with the syntax of the Danbooru 2.x API.
+     */
+    private static final QueryPlanner DANBOORU = new QueryPlanner(2, false, "-rating:s", "-rating:q", "-rating:e");
+    /**
+     * Planner with the syntax of the Moebooru API.
+     */
+    private static final QueryPlanner MOEBOORU = new QueryPlanner(6, true, "-rating:s", "-rating:q", "-rating:e");
+
+    /**
+     * Exclusions should be pushed to the server, as long as they fit within the tag count limit.
+     */
+    public void testPlanWithinTagLimit() {
+        final QueryPlanner.Plan plan = MOEBOORU.plan("cat", SAFE_RATINGS, Tag.arrayFromString("dog bird fish horse"));
+
+        assertThat(plan.query).isEqualTo("cat -rating:q -rating:e -dog -bird -fish");
+        assertThat(plan.safeSearchRatings).isNull();
+        assertThat(Arrays.asList(plan.tagFilter)).containsOnly(new Tag("horse"));
+    }
+
+    /**
+     * Free rating metatags shouldn't count towards the tag count limit.
+     */
+    public void testPlanWithFreeRatingTags() {
+        final QueryPlanner.Plan plan = DANBOORU.plan("cat", SAFE_RATINGS, Tag.arrayFromString("dog bird"));
+
+        assertThat(plan.query).isEqualTo("cat -rating:q -rating:e -dog");
+        assertThat(plan.safeSearchRatings).isNull();
+        assertThat(Arrays.asList(plan.tagFilter)).containsOnly(new Tag("bird"));
+    }
+
+    /**
+     * Filters that can't be pushed to the server should be applied on the client.
+     */
+    public void testPlanWithoutServerSideSupport() {
+        final QueryPlanner.Plan plan = QueryPlanner.NONE.plan("cat", SAFE_RATINGS, Tag.arrayFromString("dog"));
+        assertThat(plan.query).isEqualTo("cat");
+        assertThat(plan.safeSearchRatings).containsOnly(Image.SafeSearchRating.S, Image.SafeSearchRating.U);
+        assertThat(Arrays.asList(plan.tagFilter)).containsOnly(new Tag("dog"));
+
+        // Safe images can't be excluded on Gelbooru, so ratings are filtered on the client only.
+        final QueryPlanner gelbooru = new QueryPlanner(QueryPlanner.UNLIMITED, true, null, "-rating:questionable", "-rating:explicit");
+        final Image.SafeSearchRating[] explicitOnly = {Image.SafeSearchRating.E};
+        assertThat(gelbooru.plan("cat", explicitOnly, new Tag[0]).query).isEqualTo("cat");
+        assertThat(gelbooru.plan("cat", explicitOnly, new Tag[0]).safeSearchRatings).containsOnly(Image.SafeSearchRating.E);
+    }
+
+    /**
+     * Tags and ratings searched for by the user should never be excluded, and rewritten queries
+     * shouldn't be rewritten twice.
+     */
+    public void testPlanRespectsQuery() {
+        final QueryPlanner.Plan plan = MOEBOORU.plan("dog rating:e", SAFE_RATINGS, Tag.arrayFromString("dog cat"));
+        assertThat(plan.query).isEqualTo("dog rating:e -cat");
+        assertThat(plan.safeSearchRatings).containsOnly(Image.SafeSearchRating.S, Image.SafeSearchRating.U);
+        assertThat(plan.tagFilter).isEmpty();
+
+        final String query = MOEBOORU.plan("cat", SAFE_RATINGS, Tag.arrayFromString("dog")).query;
+        assertThat(MOEBOORU.plan(query, SAFE_RATINGS, Tag.arrayFromString("dog")).query).isEqualTo(query);
+    }
+
+    /**
+     * Federated searches should only push exclusions understood by all APIs.
+     */
+    public void testIntersect() {
+        final QueryPlanner gelbooru = new QueryPlanner(QueryPlanner.UNLIMITED, true, null, "-rating:questionable", "-rating:explicit");
+        final QueryPlanner planner = QueryPlanner.intersect(Arrays.asList(DANBOORU, MOEBOORU, gelbooru));
+
+        final QueryPlanner.Plan plan = planner.plan("cat", SAFE_RATINGS, Tag.arrayFromString("dog bird"));
+        assertThat(plan.query).isEqualTo("cat -dog");
+        assertThat(plan.safeSearchRatings).containsOnly(Image.SafeSearchRating.S, Image.SafeSearchRating.U);
+        assertThat(Arrays.asList(plan.tagFilter)).containsOnly(new Tag("bird"));
+    }
+}
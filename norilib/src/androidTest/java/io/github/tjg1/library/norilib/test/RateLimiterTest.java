@@ -0,0 +1,75 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.test.AndroidTestCase;
+
+import io.github.tjg1.library.norilib.http.RateLimiter;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link RateLimiter} class.
+ */
+public class RateLimiterTest extends AndroidTestCase {
+
+    /**
+     * Verify that bursts are sent straight away, and further requests are spread out at the configured rate.
+     */
+    public void testReserve() {
+        final RateLimiter rateLimiter = new RateLimiter();
+        rateLimiter.setRate("e621.net", 10, 2);
+
+        assertThat(rateLimiter.reserve("e621.net")).isEqualTo(0);
+        assertThat(rateLimiter.reserve("E621.net")).isEqualTo(0);
+        assertThat(rateLimiter.reserve("e621.net")).isGreaterThan(50).isLessThanOrEqualTo(100);
+        assertThat(rateLimiter.reserve("e621.net")).isGreaterThan(150).isLessThanOrEqualTo(200);
+
+        // Other hosts have their own bucket.
+        assertThat(rateLimiter.reserve("danbooru.donmai.us")).isEqualTo(0);
+        assertThat(rateLimiter.reserve(null)).isEqualTo(0);
+    }
+
+    /**
+     * Verify that paused hosts get no tokens until the pause is over.
+     */
+    public void testPause() {
+        final RateLimiter rateLimiter = new RateLimiter();
+        rateLimiter.pause("e621.net", 1000);
+
+        assertThat(rateLimiter.reserve("e621.net")).isGreaterThan(900).isLessThanOrEqualTo(1000);
+        assertThat(rateLimiter.reserve("danbooru.donmai.us")).isEqualTo(0);
+    }
+
+    /**
+     * Verify that tokens reserved before a pause can be told apart from tokens reserved after it.
+     */
+    public void testIsPaused() {
+        final RateLimiter rateLimiter = new RateLimiter();
+        assertThat(rateLimiter.reserve("e621.net")).isEqualTo(0);
+        assertThat(rateLimiter.isPaused("e621.net")).isFalse();
+
+        rateLimiter.pause("E621.net", 1000);
+        assertThat(rateLimiter.isPaused("e621.net")).isTrue();
+        assertThat(rateLimiter.isPaused("danbooru.donmai.us")).isFalse();
+        assertThat(rateLimiter.isPaused(null)).isFalse();
+    }
+
+    /**
+     * Verify that optional requests only get a token if another one is left for the next request.
+     */
+    public void testTryAcquireSpare() {
+        final RateLimiter rateLimiter = new RateLimiter();
+        rateLimiter.setRate("e621.net", 2, 2);
+
+        assertThat(rateLimiter.tryAcquireSpare("e621.net")).isTrue();
+        assertThat(rateLimiter.tryAcquireSpare("e621.net")).isFalse();
+        assertThat(rateLimiter.tryAcquire("e621.net")).isTrue();
+        assertThat(rateLimiter.tryAcquire("e621.net")).isFalse();
+        assertThat(rateLimiter.tryAcquireSpare(null)).isTrue();
+    }
+}
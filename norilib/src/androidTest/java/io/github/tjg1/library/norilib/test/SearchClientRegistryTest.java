@@ -0,0 +1,97 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.test.AndroidTestCase;
+
+import java.util.Collections;
+
+import io.github.tjg1.library.norilib.clients.FederatedSearchClient;
+import io.github.tjg1.library.norilib.clients.SearchClient;
+import io.github.tjg1.library.norilib.clients.SearchClientRegistry;
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests the {@link io.github.tjg1.library.norilib.clients.SearchClientRegistry} class.
+ */
+public class SearchClientRegistryTest extends AndroidTestCase {
+
+    /**
+     * Clients created for equal {@link SearchClient.Settings} objects should be shared.
+     */
+    public void testGetReturnsSharedInstance() {
+        final SearchClient first = SearchClientRegistry.get(getContext(), new SearchClient.Settings(
+                SearchClient.Settings.APIType.DANBOARD, "Danbooru", "https://danbooru.donmai.us"));
+        final SearchClient second = SearchClientRegistry.get(getContext(), new SearchClient.Settings(
+                SearchClient.Settings.APIType.DANBOARD, "Danbooru", "https://danbooru.donmai.us"));
+
+        assertThat(first).isNotNull();
+        assertThat(second).isSameAs(first);
+    }
+
+    /**
+     * Clients created for different {@link SearchClient.Settings} objects should not be shared.
+     */
+    public void testGetWithDifferentSettings() {
+        final SearchClient anonymous = SearchClientRegistry.get(getContext(), new SearchClient.Settings(
+                SearchClient.Settings.APIType.DANBOARD, "Danbooru", "https://danbooru.donmai.us"));
+        final SearchClient authenticated = SearchClientRegistry.get(getContext(), new SearchClient.Settings(
+                SearchClient.Settings.APIType.DANBOARD, "Danbooru", "https://danbooru.donmai.us", "user", "key"));
+
+        assertThat(authenticated).isNotSameAs(anonymous);
+    }
+
+    /**
+     * {@link SearchClientRegistry#remove(SearchClient.Settings)} should forget the shared client.
+     */
+    public void testRemove() {
+        final SearchClient.Settings settings = new SearchClient.Settings(
+                SearchClient.Settings.APIType.GELBOARD, "Safebooru", "https://safebooru.org");
+        final SearchClient client = SearchClientRegistry.get(getContext(), settings);
+        SearchClientRegistry.remove(settings);
+
+        assertThat(SearchClientRegistry.get(getContext(), settings)).isNotSameAs(client);
+    }
+
+    /**
+     * Removing the only client using an endpoint should forget the endpoint's mirrors,
+     * and any federated client searching the service.
+     */
+    public void testRemoveForgetsEndpointState() {
+        final SearchClient.Settings settings = new SearchClient.Settings(SearchClient.Settings.APIType.DANBOARD,
+                "Testbooru", "https://testbooru.donmai.us", null, null,
+                Collections.singletonList("https://testbooru-mirror.donmai.us"));
+        final SearchClient.Settings federated = new SearchClient.Settings("All services", settings);
+        final SearchClient federatedClient = SearchClientRegistry.get(getContext(), federated);
+        assertThat(EndpointHealth.getInstance().getMirrors(settings.getEndpoint())).hasSize(1);
+
+        SearchClientRegistry.remove(settings);
+        assertThat(EndpointHealth.getInstance().getMirrors(settings.getEndpoint())).isEmpty();
+        assertThat(SearchClientRegistry.get(getContext(), federated)).isNotSameAs(federatedClient);
+    }
+
+    /**
+     * Federated settings should create a {@link FederatedSearchClient} sharing the clients of its services.
+     */
+    public void testGetFederatedClient() {
+        final SearchClient.Settings danbooru = new SearchClient.Settings(
+                SearchClient.Settings.APIType.DANBOARD, "Danbooru", "https://danbooru.donmai.us");
+        final SearchClient.Settings safebooru = new SearchClient.Settings(
+                SearchClient.Settings.APIType.GELBOARD, "Safebooru", "https://safebooru.org");
+        final SearchClient.Settings settings = new SearchClient.Settings("All services", danbooru, safebooru);
+
+        final SearchClient client = SearchClientRegistry.get(getContext(), settings);
+        assertThat(client).isInstanceOf(FederatedSearchClient.class);
+        assertThat(client.getMaxLimit()).isEqualTo(Math.min(
+                SearchClientRegistry.get(getContext(), danbooru).getMaxLimit(),
+                SearchClientRegistry.get(getContext(), safebooru).getMaxLimit()));
+        assertThat(SearchClientRegistry.get(getContext(),
+                new SearchClient.Settings("All services", danbooru, safebooru))).isSameAs(client);
+    }
+}
@@ -110,6 +110,25 @@ public abstract class SearchClientTestCase extends InstrumentationTestCase {
         assertThat(searchResults[0].getImages()).isNotEmpty();
     }
 
+    /**
+     * Test fetching several pages with a single call.
+     */
+    public void testSearchMultiplePages() throws Throwable {
+        final SearchClient client = createSearchClient();
+        final int limit = Math.min(20, client.getMaxLimit());
+        // Retrieve two pages using a single batch request and the second page on its own.
+        final SearchResult pages = client.search(getDefaultTag(), 0, 2, limit);
+        final SearchResult page2 = client.search(getDefaultTag(), 1, 1, limit);
+
+        assertThat(pages.getCurrentOffset()).isEqualTo(1);
+        assertThat(pages.getImages().length).isGreaterThan(limit);
+        assertThat(pages.getImages()[0].searchPage).isEqualTo(0);
+        assertThat(pages.getImages()[0].searchPagePosition).isEqualTo(0);
+        assertThat(pages.getImages()[limit].searchPage).isEqualTo(1);
+        assertThat(pages.getImages()[limit].searchPagePosition).isEqualTo(0);
+        assertThat(page2.getImages()[0].searchPage).isEqualTo(1);
+    }
+
     public void testGetDefaultQuery() {
         final SearchClient client = createSearchClient();
         assertThat(client.getDefaultQuery()).isNotNull();
@@ -0,0 +1,103 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.test.AndroidTestCase;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.util.SearchPageCache;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link SearchPageCache} class.
+ */
+public class SearchPageCacheTest extends AndroidTestCase {
+
+    /**
+     * Directory used to store the cached pages.
+     */
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = new File(getContext().getCacheDir(), "search_page_cache_test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        new SearchPageCache(directory).clear();
+        super.tearDown();
+    }
+
+    /**
+     * Verify that pages are stored with their validators, in memory and on disk.
+     */
+    public void testPutAndGet() throws IOException, InterruptedException {
+        final SearchResult original = SearchResultTests.getMockSearchResult();
+        final SearchPageCache pageCache = new SearchPageCache(directory);
+        pageCache.put("https://danbooru.donmai.us/posts.json?tags=blonde_hair", "W/\"abc\"", null, original);
+
+        // Pages without validators can't be revalidated, so they are not cached.
+        pageCache.put("https://danbooru.donmai.us/posts.json?tags=red_hair", null, null, original);
+        assertThat(pageCache.get("https://danbooru.donmai.us/posts.json?tags=red_hair")).isNull();
+
+        SearchPageCache.Entry entry = pageCache.get("https://danbooru.donmai.us/posts.json?tags=blonde_hair");
+        assertThat(entry).isNotNull();
+        assertThat(entry.etag).isEqualTo("W/\"abc\"");
+        assertThat(entry.lastModified).isNull();
+        assertThat(entry.getSearchResult().getImages()).hasSize(original.getImages().length);
+        // Each call returns a new copy of the page.
+        assertThat(entry.getSearchResult()).isNotSameAs(entry.getSearchResult());
+
+        // Lookups missing the memory cache run on the disk thread after pending writes.
+        final CountDownLatch lock = new CountDownLatch(1);
+        pageCache.get("https://danbooru.donmai.us/posts.json?tags=black_hair", cachedPage -> lock.countDown());
+        assertThat(lock.await(10, TimeUnit.SECONDS)).isTrue();
+
+        // Read the page back from disk.
+        entry = new SearchPageCache(directory).get("https://danbooru.donmai.us/posts.json?tags=blonde_hair");
+        assertThat(entry).isNotNull();
+        assertThat(entry.etag).isEqualTo("W/\"abc\"");
+        assertThat(entry.getSearchResult().getImages()[0].id).isEqualTo(original.getImages()[0].id);
+    }
+
+    /**
+     * Verify that credentials included in request URLs are not written to disk.
+     */
+    public void testCredentialsAreNotStored() throws IOException, InterruptedException {
+        final String key = "https://danbooru.donmai.us/posts.json?tags=blonde_hair&login=user&api_key=s3cr3t";
+        final SearchPageCache pageCache = new SearchPageCache(directory);
+        pageCache.put(key, "W/\"abc\"", null, SearchResultTests.getMockSearchResult());
+
+        // Wait for the page to be written to disk.
+        final CountDownLatch lock = new CountDownLatch(1);
+        pageCache.get("https://danbooru.donmai.us/posts.json?tags=black_hair", cachedPage -> lock.countDown());
+        assertThat(lock.await(10, TimeUnit.SECONDS)).isTrue();
+
+        final File[] files = directory.listFiles();
+        assertThat(files).isNotEmpty();
+        for (File file : files) {
+            assertThat(file.getName()).doesNotContain("s3cr3t");
+            final byte[] contents = new byte[(int) file.length()];
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                in.readFully(contents);
+            }
+            assertThat(new String(contents, StandardCharsets.ISO_8859_1)).doesNotContain("s3cr3t");
+        }
+        assertThat(new SearchPageCache(directory).get(key)).isNotNull();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.test.AndroidTestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.util.SearchResultCodec;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link SearchResultCodec} snapshot format.
+ */
+public class SearchResultCodecTest extends AndroidTestCase {
+
+    /**
+     * Verify that SearchResults can be written and read from snapshots correctly.
+     */
+    public void testWriteAndRead() throws IOException {
+        final SearchResult original = SearchResultTests.getMockSearchResult();
+        original.setNextPageCursor("b1234");
+        original.onLastPage();
+
+        // Write and read back the snapshot.
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SearchResultCodec.write(new DataOutputStream(bytes), original);
+        final SearchResult restored = SearchResultCodec.read(
+                new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        // Verify restored data.
+        assertThat(restored.getCurrentOffset()).isEqualTo(original.getCurrentOffset());
+        assertThat(restored.getQuery()).containsOnly(original.getQuery());
+        assertThat(restored.hasNextPage()).isFalse();
+        assertThat(restored.getNextPageCursor()).isEqualTo("b1234");
+        assertThat(restored.getImages()).hasSize(original.getImages().length);
+        for (int i = 0; i < original.getImages().length; i++) {
+            final Image expected = original.getImages()[i];
+            final Image image = restored.getImages()[i];
+            ImageTests.verifyImage(image);
+            assertThat(image.id).isEqualTo(expected.id);
+            assertThat(image.getFileUrl()).isEqualTo(expected.getFileUrl());
+            assertThat(image.tags).containsOnly(expected.tags);
+            assertThat(image.safeSearchRating).isEqualTo(expected.safeSearchRating);
+            assertThat(image.score).isEqualTo(expected.score);
+            assertThat(image.searchPage).isEqualTo(expected.searchPage);
+            assertThat(image.searchPagePosition).isEqualTo(expected.searchPagePosition);
+            assertThat(image.getCreatedAtMillis()).isEqualTo(expected.getCreatedAtMillis());
+            assertThat(image.getMediaType()).isEqualTo(expected.getMediaType());
+        }
+    }
+
+    /**
+     * Verify that data not written by the codec is rejected.
+     */
+    public void testReadInvalidSnapshot() {
+        try {
+            SearchResultCodec.read(new DataInputStream(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5})));
+            fail("Invalid snapshot was read without throwing an IOException.");
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -9,9 +9,12 @@ package io.github.tjg1.library.norilib.test;
 import android.os.Bundle;
 import android.test.AndroidTestCase;
 
+import java.io.File;
+
 import io.github.tjg1.library.norilib.Image;
 import io.github.tjg1.library.norilib.SearchResult;
 import io.github.tjg1.library.norilib.Tag;
+import io.github.tjg1.library.norilib.util.PageSpillStore;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 
@@ -38,6 +41,7 @@ public class SearchResultTests extends AndroidTestCase {
             assertThat(unParceled.getCurrentOffset()).isEqualTo(original.getCurrentOffset());
             assertThat(unParceled.getQuery()).containsOnly(original.getQuery());
             assertThat(unParceled.hasNextPage()).isEqualTo(original.hasNextPage());
+            assertThat(unParceled.getNextPageCursor()).isEqualTo(original.getNextPageCursor());
         }
     }
 
@@ -63,6 +67,48 @@ public class SearchResultTests extends AndroidTestCase {
         assertThat(searchResult.getCurrentOffset()).isEqualTo(20);
     }
 
+    /**
+     * Verify that images already included in the SearchResult are not added again.
+     */
+    public void testAddImagesDropsDuplicates() {
+        final SearchResult searchResult = getMockSearchResult();
+        final Image duplicate = ImageTests.getMockImage(Image.SafeSearchRating.S, new Tag("quack"));
+        final Image image = ImageTests.getMockImage(Image.SafeSearchRating.S, new Tag("quack"));
+        duplicate.id = searchResult.getImages()[1].id;
+        duplicate.searchPage = image.searchPage = 1;
+        duplicate.searchPagePosition = 0;
+        image.searchPagePosition = 1;
+
+        searchResult.addImages(new Image[]{duplicate, image}, 1);
+        assertThat(searchResult.getImages()).hasSize(3);
+        assertThat(searchResult.getImages()[2]).isEqualTo(image);
+        // Page offsets should stay consistent after dropping the duplicate.
+        assertThat(image.searchPagePosition).isEqualTo(0);
+
+        // Parceled SearchResults should keep ignoring duplicates.
+        final Bundle bundle = new Bundle();
+        bundle.putParcelable("search-result", searchResult);
+        final SearchResult unParceled = bundle.getParcelable("search-result");
+        assertThat(unParceled).isNotNull();
+        if (unParceled != null) {
+            unParceled.addImages(new Image[]{duplicate}, 1);
+            assertThat(unParceled.getImages()).hasSize(3);
+        }
+    }
+
+    /**
+     * Tests the {@link SearchResult#addImages(Image[], int, String)} method.
+     */
+    public void testAddImagesWithNextPageCursor() {
+        final SearchResult searchResult = getMockSearchResult();
+        searchResult.addImages(new Image[]{ImageTests.getMockImage(Image.SafeSearchRating.S, new Tag("quack"))}, 1, "b1234");
+        assertThat(searchResult.getNextPageCursor()).isEqualTo("b1234");
+
+        // Pages added without a cursor have to be followed by page number.
+        searchResult.addImages(new Image[]{ImageTests.getMockImage(Image.SafeSearchRating.S, new Tag("quack"))}, 2);
+        assertThat(searchResult.getNextPageCursor()).isNull();
+    }
+
     /**
      * Tests the {@link io.github.tjg1.library.norilib.SearchResult#getImages()} method.
      */
@@ -71,6 +117,108 @@ public class SearchResultTests extends AndroidTestCase {
         assertThat(searchResult.getImages()).isNotEmpty();
     }
 
+    /**
+     * Tests the {@link SearchResult#getImage(int)} and {@link SearchResult#getImageCount()} methods
+     * across multiple pages.
+     */
+    public void testGetImage() {
+        final SearchResult searchResult = getMockSearchResult();
+        final Image image = ImageTests.getMockImage(Image.SafeSearchRating.S, new Tag("quack"));
+        image.searchPage = 1;
+        searchResult.addImages(new Image[]{image}, 1);
+
+        assertThat(searchResult.getImageCount()).isEqualTo(3);
+        assertThat(searchResult.getImage(0)).isSameAs(searchResult.getImages()[0]);
+        assertThat(searchResult.getImage(2)).isSameAs(image);
+        try {
+            searchResult.getImage(3);
+            fail("Image out of range was returned without throwing an IndexOutOfBoundsException.");
+        } catch (IndexOutOfBoundsException ignored) {
+        }
+
+        // Snapshots taken before filtering should not be affected by it.
+        final Image[] images = searchResult.getImages();
+        searchResult.filter(Image.SafeSearchRating.Q);
+        assertThat(images).hasSize(3);
+        assertThat(searchResult.getImageCount()).isEqualTo(1);
+    }
+
+    /**
+     * Tests the {@link SearchResult#trimToWindow(int, int)} method.
+     */
+    public void testTrimToWindow() {
+        final PageSpillStore pageSpillStore = new PageSpillStore(new File(getContext().getCacheDir(), "testTrimToWindow"));
+        final SearchResult searchResult = getMockSearchResult();
+        searchResult.setPageSpillStore(pageSpillStore);
+        for (int page = 1; page < 4; page++) {
+            final Image image = ImageTests.getMockImage(Image.SafeSearchRating.S, new Tag("quack"));
+            image.searchPage = page;
+            searchResult.addImages(new Image[]{image}, page);
+        }
+        final Image[] images = searchResult.getImages();
+
+        try {
+            // Move the window from the first to the last page, then read spilled pages back.
+            searchResult.trimToWindow(0, 0);
+            searchResult.trimToWindow(images.length - 1, 0);
+            assertThat(searchResult.getImageCount()).isEqualTo(images.length);
+            for (int i = 0; i < images.length; i++) {
+                assertThat(searchResult.getImage(i).id).isEqualTo(images[i].id);
+                assertThat(searchResult.getImage(i).searchPage).isEqualTo(images[i].searchPage);
+            }
+        } finally {
+            pageSpillStore.clear();
+        }
+    }
+
+    /**
+     * Filtering a page spilled to disk should replace its page file, instead of leaving the old one behind.
+     */
+    public void testFilterDeletesSupersededPages() {
+        final File directory = new File(getContext().getCacheDir(), "testFilterDeletesSupersededPages");
+        final PageSpillStore pageSpillStore = new PageSpillStore(directory);
+        final SearchResult searchResult = getMockSearchResult();
+        searchResult.setPageSpillStore(pageSpillStore);
+        final Image image = ImageTests.getMockImage(Image.SafeSearchRating.Q, new Tag("quack"));
+        image.searchPage = 1;
+        searchResult.addImages(new Image[]{image}, 1);
+
+        try {
+            // Spill the first page, then filter it.
+            searchResult.trimToWindow(searchResult.getImageCount() - 1, 0);
+            assertThat(directory.list()).hasSize(1);
+            searchResult.filter(Image.SafeSearchRating.Q);
+
+            assertThat(directory.list()).hasSize(1);
+            assertThat(searchResult.getImageCount()).isEqualTo(2);
+            assertThat(searchResult.getImage(0).safeSearchRating).isEqualTo(Image.SafeSearchRating.Q);
+            assertThat(searchResult.getImage(0).searchPagePosition).isEqualTo(0);
+        } finally {
+            pageSpillStore.clear();
+        }
+    }
+
+    /**
+     * Pages spilled to disk that can't be read back should be dropped from the {@link SearchResult}.
+     */
+    public void testTrimToWindowDropsUnreadablePages() {
+        final PageSpillStore pageSpillStore = new PageSpillStore(
+                new File(getContext().getCacheDir(), "testTrimToWindowDropsUnreadablePages"));
+        final SearchResult searchResult = getMockSearchResult();
+        searchResult.setPageSpillStore(pageSpillStore);
+        final Image image = ImageTests.getMockImage(Image.SafeSearchRating.S, new Tag("quack"));
+        image.searchPage = 1;
+        searchResult.addImages(new Image[]{image}, 1);
+
+        // Spill the first page, then lose it.
+        searchResult.trimToWindow(searchResult.getImageCount() - 1, 0);
+        pageSpillStore.clear();
+
+        assertThat(searchResult.getImage(0)).isNull();
+        assertThat(searchResult.getImageCount()).isEqualTo(1);
+        assertThat(searchResult.getImage(0).id).isEqualTo(image.id);
+    }
+
     /**
      * Tests the {@link io.github.tjg1.library.norilib.SearchResult#filter(Image.SafeSearchRating...)} method.
      */
@@ -82,6 +230,34 @@ public class SearchResultTests extends AndroidTestCase {
         assertThat(searchResult.getImages()[0].searchPagePosition).isEqualTo(0);
     }
 
+    /**
+     * Filtering should re-number copies of the images, so images shared with snapshots taken
+     * before filtering keep their page positions.
+     */
+    public void testFilterDoesNotModifySharedImages() {
+        final SearchResult searchResult = getMockSearchResult();
+        final Image[] images = searchResult.getImages();
+        final Integer searchPagePosition = images[1].searchPagePosition;
+
+        searchResult.filter(Image.SafeSearchRating.Q);
+        assertThat(searchResult.getImages()[0].searchPagePosition).isEqualTo(0);
+        assertThat(searchResult.getImages()[0]).isNotSameAs(images[1]);
+        assertThat(images[1].searchPagePosition).isEqualTo(searchPagePosition);
+    }
+
+    /**
+     * Tests the {@link SearchResult#setUserQuery(Tag[])} method.
+     */
+    public void testSetUserQuery() {
+        final SearchResult searchResult = new SearchResult(new Image[0], Tag.arrayFromString("duck -rating:e"), 0);
+        assertThat(searchResult.getRequestQuery()).isEqualTo(searchResult.getQuery());
+
+        searchResult.setUserQuery(Tag.arrayFromString("duck"));
+        assertThat(Tag.stringFromArray(searchResult.getQuery())).isEqualTo("duck");
+        assertThat(Tag.stringFromArray(searchResult.getRequestQuery())).isEqualTo("duck -rating:e");
+        assertThat(Tag.stringFromArray(searchResult.copy().getRequestQuery())).isEqualTo("duck -rating:e");
+    }
+
     /**
      * Tests the {@link io.github.tjg1.library.norilib.SearchResult#getCurrentOffset()} method.
      */
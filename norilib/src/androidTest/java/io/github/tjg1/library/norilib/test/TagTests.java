@@ -54,6 +54,20 @@ public class TagTests extends AndroidTestCase {
         assertThat(tag1.equals(tag4)).isFalse();
     }
 
+    /**
+     * Tests the {@link Tag#valueOf(String, Tag.Type)} method.
+     */
+    public void testValueOf() {
+        final Tag tag1 = Tag.valueOf("duck", Tag.Type.CHARACTER);
+        final Tag tag2 = Tag.valueOf("duck", Tag.Type.CHARACTER);
+        final Tag tag3 = Tag.valueOf("duck", Tag.Type.ARTIST);
+
+        // Equal tags should be the same instance.
+        assertThat(tag1).isSameAs(tag2);
+        assertThat(tag1).isNotSameAs(tag3);
+        assertThat(Tag.arrayFromString("duck", Tag.Type.CHARACTER)[0]).isSameAs(tag1);
+    }
+
     /**
      * Tests sorting collections of Tags using the {@link Tag#compareTo(Tag)} method.
      */
@@ -0,0 +1,162 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.test;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.util.Timestamps;
+
+import static org.fest.assertions.api.Assertions.assertThat;
+
+/**
+ * Tests for the {@link Timestamps} parsers.
+ */
+public class TimestampsTest extends AndroidTestCase {
+
+    /**
+     * LogCat tag.
+     */
+    private static final String TAG = "norilib.test.TimestampsTest";
+    /**
+     * 2016-04-02T22:47:12.345Z, in milliseconds since the epoch.
+     */
+    private static final long EXPECTED_MILLIS = 1459637232345L;
+    /**
+     * Number of timestamps parsed by the benchmark.
+     */
+    private static final int BENCHMARK_ITERATIONS = 20000;
+
+    /**
+     * Tests the {@link Timestamps#parseIso8601(CharSequence)} method.
+     */
+    public void testParseIso8601() throws ParseException {
+        // Danbooru 2.x and E621.
+        assertThat(Timestamps.parseIso8601("2016-04-02T18:47:12.345-04:00")).isEqualTo(EXPECTED_MILLIS);
+        assertThat(Timestamps.parseIso8601("2016-04-02T22:47:12.345Z")).isEqualTo(EXPECTED_MILLIS);
+        assertThat(Timestamps.parseIso8601("2016-04-03T00:17:12.345+0130")).isEqualTo(EXPECTED_MILLIS);
+        assertThat(Timestamps.parseIso8601("2016-04-02T22:47:12.345678Z")).isEqualTo(EXPECTED_MILLIS);
+        // Danbooru 1.x.
+        assertThat(Timestamps.parseIso8601("2016-04-02 22:47:12")).isEqualTo(EXPECTED_MILLIS - 345);
+        assertThat(Timestamps.parseIso8601("1970-01-01")).isEqualTo(0L);
+        assertThat(Timestamps.parseIso8601("2016-02-29T00:00:00Z")).isEqualTo(1456704000000L);
+        assertThat(Timestamps.parseIso8601("")).isEqualTo(Image.CREATED_AT_UNKNOWN);
+
+        assertUnparseable("null");
+        assertUnparseable("2016-04-02T22:47:12.Z");
+        assertUnparseable("2015-02-29T22:47:12Z");
+        assertUnparseable("2016-04-02T22:47:12Zjunk");
+    }
+
+    /**
+     * Tests the {@link Timestamps#parseCtime(CharSequence)} method.
+     */
+    public void testParseCtime() throws ParseException {
+        // Gelbooru.
+        assertThat(Timestamps.parseCtime("Sat Apr 02 18:47:12 -0400 2016")).isEqualTo(EXPECTED_MILLIS - 345);
+        assertThat(Timestamps.parseCtime("Sat Apr 2 22:47:12 +0000 2016")).isEqualTo(EXPECTED_MILLIS - 345);
+        try {
+            Timestamps.parseCtime("Sat Foo 02 18:47:12 -0400 2016");
+            fail("Invalid month name parsed without throwing a ParseException.");
+        } catch (ParseException ignored) {
+        }
+    }
+
+    /**
+     * Tests the {@link Timestamps#parseUnixTime(CharSequence)} and {@link Timestamps#parse(CharSequence)} methods.
+     */
+    public void testParse() throws ParseException {
+        // Moebooru returns seconds, not milliseconds.
+        assertThat(Timestamps.parseUnixTime("1459637232")).isEqualTo(EXPECTED_MILLIS - 345);
+        assertThat(Timestamps.parse("1459637232")).isEqualTo(EXPECTED_MILLIS - 345);
+        assertThat(Timestamps.parse("2016-04-02 22:47:12")).isEqualTo(EXPECTED_MILLIS - 345);
+        assertThat(Timestamps.parse("Sat Apr 02 18:47:12 -0400 2016")).isEqualTo(EXPECTED_MILLIS - 345);
+        assertThat(Timestamps.parse(null)).isEqualTo(Image.CREATED_AT_UNKNOWN);
+    }
+
+    /**
+     * Verify that timestamps are parsed correctly when called from multiple threads at once.
+     */
+    public void testParseConcurrently() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Boolean>> results = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws ParseException {
+                        for (int i = 0; i < 1000; i++) {
+                            if (Timestamps.parseIso8601("2016-04-02T18:47:12.345-04:00") != EXPECTED_MILLIS) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    }
+                }));
+            }
+            for (Future<Boolean> result : results) {
+                assertThat(result.get()).isTrue();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Compare the time taken to parse Danbooru timestamps with {@link Timestamps} and the
+     * {@link SimpleDateFormat} previously used by the API clients.
+     */
+    public void testBenchmark() throws ParseException {
+        final String timestamp = "2016-04-02T18:47:12.345-04:00";
+        final DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US);
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            // Same normalisation as the removed Danbooru.dateFromString method.
+            String date = timestamp.replace("Z", "+0000");
+            date = date.substring(0, 26) + date.substring(27);
+            dateFormat.parse(date);
+        }
+        final long simpleDateFormatNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            Timestamps.parseIso8601(timestamp);
+        }
+        final long timestampsNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+        Log.i(TAG, String.format(Locale.US, "%d timestamps: SimpleDateFormat %d ns/timestamp, Timestamps %d ns/timestamp",
+                BENCHMARK_ITERATIONS, simpleDateFormatNanos / BENCHMARK_ITERATIONS, timestampsNanos / BENCHMARK_ITERATIONS));
+        assertThat(timestampsNanos).isLessThan(simpleDateFormatNanos);
+    }
+
+    /**
+     * Verify that an ISO 8601 timestamp can't be parsed.
+     *
+     * @param timestamp Malformed timestamp.
+     */
+    private static void assertUnparseable(String timestamp) {
+        try {
+            Timestamps.parseIso8601(timestamp);
+            fail("Malformed timestamp parsed without throwing a ParseException: " + timestamp);
+        } catch (ParseException ignored) {
+        }
+    }
+}
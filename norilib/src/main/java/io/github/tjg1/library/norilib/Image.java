@@ -20,6 +20,8 @@ import java.util.Locale;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import io.github.tjg1.library.norilib.util.CompactUrls;
+
 /**
  * Metadata received from the API for each image.
  */
@@ -59,21 +61,24 @@ public class Image implements Parcelable {
         sampleUrl = in.readString();
         sampleWidth = in.readInt();
         sampleHeight = in.readInt();
-        tags = in.createTypedArray(Tag.CREATOR);
+        tags = readTags(in);
         id = in.readString();
+        serviceIndex = in.readInt();
         parentId = in.readString();
         webUrl = in.readString();
         pixivId = in.readString();
         safeSearchRating = SafeSearchRating.values()[in.readInt()];
-        score = in.readInt();
+        final int tmpScore = in.readInt();
+        score = (tmpScore != SCORE_UNKNOWN) ? tmpScore : null;
         source = in.readString();
         md5 = in.readString();
         final int tmpSearchPage = in.readInt();
         searchPage = (tmpSearchPage != -1) ? tmpSearchPage : null;
         final int tmpSearchPagePosition = in.readInt();
         searchPagePosition = (tmpSearchPagePosition != -1) ? tmpSearchPagePosition : null;
-        final long tmpCreatedAt = in.readLong();
-        createdAt = (tmpCreatedAt != -1) ? new Date(tmpCreatedAt) : null;
+        setCreatedAtMillis(in.readLong());
+        final int mediaTypeOrdinal = in.readInt();
+        mediaType = mediaTypeOrdinal != -1 ? MediaType.values()[mediaTypeOrdinal] : null;
     }
 
     @Override
@@ -84,30 +89,100 @@ public class Image implements Parcelable {
     @Override
     public void writeToParcel(Parcel dest, int flags) {
         // Serialize data into a Parcel.
-        dest.writeString(fileUrl); //
+        dest.writeString(decodeUrl(fileUrl, compactFileUrl)); //
         dest.writeInt(width); //
         dest.writeInt(height); //
-        dest.writeString(previewUrl); //
+        dest.writeString(decodeUrl(previewUrl, compactPreviewUrl)); //
         dest.writeInt(previewWidth); //
         dest.writeInt(previewHeight); //
-        dest.writeString(sampleUrl); //
+        dest.writeString(decodeUrl(sampleUrl, compactSampleUrl)); //
         dest.writeInt(sampleWidth); //
         dest.writeInt(sampleHeight); //
-        dest.writeTypedArray(tags, 0); //
+        writeTags(dest, tags); //
         dest.writeString(id); //
+        dest.writeInt(serviceIndex);
         dest.writeString(parentId); //
-        dest.writeString(webUrl); //
+        dest.writeString(decodeUrl(webUrl, compactWebUrl)); //
         dest.writeString(pixivId); //
         dest.writeInt(safeSearchRating.ordinal());
-        dest.writeInt(score);
+        dest.writeInt(score != null ? score : SCORE_UNKNOWN);
         dest.writeString(source);
         dest.writeString(md5);
         dest.writeInt(searchPage != null ? searchPage : -1);
         dest.writeInt(searchPagePosition != null ? searchPagePosition : -1);
-        dest.writeLong(createdAt != null ? createdAt.getTime() : -1L);
+        dest.writeLong(getCreatedAtMillis());
+        dest.writeInt(mediaType != null ? mediaType.ordinal() : -1);
+    }
+
+    /**
+     * Get an URL without keeping it in its field, so parceling doesn't grow compacted images back.
+     *
+     * @param url        Value of the URL field.
+     * @param compactUrl Compact encoding of the URL. May be null.
+     * @return The URL.
+     */
+    private String decodeUrl(String url, String compactUrl) {
+        return url != null ? url : CompactUrls.decode(compactUrl, md5);
+    }
+
+    /**
+     * Write tags to a {@link Parcel} as plain names and type ordinals.
+     * Avoids the per-element overhead of {@link Parcel#writeTypedArray(Parcelable[], int)}.
+     *
+     * @param dest Parcel to write the tags to.
+     * @param tags Tags to write. May be null.
+     */
+    private static void writeTags(Parcel dest, Tag[] tags) {
+        if (tags == null) {
+            dest.writeInt(-1);
+            return;
+        }
+        dest.writeInt(tags.length);
+        for (Tag tag : tags) {
+            dest.writeString(tag.getName());
+            dest.writeInt(tag.getType().ordinal());
+        }
+    }
+
+    /**
+     * Read tags written using {@link #writeTags(Parcel, Tag[])}.
+     *
+     * @param in Parcel to read the tags from.
+     * @return Interned tags. Null if null was written.
+     */
+    private static Tag[] readTags(Parcel in) {
+        final int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+        final Tag[] tags = new Tag[length];
+        for (int i = 0; i < length; i++) {
+            final String name = in.readString();
+            tags[i] = Tag.valueOf(name, Tag.Type.values()[in.readInt()]);
+        }
+        return tags;
     }
     //endregion
 
+    //region Constants
+    /**
+     * Value of {@link #getCreatedAtMillis()} for images with an unknown upload date.
+     */
+    public static final long CREATED_AT_UNKNOWN = Long.MIN_VALUE;
+    /**
+     * Value written in place of a null {@link #score} when serializing images.
+     */
+    public static final int SCORE_UNKNOWN = Integer.MIN_VALUE;
+    /**
+     * Value of {@link #serviceIndex} for images not returned by a federated search.
+     */
+    public static final int SERVICE_INDEX_NONE = -1;
+    /**
+     * Largest numeric ID combined with a {@link #serviceIndex} in {@link #getUniqueId()}.
+     */
+    private static final long MAX_FEDERATED_ID = (1L << 48) - 1;
+    //endregion
+
     //region Regular expressions
     /**
      * Regular expression for matching Pixiv image ID from Pixiv URLs
@@ -118,6 +193,7 @@ public class Image implements Parcelable {
     //region Instance fields
     /**
      * Full-resolution image URL.
+     * Null after {@link #compactUrls()} until read once with {@link #getFileUrl()}.
      */
     public String fileUrl;
     /**
@@ -130,6 +206,7 @@ public class Image implements Parcelable {
     public int height;
     /**
      * Thumbnail URL.
+     * Null after {@link #compactUrls()} until read once with {@link #getPreviewUrl()}.
      */
     public String previewUrl;
 
@@ -146,6 +223,7 @@ public class Image implements Parcelable {
     public int previewHeight = 0;
     /**
      * Sample URL.
+     * Null after {@link #compactUrls()} until read once with {@link #getSampleUrl()}.
      */
     public String sampleUrl;
     /**
@@ -164,6 +242,11 @@ public class Image implements Parcelable {
      * Image ID
      */
     public String id;
+    /**
+     * Index of the service that returned this image, when searching several services at once.
+     * Image IDs are only unique within a service. {@link #SERVICE_INDEX_NONE} if not known.
+     */
+    public int serviceIndex = SERVICE_INDEX_NONE;
     /**
      * Image parent ID. Used when there are multiple similar images.
      */
@@ -174,6 +257,7 @@ public class Image implements Parcelable {
     public String pixivId;
     /**
      * Web URL.
+     * Null after {@link #compactUrls()} until read once with {@link #getWebUrl()}.
      */
     public String webUrl;
     /**
@@ -206,6 +290,27 @@ public class Image implements Parcelable {
      * Upload date.
      */
     public Date createdAt;
+    /**
+     * Media type of the full-resolution file. Classified once, when the image is parsed.
+     * Null if not yet known.
+     */
+    private MediaType mediaType;
+    /**
+     * Compact encoding of {@link #fileUrl}, set by {@link #compactUrls()}.
+     */
+    private String compactFileUrl;
+    /**
+     * Compact encoding of {@link #previewUrl}, set by {@link #compactUrls()}.
+     */
+    private String compactPreviewUrl;
+    /**
+     * Compact encoding of {@link #sampleUrl}, set by {@link #compactUrls()}.
+     */
+    private String compactSampleUrl;
+    /**
+     * Compact encoding of {@link #webUrl}, set by {@link #compactUrls()}.
+     */
+    private String compactWebUrl;
     //endregion
 
     //region Constructors
@@ -215,6 +320,41 @@ public class Image implements Parcelable {
      */
     public Image() {
     }
+
+    /**
+     * Create a copy of another image.
+     *
+     * @param other Image to copy.
+     */
+    public Image(Image other) {
+        fileUrl = other.fileUrl;
+        width = other.width;
+        height = other.height;
+        previewUrl = other.previewUrl;
+        previewWidth = other.previewWidth;
+        previewHeight = other.previewHeight;
+        sampleUrl = other.sampleUrl;
+        sampleWidth = other.sampleWidth;
+        sampleHeight = other.sampleHeight;
+        tags = other.tags != null ? other.tags.clone() : null;
+        id = other.id;
+        serviceIndex = other.serviceIndex;
+        parentId = other.parentId;
+        pixivId = other.pixivId;
+        webUrl = other.webUrl;
+        source = other.source;
+        md5 = other.md5;
+        searchPage = other.searchPage;
+        searchPagePosition = other.searchPagePosition;
+        safeSearchRating = other.safeSearchRating;
+        score = other.score;
+        createdAt = other.createdAt != null ? new Date(other.createdAt.getTime()) : null;
+        mediaType = other.mediaType;
+        compactFileUrl = other.compactFileUrl;
+        compactPreviewUrl = other.compactPreviewUrl;
+        compactSampleUrl = other.compactSampleUrl;
+        compactWebUrl = other.compactWebUrl;
+    }
     //endregion
 
     //region Static method: Pixiv URLs from IDs
@@ -242,6 +382,215 @@ public class Image implements Parcelable {
     }
     //endregion
 
+    //region Upload date
+
+    /**
+     * Get the upload date, in milliseconds since the epoch.
+     *
+     * @return Upload date. {@link #CREATED_AT_UNKNOWN} if {@link #createdAt} is null.
+     */
+    public long getCreatedAtMillis() {
+        return createdAt != null ? createdAt.getTime() : CREATED_AT_UNKNOWN;
+    }
+
+    /**
+     * Set the upload date, in milliseconds since the epoch.
+     *
+     * @param createdAtMillis Upload date. {@link #CREATED_AT_UNKNOWN} if not known.
+     */
+    public void setCreatedAtMillis(long createdAtMillis) {
+        this.createdAt = createdAtMillis != CREATED_AT_UNKNOWN ? new Date(createdAtMillis) : null;
+    }
+    //endregion
+
+    //region URLs
+
+    /**
+     * Get the full-resolution image URL.
+     * Use instead of reading the {@code fileUrl} field directly, so compacted URLs are handled.
+     * The decoded URL is kept in the field until the URLs are compacted again.
+     *
+     * @return Full-resolution image URL.
+     */
+    public String getFileUrl() {
+        String url = fileUrl;
+        if (url == null && compactFileUrl != null) {
+            url = fileUrl = CompactUrls.decode(compactFileUrl, md5);
+        }
+        return url;
+    }
+
+    /**
+     * Set the full-resolution image URL.
+     *
+     * @param fileUrl Full-resolution image URL.
+     */
+    public void setFileUrl(String fileUrl) {
+        this.fileUrl = fileUrl;
+        this.compactFileUrl = null;
+    }
+
+    /**
+     * Get the thumbnail URL.
+     * Use instead of reading the {@code previewUrl} field directly, so compacted URLs are handled.
+     * The decoded URL is kept in the field until the URLs are compacted again.
+     *
+     * @return Thumbnail URL.
+     */
+    public String getPreviewUrl() {
+        String url = previewUrl;
+        if (url == null && compactPreviewUrl != null) {
+            url = previewUrl = CompactUrls.decode(compactPreviewUrl, md5);
+        }
+        return url;
+    }
+
+    /**
+     * Set the thumbnail URL.
+     *
+     * @param previewUrl Thumbnail URL.
+     */
+    public void setPreviewUrl(String previewUrl) {
+        this.previewUrl = previewUrl;
+        this.compactPreviewUrl = null;
+    }
+
+    /**
+     * Get the sample URL.
+     * Use instead of reading the {@code sampleUrl} field directly, so compacted URLs are handled.
+     * The decoded URL is kept in the field until the URLs are compacted again.
+     *
+     * @return Sample URL.
+     */
+    public String getSampleUrl() {
+        String url = sampleUrl;
+        if (url == null && compactSampleUrl != null) {
+            url = sampleUrl = CompactUrls.decode(compactSampleUrl, md5);
+        }
+        return url;
+    }
+
+    /**
+     * Set the sample URL.
+     *
+     * @param sampleUrl Sample URL.
+     */
+    public void setSampleUrl(String sampleUrl) {
+        this.sampleUrl = sampleUrl;
+        this.compactSampleUrl = null;
+    }
+
+    /**
+     * Get the web URL.
+     * Use instead of reading the {@code webUrl} field directly, so compacted URLs are handled.
+     * The decoded URL is kept in the field until the URLs are compacted again.
+     *
+     * @return Web URL.
+     */
+    public String getWebUrl() {
+        String url = webUrl;
+        if (url == null && compactWebUrl != null) {
+            url = webUrl = CompactUrls.decode(compactWebUrl, md5);
+        }
+        return url;
+    }
+
+    /**
+     * Set the web URL.
+     *
+     * @param webUrl Web URL.
+     */
+    public void setWebUrl(String webUrl) {
+        this.webUrl = webUrl;
+        this.compactWebUrl = null;
+    }
+
+    /**
+     * Replace the URL Strings with a compact encoding (see {@link CompactUrls}).
+     * Opt-in, for callers reading the URLs using the getter methods: the URL fields are set to null, and
+     * each URL is re-built into its field the first time its getter is called. Calling this method again
+     * drops the re-built URLs.
+     * {@link #md5} should not be changed after calling this method, as it may be used to re-build the URLs.
+     */
+    public void compactUrls() {
+        String encoded;
+        if ((encoded = CompactUrls.encode(fileUrl, md5)) != null) {
+            compactFileUrl = encoded;
+            fileUrl = null;
+        }
+        if ((encoded = CompactUrls.encode(previewUrl, md5)) != null) {
+            compactPreviewUrl = encoded;
+            previewUrl = null;
+        }
+        if ((encoded = CompactUrls.encode(sampleUrl, md5)) != null) {
+            compactSampleUrl = encoded;
+            sampleUrl = null;
+        }
+        if ((encoded = CompactUrls.encode(webUrl, md5)) != null) {
+            compactWebUrl = encoded;
+            webUrl = null;
+        }
+    }
+    //endregion
+
+    //region Media type
+
+    /**
+     * Get the media type of the full-resolution file.
+     * Images not classified by the API client are classified from their file URL on first use.
+     *
+     * @return Media type.
+     */
+    public MediaType getMediaType() {
+        if (mediaType == null) {
+            mediaType = MediaType.fromUrl(getFileUrl());
+        }
+        return mediaType;
+    }
+
+    /**
+     * Set the media type of the full-resolution file.
+     *
+     * @param mediaType Media type. Null to classify it from the file URL.
+     */
+    public void setMediaType(@Nullable MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+    //endregion
+
+    //region Unique ID
+
+    /**
+     * Get a numeric ID identifying this image, unique across the services of a federated search.
+     * Parsed without allocating or throwing exceptions.
+     *
+     * @return The numeric {@link #id}, combined with the {@link #serviceIndex} if set. -1 if the ID is
+     * not a non-negative decimal number, or is too large to be combined with the service index.
+     */
+    public long getUniqueId() {
+        if (id == null || id.isEmpty() || id.length() > 18) {
+            return -1;
+        }
+
+        long value = 0;
+        for (int i = 0; i < id.length(); i++) {
+            final char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+
+        if (serviceIndex == SERVICE_INDEX_NONE) {
+            return value;
+        } else if (value > MAX_FEDERATED_ID || serviceIndex < 0 || serviceIndex >= (1 << 15)) {
+            return -1;
+        }
+        // Service index in the upper bits, numeric ID in the lower 48 bits.
+        return ((long) (serviceIndex + 1) << 48) | value;
+    }
+    //endregion
+
     //region File extension from URL
 
     /**
@@ -253,7 +602,7 @@ public class Image implements Parcelable {
      */
     @Nullable
     public String getFileExtension() {
-        String path = Uri.parse(this.fileUrl).getLastPathSegment();
+        String path = Uri.parse(getFileUrl()).getLastPathSegment();
         String fileExt = (!TextUtils.isEmpty(path) && path.contains(".")) ?
                 path.toLowerCase(Locale.US).substring(path.lastIndexOf('.') + 1) : null;
 
@@ -334,4 +683,119 @@ public class Image implements Parcelable {
         //endregion
     }
     //endregion
+
+    //region MediaType enum
+
+    /**
+     * Type of media stored in the full-resolution image file.
+     * Used to choose how the file is displayed, without parsing the file URL every time.
+     */
+    public enum MediaType {
+        /**
+         * Static image (JPEG, PNG, etc.).
+         */
+        IMAGE,
+        /**
+         * GIF image. Possibly animated.
+         */
+        ANIMATED_GIF,
+        /**
+         * MP4 video.
+         */
+        MP4,
+        /**
+         * WebM video.
+         */
+        WEBM,
+        /**
+         * Media type could not be determined.
+         */
+        UNKNOWN;
+
+        //region Static helper methods
+
+        /**
+         * Get a MediaType from a file extension.
+         *
+         * @param fileExtension File extension, with or without the preceding dot.
+         * @return MediaType for given extension.
+         */
+        public static MediaType fromFileExtension(@Nullable String fileExtension) {
+            if (TextUtils.isEmpty(fileExtension)) {
+                return UNKNOWN;
+            }
+            if (fileExtension.charAt(0) == '.') {
+                fileExtension = fileExtension.substring(1);
+            }
+
+            switch (fileExtension.toLowerCase(Locale.US)) {
+                case "jpg":
+                case "jpeg":
+                case "png":
+                case "bmp":
+                case "webp":
+                    return IMAGE;
+                case "gif":
+                    return ANIMATED_GIF;
+                case "mp4":
+                    return MP4;
+                case "webm":
+                    return WEBM;
+                default:
+                    return UNKNOWN;
+            }
+        }
+
+        /**
+         * Get a MediaType from the file extension in a URL or file name.
+         * Cheaper than {@link Image#getFileExtension()}, as the URL is not fully parsed.
+         *
+         * @param url URL or file name.
+         * @return MediaType for the file extension at the end of the URL path.
+         */
+        public static MediaType fromUrl(@Nullable String url) {
+            if (url == null) {
+                return UNKNOWN;
+            }
+
+            // Ignore the query string and fragment.
+            int end = url.length();
+            final int query = url.indexOf('?');
+            final int fragment = url.indexOf('#');
+            if (query != -1) {
+                end = query;
+            }
+            if (fragment != -1 && fragment < end) {
+                end = fragment;
+            }
+
+            final int dot = url.lastIndexOf('.', end - 1);
+            if (dot == -1 || dot < url.lastIndexOf('/', end - 1)) {
+                return UNKNOWN;
+            }
+            return fromFileExtension(url.substring(dot + 1, end));
+        }
+
+        /**
+         * Get a MediaType using the file extension returned by the API, if there is one.
+         *
+         * @param fileExtension File extension returned by the API. May be null or empty.
+         * @param url           File URL, used if the API did not return a file extension.
+         * @return MediaType of the file.
+         */
+        public static MediaType fromFileExtensionOrUrl(@Nullable String fileExtension, @Nullable String url) {
+            return !TextUtils.isEmpty(fileExtension) ? fromFileExtension(fileExtension) : fromUrl(url);
+        }
+        //endregion
+
+        /**
+         * Check if the media type is a video.
+         *
+         * @return True for MP4 and WebM videos.
+         */
+        public boolean isVideo() {
+            return this == MP4 || this == WEBM;
+        }
+    }
+    //endregion
 }
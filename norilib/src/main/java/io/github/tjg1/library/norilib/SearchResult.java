@@ -9,15 +9,41 @@ package io.github.tjg1.library.norilib;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
 import org.apache.commons.collections4.CollectionUtils;
+import org.apache.commons.collections4.Predicate;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.github.tjg1.library.norilib.util.LongHashSet;
+import io.github.tjg1.library.norilib.util.PageSpillStore;
 
 /**
  * Search result received from the API.
+ * <p/>
+ * Images are stored as an immutable list of page chunks, published through a volatile snapshot
+ * pointer. Appending a page only copies the chunk array, not the images, and readers such as list
+ * adapters never need to lock: they always see a consistent snapshot, even while another thread
+ * adds or filters images.
+ * <p/>
+ * When a {@link PageSpillStore} is set, the result can also be windowed using
+ * {@link #trimToWindow(int, int)}: pages far away from the viewport are written to disk and dropped
+ * from memory, and read back when accessed again. Pages that can't be read back are dropped from
+ * the result.
  */
 public class SearchResult implements Parcelable {
 
@@ -44,10 +70,14 @@ public class SearchResult implements Parcelable {
      * @param parcel {@link android.os.Parcel} used to deserialize the SearchResult.
      */
     protected SearchResult(Parcel parcel) {
-        this.images = parcel.createTypedArrayList(Image.CREATOR);
+        final Image[] images = parcel.createTypedArray(Image.CREATOR);
         this.offset = parcel.readInt();
         this.query = parcel.createTypedArray(Tag.CREATOR);
+        this.requestQuery = parcel.createTypedArray(Tag.CREATOR);
         this.hasNextPage = (parcel.readByte() == 0x01);
+        this.nextPageCursor = parcel.readString();
+        this.imageIds = new LongHashSet(images.length);
+        this.snapshot = Snapshot.EMPTY.append(dropDuplicates(images, imageIds));
     }
 
     @Override
@@ -57,18 +87,21 @@ public class SearchResult implements Parcelable {
 
     @Override
     public void writeToParcel(Parcel dest, int flags) {
-        dest.writeTypedList(images);
+        dest.writeTypedArray(getImages(), 0);
         dest.writeInt(offset);
         dest.writeTypedArray(query, 0);
+        dest.writeTypedArray(requestQuery, 0);
         dest.writeByte((byte) (hasNextPage ? 0x01 : 0x00));
+        dest.writeString(nextPageCursor);
     }
     //endregion
 
     //region Instance fields
     /**
-     * List of {@link Image}s included in this SearchResult.
+     * Current snapshot of the {@link Image}s included in this SearchResult.
+     * Replaced, never modified, when images are added or filtered.
      */
-    private final List<Image> images;
+    private volatile Snapshot snapshot;
 
     /**
      * Current offset. Used for paging.
@@ -78,12 +111,50 @@ public class SearchResult implements Parcelable {
     /**
      * List of tags originally used to retrieve this SearchResult.
      */
-    private final Tag[] query;
+    private Tag[] query;
+    /**
+     * Tags sent to the API, when the query was rewritten before being sent (e.g. by a query planner).
+     * Used to fetch the following pages. Null if the {@link #query} was sent as is.
+     */
+    private Tag[] requestQuery;
     /**
      * True if more results may be available on the next page.
-     * Set to false when the last page of results has been retrieved and included in {@link #images}.
+     * Set to false when the last page of results has been retrieved and included in {@link #snapshot}.
      */
     private boolean hasNextPage = true;
+    /**
+     * Opaque, API-specific continuation token used to fetch the page following the last page in this
+     * SearchResult (e.g. "b1234" to fetch posts with IDs lower than 1234 from Danbooru).
+     * Null if the API only supports paging using page numbers.
+     */
+    private String nextPageCursor;
+    /**
+     * Unique IDs (see {@link Image#getUniqueId()}) of all images added to this SearchResult. Used to drop
+     * duplicates returned on subsequent pages when new images are uploaded while the user is scrolling.
+     * Guarded by {@code this}.
+     */
+    private final LongHashSet imageIds;
+    /**
+     * Store used to spill pages outside of the window to disk. Null if windowing is disabled.
+     */
+    private volatile PageSpillStore pageSpillStore;
+    /**
+     * Executor used to read spilled pages back into memory. Null to read them on the calling thread.
+     */
+    private volatile Executor pageLoadExecutor;
+    /**
+     * Listener notified when spilled pages are read back or dropped. May be null.
+     */
+    private volatile OnPagesChangedListener onPagesChangedListener;
+    /**
+     * IDs of spilled chunks currently being read back by the {@link #pageLoadExecutor}. Guarded by {@code this}.
+     */
+    private final Set<Long> loadingChunkIds = new HashSet<>();
+    /**
+     * Serializes adding and filtering images. Held while spilled pages are read from disk, so readers
+     * and windowing, which only lock {@code this}, are never blocked by disk I/O.
+     */
+    private final Object writeLock = new Object();
     //endregion
 
     //region Constructors
@@ -96,10 +167,39 @@ public class SearchResult implements Parcelable {
      * @param offset Current paging offset.
      */
     public SearchResult(Image[] images, Tag[] query, int offset) {
-        // Have to use the ArrayList constructor because the Lists returned by Arrays.asList are not resizable which is a bummer for filtering.
-        this.images = new ArrayList<>(Arrays.asList(images));
         this.query = query.clone();
         this.offset = offset;
+        this.imageIds = new LongHashSet(images.length);
+        this.snapshot = Snapshot.EMPTY.append(dropDuplicates(images, imageIds));
+    }
+
+    /**
+     * Create a shallow copy of another SearchResult.
+     *
+     * @param other SearchResult to copy.
+     */
+    private SearchResult(SearchResult other) {
+        synchronized (other) {
+            this.snapshot = other.snapshot;
+            this.query = other.query;
+            this.requestQuery = other.requestQuery;
+            this.offset = other.offset;
+            this.hasNextPage = other.hasNextPage;
+            this.nextPageCursor = other.nextPageCursor;
+            this.imageIds = new LongHashSet(other.imageIds);
+            this.pageSpillStore = other.pageSpillStore;
+            this.pageLoadExecutor = other.pageLoadExecutor;
+        }
+    }
+
+    /**
+     * Create a shallow copy of this SearchResult.
+     * The copy can be modified without affecting this SearchResult, but {@link Image} objects are shared.
+     *
+     * @return Copy of this SearchResult.
+     */
+    public SearchResult copy() {
+        return new SearchResult(this);
     }
     //endregion
 
@@ -110,15 +210,47 @@ public class SearchResult implements Parcelable {
      * Usually called when new page of results has been fetched from the API.
      * Don't forget to call {@link #filter(Tag[])} and {@link #filter(Image.SafeSearchRating[])}
      * after adding more images.
+     * Clears the next page cursor, so the following page will be fetched using its page number.
      *
      * @param images Images to add.
      * @param offset Current paging offset. (ie. page number)
+     * @see #addImages(Image[], int, String)
      */
     public void addImages(Image[] images, int offset) {
-        // Add images to list.
-        this.images.addAll(Arrays.asList(images));
-        // Set new offset.
-        this.offset = offset;
+        addImages(images, offset, null);
+    }
+
+    /**
+     * Add more images to this SearchResult.
+     * Usually called when new page of results has been fetched from the API.
+     * Don't forget to call {@link #filter(Tag[])} and {@link #filter(Image.SafeSearchRating[])}
+     * after adding more images.
+     *
+     * @param images         Images to add.
+     * @param offset         Current paging offset. (ie. page number)
+     * @param nextPageCursor Continuation token of the page the images were taken from.
+     *                       (see {@link #getNextPageCursor()})
+     */
+    public void addImages(Image[] images, int offset, String nextPageCursor) {
+        synchronized (writeLock) {
+            // Skip images that have already been included on previous pages.
+            final Image[] newImages;
+            synchronized (this) {
+                newImages = dropDuplicates(images, imageIds);
+            }
+            if (newImages.length != images.length) {
+                // May read the last pages back from disk, so it's done without holding the lock.
+                reorderImagePageOffsets(snapshot, newImages);
+            }
+
+            synchronized (this) {
+                snapshot = snapshot.append(newImages);
+
+                // Set new offset.
+                this.offset = offset;
+                this.nextPageCursor = nextPageCursor;
+            }
+        }
     }
     //endregion
 
@@ -139,10 +271,7 @@ public class SearchResult implements Parcelable {
         final Collection<Tag> tagList = CollectionUtils.removeAll(Arrays.asList(tags), Arrays.asList(query));
 
         // Remove images containing filtered tags.
-        CollectionUtils.filter(
-                images, image -> !CollectionUtils.containsAny(Arrays.asList(image.tags), tagList)
-        );
-        reorderImagePageOffsets();
+        filter(image -> !CollectionUtils.containsAny(Arrays.asList(image.tags), tagList));
     }
 
     /**
@@ -159,18 +288,129 @@ public class SearchResult implements Parcelable {
         // Concert filtered rating array to List
         final List<Image.SafeSearchRating> ratingList = Arrays.asList(safeSearchRatings);
         // Remove images containing filtered ratings.
-        CollectionUtils.filter(images, image -> ratingList.contains(image.safeSearchRating));
+        filter(image -> ratingList.contains(image.safeSearchRating));
+    }
+
+    /**
+     * Keep only images matching the given predicate, publishing a new snapshot.
+     * Chunks left unchanged by the filter are shared with the previous snapshot. Changed chunks are
+     * replaced by new chunks, holding copies of the images whose page positions changed, so snapshots
+     * published before filtering are not affected. Pages spilled to disk are read one at a time without
+     * holding the lock, and changed pages are spilled again instead of being kept in memory.
+     *
+     * @param predicate Predicate returning true for images to keep.
+     */
+    private void filter(Predicate<Image> predicate) {
+        synchronized (writeLock) {
+            final Snapshot oldSnapshot = snapshot;
+            // New versions of the chunks changed by the filter, by chunk ID. Null for removed chunks.
+            final Map<Long, Chunk> filteredChunks = new HashMap<>();
+
+            // Page positions are re-calculated from the first chunk changed by the filter.
+            int page = 0;
+            int offset = 0;
 
-        reorderImagePageOffsets();
+            for (Chunk chunk : oldSnapshot.chunks) {
+                final Image[] images = readChunk(chunk);
+                if (images == null) {
+                    // Spilled page could not be read back, drop it.
+                    filteredChunks.put(chunk.id, null);
+                    continue;
+                }
+
+                final List<Image> kept = new ArrayList<>(images.length);
+                for (Image image : images) {
+                    if (predicate.evaluate(image)) {
+                        kept.add(image);
+                    }
+                }
+
+                boolean chunkChanged = kept.size() != images.length;
+                for (int i = 0; i < kept.size(); i++) {
+                    Image image = kept.get(i);
+                    if (image.searchPage != null) {
+                        if (image.searchPage != page) {
+                            page = image.searchPage;
+                            offset = 0;
+                        }
+                        if (!filteredChunks.isEmpty() || chunkChanged) {
+                            if (image.searchPagePosition == null || image.searchPagePosition != offset) {
+                                image = new Image(image);
+                                image.searchPagePosition = offset;
+                                kept.set(i, image);
+                                chunkChanged = true;
+                            }
+                        }
+                        offset = image.searchPagePosition != null ? image.searchPagePosition + 1 : offset + 1;
+                    }
+                }
+
+                if (!chunkChanged) {
+                    continue;
+                } else if (kept.isEmpty()) {
+                    filteredChunks.put(chunk.id, null);
+                } else {
+                    final Chunk filteredChunk = new Chunk(chunk.page, kept.toArray(new Image[0]));
+                    filteredChunks.put(chunk.id, chunk.images != null ? filteredChunk : spill(filteredChunk));
+                }
+            }
+
+            if (!filteredChunks.isEmpty()) {
+                publishFilteredChunks(filteredChunks);
+                // The changed chunks are no longer part of the snapshot, so their spilled pages are not needed.
+                final PageSpillStore pageSpillStore = this.pageSpillStore;
+                if (pageSpillStore != null) {
+                    for (long chunkId : filteredChunks.keySet()) {
+                        pageSpillStore.delete(chunkId);
+                    }
+                }
+            }
+        }
     }
 
     /**
-     * Re-calculate image page offsets after filtering.
+     * Replace chunks of the current snapshot with their filtered versions.
+     * Windowing may have spilled or loaded chunks since they were filtered, but those keep their chunk ID.
+     * Chunks added since, or not changed by the filter, are kept as they are.
+     *
+     * @param filteredChunks New versions of the changed chunks, by chunk ID. Null for removed chunks.
      */
-    private void reorderImagePageOffsets() {
+    private synchronized void publishFilteredChunks(Map<Long, Chunk> filteredChunks) {
+        final List<Chunk> chunks = new ArrayList<>(snapshot.chunks.length);
+        for (Chunk chunk : snapshot.chunks) {
+            if (!filteredChunks.containsKey(chunk.id)) {
+                chunks.add(chunk);
+            } else if (filteredChunks.get(chunk.id) != null) {
+                chunks.add(filteredChunks.get(chunk.id));
+            }
+        }
+        snapshot = new Snapshot(chunks.toArray(new Chunk[0]));
+    }
+
+    /**
+     * Re-calculate page offsets of images after dropping duplicates.
+     *
+     * @param previous Snapshot preceding the updated images. Numbering continues from its last image.
+     * @param images   Images to update.
+     */
+    private void reorderImagePageOffsets(Snapshot previous, Image[] images) {
         int page = 0;
         int offset = 0;
 
+        // Continue numbering from the last image preceding the updated range.
+        lastNumberedImage:
+        for (int chunk = previous.chunks.length - 1; chunk >= 0; chunk--) {
+            final Image[] chunkImages = readChunk(previous.chunks[chunk]);
+            for (int i = chunkImages != null ? chunkImages.length - 1 : -1; i >= 0; i--) {
+                final Image image = chunkImages[i];
+                if (image.searchPage != null) {
+                    page = image.searchPage;
+                    offset = image.searchPagePosition != null ? image.searchPagePosition + 1 : 0;
+                    break lastNumberedImage;
+                }
+            }
+        }
+
         for (Image image : images) {
             if (image.searchPage != null) {
                 if (image.searchPage != page) {
@@ -192,10 +432,284 @@ public class SearchResult implements Parcelable {
      * @return A {@link SearchResult} containing only {@link Image}s for the given search paging offset.
      */
     public SearchResult getSearchResultForPage(final int page) {
-        Collection<Image> selectedImages = CollectionUtils.select(
-                images, image -> (image.searchPage != null && image.searchPage == page)
-        );
-        return new SearchResult(selectedImages.toArray(new Image[0]), this.query, page);
+        final List<Image> images = new ArrayList<>();
+        for (Chunk chunk : snapshot.chunksOnPage(page)) {
+            final Image[] chunkImages = readChunk(chunk);
+            if (chunkImages != null) {
+                images.addAll(Arrays.asList(chunkImages));
+            }
+        }
+        final SearchResult searchResult = new SearchResult(images.toArray(new Image[0]), getRequestQuery(), page);
+        if (requestQuery != null) {
+            searchResult.setUserQuery(query);
+        }
+        return searchResult;
+    }
+    //endregion
+
+    //region Memory usage
+
+    /**
+     * Replace the URLs of all images in this SearchResult with a compact encoding.
+     * Reduces memory usage of long endless scrolling sessions.
+     * Opt-in: the images' URL fields are null afterwards, until read using the getter methods
+     * (e.g. {@link Image#getFileUrl()}).
+     *
+     * @see Image#compactUrls()
+     */
+    public void compactUrls() {
+        for (Chunk chunk : snapshot.chunks) {
+            // Pages spilled to disk don't use any memory.
+            if (chunk.images != null) {
+                for (Image image : chunk.images) {
+                    image.compactUrls();
+                }
+            }
+        }
+    }
+
+    /**
+     * Enable windowing, so pages outside of the window can be spilled to disk with {@link #trimToWindow(int, int)}.
+     * Spilled pages are read back on the thread calling {@link #getImage(int)}.
+     *
+     * @param pageSpillStore Store the pages are written to. Null to disable windowing.
+     * @see #setPageSpillStore(PageSpillStore, Executor, OnPagesChangedListener)
+     */
+    public void setPageSpillStore(PageSpillStore pageSpillStore) {
+        setPageSpillStore(pageSpillStore, null, null);
+    }
+
+    /**
+     * Enable windowing, so pages outside of the window can be spilled to disk with {@link #trimToWindow(int, int)}.
+     * {@link #getImage(int)} returns null for images on spilled pages, while they're read back in the background.
+     *
+     * @param pageSpillStore Store the pages are written to. Null to disable windowing.
+     * @param executor       Executor used to read spilled pages back. Null to read them on the calling thread.
+     * @param listener       Listener notified when spilled pages are read back or dropped. May be null.
+     */
+    public void setPageSpillStore(PageSpillStore pageSpillStore, Executor executor, OnPagesChangedListener listener) {
+        this.pageSpillStore = pageSpillStore;
+        this.pageLoadExecutor = executor;
+        this.onPagesChangedListener = listener;
+    }
+
+    /**
+     * Keep only pages close to the given position in memory.
+     * Pages further away are written to the {@link PageSpillStore} and dropped from memory, while
+     * pages inside the window that were previously spilled are read back, so they're ready before
+     * the user scrolls to them. The last page is always kept in memory, as new pages continue from it.
+     * <p/>
+     * Performs disk I/O, so it should be called from a background thread. Does nothing unless a
+     * store has been set using {@link #setPageSpillStore(PageSpillStore)}.
+     *
+     * @param position Position of the image closest to the viewport.
+     * @param radius   Number of pages to keep in memory on either side of the page containing the position.
+     */
+    public void trimToWindow(int position, int radius) {
+        final PageSpillStore pageSpillStore = this.pageSpillStore;
+        final Snapshot current = snapshot;
+        if (pageSpillStore == null || current.size == 0) {
+            return;
+        }
+
+        boolean loadedChunks = false;
+        final int center = current.chunkAt(Math.max(0, Math.min(position, current.size - 1)));
+        for (int i = 0; i < current.chunks.length; i++) {
+            final Chunk chunk = current.chunks[i];
+            final boolean inWindow = Math.abs(i - center) <= radius || i == current.chunks.length - 1;
+            if (!inWindow && chunk.images != null) {
+                final Chunk spilled = spill(chunk);
+                if (spilled != chunk && !replaceChunk(chunk, spilled)) {
+                    // Replaced (e.g. by filtering) while the page was being written.
+                    deletePageIfUnused(chunk.id);
+                }
+            } else if (inWindow && chunk.images == null) {
+                loadChunk(chunk);
+                loadedChunks = true;
+            }
+        }
+        if (loadedChunks) {
+            notifyPagesChanged();
+        }
+    }
+
+    /**
+     * Write a chunk to the {@link PageSpillStore}.
+     *
+     * @param chunk Chunk with images.
+     * @return Spilled version of the chunk. The same chunk if it could not be written, so it's kept in memory.
+     */
+    private Chunk spill(Chunk chunk) {
+        final PageSpillStore pageSpillStore = this.pageSpillStore;
+        if (pageSpillStore == null) {
+            return chunk;
+        }
+        try {
+            pageSpillStore.write(chunk.id, chunk.images);
+            return chunk.spilled();
+        } catch (IOException e) {
+            return chunk;
+        }
+    }
+
+    /**
+     * Read a spilled chunk back into memory. Chunks that can't be read are dropped from the result.
+     *
+     * @param chunk Spilled chunk.
+     * @return True if the chunk was read, false if it was dropped.
+     */
+    private boolean loadChunk(Chunk chunk) {
+        final Image[] images = readChunk(chunk);
+        if (images != null) {
+            replaceChunk(chunk, chunk.loaded(images));
+            return true;
+        }
+        dropChunk(chunk);
+        return false;
+    }
+
+    /**
+     * Read a spilled chunk back into memory using the {@link #pageLoadExecutor}.
+     * The {@link #onPagesChangedListener} is notified once it's done.
+     *
+     * @param chunk    Spilled chunk.
+     * @param executor Executor used to read the chunk.
+     */
+    private void loadChunkAsync(final Chunk chunk, Executor executor) {
+        synchronized (this) {
+            if (!loadingChunkIds.add(chunk.id)) {
+                // Already being read.
+                return;
+            }
+        }
+        executor.execute(() -> {
+            loadChunk(chunk);
+            synchronized (SearchResult.this) {
+                loadingChunkIds.remove(chunk.id);
+            }
+            notifyPagesChanged();
+        });
+    }
+
+    /**
+     * Notify the {@link #onPagesChangedListener}, if set.
+     */
+    private void notifyPagesChanged() {
+        final OnPagesChangedListener listener = this.onPagesChangedListener;
+        if (listener != null) {
+            listener.onPagesChanged(this);
+        }
+    }
+
+    /**
+     * Get the images of a page, reading them from the {@link PageSpillStore} if the page was spilled to disk.
+     * Pages read from disk are not put back into memory.
+     *
+     * @param chunk Page chunk.
+     * @return Images on the page. Null if the spilled page could not be read from disk.
+     */
+    @Nullable
+    private Image[] readChunk(Chunk chunk) {
+        if (chunk.images != null) {
+            return chunk.images;
+        }
+
+        final PageSpillStore pageSpillStore = this.pageSpillStore;
+        if (pageSpillStore == null) {
+            return null;
+        }
+        try {
+            final Image[] images = pageSpillStore.read(chunk.id);
+            return images.length == chunk.size ? images : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get all images in a snapshot, reading spilled pages from disk.
+     * Pages that can't be read back are dropped from the result.
+     *
+     * @param snapshot Snapshot.
+     * @return Images in the snapshot.
+     */
+    private Image[] readImages(Snapshot snapshot) {
+        final List<Image> images = new ArrayList<>(snapshot.size);
+        for (Chunk chunk : snapshot.chunks) {
+            final Image[] chunkImages = readChunk(chunk);
+            if (chunkImages != null) {
+                images.addAll(Arrays.asList(chunkImages));
+            } else {
+                dropChunk(chunk);
+            }
+        }
+        return images.toArray(new Image[0]);
+    }
+
+    /**
+     * Replace a chunk of the current snapshot with its spilled or loaded version.
+     * Ignored if the chunk has been replaced (e.g. by filtering) in the meantime.
+     *
+     * @param oldChunk Chunk to replace.
+     * @param newChunk New version of the chunk.
+     * @return True if the chunk was replaced.
+     */
+    private synchronized boolean replaceChunk(Chunk oldChunk, Chunk newChunk) {
+        final Snapshot oldSnapshot = snapshot;
+        snapshot = oldSnapshot.replace(oldChunk, newChunk);
+        return snapshot != oldSnapshot;
+    }
+
+    /**
+     * Delete the spilled page of a chunk, unless a version of the chunk is still part of the current snapshot.
+     * Chunks removed from the snapshot never come back, so the page can't be needed again once this check passes.
+     *
+     * @param chunkId ID of the chunk.
+     */
+    private void deletePageIfUnused(long chunkId) {
+        final PageSpillStore pageSpillStore = this.pageSpillStore;
+        if (pageSpillStore == null) {
+            return;
+        }
+        synchronized (this) {
+            for (Chunk chunk : snapshot.chunks) {
+                if (chunk.id == chunkId) {
+                    return;
+                }
+            }
+        }
+        pageSpillStore.delete(chunkId);
+    }
+
+    /**
+     * Remove a spilled chunk that could not be read back from the current snapshot.
+     * Its image IDs are kept, so the images aren't added again if a later page returns them.
+     *
+     * @param chunk Chunk to remove.
+     */
+    private synchronized void dropChunk(Chunk chunk) {
+        snapshot = snapshot.remove(chunk);
+    }
+    //endregion
+
+    //region Image ID index
+
+    /**
+     * Drop images that have already been added, or appear more than once in the given array.
+     *
+     * @param images   Images to add.
+     * @param imageIds IDs of images already added. New IDs are added to the set.
+     * @return Images not added yet. The same array if there were no duplicates.
+     */
+    private static Image[] dropDuplicates(Image[] images, LongHashSet imageIds) {
+        final List<Image> newImages = new ArrayList<>(images.length);
+        for (Image image : images) {
+            final long id = image.getUniqueId();
+            if (id == -1 || imageIds.add(id)) {
+                newImages.add(image);
+            }
+        }
+        return newImages.size() == images.length ? images : newImages.toArray(new Image[0]);
     }
     //endregion
 
@@ -203,11 +717,58 @@ public class SearchResult implements Parcelable {
 
     /**
      * Get {@link Image}s contained in this SearchResult.
+     * Copies all images into a new array: use {@link #getImage(int)} and {@link #getImageCount()}
+     * to access images one at a time.
      *
      * @return {@link Image}s returned by this SearchResult.
      */
     public Image[] getImages() {
-        return images.toArray(new Image[0]);
+        return readImages(snapshot);
+    }
+
+    /**
+     * Get a single {@link Image} contained in this SearchResult.
+     * <p/>
+     * If the image's page was spilled to disk, it's read back using the executor set with
+     * {@link #setPageSpillStore(PageSpillStore, Executor, OnPagesChangedListener)} and null is returned
+     * until the {@link OnPagesChangedListener} is notified. Without an executor, the page is read on the
+     * calling thread.
+     *
+     * @param position Position of the image, between 0 and {@link #getImageCount()}.
+     * @return Image at the given position. Null if its page is being read back from disk, or could not be read.
+     * @throws IndexOutOfBoundsException Position out of range.
+     */
+    @Nullable
+    public Image getImage(int position) {
+        final Snapshot snapshot = this.snapshot;
+        final int index = snapshot.chunkAt(position);
+        final Chunk chunk = snapshot.chunks[index];
+
+        Image[] images = chunk.images;
+        if (images == null) {
+            // Scrolled back to a page spilled to disk, put it back into memory.
+            final Executor executor = pageLoadExecutor;
+            if (executor != null) {
+                loadChunkAsync(chunk, executor);
+                return null;
+            }
+            images = readChunk(chunk);
+            if (images == null) {
+                dropChunk(chunk);
+                return null;
+            }
+            replaceChunk(chunk, chunk.loaded(images));
+        }
+        return images[position - snapshot.chunkStarts[index]];
+    }
+
+    /**
+     * Get the number of {@link Image}s contained in this SearchResult.
+     *
+     * @return Number of images.
+     */
+    public int getImageCount() {
+        return snapshot.size;
     }
 
     /**
@@ -226,12 +787,58 @@ public class SearchResult implements Parcelable {
     /**
      * Get array of {@link Tag}s used to retrieve this SearchResult.
      *
-     * @return {@link Tag}s used to retrieve this SearchResult.
+     * @return {@link Tag}s used to retrieve this SearchResult. The query entered by the user, if set
+     * using {@link #setUserQuery(Tag[])}.
      */
     public Tag[] getQuery() {
         return query;
     }
 
+    /**
+     * Get array of {@link Tag}s sent to the API to retrieve this SearchResult.
+     * Used by {@link io.github.tjg1.library.norilib.clients.SearchClient}s to fetch the following pages.
+     *
+     * @return {@link Tag}s sent to the API. The same as {@link #getQuery()}, unless the query was rewritten.
+     */
+    public Tag[] getRequestQuery() {
+        return requestQuery != null ? requestQuery : query;
+    }
+
+    /**
+     * Set the query entered by the user, when the query sent to the API was rewritten (e.g. by a
+     * query planner). {@link #getQuery()} returns the user's query, shown in the UI and search
+     * history, while the following pages are still fetched using the rewritten query.
+     *
+     * @param userQuery Tags entered by the user.
+     */
+    public synchronized void setUserQuery(Tag[] userQuery) {
+        if (requestQuery == null) {
+            requestQuery = query;
+        }
+        query = userQuery.clone();
+    }
+
+    /**
+     * Get the API-specific continuation token used to fetch the page following the last page in this
+     * SearchResult. Fetching pages relative to the last seen image keeps deep pages fast to retrieve
+     * and consistent when new images are uploaded while the user is scrolling.
+     *
+     * @return Continuation token. Null if the next page should be fetched using its page number.
+     */
+    public String getNextPageCursor() {
+        return nextPageCursor;
+    }
+
+    /**
+     * Set the API-specific continuation token used to fetch the next page.
+     * This should be called by the API clients when parsing a page of results.
+     *
+     * @param nextPageCursor Continuation token. Null to fall back to page numbers.
+     */
+    public void setNextPageCursor(String nextPageCursor) {
+        this.nextPageCursor = nextPageCursor;
+    }
+
     /**
      * True if this SearchResult may contain another page that has not been retrieved yet.
      * Useful when implementing endless scrolling.
@@ -257,4 +864,237 @@ public class SearchResult implements Parcelable {
         hasNextPage = false;
     }
     //endregion
+
+    //region Inner classes: Snapshot & chunks
+
+    /**
+     * Images received on a single page of results. Immutable and never empty.
+     */
+    private static final class Chunk {
+        /**
+         * Value of {@link #page} for images not received from a search.
+         */
+        static final int PAGE_UNKNOWN = -1;
+        /**
+         * Source of unique chunk IDs, used to name pages spilled to disk.
+         */
+        private static final AtomicLong nextId = new AtomicLong();
+        /**
+         * Unique ID of the chunk. Shared by its spilled and loaded versions.
+         */
+        final long id;
+        /**
+         * Search result page the images were received on. {@link #PAGE_UNKNOWN} if not known.
+         */
+        final int page;
+        /**
+         * Number of images on the page.
+         */
+        final int size;
+        /**
+         * Images on the page. Never modified after the chunk has been created.
+         * Null if the page has been spilled to disk.
+         */
+        final Image[] images;
+
+        /**
+         * Create a new page chunk.
+         *
+         * @param page   Search result page.
+         * @param images Images on the page.
+         */
+        Chunk(int page, Image[] images) {
+            this(nextId.getAndIncrement(), page, images.length, images);
+        }
+
+        /**
+         * Create a new version of a page chunk.
+         *
+         * @param id     Chunk ID.
+         * @param page   Search result page.
+         * @param size   Number of images on the page.
+         * @param images Images on the page. Null if spilled to disk.
+         */
+        private Chunk(long id, int page, int size, Image[] images) {
+            this.id = id;
+            this.page = page;
+            this.size = size;
+            this.images = images;
+        }
+
+        /**
+         * Get the version of this chunk spilled to disk.
+         *
+         * @return Chunk without images.
+         */
+        Chunk spilled() {
+            return new Chunk(id, page, size, null);
+        }
+
+        /**
+         * Get the version of this chunk with the images read back from disk.
+         *
+         * @param images Images read from disk.
+         * @return Chunk with images.
+         */
+        Chunk loaded(Image[] images) {
+            return new Chunk(id, page, size, images);
+        }
+    }
+
+    /**
+     * Immutable list of page chunks.
+     */
+    private static final class Snapshot {
+        /**
+         * Snapshot without any images.
+         */
+        static final Snapshot EMPTY = new Snapshot(new Chunk[0]);
+        /**
+         * Page chunks, in the order they were received.
+         */
+        final Chunk[] chunks;
+        /**
+         * Position of the first image of each chunk.
+         */
+        final int[] chunkStarts;
+        /**
+         * Total number of images.
+         */
+        final int size;
+
+        /**
+         * Create a new snapshot.
+         *
+         * @param chunks Page chunks. Must not be modified after creating the snapshot.
+         */
+        Snapshot(Chunk[] chunks) {
+            this.chunks = chunks;
+            this.chunkStarts = new int[chunks.length];
+            int size = 0;
+            for (int i = 0; i < chunks.length; i++) {
+                chunkStarts[i] = size;
+                size += chunks[i].size;
+            }
+            this.size = size;
+        }
+
+        /**
+         * Create a new snapshot with images appended.
+         * Images are split into chunks by their search result page.
+         *
+         * @param images Images to append.
+         * @return New snapshot.
+         */
+        Snapshot append(Image[] images) {
+            final List<Chunk> newChunks = new ArrayList<>(chunks.length + 1);
+            newChunks.addAll(Arrays.asList(chunks));
+
+            int runStart = 0;
+            for (int i = 1; i <= images.length; i++) {
+                if (i == images.length || !Objects.equals(images[i].searchPage, images[runStart].searchPage)) {
+                    // Always copy, so the chunk can't be modified through the caller's array.
+                    final int page = images[runStart].searchPage != null ? images[runStart].searchPage : Chunk.PAGE_UNKNOWN;
+                    newChunks.add(new Chunk(page, Arrays.copyOfRange(images, runStart, i)));
+                    runStart = i;
+                }
+            }
+            return new Snapshot(newChunks.toArray(new Chunk[0]));
+        }
+
+        /**
+         * Get the index of the chunk containing the image at given position.
+         *
+         * @param position Image position.
+         * @return Chunk index.
+         * @throws IndexOutOfBoundsException Position out of range.
+         */
+        int chunkAt(int position) {
+            if (position < 0 || position >= size) {
+                throw new IndexOutOfBoundsException("Invalid image position: " + position + ", size: " + size);
+            }
+            final int chunk = Arrays.binarySearch(chunkStarts, position);
+            return chunk >= 0 ? chunk : -chunk - 2;
+        }
+
+        /**
+         * Get chunks with images received on the given page.
+         * Pages are normally fetched in order, so the chunk is usually found at its page number
+         * relative to the first chunk, without scanning the others.
+         *
+         * @param page Search result page.
+         * @return Chunks on the page.
+         */
+        List<Chunk> chunksOnPage(int page) {
+            if (chunks.length != 0) {
+                final int guess = page - chunks[0].page;
+                if (guess >= 0 && guess < chunks.length && chunks[guess].page == page
+                        && (guess + 1 == chunks.length || chunks[guess + 1].page != page)
+                        && (guess == 0 || chunks[guess - 1].page != page)) {
+                    return Collections.singletonList(chunks[guess]);
+                }
+            }
+
+            final List<Chunk> pageChunks = new ArrayList<>();
+            for (Chunk chunk : chunks) {
+                if (chunk.page == page) {
+                    pageChunks.add(chunk);
+                }
+            }
+            return pageChunks;
+        }
+
+        /**
+         * Create a new snapshot with a chunk removed.
+         *
+         * @param chunk Chunk to remove.
+         * @return New snapshot. This snapshot if it doesn't contain the chunk.
+         */
+        Snapshot remove(Chunk chunk) {
+            for (int i = 0; i < chunks.length; i++) {
+                if (chunks[i] == chunk) {
+                    final Chunk[] newChunks = new Chunk[chunks.length - 1];
+                    System.arraycopy(chunks, 0, newChunks, 0, i);
+                    System.arraycopy(chunks, i + 1, newChunks, i, chunks.length - i - 1);
+                    return new Snapshot(newChunks);
+                }
+            }
+            return this;
+        }
+
+        /**
+         * Create a new snapshot with a chunk replaced.
+         *
+         * @param oldChunk Chunk to replace.
+         * @param newChunk Replacement chunk. Must contain the same number of images.
+         * @return New snapshot. This snapshot if it doesn't contain the chunk.
+         */
+        Snapshot replace(Chunk oldChunk, Chunk newChunk) {
+            for (int i = 0; i < chunks.length; i++) {
+                if (chunks[i] == oldChunk) {
+                    final Chunk[] newChunks = chunks.clone();
+                    newChunks[i] = newChunk;
+                    return new Snapshot(newChunks);
+                }
+            }
+            return this;
+        }
+    }
+    //endregion
+
+    //region Listener interface
+
+    /**
+     * Listener notified when pages spilled to disk change state in the background.
+     */
+    public interface OnPagesChangedListener {
+        /**
+         * Called on the page load executor's thread when spilled pages have been read back into memory,
+         * or dropped from the search result because they could not be read. Positions of images may have changed.
+         *
+         * @param searchResult Search result.
+         */
+        void onPagesChanged(@NonNull SearchResult searchResult);
+    }
+    //endregion
 }
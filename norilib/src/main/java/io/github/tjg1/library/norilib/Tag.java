@@ -9,7 +9,10 @@ package io.github.tjg1.library.norilib;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import java.lang.ref.WeakReference;
+import java.util.Map;
 import java.util.Objects;
+import java.util.WeakHashMap;
 
 /**
  * Image tag
@@ -56,6 +59,14 @@ public class Tag implements Comparable<Tag>, Parcelable {
     }
     //endregion
 
+    //region Static fields
+    /**
+     * Pool of interned tags. Weakly referenced, so tags are dropped once no image uses them.
+     * Guarded by its own lock.
+     */
+    private static final Map<Tag, WeakReference<Tag>> internedTags = new WeakHashMap<>();
+    //endregion
+
     //region Instance fields
     /**
      * Tag name
@@ -89,6 +100,28 @@ public class Tag implements Comparable<Tag>, Parcelable {
         this.name = name;
         this.type = type;
     }
+
+    /**
+     * Get a shared instance of a tag.
+     * Search results repeat the same tags on many images, so sharing them keeps a single copy
+     * of each tag (and its name) in memory.
+     *
+     * @param name Tag name.
+     * @param type Tag type.
+     * @return Interned tag.
+     */
+    public static Tag valueOf(String name, Type type) {
+        final Tag tag = new Tag(name, type);
+        synchronized (internedTags) {
+            final WeakReference<Tag> reference = internedTags.get(tag);
+            final Tag interned = reference != null ? reference.get() : null;
+            if (interned != null) {
+                return interned;
+            }
+            internedTags.put(tag, new WeakReference<>(tag));
+        }
+        return tag;
+    }
     //endregion
 
     //region Equality & Comparisons
@@ -208,7 +241,7 @@ public class Tag implements Comparable<Tag>, Parcelable {
         // Convert each String into a Tag object.
         final Tag[] tags = new Tag[strings.length];
         for (int i = 0; i < strings.length; i++) {
-            tags[i] = new Tag(strings[i], type);
+            tags[i] = valueOf(strings[i], type);
         }
         return tags;
     }
@@ -216,7 +249,7 @@ public class Tag implements Comparable<Tag>, Parcelable {
     public static Tag[] arrayFromStringArray(String[] tagArray, Tag.Type type) {
         final Tag[] tags = new Tag[tagArray.length];
         for (int i = 0; i < tagArray.length; i++) {
-            tags[i] = new Tag(tagArray[i], type);
+            tags[i] = valueOf(tagArray[i], type);
         }
         return tags;
     }
@@ -13,46 +13,47 @@ import android.text.TextUtils;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.koushikdutta.async.DataEmitter;
-import com.koushikdutta.async.DataSink;
-import com.koushikdutta.async.callback.CompletedCallback;
-import com.koushikdutta.async.future.Future;
-import com.koushikdutta.async.future.TransformFuture;
-import com.koushikdutta.async.parser.AsyncParser;
-import com.koushikdutta.async.parser.StringParser;
-import com.koushikdutta.ion.Ion;
-import com.koushikdutta.ion.Response;
-
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.lang.reflect.Type;
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.ExecutionException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.github.tjg1.library.norilib.Image;
 import io.github.tjg1.library.norilib.SearchResult;
 import io.github.tjg1.library.norilib.Tag;
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+import io.github.tjg1.library.norilib.http.HttpCall;
+import io.github.tjg1.library.norilib.http.HttpRequest;
+import io.github.tjg1.library.norilib.http.HttpResponse;
+import io.github.tjg1.library.norilib.http.HttpTransport;
+import io.github.tjg1.library.norilib.http.HttpTransports;
+import io.github.tjg1.library.norilib.util.SearchPageCache;
+import io.github.tjg1.library.norilib.util.Timestamps;
 
 /**
  * Client for the Danbooru 2.x API.
  */
 public class Danbooru implements SearchClient {
-    static final DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ", Locale.US);
     //region Constants
     /**
      * Number of images per search results page.
      * Best to use a large value to minimize number of unique HTTP requests.
      */
     private static final int DEFAULT_LIMIT = 100;
+    /**
+     * Largest number of images per page accepted by the API.
+     */
+    private static final int MAX_LIMIT = 200;
     /**
      * Thumbnail size set if not returned by the API.
      */
@@ -61,6 +62,21 @@ public class Danbooru implements SearchClient {
      * Sample size set if not returned by the API.
      */
     private static final int SAMPLE_SIZE = 850;
+    /**
+     * Number of tags anonymous users and basic accounts can search for at once.
+     */
+    private static final int DEFAULT_TAG_QUERY_LIMIT = 2;
+    /**
+     * Post fields read by {@link #parseJSONResponse(String, String, int)}.
+     * Requested using the "only" parameter, so unused fields aren't sent at all.
+     */
+    private static final String RESPONSE_FIELDS = "id,created_at,rating,file_url,file_ext,md5,image_width," +
+            "image_height,preview_file_url,large_file_url,source,tag_string_artist,tag_string_character," +
+            "tag_string_copyright,tag_string_general,tag_string_meta,parent_id,score";
+    /**
+     * Metatags that sort results by something other than the post ID, so keyset pagination can't be used.
+     */
+    private static final String[] ORDERING_METATAGS = {"order:", "ordfav:", "ordpool:", "ordfavgroup:", "random:"};
     //endregion
 
     //region Service configuration instance fields
@@ -84,6 +100,26 @@ public class Danbooru implements SearchClient {
      * API key used for authentication. (optional)
      */
     protected final String apiKey;
+    /**
+     * Transport used to send API requests.
+     */
+    protected final HttpTransport transport;
+    /**
+     * Cache of fetched pages, revalidated using conditional requests.
+     */
+    protected final SearchPageCache pageCache;
+    /**
+     * Number of tags the authenticated account can search for at once, read from its profile. 0 until known.
+     */
+    private volatile int accountTagQueryLimit = 0;
+    /**
+     * Set once the account's profile has been requested, so it's only fetched once.
+     */
+    private final AtomicBoolean profileRequested = new AtomicBoolean();
+    /**
+     * Set if the API returned post fields that weren't requested, so it doesn't support the "only" parameter.
+     */
+    private volatile boolean responseFieldsIgnored = false;
     //endregion
 
     //region Constructors
@@ -100,6 +136,8 @@ public class Danbooru implements SearchClient {
         this.apiEndpoint = endpoint;
         this.username = null;
         this.apiKey = null;
+        this.transport = HttpTransports.getDefault(context);
+        this.pageCache = SearchPageCache.getInstance(context);
     }
 
     /**
@@ -116,6 +154,8 @@ public class Danbooru implements SearchClient {
         this.apiEndpoint = endpoint;
         this.username = username;
         this.apiKey = apiKey;
+        this.transport = HttpTransports.getDefault(context);
+        this.pageCache = SearchPageCache.getInstance(context);
     }
     //endregion
 
@@ -132,49 +172,16 @@ public class Danbooru implements SearchClient {
     @Nullable
     public static String detectService(@NonNull Context context, @NonNull Uri uri, int timeout) {
         final String endpointUrl = Uri.withAppendedPath(uri, "/post.json").toString();
+        final HttpRequest request = new HttpRequest.Builder(endpointUrl)
+                .timeout(timeout)
+                .followRedirects(false)
+                .noCache()
+                .build();
 
-        try {
-            final Response<DataEmitter> response = Ion.with(context)
-                    .load(endpointUrl)
-                    .setTimeout(timeout)
-                    .userAgent(SearchClient.USER_AGENT)
-                    .followRedirect(false)
-                    .noCache()
-                    .asDataEmitter()
-                    .withResponse()
-                    .get();
-
-            // Close the connection.
-            final DataEmitter dataEmitter = response.getResult();
-            if (dataEmitter != null) dataEmitter.close();
-
-            if (response.getHeaders().code() == 200) {
-                return uri.toString();
-            }
-        } catch (InterruptedException | ExecutionException ignored) {
-        }
-        return null;
+        return HttpSearch.isOk(HttpTransports.getDefault(context), request) ? uri.toString() : null;
     }
     //endregion
 
-    /**
-     * Create a {@link java.util.Date} object from String date representation used by this API.
-     *
-     * @param date Date string.
-     * @return Date converted from given String.
-     */
-    protected static Date dateFromString(String date) throws ParseException {
-        // Normalise the ISO8601 time zone into a format parse-able by SimpleDateFormat.
-        if (!TextUtils.isEmpty(date)) {
-            String newDate = date.replace("Z", "+0000");
-            if (newDate.length() == 25) {
-                newDate = newDate.substring(0, 22) + newDate.substring(23); // Remove timezone colon.
-            }
-            return DATE_FORMAT.parse(newDate);
-        }
-        return null;
-    }
-
     //region SearchClient methods
     @Override
     public SearchResult search(String tags) throws IOException {
@@ -183,18 +190,8 @@ public class Danbooru implements SearchClient {
     }
 
     @Override
-    public SearchResult search(String tags, int pid) throws IOException {
-        try {
-            return Ion.with(this.context)
-                    .load(createSearchURL(tags, pid, DEFAULT_LIMIT))
-                    .userAgent(SearchClient.USER_AGENT)
-                    .as(new SearchResultParser(tags, pid))
-                    .get();
-        } catch (InterruptedException | ExecutionException e) {
-            // Normalise exception to IOException, so method signatures are not tied to a single HTTP
-            // library.
-            throw new IOException(e);
-        }
+    public SearchResult search(final String tags, final int pid) throws IOException {
+        return fetchPage(tags, pid, getDefaultLimit());
     }
 
     @Override
@@ -205,19 +202,196 @@ public class Danbooru implements SearchClient {
 
     @Override
     public void search(final String tags, final int pid, final SearchCallback callback) {
-        Ion.with(this.context)
-                .load(createSearchURL(tags, pid, DEFAULT_LIMIT))
-                .userAgent(SearchClient.USER_AGENT)
-                .as(new SearchResultParser(tags, pid))
-                .setCallback((e, result) -> {
-                    if (e != null) {
-                        callback.onFailure(new IOException(e));
-                    } else {
-                        callback.onSuccess(result);
+        fetchPage(tags, pid, getDefaultLimit(), callback);
+    }
+
+    @Override
+    public SearchResult search(final String tags, int fromPage, int pageCount, int limit) throws IOException {
+        return PagedSearch.searchSync(tags, fromPage, pageCount, limit, getMaxLimit(),
+                (pid, pageLimit) -> fetchPage(tags, pid, pageLimit));
+    }
+
+    @Override
+    public void search(final String tags, int fromPage, int pageCount, int limit, SearchCallback callback) {
+        PagedSearch.search(tags, fromPage, pageCount, limit, getMaxLimit(),
+                (pid, pageLimit, pageCallback) -> fetchPage(tags, pid, pageLimit, pageCallback), callback);
+    }
+
+    @Override
+    public void searchNextPage(SearchResult searchResult, SearchCallback callback) {
+        final String cursor = searchResult.getNextPageCursor();
+        if (cursor == null) {
+            SearchClient.super.searchNextPage(searchResult, callback);
+            return;
+        }
+
+        // Fetch images older than the last image received instead of skipping N pages server-side.
+        final String tags = Tag.stringFromArray(searchResult.getRequestQuery());
+        fetchPage(createSearchURL(tags, cursor, getDefaultLimit()),
+                SearchRequestCoalescer.createKey(apiEndpoint, username, tags, cursor, getDefaultLimit()),
+                tags, searchResult.getCurrentOffset() + 1, callback);
+    }
+
+    @Override
+    public void searchNextPages(SearchResult searchResult, int pageCount, SearchCallback callback) {
+        if (searchResult.getNextPageCursor() == null || pageCount <= 1) {
+            SearchClient.super.searchNextPages(searchResult, pageCount, callback);
+            return;
+        }
+
+        // Fetch as many pages with each request as the API's maximum page size allows.
+        PagedSearch.searchNextPages(searchResult, pageCount, Math.max(1, getMaxLimit() / getDefaultLimit()),
+                this::fetchNextPages, callback);
+    }
+
+    /**
+     * Asynchronously fetch several pages with a single request, relative to the last image received.
+     *
+     * @param searchResult Search result with the next page cursor to continue from.
+     * @param pageCount    Number of pages to fetch. Must fit within {@link #getMaxLimit()}.
+     * @param callback     Callback listening for the SearchResult returned in the background.
+     */
+    private void fetchNextPages(SearchResult searchResult, final int pageCount, final SearchCallback callback) {
+        final String cursor = searchResult.getNextPageCursor();
+        final String tags = Tag.stringFromArray(searchResult.getRequestQuery());
+        final int firstPage = searchResult.getCurrentOffset() + 1;
+        final int pageLimit = getDefaultLimit();
+        final int limit = pageLimit * pageCount;
+        fetchPage(createSearchURL(tags, cursor, limit),
+                SearchRequestCoalescer.createKey(apiEndpoint, username, tags, cursor, limit),
+                tags, firstPage, new SearchCallback() {
+                    @Override
+                    public void onFailure(IOException e) {
+                        callback.onFailure(e);
+                    }
+
+                    @Override
+                    public void onSuccess(SearchResult page) {
+                        // Re-number images, as if every page was fetched separately.
+                        final Image[] images = page.getImages();
+                        for (int i = 0; i < images.length; i++) {
+                            images[i].searchPage = firstPage + i / pageLimit;
+                            images[i].searchPagePosition = i % pageLimit;
+                        }
+                        final SearchResult searchResult = new SearchResult(images, page.getQuery(),
+                                firstPage + Math.max(0, images.length - 1) / pageLimit);
+                        searchResult.setNextPageCursor(page.getNextPageCursor());
+                        if (!page.hasNextPage()) {
+                            searchResult.onLastPage();
+                        }
+                        callback.onSuccess(searchResult);
                     }
                 });
     }
 
+    @Override
+    public int getDefaultLimit() {
+        return DEFAULT_LIMIT;
+    }
+
+    @Override
+    public int getMaxLimit() {
+        return MAX_LIMIT;
+    }
+
+    @Override
+    public QueryPlanner getQueryPlanner() {
+        // "s" is "sensitive" on Danbooru, not "safe", so safe images can't be excluded reliably.
+        // Rating metatags don't count towards the tag limit.
+        return new QueryPlanner(getTagQueryLimit(), false, null, "-rating:q", "-rating:e");
+    }
+
+    /**
+     * Get the number of tags that can be searched for at once.
+     * Accounts with a higher limit (e.g. Gold accounts) get it once their profile has been fetched
+     * in the background, which starts the first time this method is called.
+     *
+     * @return Tag count limit of the account, or of anonymous users.
+     */
+    private int getTagQueryLimit() {
+        if (TextUtils.isEmpty(username) || TextUtils.isEmpty(apiKey)) {
+            return DEFAULT_TAG_QUERY_LIMIT;
+        }
+        if (accountTagQueryLimit == 0 && profileRequested.compareAndSet(false, true)) {
+            fetchTagQueryLimit();
+        }
+        return accountTagQueryLimit != 0 ? accountTagQueryLimit : DEFAULT_TAG_QUERY_LIMIT;
+    }
+
+    /**
+     * Read the tag count limit of the authenticated account from its profile, in the background.
+     */
+    private void fetchTagQueryLimit() {
+        final String url = String.format(Locale.US, "%s/profile.json?login=%s&api_key=%s",
+                apiEndpoint, Uri.encode(username), Uri.encode(apiKey));
+        transport.newCall(new HttpRequest.Builder(url).build()).enqueue(new HttpCall.Callback() {
+            @Override
+            public void onFailure(@NonNull IOException e) {
+                // Try again on the next search.
+                profileRequested.set(false);
+            }
+
+            @Override
+            public void onResponse(@NonNull HttpResponse response) {
+                try (HttpResponse profile = response) {
+                    if (profile.isSuccessful()) {
+                        // Keep the default limit if the field is missing or null.
+                        final int limit = new JSONObject(profile.getBodyAsString()).optInt("tag_query_limit");
+                        if (limit > 0) {
+                            accountTagQueryLimit = limit;
+                        }
+                    }
+                } catch (IOException | JSONException e) {
+                    profileRequested.set(false);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetch a single page of search results on the calling thread.
+     *
+     * @param tags  Search query. A space-separated list of tags.
+     * @param pid   Page number. (zero-indexed)
+     * @param limit Images to fetch per page.
+     * @return A {@link SearchResult} containing a set of Images.
+     * @throws IOException Network error.
+     */
+    protected SearchResult fetchPage(final String tags, final int pid, int limit) throws IOException {
+        return HttpSearch.searchSync(transport, pageCache, new HttpRequest.Builder(createSearchURL(tags, pid, limit)).build(),
+                body -> parseSearchResult(body, tags, pid));
+    }
+
+    /**
+     * Asynchronously fetch a single page of search results.
+     *
+     * @param tags     Search query. A space-separated list of tags.
+     * @param pid      Page number. (zero-indexed)
+     * @param limit    Images to fetch per page.
+     * @param callback Callback listening for the SearchResult returned in the background.
+     */
+    protected void fetchPage(final String tags, final int pid, int limit, final SearchCallback callback) {
+        fetchPage(createSearchURL(tags, pid, limit),
+                SearchRequestCoalescer.createKey(apiEndpoint, username, tags, Integer.toString(pid), limit),
+                tags, pid, callback);
+    }
+
+    /**
+     * Asynchronously fetch and parse a single page of search results.
+     * Identical requests already in flight are shared instead of being sent again.
+     *
+     * @param url        Search API request URL.
+     * @param requestKey Key identifying the request. (see {@link SearchRequestCoalescer#createKey(String, String, String, String, int)})
+     * @param tags       Search query. A space-separated list of tags.
+     * @param pid        Page number (zero-indexed) to assign to the returned SearchResult.
+     * @param callback   Callback listening for the SearchResult returned in the background.
+     */
+    private void fetchPage(final String url, String requestKey, final String tags, final int pid,
+                           SearchCallback callback) {
+        SearchRequestCoalescer.execute(requestKey, callback, requestCallback -> HttpSearch.search(transport, pageCache,
+                new HttpRequest.Builder(url).build(), body -> parseSearchResult(body, tags, pid), requestCallback));
+    }
+
     @Override
     public String getDefaultQuery() {
         // Show work-safe images by default.
@@ -226,7 +400,8 @@ public class Danbooru implements SearchClient {
 
     @Override
     public Settings getSettings() {
-        return new Settings(Settings.APIType.DANBOARD, name, apiEndpoint, username, apiKey);
+        return new Settings(Settings.APIType.DANBOARD, name, apiEndpoint, username, apiKey,
+                EndpointHealth.getInstance().getMirrors(apiEndpoint));
     }
     //endregion
 
@@ -250,15 +425,79 @@ public class Danbooru implements SearchClient {
      */
     protected String createSearchURL(String tags, int pid, int limit) {
         // Page numbers are 1-indexed for this API.
-        final int page = pid + 1;
+        return createSearchURL(tags, Integer.toString(pid + 1), limit);
+    }
 
+    /**
+     * Generate request URL to the search API endpoint.
+     *
+     * @param tags  Space-separated tags.
+     * @param page  Value of the page parameter. Either a 1-indexed page number,
+     *              or a "b&lt;id&gt;"/"a&lt;id&gt;" cursor (images before/after given ID).
+     * @param limit Images to fetch per page.
+     * @return URL to search results API.
+     */
+    protected String createSearchURL(String tags, String page, int limit) {
+        String url = String.format(Locale.US, "%s/posts.json?tags=%s&page=%s&limit=%d",
+                apiEndpoint, Uri.encode(tags), page, limit);
+        final String responseFields = responseFieldsIgnored ? null : getResponseFields();
+        if (responseFields != null) {
+            url += "&only=" + responseFields;
+        }
         if (!TextUtils.isEmpty(this.username) && !TextUtils.isEmpty(this.apiKey)) {
+            url += String.format(Locale.US, "&login=%s&api_key=%s",
+                    Uri.encode(this.username), Uri.encode(this.apiKey));
+        }
+        return url;
+    }
+
+    /**
+     * Get the post fields to request from the API, to avoid downloading fields that aren't parsed.
+     * Subclasses for APIs known not to support the "only" parameter should return null to keep the URL short.
+     * Otherwise, the parameter stops being sent once a response contains fields that weren't requested.
+     * (see {@link #detectIgnoredResponseFields(JSONObject)})
+     *
+     * @return Comma-separated list of post fields. Null to request all fields.
+     */
+    @Nullable
+    protected String getResponseFields() {
+        return RESPONSE_FIELDS;
+    }
 
-            return String.format(Locale.US, "%s/posts.json?tags=%s&page=%d&limit=%d&login=%s&api_key=%s",
-                    apiEndpoint, Uri.encode(tags), page, limit, Uri.encode(this.username), Uri.encode(this.apiKey));
+    /**
+     * Stop requesting selected post fields if the API returned fields that weren't requested,
+     * e.g. when it's running an older Danbooru version that ignores the "only" parameter.
+     *
+     * @param post Post returned by the API.
+     */
+    protected void detectIgnoredResponseFields(JSONObject post) {
+        final String responseFields = getResponseFields();
+        if (responseFields == null || responseFieldsIgnored) {
+            return;
         }
-        return String.format(Locale.US,  "%s/posts.json?tags=%s&page=%d&limit=%d",
-                apiEndpoint, Uri.encode(tags), page, limit);
+
+        final Set<String> requestedFields = new HashSet<>(Arrays.asList(responseFields.split(",")));
+        final Iterator<String> fields = post.keys();
+        while (fields.hasNext()) {
+            if (!requestedFields.contains(fields.next())) {
+                responseFieldsIgnored = true;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Parse a search API response and set the cursor pointing to the next page.
+     *
+     * @param body   HTTP Response body.
+     * @param tags   Tags used to retrieve the response.
+     * @param offset Current paging offset.
+     * @return A {@link io.github.tjg1.library.norilib.SearchResult} parsed from the response.
+     */
+    protected SearchResult parseSearchResult(String body, String tags, int offset) {
+        final SearchResult searchResult = parseAPIResponse(body, tags, offset);
+        searchResult.setNextPageCursor(createNextPageCursor(searchResult, tags));
+        return searchResult;
     }
 
     protected SearchResult parseAPIResponse(String body, String tags, int offset) {
@@ -282,29 +521,33 @@ public class Danbooru implements SearchClient {
             JSONArray jsonArray = new JSONArray(body);
             for (int i = 0; i < jsonArray.length(); i++) {
                 JSONObject jsonObject = (JSONObject) jsonArray.get(i);
+                if (i == 0) {
+                    detectIgnoredResponseFields(jsonObject);
+                }
                 final Image image = new Image();
                 image.searchPage = offset;
                 image.searchPagePosition = i;
 
                 // Base level attributes
                 image.id = jsonObject.get("id").toString();
-                image.createdAt = dateFromString(jsonObject.get("created_at").toString());
+                image.setCreatedAtMillis(Timestamps.parseIso8601(jsonObject.get("created_at").toString()));
                 image.safeSearchRating = Image.SafeSearchRating.fromString(jsonObject.get("rating").toString());
 
                 // File attributes
-                image.fileUrl = jsonObject.get("file_url").toString();
+                image.setFileUrl(jsonObject.get("file_url").toString());
+                image.setMediaType(Image.MediaType.fromFileExtensionOrUrl(jsonObject.optString("file_ext"), image.getFileUrl()));
                 image.md5 = jsonObject.get("md5").toString();
                 image.width = (int) jsonObject.get("image_width");
                 image.height = (int) jsonObject.get("image_height");
 
                 // Preview attributes
-                image.previewUrl = jsonObject.get("preview_file_url").toString();
+                image.setPreviewUrl(jsonObject.get("preview_file_url").toString());
                 // FIXME: API does not return thumbnail sizes.
                 image.previewWidth = THUMBNAIL_SIZE;
                 image.previewHeight = THUMBNAIL_SIZE;
 
                 // Sample attributes
-                image.sampleUrl = jsonObject.get("large_file_url").toString();
+                image.setSampleUrl(jsonObject.get("large_file_url").toString());
                 // FIXME: API does not return sample sizes.
                 image.sampleWidth = SAMPLE_SIZE;
                 image.sampleHeight = SAMPLE_SIZE;
@@ -328,7 +571,7 @@ public class Danbooru implements SearchClient {
                 // Create Tag arrays for each type
                 image.tags = Tag.arrayFromTagArrays(artistTagsArr, characterTagsArr, copyrightTagsArr, generalTagsArr, metaTagsArr);
 
-                image.webUrl = webUrlFromId(image.id);
+                image.setWebUrl(webUrlFromId(image.id));
                 image.parentId = jsonObject.get("parent_id").toString();
 
                 // Score attributes
@@ -354,46 +597,57 @@ public class Danbooru implements SearchClient {
     }
     //endregion
 
-    //region Ion async SearchResult parser
+    //region Keyset pagination
 
     /**
-     * Asynchronous search parser to use with ion.
+     * Check if this API supports fetching pages relative to an image ID (the "b&lt;id&gt;" page parameter).
+     *
+     * @return True if keyset pagination is supported.
      */
-    protected class SearchResultParser implements AsyncParser<SearchResult> {
-        /**
-         * Tags searched for.
-         */
-        protected final String tags;
-        /**
-         * Current page offset.
-         */
-        protected final int pageOffset;
-
-        public SearchResultParser(String tags, int pageOffset) {
-            this.tags = tags;
-            this.pageOffset = pageOffset;
-        }
+    protected boolean supportsPageCursor() {
+        return true;
+    }
 
-        @Override
-        public Future<SearchResult> parse(DataEmitter emitter) {
-            return new StringParser().parse(emitter)
-                    .then(new TransformFuture<SearchResult, String>() {
-                        @Override
-                        protected void transform(String result) {
-                            setComplete(parseAPIResponse(result, tags, pageOffset));
-                        }
-                    });
+    /**
+     * Create the cursor pointing to the page following the given page of results.
+     *
+     * @param searchResult Parsed page of results.
+     * @param tags         Tags searched for.
+     * @return "b&lt;id&gt;" cursor, where id is the lowest image ID in the search result.
+     * Null if the next page has to be fetched using its page number.
+     */
+    protected String createNextPageCursor(SearchResult searchResult, String tags) {
+        // Results are only sorted by ID when no ordering metatag is used.
+        if (!supportsPageCursor() || tags == null || hasOrderingMetatag(tags)) {
+            return null;
         }
 
-        @Override
-        public void write(DataSink sink, SearchResult value, CompletedCallback completed) {
-            // Not implemented.
+        long lowestId = Long.MAX_VALUE;
+        for (Image image : searchResult.getImages()) {
+            try {
+                lowestId = Math.min(lowestId, Long.parseLong(image.id));
+            } catch (NumberFormatException ignored) {
+            }
         }
+        return lowestId != Long.MAX_VALUE ? "b" + lowestId : null;
+    }
 
-        @Override
-        public Type getType() {
-            return null;
+    /**
+     * Check if a search query sorts results by something other than the post ID.
+     *
+     * @param tags Space-separated tags.
+     * @return True if any of the tags is an ordering metatag. (see {@link #ORDERING_METATAGS})
+     */
+    private static boolean hasOrderingMetatag(String tags) {
+        for (String tag : tags.trim().split("\\s+")) {
+            final String name = tag.replaceFirst("^[-~]", "").toLowerCase(Locale.US);
+            for (String metatag : ORDERING_METATAGS) {
+                if (name.startsWith(metatag)) {
+                    return true;
+                }
+            }
         }
+        return false;
     }
     //endregion
 }
@@ -8,44 +8,33 @@ package io.github.tjg1.library.norilib.clients;
 
 import android.content.Context;
 import android.net.Uri;
-import android.text.TextUtils;
 import android.util.Xml;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.koushikdutta.async.DataEmitter;
-import com.koushikdutta.async.DataSink;
-import com.koushikdutta.async.callback.CompletedCallback;
-import com.koushikdutta.async.future.Future;
-import com.koushikdutta.async.future.FutureCallback;
-import com.koushikdutta.async.future.TransformFuture;
-import com.koushikdutta.async.parser.AsyncParser;
-import com.koushikdutta.async.parser.StringParser;
-import com.koushikdutta.ion.Ion;
-import com.koushikdutta.ion.Response;
-
 import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
 import java.io.IOException;
 import java.io.StringReader;
-import java.lang.reflect.Type;
 import java.net.URL;
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-import java.util.concurrent.ExecutionException;
 
 import io.github.tjg1.library.norilib.Image;
 import io.github.tjg1.library.norilib.SearchResult;
 import io.github.tjg1.library.norilib.Tag;
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+import io.github.tjg1.library.norilib.http.HttpRequest;
+import io.github.tjg1.library.norilib.http.HttpTransport;
+import io.github.tjg1.library.norilib.http.HttpTransports;
+import io.github.tjg1.library.norilib.util.SearchPageCache;
+import io.github.tjg1.library.norilib.util.Timestamps;
 
 /**
  * Client for the Danbooru 1.x API.
@@ -57,9 +46,10 @@ public class DanbooruLegacy implements SearchClient {
      * Best to use a large value to minimize number of unique HTTP requests.
      */
     private static final int DEFAULT_LIMIT = 100;
-
-    private static final DateFormat DATE_FORMAT_DEFAULT = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
-
+    /**
+     * Largest number of images per page accepted by the API.
+     */
+    private static final int MAX_LIMIT = 100;
     //endregion
 
     //region Service configuration instance fields
@@ -83,6 +73,14 @@ public class DanbooruLegacy implements SearchClient {
      * Password used for authentication. (optional)
      */
     protected final String password;
+    /**
+     * Transport used to send API requests.
+     */
+    protected final HttpTransport transport;
+    /**
+     * Cache of fetched pages, revalidated using conditional requests.
+     */
+    protected final SearchPageCache pageCache;
     //endregion
 
     //region Constructors
@@ -100,6 +98,8 @@ public class DanbooruLegacy implements SearchClient {
         this.apiEndpoint = endpoint;
         this.username = null;
         this.password = null;
+        this.transport = HttpTransports.getDefault(context);
+        this.pageCache = SearchPageCache.getInstance(context);
     }
 
     /**
@@ -115,6 +115,8 @@ public class DanbooruLegacy implements SearchClient {
         this.apiEndpoint = endpoint;
         this.username = username;
         this.password = password;
+        this.transport = HttpTransports.getDefault(context);
+        this.pageCache = SearchPageCache.getInstance(context);
     }
     //endregion
 
@@ -131,28 +133,12 @@ public class DanbooruLegacy implements SearchClient {
     @Nullable
     public static String detectService(@NonNull Context context, @NonNull Uri uri, int timeout) {
         final String endpointUrl = Uri.withAppendedPath(uri, "/post/index.xml").toString();
-
-        try {
-            final Response<DataEmitter> response = Ion.with(context)
-                    .load(endpointUrl)
-                    .setTimeout(timeout)
-                    .userAgent(SearchClient.USER_AGENT)
-                    .followRedirect(false)
-                    .noCache()
-                    .asDataEmitter()
-                    .withResponse()
-                    .get();
-
-            // Close the connection.
-            final DataEmitter dataEmitter = response.getResult();
-            if (dataEmitter != null) dataEmitter.close();
-
-            if (response.getHeaders().code() == 200) {
-                return uri.toString();
-            }
-        } catch (InterruptedException | ExecutionException ignored) {
-        }
-        return null;
+        final HttpRequest request = new HttpRequest.Builder(endpointUrl)
+                .timeout(timeout)
+                .followRedirects(false)
+                .noCache()
+                .build();
+        return HttpSearch.isOk(HttpTransports.getDefault(context), request) ? uri.toString() : null;
     }
     //endregion
 
@@ -164,27 +150,8 @@ public class DanbooruLegacy implements SearchClient {
     }
 
     @Override
-    public SearchResult search(String tags, int pid) throws IOException {
-        try {
-            if (!TextUtils.isEmpty(this.username) && !TextUtils.isEmpty(this.password)) {
-                return Ion.with(this.context)
-                        .load(createSearchURL(tags, pid, DEFAULT_LIMIT))
-                        .userAgent(SearchClient.USER_AGENT)
-                        .basicAuthentication(this.username, this.password)
-                        .as(new SearchResultParser(tags, pid))
-                        .get();
-            } else {
-                return Ion.with(this.context)
-                        .load(createSearchURL(tags, pid, DEFAULT_LIMIT))
-                        .userAgent(SearchClient.USER_AGENT)
-                        .as(new SearchResultParser(tags, pid))
-                        .get();
-            }
-        } catch (InterruptedException | ExecutionException e) {
-            // Normalise exception to IOException, so method signatures are not tied to a single HTTP
-            // library.
-            throw new IOException(e);
-        }
+    public SearchResult search(final String tags, final int pid) throws IOException {
+        return fetchPage(tags, pid, getDefaultLimit());
     }
 
     @Override
@@ -195,31 +162,65 @@ public class DanbooruLegacy implements SearchClient {
 
     @Override
     public void search(final String tags, final int pid, final SearchCallback callback) {
-        // Define the ion callback. Not using FutureCallbacks as parameters, so the method signatures
-        // are not tied to a single download library.
-        FutureCallback<SearchResult> futureCallback = (e, result) -> {
-            if (e != null) {
-                callback.onFailure(new IOException(e));
-            } else {
-                callback.onSuccess(result);
-            }
-        };
-
-        // Handle authentication.
-        if (!TextUtils.isEmpty(this.username) && !TextUtils.isEmpty(this.password)) {
-            Ion.with(this.context)
-                    .load(createSearchURL(tags, pid, DEFAULT_LIMIT))
-                    .userAgent(SearchClient.USER_AGENT)
-                    .basicAuthentication(this.username, this.password)
-                    .as(new SearchResultParser(tags, pid))
-                    .setCallback(futureCallback);
-        } else {
-            Ion.with(this.context)
-                    .load(createSearchURL(tags, pid, DEFAULT_LIMIT))
-                    .userAgent(SearchClient.USER_AGENT)
-                    .as(new SearchResultParser(tags, pid))
-                    .setCallback(futureCallback);
-        }
+        fetchPage(tags, pid, getDefaultLimit(), callback);
+    }
+
+    @Override
+    public SearchResult search(final String tags, int fromPage, int pageCount, int limit) throws IOException {
+        return PagedSearch.searchSync(tags, fromPage, pageCount, limit, getMaxLimit(),
+                (pid, pageLimit) -> fetchPage(tags, pid, pageLimit));
+    }
+
+    @Override
+    public void search(final String tags, int fromPage, int pageCount, int limit, SearchCallback callback) {
+        PagedSearch.search(tags, fromPage, pageCount, limit, getMaxLimit(),
+                (pid, pageLimit, pageCallback) -> fetchPage(tags, pid, pageLimit, pageCallback), callback);
+    }
+
+    @Override
+    public int getDefaultLimit() {
+        return DEFAULT_LIMIT;
+    }
+
+    @Override
+    public int getMaxLimit() {
+        return MAX_LIMIT;
+    }
+
+    @Override
+    public QueryPlanner getQueryPlanner() {
+        // Moebooru limits queries to six tags.
+        return new QueryPlanner(6, true, "-rating:s", "-rating:q", "-rating:e");
+    }
+
+    /**
+     * Fetch a single page of search results on the calling thread.
+     *
+     * @param tags  Search query. A space-separated list of tags.
+     * @param pid   Page number. (zero-indexed)
+     * @param limit Images to fetch per page.
+     * @return A {@link SearchResult} containing a set of Images.
+     * @throws IOException Network error.
+     */
+    protected SearchResult fetchPage(final String tags, final int pid, final int limit) throws IOException {
+        return HttpSearch.searchSync(transport, pageCache, createSearchRequest(tags, pid, limit),
+                body -> parseXMLResponse(body, tags, pid));
+    }
+
+    /**
+     * Asynchronously fetch a single page of search results.
+     *
+     * @param tags     Search query. A space-separated list of tags.
+     * @param pid      Page number. (zero-indexed)
+     * @param limit    Images to fetch per page.
+     * @param callback Callback listening for the SearchResult returned in the background.
+     */
+    protected void fetchPage(final String tags, final int pid, final int limit, SearchCallback callback) {
+        // Identical requests already in flight are shared instead of being sent again.
+        final String requestKey = SearchRequestCoalescer.createKey(apiEndpoint, username, tags,
+                Integer.toString(pid), limit);
+        SearchRequestCoalescer.execute(requestKey, callback, requestCallback -> HttpSearch.search(transport, pageCache,
+                createSearchRequest(tags, pid, limit), body -> parseXMLResponse(body, tags, pid), requestCallback));
     }
 
     @Override
@@ -230,7 +231,8 @@ public class DanbooruLegacy implements SearchClient {
 
     @Override
     public Settings getSettings() {
-        return new Settings(Settings.APIType.DANBOARD_LEGACY, name, apiEndpoint, username, password);
+        return new Settings(Settings.APIType.DANBOARD_LEGACY, name, apiEndpoint, username, password,
+                EndpointHealth.getInstance().getMirrors(apiEndpoint));
     }
 
     @Override
@@ -256,6 +258,20 @@ public class DanbooruLegacy implements SearchClient {
         return String.format(Locale.US,  "%s/post/index.xml?tags=%s&limit=%d&page=%d",
                 apiEndpoint, Uri.encode(tags), limit, page);
     }
+
+    /**
+     * Create a request to the search API endpoint, authenticated if credentials are set.
+     *
+     * @param tags  Space-separated tags.
+     * @param pid   Page number (0-indexed).
+     * @param limit Images to fetch per page.
+     * @return Search API request.
+     */
+    protected HttpRequest createSearchRequest(String tags, int pid, int limit) {
+        return new HttpRequest.Builder(createSearchURL(tags, pid, limit))
+                .basicAuthentication(this.username, this.password)
+                .build();
+    }
     //endregion
 
     //region Parsing responses
@@ -304,19 +320,19 @@ public class DanbooruLegacy implements SearchClient {
 
                             // Set the appropriate value for each tag name.
                             if ("file_url".equals(name)) {
-                                image.fileUrl = normalizeUrl(value);
+                                image.setFileUrl(normalizeUrl(value));
                             } else if ("width".equals(name)) {
                                 image.width = Integer.parseInt(value);
                             } else if ("height".equals(name)) {
                                 image.height = Integer.parseInt(value);
                             } else if ("preview_url".equals(name)) {
-                                image.previewUrl = normalizeUrl(value);
+                                image.setPreviewUrl(normalizeUrl(value));
                             } else if ("preview_width".equals(name)) {
                                 image.previewWidth = Integer.parseInt(value);
                             } else if ("preview_height".equals(name)) {
                                 image.previewHeight = Integer.parseInt(value);
                             } else if ("sample_url".equals(name)) {
-                                image.sampleUrl = normalizeUrl(value);
+                                image.setSampleUrl(normalizeUrl(value));
                             } else if ("sample_width".equals(name)) {
                                 image.sampleWidth = Integer.parseInt(value);
                             } else if ("sample_height".equals(name)) {
@@ -335,7 +351,7 @@ public class DanbooruLegacy implements SearchClient {
                                 image.md5 = value;
                             } else if ("created_at".equals(name) || "date".equals(name)) {
                                 try {
-                                    image.createdAt = dateFromString(value);
+                                    image.setCreatedAtMillis(timestampFromString(value));
                                 } catch (ParseException e) {
                                     // There have been too many issues reported in Nori related to date parsing.
                                     // It's almost as if every site uses its own date format and, unfortunately,
@@ -346,11 +362,12 @@ public class DanbooruLegacy implements SearchClient {
                         }
 
                         // Append values not returned by the API.
-                        image.webUrl = webUrlFromId(image.id);
+                        image.setMediaType(Image.MediaType.fromUrl(image.getFileUrl()));
+                        image.setWebUrl(webUrlFromId(image.id));
                         image.pixivId = Image.getPixivIdFromUrl(image.source);
                         // Use original file if low-resolution sample does not exist.
-                        if (image.sampleUrl == null) {
-                            image.sampleUrl = image.fileUrl;
+                        if (image.getSampleUrl() == null) {
+                            image.setSampleUrl(image.getFileUrl());
                             image.sampleWidth = image.width;
                             image.sampleHeight = image.height;
                         }
@@ -397,62 +414,15 @@ public class DanbooruLegacy implements SearchClient {
     }
 
     /**
-     * Create a {@link java.util.Date} object from String date representation used by this API.
+     * Parse the upload date returned by this API.
      *
      * @param date Date string.
-     * @return Date converted from given String.
-     */
-    protected Date dateFromString(String date) throws ParseException {
-        // Parser for the date format used by upstream Danbooru 1.x.
-        if (TextUtils.isDigitsOnly(date)) {
-            // Moebooru-based boards (Danbooru 1.x fork) use Unix timestamps.
-            return new Date(Integer.parseInt(date));
-        } else {
-            return DATE_FORMAT_DEFAULT.parse(date);
-        }
-    }
-    //endregion
-
-    //region Ion async SearchResult parser
-
-    /**
-     * Asynchronous search parser to use with ion.
+     * @return Upload date, in milliseconds since the epoch.
      */
-    protected class SearchResultParser implements AsyncParser<SearchResult> {
-        /**
-         * Tags searched for.
-         */
-        private final String tags;
-        /**
-         * Current page offset.
-         */
-        private final int pageOffset;
-
-        public SearchResultParser(String tags, int pageOffset) {
-            this.tags = tags;
-            this.pageOffset = pageOffset;
-        }
-
-        @Override
-        public Future<SearchResult> parse(DataEmitter emitter) {
-            return new StringParser().parse(emitter)
-                    .then(new TransformFuture<SearchResult, String>() {
-                        @Override
-                        protected void transform(String result) throws Exception {
-                            setComplete(parseXMLResponse(result, tags, pageOffset));
-                        }
-                    });
-        }
-
-        @Override
-        public void write(DataSink sink, SearchResult value, CompletedCallback completed) {
-            // Not implemented.
-        }
-
-        @Override
-        public Type getType() {
-            return null;
-        }
+    protected long timestampFromString(String date) throws ParseException {
+        // Upstream Danbooru 1.x uses "yyyy-MM-dd HH:mm:ss" dates,
+        // while Moebooru-based boards (Danbooru 1.x fork) use Unix timestamps.
+        return Timestamps.parse(date);
     }
     //endregion
 }
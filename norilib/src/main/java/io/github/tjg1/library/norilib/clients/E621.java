@@ -8,31 +8,26 @@ package io.github.tjg1.library.norilib.clients;
 
 import android.content.Context;
 import android.net.Uri;
-import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.koushikdutta.async.DataEmitter;
-import com.koushikdutta.ion.Ion;
-import com.koushikdutta.ion.Response;
-
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.text.DateFormat;
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
-import java.util.Locale;
-import java.util.concurrent.ExecutionException;
 
 import io.github.tjg1.library.norilib.Image;
 import io.github.tjg1.library.norilib.SearchResult;
 import io.github.tjg1.library.norilib.Tag;
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+import io.github.tjg1.library.norilib.http.HttpRequest;
+import io.github.tjg1.library.norilib.http.HttpTransports;
+import io.github.tjg1.library.norilib.http.RateLimiter;
+import io.github.tjg1.library.norilib.util.Timestamps;
 
 /**
  * {@link io.github.tjg1.library.norilib.clients.SearchClient} for the E621 imageboard.
@@ -43,16 +38,31 @@ public class E621 extends Danbooru {
      * Number of images to fetch with each search.
      */
     private static final int DEFAULT_LIMIT = 100;
-    private static final DateFormat DATE_FORMAT = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.S", Locale.US);
+    /**
+     * Largest number of images per page accepted by the API.
+     * E621 accepts up to 320 images per page.
+     */
+    private static final int MAX_LIMIT = 320;
+    /**
+     * Sustained request rate allowed by the API.
+     * E621 enforces a hard limit of 2 requests per second, and answers with HTTP 429 above it.
+     */
+    private static final double REQUESTS_PER_SECOND = 2;
+    /**
+     * Requests that can be sent at once, before being spread out at {@link #REQUESTS_PER_SECOND}.
+     */
+    private static final int REQUEST_BURST_SIZE = 2;
     //endregion
 
     //region Constructors
     public E621(Context context, String name, String endpoint) {
         super(context, name, endpoint);
+        RateLimiter.getInstance().setRate(Uri.parse(endpoint).getHost(), REQUESTS_PER_SECOND, REQUEST_BURST_SIZE);
     }
 
     public E621(Context context, String name, String endpoint, String username, String password) {
         super(context, name, endpoint, username, password);
+        RateLimiter.getInstance().setRate(Uri.parse(endpoint).getHost(), REQUESTS_PER_SECOND, REQUEST_BURST_SIZE);
     }
     //endregion
 
@@ -67,51 +77,41 @@ public class E621 extends Danbooru {
     @Nullable
     public static String detectService(@NonNull Context context, @NonNull Uri uri, int timeout) {
         final String endpointUrl = Uri.withAppendedPath(uri, "/posts.json").toString();
-        try {
-            final Response<DataEmitter> response = Ion.with(context)
-                    .load(endpointUrl)
-                    .setTimeout(timeout)
-                    .userAgent(SearchClient.USER_AGENT)
-                    .followRedirect(false)
-                    .noCache()
-                    .asDataEmitter()
-                    .withResponse()
-                    .get();
-
-            // Close the connection.
-            final DataEmitter dataEmitter = response.getResult();
-            if (dataEmitter != null) dataEmitter.close();
-
-            if (response.getHeaders().code() == 200) {
-                return uri.toString();
-            }
-        } catch (InterruptedException | ExecutionException ignored) {
-        }
-        return null;
+        final HttpRequest request = new HttpRequest.Builder(endpointUrl)
+                .timeout(timeout)
+                .followRedirects(false)
+                .noCache()
+                .build();
+        return HttpSearch.isOk(HttpTransports.getDefault(context), request) ? uri.toString() : null;
     }
     //endregion
 
     //region SearchClient methods
     @Override
-    public Settings getSettings() {
-        return new Settings(Settings.APIType.E621, name, apiEndpoint, username, apiKey);
+    public int getMaxLimit() {
+        return MAX_LIMIT;
     }
-    //endregion
 
     @Override
-    protected String createSearchURL(String tags, int pid, int limit) {
-        // Page numbers are 1-indexed for this API.
-        final int page = pid + 1;
+    public QueryPlanner getQueryPlanner() {
+        return new QueryPlanner(40, true, "-rating:s", "-rating:q", "-rating:e");
+    }
 
-        if (!TextUtils.isEmpty(this.username) && !TextUtils.isEmpty(this.apiKey)) {
-            return String.format(Locale.US,  "%s/posts.json?tags=%s&page=%d&limit=%d&login=%s&api_key=%s",
-                    apiEndpoint, Uri.encode(tags), page, limit, Uri.encode(this.username), Uri.encode(this.apiKey));
-        }
-        return String.format(Locale.US,  "%s/posts.json?tags=%s&page=%d&limit=%d",
-                apiEndpoint, Uri.encode(tags), page, limit);
+    @Override
+    public Settings getSettings() {
+        return new Settings(Settings.APIType.E621, name, apiEndpoint, username, apiKey,
+                EndpointHealth.getInstance().getMirrors(apiEndpoint));
     }
+    //endregion
 
     //region Parsing responses
+    @Nullable
+    @Override
+    protected String getResponseFields() {
+        // The e621 posts API doesn't support field selection, and returns posts as nested objects.
+        return null;
+    }
+
     @Override
     protected String webUrlFromId(String id) {
         return String.format("%s/%s/%s", apiEndpoint, "post/show", id);
@@ -146,25 +146,26 @@ public class E621 extends Danbooru {
 
                 // Base level attributes
                 image.id = post.get("id").toString();
-                image.createdAt = dateFromString(post.get("created_at").toString());
+                image.setCreatedAtMillis(Timestamps.parseIso8601(post.get("created_at").toString()));
                 image.safeSearchRating = Image.SafeSearchRating.fromString(post.get("rating").toString());
 
                 // File attributes
-                image.fileUrl = postFile.get("url").toString();
-                if (image.fileUrl.equals("null")) {
+                image.setFileUrl(postFile.get("url").toString());
+                if (image.getFileUrl().equals("null")) {
                     continue;
                 }
+                image.setMediaType(Image.MediaType.fromFileExtensionOrUrl(postFile.optString("ext"), image.getFileUrl()));
                 image.md5 = postFile.get("md5").toString();
                 image.width = (int) postFile.get("width");
                 image.height = (int) postFile.get("height");
 
                 // Preview attributes
-                image.previewUrl = postPreview.get("url").toString();
+                image.setPreviewUrl(postPreview.get("url").toString());
                 image.previewWidth = (int) postPreview.get("width");
                 image.previewHeight = (int) postPreview.get("height");
 
                 // Sample attributes
-                image.sampleUrl = postSample.get("url").toString();
+                image.setSampleUrl(postSample.get("url").toString());
                 image.sampleWidth = (int) postSample.get("width");
                 image.sampleHeight = (int) postSample.get("height");
 
@@ -190,7 +191,7 @@ public class E621 extends Danbooru {
                 Tag[] generalTagsArr = Tag.arrayFromStringArray(stringArrayFromJSONArray(generalTags), Tag.Type.GENERAL);
                 image.tags = Tag.arrayFromTagArrays(artistTagsArr, characterTagsArr, copyrightTagsArr, speciesTagsArr, generalTagsArr);
 
-                image.webUrl = webUrlFromId(image.id);
+                image.setWebUrl(webUrlFromId(image.id));
                 image.parentId = postRelationships.get("parent_id").toString();
 
                 // Score attributes
@@ -212,18 +213,4 @@ public class E621 extends Danbooru {
         }
         return stringArray;
     }
-
-    /**
-     * Create a {@link java.util.Date} object from String date representation used by this API.
-     *
-     * @param date Date string.
-     * @return Date converted from given String.
-     */
-    protected static Date dateFromString(String date) throws ParseException {
-        // Normalise the ISO8601 time zone into a format parse-able by SimpleDateFormat.
-        if (!TextUtils.isEmpty(date)) {
-            return DATE_FORMAT.parse(date);
-        }
-        return null;
-    }
 }
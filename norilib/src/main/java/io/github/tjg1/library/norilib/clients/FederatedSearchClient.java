@@ -0,0 +1,531 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.clients;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.Tag;
+
+/**
+ * {@link SearchClient} searching several services at once.
+ * <p/>
+ * Each query is sent to all services at the same time. Callbacks implementing
+ * {@link SearchClient.StreamingSearchCallback} receive the images from each service as soon as it
+ * responds, so a slow service doesn't hold back the others. Services that don't respond within
+ * their time budget are skipped, so a search takes as long as the slowest service, at most.
+ * <p/>
+ * Images found on more than one service are only returned once, using their MD5 hashes.
+ * Returned images are copies with {@link Image#serviceIndex} set to the index of the service they
+ * were returned by, so images with the same ID on different services are told apart.
+ */
+public class FederatedSearchClient implements SearchClient {
+
+    //region Constants
+    /**
+     * Time each service has to respond, in milliseconds.
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10000;
+    /**
+     * Number of images per search results page, when it isn't limited by the services.
+     */
+    private static final int DEFAULT_LIMIT = 100;
+    /**
+     * Number of queries MD5 hashes of returned images are remembered for.
+     * Used to drop duplicates across pages.
+     */
+    private static final int MAX_REMEMBERED_QUERIES = 4;
+    //endregion
+
+    //region Instance fields
+    /**
+     * Android context.
+     */
+    private final Context context;
+    /**
+     * Settings of this client, including the settings of the services searched.
+     */
+    private final Settings settings;
+    /**
+     * Time each service has to respond, in milliseconds.
+     */
+    private final long timeoutMillis;
+    /**
+     * Handler used to time out slow services.
+     */
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    /**
+     * MD5 hashes of images already returned for recent queries, keyed by query.
+     */
+    private final Map<String, Set<String>> seenMd5s = new LinkedHashMap<String, Set<String>>(MAX_REMEMBERED_QUERIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Entry<String, Set<String>> eldest) {
+            return size() > MAX_REMEMBERED_QUERIES;
+        }
+    };
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new client searching all services included in the given settings.
+     *
+     * @param context  Android context.
+     * @param settings Settings created using {@link Settings#Settings(String, Settings...)}.
+     */
+    public FederatedSearchClient(@NonNull Context context, @NonNull Settings settings) {
+        this(context, settings, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Create a new client searching all services included in the given settings.
+     *
+     * @param context       Android context.
+     * @param settings      Settings created using {@link Settings#Settings(String, Settings...)}.
+     * @param timeoutMillis Time each service has to respond, in milliseconds.
+     */
+    public FederatedSearchClient(@NonNull Context context, @NonNull Settings settings, long timeoutMillis) {
+        this.context = context;
+        this.settings = settings;
+        this.timeoutMillis = timeoutMillis;
+    }
+    //endregion
+
+    //region SearchClient methods
+    @Override
+    public SearchResult search(String tags) throws IOException {
+        // Return results for page 0.
+        return search(tags, 0);
+    }
+
+    @Override
+    public SearchResult search(final String tags, final int pid) throws IOException {
+        return searchSync(callback -> search(tags, pid, callback));
+    }
+
+    @Override
+    public void search(String tags, SearchCallback callback) {
+        // Return results for page 0.
+        search(tags, 0, callback);
+    }
+
+    @Override
+    public void search(final String tags, final int pid, SearchCallback callback) {
+        new FederatedRequest(tags, pid, 1, callback)
+                .execute((client, serviceCallback) -> client.search(tags, pid, serviceCallback));
+    }
+
+    @Override
+    public SearchResult search(final String tags, final int fromPage, final int pageCount, final int limit) throws IOException {
+        return searchSync(callback -> search(tags, fromPage, pageCount, limit, callback));
+    }
+
+    @Override
+    public void search(final String tags, final int fromPage, final int pageCount, final int limit, SearchCallback callback) {
+        new FederatedRequest(tags, fromPage, Math.max(1, pageCount), callback)
+                .execute((client, serviceCallback) -> client.search(tags, fromPage, pageCount, limit, serviceCallback));
+    }
+
+    @Override
+    public int getDefaultLimit() {
+        return Math.min(DEFAULT_LIMIT, getMaxLimit());
+    }
+
+    @Override
+    public int getMaxLimit() {
+        // Pages can't be larger than what every service accepts.
+        int maxLimit = Integer.MAX_VALUE;
+        for (SearchClient client : getServices()) {
+            maxLimit = Math.min(maxLimit, client.getMaxLimit());
+        }
+        return maxLimit != Integer.MAX_VALUE ? maxLimit : DEFAULT_LIMIT;
+    }
+
+    @Override
+    public QueryPlanner getQueryPlanner() {
+        // Only push exclusions understood by all services.
+        final List<QueryPlanner> planners = new ArrayList<>();
+        for (SearchClient client : getServices()) {
+            planners.add(client.getQueryPlanner());
+        }
+        return QueryPlanner.intersect(planners);
+    }
+
+    @Override
+    public String getDefaultQuery() {
+        // Show the newest images.
+        return "";
+    }
+
+    @Override
+    public Settings getSettings() {
+        return settings;
+    }
+
+    @Override
+    public AuthenticationType requiresAuthentication() {
+        return AuthenticationType.NONE;
+    }
+    //endregion
+
+    //region Services
+
+    /**
+     * Get the clients of the services searched.
+     * Looked up on each search, so changes to the services' settings are picked up.
+     *
+     * @return Shared clients of the federated services.
+     */
+    @NonNull
+    private List<SearchClient> getServices() {
+        final Settings[] federatedServices = settings.getFederatedServices();
+        final List<SearchClient> clients = new ArrayList<>(federatedServices.length);
+        for (Settings serviceSettings : federatedServices) {
+            if (serviceSettings.getApiType() != Settings.APIType.FEDERATED) {
+                final SearchClient client = SearchClientRegistry.get(context, serviceSettings);
+                if (client != null) {
+                    clients.add(client);
+                }
+            }
+        }
+        return clients;
+    }
+
+    /**
+     * Check if the MD5 hashes returned by a service can be used to find duplicate images.
+     *
+     * @param client Service client.
+     * @return False for APIs that don't return real MD5 hashes.
+     */
+    private static boolean hasMd5Hashes(@NonNull SearchClient client) {
+        final Settings.APIType apiType = client.getSettings().getApiType();
+        return apiType != Settings.APIType.FLICKR && apiType != Settings.APIType.FLICKR_USER;
+    }
+
+    /**
+     * Get the MD5 hashes of images already returned for a query.
+     *
+     * @param tags     Search query.
+     * @param fromPage First page requested. Hashes are forgotten when the search is restarted from page 0.
+     * @return Set of MD5 hashes. Guarded by the {@link #seenMd5s} lock.
+     */
+    @NonNull
+    private Set<String> getSeenMd5s(String tags, int fromPage) {
+        final String key = Tag.stringFromArray(Tag.arrayFromString(tags)).toLowerCase(Locale.US);
+        synchronized (seenMd5s) {
+            Set<String> md5s = seenMd5s.get(key);
+            if (md5s == null || fromPage == 0) {
+                md5s = new HashSet<>();
+                seenMd5s.put(key, md5s);
+            }
+            return md5s;
+        }
+    }
+    //endregion
+
+    //region Synchronous searches
+
+    /**
+     * Service request executed on each federated service.
+     */
+    private interface ServiceRequest {
+        /**
+         * Send the request to a single service.
+         *
+         * @param client   Service client.
+         * @param callback Callback listening for the service's SearchResult.
+         */
+        void execute(@NonNull SearchClient client, @NonNull SearchCallback callback);
+    }
+
+    /**
+     * Asynchronous search executed by {@link #searchSync(AsyncSearch)}.
+     */
+    private interface AsyncSearch {
+        /**
+         * Start the search.
+         *
+         * @param callback Callback listening for the search result.
+         */
+        void execute(@NonNull SearchCallback callback);
+    }
+
+    /**
+     * Run an asynchronous search and block until it is finished.
+     * Must not be called from the main thread, which is used to time out slow services.
+     *
+     * @param search Search to run.
+     * @return Search result.
+     * @throws IOException Network error.
+     */
+    private static SearchResult searchSync(@NonNull AsyncSearch search) throws IOException {
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            // Callbacks are delivered on the main thread, so waiting for them there would never return.
+            throw new IllegalStateException("Blocking federated searches can't be run on the main thread.");
+        }
+        final CountDownLatch latch = new CountDownLatch(1);
+        final SearchResult[] result = new SearchResult[1];
+        final IOException[] error = new IOException[1];
+
+        search.execute(new SearchCallback() {
+            @Override
+            public void onFailure(IOException e) {
+                error[0] = e;
+                latch.countDown();
+            }
+
+            @Override
+            public void onSuccess(SearchResult searchResult) {
+                result[0] = searchResult;
+                latch.countDown();
+            }
+        });
+
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+        if (error[0] != null) {
+            throw error[0];
+        }
+        return result[0];
+    }
+    //endregion
+
+    //region Inner class: Federated request
+
+    /**
+     * A search sent to all federated services, merging their responses as they arrive.
+     */
+    private class FederatedRequest {
+        /**
+         * Search query.
+         */
+        private final String tags;
+        /**
+         * First page requested.
+         */
+        private final int fromPage;
+        /**
+         * Number of pages requested.
+         */
+        private final int pageCount;
+        /**
+         * Callback listening for the merged search result.
+         */
+        private final SearchCallback callback;
+        /**
+         * MD5 hashes of images already returned for this query. Guarded by the {@link #seenMd5s} lock.
+         */
+        private final Set<String> md5s;
+        /**
+         * Images received so far, in the order they were received.
+         */
+        private final List<Image> images = new ArrayList<>();
+        /**
+         * Number of images received for each page requested. Used to number images on each page.
+         */
+        private final int[] pageSizes;
+        /**
+         * Number of services that haven't responded yet.
+         */
+        private int pendingServices;
+        /**
+         * True if at least one service responded.
+         */
+        private boolean succeeded = false;
+        /**
+         * True if at least one service returned some images.
+         */
+        private boolean hasNextPage = false;
+        /**
+         * First error returned by a service.
+         */
+        private IOException error;
+
+        /**
+         * Create a new federated request.
+         *
+         * @param tags      Search query.
+         * @param fromPage  First page requested.
+         * @param pageCount Number of pages requested.
+         * @param callback  Callback listening for the merged search result.
+         */
+        FederatedRequest(String tags, int fromPage, int pageCount, SearchCallback callback) {
+            this.tags = tags;
+            this.fromPage = fromPage;
+            this.pageCount = pageCount;
+            this.callback = callback;
+            this.md5s = getSeenMd5s(tags, fromPage);
+            this.pageSizes = new int[pageCount];
+        }
+
+        /**
+         * Send the request to all services.
+         *
+         * @param request Request sent to each service.
+         */
+        void execute(@NonNull ServiceRequest request) {
+            final List<SearchClient> clients = getServices();
+            synchronized (this) {
+                pendingServices = clients.size();
+            }
+            if (clients.isEmpty()) {
+                finish();
+                return;
+            }
+
+            for (int i = 0; i < clients.size(); i++) {
+                final int serviceIndex = i;
+                final SearchClient client = clients.get(i);
+                final boolean[] responded = {false};
+
+                // Skip the service if it doesn't respond in time.
+                final Runnable timeout = () -> onServiceFailure(responded, new SocketTimeoutException(
+                        String.format(Locale.US, "%s did not respond within %d ms.",
+                                client.getSettings().getName(), timeoutMillis)));
+                handler.postDelayed(timeout, timeoutMillis);
+
+                request.execute(client, new SearchCallback() {
+                    @Override
+                    public void onFailure(IOException e) {
+                        handler.removeCallbacks(timeout);
+                        onServiceFailure(responded, e);
+                    }
+
+                    @Override
+                    public void onSuccess(SearchResult searchResult) {
+                        handler.removeCallbacks(timeout);
+                        onServiceSuccess(responded, serviceIndex, hasMd5Hashes(client), searchResult);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Called when a service has returned its search result.
+         *
+         * @param responded    Response state of the service. Used to ignore responses after a timeout.
+         * @param serviceIndex Index of the service.
+         * @param hasMd5Hashes True if the MD5 hashes returned by the service can be used to find duplicates.
+         * @param searchResult Search result returned by the service.
+         */
+        private void onServiceSuccess(boolean[] responded, int serviceIndex, boolean hasMd5Hashes,
+                                      SearchResult searchResult) {
+            final List<Image> newImages = new ArrayList<>();
+            final boolean finished;
+
+            synchronized (this) {
+                if (responded[0]) {
+                    return;
+                }
+                responded[0] = true;
+                succeeded = true;
+
+                for (Image serviceImage : searchResult.getImages()) {
+                    if (hasMd5Hashes && serviceImage.md5 != null && !serviceImage.md5.isEmpty()) {
+                        synchronized (seenMd5s) {
+                            if (!md5s.add(serviceImage.md5)) {
+                                // Image already returned by another service.
+                                continue;
+                            }
+                        }
+                    }
+
+                    // Copy the image: the service's result may be shared with other searches.
+                    final Image image = new Image(serviceImage);
+                    // Number images on each page in the order they were received.
+                    final int page = image.searchPage != null ?
+                            Math.max(0, Math.min(pageCount - 1, image.searchPage - fromPage)) : 0;
+                    image.searchPage = fromPage + page;
+                    image.searchPagePosition = pageSizes[page]++;
+                    image.serviceIndex = serviceIndex;
+                    newImages.add(image);
+                }
+                images.addAll(newImages);
+                hasNextPage |= searchResult.getImageCount() != 0;
+                finished = --pendingServices == 0;
+            }
+
+            if (!newImages.isEmpty() && callback instanceof StreamingSearchCallback) {
+                ((StreamingSearchCallback) callback).onPartialResult(createSearchResult(newImages));
+            }
+            if (finished) {
+                finish();
+            }
+        }
+
+        /**
+         * Called when a service has failed or timed out.
+         *
+         * @param responded Response state of the service. Used to ignore responses after a timeout.
+         * @param e         Error returned by the service.
+         */
+        private void onServiceFailure(boolean[] responded, IOException e) {
+            final boolean finished;
+            synchronized (this) {
+                if (responded[0]) {
+                    return;
+                }
+                responded[0] = true;
+                if (error == null) {
+                    error = e;
+                }
+                finished = --pendingServices == 0;
+            }
+            if (finished) {
+                finish();
+            }
+        }
+
+        /**
+         * Called when all services have responded, failed or timed out.
+         */
+        private void finish() {
+            final SearchResult searchResult;
+            synchronized (this) {
+                if (!succeeded && error != null) {
+                    callback.onFailure(error);
+                    return;
+                }
+                searchResult = createSearchResult(images);
+                if (!hasNextPage) {
+                    searchResult.onLastPage();
+                }
+            }
+            callback.onSuccess(searchResult);
+        }
+
+        /**
+         * Create a search result containing given images.
+         *
+         * @param images Images to include.
+         * @return Search result for the pages requested.
+         */
+        private SearchResult createSearchResult(List<Image> images) {
+            return new SearchResult(images.toArray(new Image[0]), Tag.arrayFromString(tags), fromPage + pageCount - 1);
+        }
+    }
+    //endregion
+}
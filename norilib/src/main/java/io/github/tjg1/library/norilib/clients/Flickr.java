@@ -13,16 +13,6 @@ import android.text.TextUtils;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.koushikdutta.async.DataEmitter;
-import com.koushikdutta.async.DataSink;
-import com.koushikdutta.async.callback.CompletedCallback;
-import com.koushikdutta.async.future.Future;
-import com.koushikdutta.async.future.FutureCallback;
-import com.koushikdutta.async.future.TransformFuture;
-import com.koushikdutta.async.parser.AsyncParser;
-import com.koushikdutta.async.parser.StringParser;
-import com.koushikdutta.ion.Ion;
-
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -32,11 +22,8 @@ import org.xml.sax.SAXException;
 
 import java.io.IOException;
 import java.io.StringReader;
-import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
@@ -44,6 +31,11 @@ import javax.xml.parsers.ParserConfigurationException;
 import io.github.tjg1.library.norilib.Image;
 import io.github.tjg1.library.norilib.SearchResult;
 import io.github.tjg1.library.norilib.Tag;
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+import io.github.tjg1.library.norilib.http.HttpRequest;
+import io.github.tjg1.library.norilib.http.HttpTransport;
+import io.github.tjg1.library.norilib.http.HttpTransports;
+import io.github.tjg1.library.norilib.util.SearchPageCache;
 
 /**
  * Search client for the Flickr API.
@@ -55,6 +47,10 @@ public class Flickr implements SearchClient {
      * Number of images to fetch per page.
      */
     protected static final int DEFAULT_LIMIT = 100;
+    /**
+     * Largest number of images per page accepted by the API.
+     */
+    protected static final int MAX_LIMIT = 500;
     /**
      * Default API endpoint.
      */
@@ -78,6 +74,14 @@ public class Flickr implements SearchClient {
      * API Endpoint.
      */
     protected final Uri apiEndpoint;
+    /**
+     * Transport used to send API requests.
+     */
+    protected final HttpTransport transport;
+    /**
+     * Cache of fetched pages, revalidated using conditional requests.
+     */
+    protected final SearchPageCache pageCache;
     //endregion
 
     //region Constructors
@@ -93,6 +97,8 @@ public class Flickr implements SearchClient {
         this.context = context;
         this.name = name;
         this.apiEndpoint = apiEndpoint != null ? Uri.parse(apiEndpoint) : FLICKR_API_ENDPOINT;
+        this.transport = HttpTransports.getDefault(context);
+        this.pageCache = SearchPageCache.getInstance(context);
     }
     //endregion
 
@@ -139,18 +145,8 @@ public class Flickr implements SearchClient {
      * @throws IOException Network error.
      */
     @Override
-    public SearchResult search(String tags, int pid) throws IOException {
-        try {
-            return Ion.with(this.context)
-                    .load(createSearchURL(tags, pid))
-                    .userAgent(SearchClient.USER_AGENT)
-                    .as(new SearchResultParser(tags, pid))
-                    .get();
-        } catch (InterruptedException | ExecutionException e) {
-            // Normalise exception to IOException, so method signatures are not tied to a single HTTP
-            // library.
-            throw new IOException(e);
-        }
+    public SearchResult search(final String tags, final int pid) throws IOException {
+        return fetchPage(tags, pid, getDefaultLimit());
     }
 
     /**
@@ -174,17 +170,89 @@ public class Flickr implements SearchClient {
      */
     @Override
     public void search(String tags, int pid, final SearchCallback callback) {
-        Ion.with(this.context)
-                .load(createSearchURL(tags, pid))
-                .userAgent(SearchClient.USER_AGENT)
-                .as(new SearchResultParser(tags, pid))
-                .setCallback((e, result) -> {
-                    if (e != null) {
-                        callback.onFailure(new IOException(e));
-                    } else {
-                        callback.onSuccess(result);
-                    }
-                });
+        fetchPage(tags, pid, getDefaultLimit(), callback);
+    }
+
+    /**
+     * Fetch several consecutive pages of results at once.
+     *
+     * @param tags      Search query. A space-separated list of tags.
+     * @param fromPage  First page to fetch. (zero-indexed)
+     * @param pageCount Number of pages to fetch.
+     * @param limit     Number of images per page.
+     * @return A {@link SearchResult} containing images from all pages, in page order.
+     * @throws IOException Network error.
+     */
+    @Override
+    public SearchResult search(final String tags, int fromPage, int pageCount, int limit) throws IOException {
+        return PagedSearch.searchSync(tags, fromPage, pageCount, limit, getMaxLimit(),
+                (pid, pageLimit) -> fetchPage(tags, pid, pageLimit));
+    }
+
+    /**
+     * Asynchronously fetch several consecutive pages of results at once.
+     *
+     * @param tags      Search query. A space-separated list of tags.
+     * @param fromPage  First page to fetch. (zero-indexed)
+     * @param pageCount Number of pages to fetch.
+     * @param limit     Number of images per page.
+     * @param callback  Callback listening for the merged SearchResult returned in the background.
+     */
+    @Override
+    public void search(final String tags, int fromPage, int pageCount, int limit, SearchCallback callback) {
+        PagedSearch.search(tags, fromPage, pageCount, limit, getMaxLimit(),
+                (pid, pageLimit, pageCallback) -> fetchPage(tags, pid, pageLimit, pageCallback), callback);
+    }
+
+    /**
+     * Get the number of images fetched per page by {@link #search(String, int)}.
+     *
+     * @return Default page size.
+     */
+    @Override
+    public int getDefaultLimit() {
+        return DEFAULT_LIMIT;
+    }
+
+    /**
+     * Get the largest page size accepted by the API.
+     *
+     * @return Maximum page size.
+     */
+    @Override
+    public int getMaxLimit() {
+        return MAX_LIMIT;
+    }
+
+    /**
+     * Fetch a single page of search results on the calling thread.
+     *
+     * @param tags  Search query. A space-separated list of tags.
+     * @param pid   Page number. (zero-indexed)
+     * @param limit Images to fetch per page.
+     * @return A {@link SearchResult} containing a set of Images.
+     * @throws IOException Network error.
+     */
+    protected SearchResult fetchPage(final String tags, final int pid, final int limit) throws IOException {
+        return HttpSearch.searchSync(transport, pageCache, new HttpRequest.Builder(createSearchURL(tags, pid, limit)).build(),
+                body -> parseXMLResponse(body, tags, pid));
+    }
+
+    /**
+     * Asynchronously fetch a single page of search results.
+     *
+     * @param tags     Search query. A space-separated list of tags.
+     * @param pid      Page number. (zero-indexed)
+     * @param limit    Images to fetch per page.
+     * @param callback Callback listening for the SearchResult returned in the background.
+     */
+    protected void fetchPage(final String tags, final int pid, final int limit, SearchCallback callback) {
+        // Identical requests already in flight are shared instead of being sent again.
+        final String requestKey = SearchRequestCoalescer.createKey(apiEndpoint.toString(), null, tags,
+                Integer.toString(pid), limit);
+        SearchRequestCoalescer.execute(requestKey, callback, requestCallback -> HttpSearch.search(transport, pageCache,
+                new HttpRequest.Builder(createSearchURL(tags, pid, limit)).build(),
+                body -> parseXMLResponse(body, tags, pid), requestCallback));
     }
 
     /**
@@ -205,7 +273,8 @@ public class Flickr implements SearchClient {
      */
     @Override
     public Settings getSettings() {
-        return new Settings(Settings.APIType.FLICKR, name, apiEndpoint.toString());
+        return new Settings(Settings.APIType.FLICKR, name, apiEndpoint.toString(), null, null,
+                EndpointHealth.getInstance().getMirrors(apiEndpoint.toString()));
     }
 
     /**
@@ -229,11 +298,12 @@ public class Flickr implements SearchClient {
     /**
      * Generate request URL to the search API endpoint.
      *
-     * @param tags Space-separated tags.
-     * @param pid  Page number (0-indexed).
+     * @param tags  Space-separated tags.
+     * @param pid   Page number (0-indexed).
+     * @param limit Images to fetch per page.
      * @return URL to search results API.
      */
-    protected String createSearchURL(String tags, int pid) {
+    protected String createSearchURL(String tags, int pid, int limit) {
         return new Uri.Builder()
                 .scheme(apiEndpoint.getScheme())
                 .authority(apiEndpoint.getAuthority())
@@ -241,7 +311,7 @@ public class Flickr implements SearchClient {
                 .appendQueryParameter("api_key", FLICKR_API_KEY)
                 .appendQueryParameter("method", !TextUtils.isEmpty(tags) ? "flickr.photos.search" : "flickr.interestingness.getList")
                 .appendQueryParameter("text", tags != null ? tags : "")
-                .appendQueryParameter("per_page", Integer.toString(DEFAULT_LIMIT, 10))
+                .appendQueryParameter("per_page", Integer.toString(limit, 10))
                 .appendQueryParameter("extras", "date_upload,owner_name,media,tags,path_alias,icon_server,o_dims,path_alias,original_format,url_q,url_m,url_l,url_o")
                 .appendQueryParameter("page", Integer.toString(pid + 1, 10))
                 .build()
@@ -287,45 +357,47 @@ public class Flickr implements SearchClient {
 
                     // Set file url.
                     if (!TextUtils.isEmpty(urlO)) {
-                        image.fileUrl = urlO;
+                        image.setFileUrl(urlO);
                         image.width = Integer.parseInt(element.getAttribute("width_o"));
                         image.height = Integer.parseInt(element.getAttribute("height_o"));
                     } else if (!TextUtils.isEmpty(urlL)) {
-                        image.fileUrl = urlL;
+                        image.setFileUrl(urlL);
                         image.width = Integer.parseInt(element.getAttribute("width_l"));
                         image.height = Integer.parseInt(element.getAttribute("height_l"));
                     } else if (!TextUtils.isEmpty(urlM)) {
-                        image.fileUrl = urlM;
+                        image.setFileUrl(urlM);
                         image.width = Integer.parseInt(element.getAttribute("width_m"));
                         image.height = Integer.parseInt(element.getAttribute("height_m"));
                     }
 
                     // Set sample url.
                     if (!TextUtils.isEmpty(urlL)) {
-                        image.sampleUrl = urlL;
+                        image.setSampleUrl(urlL);
                         image.sampleWidth = Integer.parseInt(element.getAttribute("width_l"));
                         image.sampleHeight = Integer.parseInt(element.getAttribute("height_l"));
                     } else if (!TextUtils.isEmpty(urlM)) {
-                        image.sampleUrl = urlM;
+                        image.setSampleUrl(urlM);
                         image.sampleWidth = Integer.parseInt(element.getAttribute("width_m"));
                         image.sampleHeight = Integer.parseInt(element.getAttribute("height_m"));
                     }
 
                     // Set preview url.
                     if (!TextUtils.isEmpty(urlQ)) {
-                        image.previewUrl = urlQ;
+                        image.setPreviewUrl(urlQ);
                         image.previewWidth = Integer.parseInt(element.getAttribute("width_q"));
                         image.previewHeight = Integer.parseInt(element.getAttribute("height_q"));
                     }
 
                     image.tags = Tag.arrayFromString(element.getAttribute("tags"));
                     image.id = element.getAttribute("id");
-                    image.webUrl = webUrlFromId(element.getAttribute("owner"), element.getAttribute("id"));
+                    image.setWebUrl(webUrlFromId(element.getAttribute("owner"), element.getAttribute("id")));
                     image.parentId = null;
                     image.safeSearchRating = Image.SafeSearchRating.S;
+                    // Only photos are returned by the search API.
+                    image.setMediaType(Image.MediaType.IMAGE);
                     image.score = 0;
                     image.md5 = "2d57d21f35e060a4c5e81c03aea3efa8"; // not implemented
-                    image.createdAt = new Date(Long.parseLong(element.getAttribute("dateupload"), 10) * 1000);
+                    image.setCreatedAtMillis(Long.parseLong(element.getAttribute("dateupload"), 10) * 1000);
 
                     imageList.add(image);
                 }
@@ -346,47 +418,4 @@ public class Flickr implements SearchClient {
         return "https://www.flickr.com/photos/" + userId + "/" + photoId;
     }
     //endregion
-
-    //region Ion async SearchResult parser
-
-    /**
-     * Asynchronous search parser to use with ion.
-     */
-    protected class SearchResultParser implements AsyncParser<SearchResult> {
-        /**
-         * Tags searched for.
-         */
-        private final String tags;
-        /**
-         * Current page offset.
-         */
-        private final int pageOffset;
-
-        public SearchResultParser(String tags, int pageOffset) {
-            this.tags = tags;
-            this.pageOffset = pageOffset;
-        }
-
-        @Override
-        public Future<SearchResult> parse(DataEmitter emitter) {
-            return new StringParser().parse(emitter)
-                    .then(new TransformFuture<SearchResult, String>() {
-                        @Override
-                        protected void transform(String result) throws Exception {
-                            setComplete(parseXMLResponse(result, tags, pageOffset));
-                        }
-                    });
-        }
-
-        @Override
-        public void write(DataSink sink, SearchResult value, CompletedCallback completed) {
-            // Not implemented.
-        }
-
-        @Override
-        public Type getType() {
-            return null;
-        }
-    }
-    //endregion
 }
@@ -16,6 +16,8 @@ import androidx.annotation.Nullable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+
 /**
  * Flickr SearchClient limited to searching for images from a single user.
  */
@@ -60,7 +62,8 @@ public class FlickrUser extends Flickr {
     //region SearchClient methods
     @Override
     public Settings getSettings() {
-        return new Settings(Settings.APIType.FLICKR_USER, name, apiEndpoint.toString());
+        return new Settings(Settings.APIType.FLICKR_USER, name, apiEndpoint.toString(), null, null,
+                EndpointHealth.getInstance().getMirrors(apiEndpoint.toString()));
     }
     //endregion
 
@@ -69,12 +72,13 @@ public class FlickrUser extends Flickr {
     /**
      * Generate request URL to the search API endpoint.
      *
-     * @param tags Space-separated tags.
-     * @param pid  Page number (0-indexed).
+     * @param tags  Space-separated tags.
+     * @param pid   Page number (0-indexed).
+     * @param limit Images to fetch per page.
      * @return URL to search results API.
      */
     @Override
-    protected String createSearchURL(String tags, int pid) {
+    protected String createSearchURL(String tags, int pid, int limit) {
         Pattern p = Pattern.compile(FLICKR_USER_REGEX);
         Matcher m = p.matcher(apiEndpoint.toString());
 
@@ -87,13 +91,13 @@ public class FlickrUser extends Flickr {
                     .appendQueryParameter("user_id", m.group(1))
                     .appendQueryParameter("method", !TextUtils.isEmpty(tags) ? "flickr.photos.search" : "flickr.people.getPhotos")
                     .appendQueryParameter("text", tags != null ? tags : "")
-                    .appendQueryParameter("per_page", Integer.toString(DEFAULT_LIMIT, 10))
+                    .appendQueryParameter("per_page", Integer.toString(limit, 10))
                     .appendQueryParameter("extras", "date_upload,owner_name,media,tags,path_alias,icon_server,o_dims,path_alias,original_format,url_q,url_m,url_l,url_o")
                     .appendQueryParameter("page", Integer.toString(pid + 1, 10))
                     .build()
                     .toString();
         }
-        return super.createSearchURL(tags, pid);
+        return super.createSearchURL(tags, pid, limit);
     }
     //endregion
 }
@@ -8,32 +8,28 @@ package io.github.tjg1.library.norilib.clients;
 
 import android.content.Context;
 import android.net.Uri;
-import android.text.TextUtils;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.koushikdutta.async.DataEmitter;
-import com.koushikdutta.ion.Ion;
-import com.koushikdutta.ion.Response;
-
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
-import java.util.concurrent.ExecutionException;
 
 import io.github.tjg1.library.norilib.Image;
 import io.github.tjg1.library.norilib.SearchResult;
 import io.github.tjg1.library.norilib.Tag;
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+import io.github.tjg1.library.norilib.http.HttpRequest;
+import io.github.tjg1.library.norilib.http.HttpTransports;
+import io.github.tjg1.library.norilib.util.Timestamps;
 
 /**
  * {@link io.github.tjg1.library.norilib.clients.SearchClient} for the Gelbooru imageboard.
@@ -44,7 +40,11 @@ public class Gelbooru extends Danbooru {
      * Number of images to fetch with each search.
      */
     private static final int DEFAULT_LIMIT = 100;
-    private static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("EEE MMM d HH:mm:ss Z yyyy", Locale.US);
+    /**
+     * Largest number of images per page accepted by the API.
+     * Gelbooru-based boards are not guaranteed to return more than 100 images per page.
+     */
+    private static final int MAX_LIMIT = 100;
     //endregion
 
     //region Constructors
@@ -68,33 +68,31 @@ public class Gelbooru extends Danbooru {
     @Nullable
     public static String detectService(@NonNull Context context, @NonNull Uri uri, int timeout) {
         final String endpointUrl = Uri.withAppendedPath(uri, "/index.php?page=dapi&s=post&q=index").toString();
-        try {
-            final Response<DataEmitter> response = Ion.with(context)
-                    .load(endpointUrl)
-                    .setTimeout(timeout)
-                    .userAgent(SearchClient.USER_AGENT)
-                    .followRedirect(false)
-                    .noCache()
-                    .asDataEmitter()
-                    .withResponse()
-                    .get();
-
-            // Close the connection.
-            final DataEmitter dataEmitter = response.getResult();
-            if (dataEmitter != null) dataEmitter.close();
-
-            if (response.getHeaders().code() == 200) {
-                return uri.toString();
-            }
-        } catch (InterruptedException | ExecutionException ignored) { }
-        return null;
+        final HttpRequest request = new HttpRequest.Builder(endpointUrl)
+                .timeout(timeout)
+                .followRedirects(false)
+                .noCache()
+                .build();
+        return HttpSearch.isOk(HttpTransports.getDefault(context), request) ? uri.toString() : null;
     }
     //endregion
 
     //region SearchClient methods
+    @Override
+    public int getMaxLimit() {
+        return MAX_LIMIT;
+    }
+
+    @Override
+    public QueryPlanner getQueryPlanner() {
+        // "s" is "safe" on Gelbooru 0.2 and "sensitive" on newer versions, so it can't be excluded reliably.
+        return new QueryPlanner(QueryPlanner.UNLIMITED, true, null, "-rating:questionable", "-rating:explicit");
+    }
+
     @Override
     public Settings getSettings() {
-        return new Settings(Settings.APIType.GELBOARD, name, apiEndpoint, username, apiKey);
+        return new Settings(Settings.APIType.GELBOARD, name, apiEndpoint, username, apiKey,
+                EndpointHealth.getInstance().getMirrors(apiEndpoint));
     }
     //endregion
 
@@ -105,6 +103,12 @@ public class Gelbooru extends Danbooru {
                 apiEndpoint, Uri.encode(tags), pid, limit);
     }
 
+    @Override
+    protected boolean supportsPageCursor() {
+        // The pid parameter only accepts page numbers.
+        return false;
+    }
+
     //region Parsing responses
     @Override
     protected String webUrlFromId(String id) {
@@ -136,14 +140,16 @@ public class Gelbooru extends Danbooru {
                 // Base level attributes
                 image.id = post.get("id").toString();
                 try {
-                    image.createdAt = dateFromString(post.get("created_at").toString());
+                    image.setCreatedAtMillis(Timestamps.parseCtime(post.get("created_at").toString()));
                 } catch (JSONException e) {
                     image.createdAt = null;
                 }
                 image.safeSearchRating = Image.SafeSearchRating.fromString(post.get("rating").toString());
 
                 // File attributes
-                image.fileUrl = post.get("file_url").toString();
+                image.setFileUrl(post.get("file_url").toString());
+                // The image attribute is the file name, including the extension.
+                image.setMediaType(Image.MediaType.fromUrl(post.optString("image", image.getFileUrl())));
                 image.md5 = post.get("hash").toString();
                 image.width = Integer.parseInt(post.get("width").toString());
                 image.height = Integer.parseInt(post.get("height").toString());
@@ -163,24 +169,24 @@ public class Gelbooru extends Danbooru {
                     if (post.has("sample_url")) {
                         sampleURL = post.getString("sample_url");
                     } else {
-                        sampleURL = getSampleURL(image.fileUrl, post.get("image").toString(), image.md5);
+                        sampleURL = getSampleURL(image.getFileUrl(), post.get("image").toString(), image.md5);
                     }
                     sampleWidth = image.previewWidth = (int) post.get("sample_width");
                     sampleHeight = image.previewWidth = (int) post.get("sample_height");
                 } else {
-                    if (image.getFileExtension().equals("mp4") && apiEndpoint.contains("gelbooru")) {
-                        sampleURL = getVideoSampleURL(image.fileUrl, image.md5);
+                    if (image.getMediaType() == Image.MediaType.MP4 && apiEndpoint.contains("gelbooru")) {
+                        sampleURL = getVideoSampleURL(image.getFileUrl(), image.md5);
                     } else {
-                        sampleURL = image.fileUrl;
+                        sampleURL = image.getFileUrl();
                     }
                     sampleWidth = image.width;
                     sampleHeight = image.height;
                 }
 
-                image.previewUrl = sampleURL;
+                image.setPreviewUrl(sampleURL);
                 image.previewWidth = sampleWidth;
                 image.previewHeight = sampleHeight;
-                image.sampleUrl = sampleURL;
+                image.setSampleUrl(sampleURL);
                 image.sampleWidth = sampleWidth;
                 image.sampleHeight = sampleHeight;
 
@@ -194,7 +200,7 @@ public class Gelbooru extends Danbooru {
                 // TODO - Use Tag API to get tag types
                 image.tags = Tag.arrayFromString(post.get("tags").toString());
 
-                image.webUrl = webUrlFromId(image.id);
+                image.setWebUrl(webUrlFromId(image.id));
                 image.parentId = post.get("parent_id").toString();
 
                 // Score attributes
@@ -209,20 +215,6 @@ public class Gelbooru extends Danbooru {
         return new SearchResult(imageList.toArray(new Image[0]), Tag.arrayFromString(tags), offset);
     }
 
-    /**
-     * Create a {@link java.util.Date} object from String date representation used by this API.
-     *
-     * @param date Date string.
-     * @return Date converted from given String.
-     */
-    protected static Date dateFromString(String date) throws ParseException {
-        // Normalise the ISO8601 time zone into a format parse-able by SimpleDateFormat.
-        if (!TextUtils.isEmpty(date)) {
-            return DATE_FORMAT.parse(date);
-        }
-        return null;
-    }
-
     protected static String getSampleURL(String fileUrl, String filename, String hash) {
         fileUrl = fileUrl.replace("images", "samples")
                 .replace(filename, "sample_" + hash + ".jpg");
@@ -0,0 +1,261 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.clients;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+
+import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.http.HttpCall;
+import io.github.tjg1.library.norilib.http.HttpRequest;
+import io.github.tjg1.library.norilib.http.HttpResponse;
+import io.github.tjg1.library.norilib.http.HttpStatusException;
+import io.github.tjg1.library.norilib.http.HttpTransport;
+import io.github.tjg1.library.norilib.util.ParseExecutor;
+import io.github.tjg1.library.norilib.util.SearchPageCache;
+
+/**
+ * Sends search API requests through an {@link HttpTransport} and parses the responses.
+ * <p/>
+ * Response bodies are read on the transport's thread and parsed on the {@link ParseExecutor}, so
+ * responses can be parsed in parallel. Parsed pages can be kept in a {@link SearchPageCache} and
+ * revalidated using conditional requests. Callbacks are called on the main thread.
+ */
+final class HttpSearch {
+
+    //region Response parser interface
+
+    /**
+     * Parses the body of a search API response.
+     */
+    interface ResponseParser {
+        /**
+         * Parse a response body.
+         *
+         * @param body Response body.
+         * @return Parsed search result.
+         * @throws Exception Malformed response.
+         */
+        SearchResult parse(@NonNull String body) throws Exception;
+    }
+    //endregion
+
+    //region Static fields
+    /**
+     * Handler used to call callbacks on the main thread.
+     */
+    private static final Handler MAIN_THREAD_HANDLER = new Handler(Looper.getMainLooper());
+    //endregion
+
+    //region Constructors
+
+    /**
+     * This class only has static methods and should not be instantiated.
+     */
+    private HttpSearch() {
+    }
+    //endregion
+
+    //region Searching
+
+    /**
+     * Asynchronously send a search request and parse the response.
+     * <p/>
+     * If a page cache is given and holds a copy of the page, the request is sent with its
+     * validators, and the cached page is returned if the API answers with HTTP 304 (Not Modified).
+     *
+     * @param transport Transport used to send the request.
+     * @param pageCache Cache of previously fetched pages. null to always fetch and parse the page.
+     * @param request   Search API request.
+     * @param parser    Parser used to read the response.
+     * @param callback  Callback called on the main thread with the parsed SearchResult.
+     */
+    static void search(@NonNull final HttpTransport transport, @Nullable final SearchPageCache pageCache,
+                       @NonNull final HttpRequest request, @NonNull final ResponseParser parser,
+                       @NonNull final SearchClient.SearchCallback callback) {
+        if (pageCache == null) {
+            send(transport, null, null, request, parser, callback);
+        } else {
+            pageCache.get(getCacheKey(request), cachedPage -> send(transport, pageCache, cachedPage, request, parser, callback));
+        }
+    }
+
+    /**
+     * Asynchronously send a search request, revalidating a cached page if there is one.
+     *
+     * @param transport  Transport used to send the request.
+     * @param pageCache  Cache the parsed page is added to. (optional)
+     * @param cachedPage Cached copy of the page. (optional)
+     * @param request    Search API request.
+     * @param parser     Parser used to read the response.
+     * @param callback   Callback called on the main thread with the parsed SearchResult.
+     */
+    private static void send(@NonNull final HttpTransport transport, @Nullable final SearchPageCache pageCache,
+                             @Nullable final SearchPageCache.Entry cachedPage, @NonNull final HttpRequest request,
+                             @NonNull final ResponseParser parser, @NonNull final SearchClient.SearchCallback callback) {
+        transport.newCall(createConditionalRequest(request, cachedPage)).enqueue(new HttpCall.Callback() {
+            @Override
+            public void onFailure(@NonNull IOException e) {
+                MAIN_THREAD_HANDLER.post(() -> callback.onFailure(e));
+            }
+
+            @Override
+            public void onResponse(@NonNull HttpResponse response) {
+                if (cachedPage != null && response.getCode() == 304) {
+                    response.close();
+                    final SearchResult searchResult;
+                    try {
+                        searchResult = cachedPage.getSearchResult();
+                    } catch (IOException e) {
+                        // Unreadable cached page: fetch the page again.
+                        send(transport, pageCache, null, request, parser, callback);
+                        return;
+                    }
+                    MAIN_THREAD_HANDLER.post(() -> callback.onSuccess(searchResult));
+                    return;
+                }
+
+                final String etag = response.getHeader("ETag");
+                final String lastModified = response.getHeader("Last-Modified");
+                final String body;
+                try {
+                    body = readBody(request, response);
+                } catch (IOException e) {
+                    onFailure(e);
+                    return;
+                }
+
+                ParseExecutor.getInstance().parse(() -> parser.parse(body), new ParseExecutor.Callback<SearchResult>() {
+                    @Override
+                    public void onParsed(SearchResult searchResult) {
+                        if (pageCache != null) {
+                            pageCache.put(getCacheKey(request), etag, lastModified, searchResult);
+                        }
+                        MAIN_THREAD_HANDLER.post(() -> callback.onSuccess(searchResult));
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        MAIN_THREAD_HANDLER.post(() -> callback.onFailure(
+                                e instanceof IOException ? (IOException) e : new IOException(e)));
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Send a search request and parse the response on the calling thread.
+     *
+     * @param transport Transport used to send the request.
+     * @param pageCache Cache of previously fetched pages. null to always fetch and parse the page.
+     * @param request   Search API request.
+     * @param parser    Parser used to read the response.
+     * @return Parsed SearchResult.
+     * @throws IOException Network error, unsuccessful status code or malformed response.
+     */
+    static SearchResult searchSync(@NonNull HttpTransport transport, @Nullable SearchPageCache pageCache,
+                                   @NonNull HttpRequest request, @NonNull ResponseParser parser) throws IOException {
+        final SearchPageCache.Entry cachedPage = pageCache != null ? pageCache.get(getCacheKey(request)) : null;
+        final HttpResponse response = transport.newCall(createConditionalRequest(request, cachedPage)).execute();
+        if (cachedPage != null && response.getCode() == 304) {
+            response.close();
+            return cachedPage.getSearchResult();
+        }
+
+        final String etag = response.getHeader("ETag");
+        final String lastModified = response.getHeader("Last-Modified");
+        final String body = readBody(request, response);
+        final SearchResult searchResult;
+        try {
+            searchResult = parser.parse(body);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+        if (pageCache != null) {
+            pageCache.put(getCacheKey(request), etag, lastModified, searchResult);
+        }
+        return searchResult;
+    }
+
+    /**
+     * Check if a request was successful.
+     *
+     * @param transport Transport used to send the request.
+     * @param request   HTTP request. The response body is not read.
+     * @return True if the server responded with status code 200.
+     */
+    static boolean isOk(@NonNull HttpTransport transport, @NonNull HttpRequest request) {
+        try (HttpResponse response = transport.newCall(request).execute()) {
+            return response.getCode() == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Add the validators of a cached page to a request.
+     *
+     * @param request    Search API request.
+     * @param cachedPage Cached copy of the page. (optional)
+     * @return Conditional request, or the original request if there is no cached page.
+     */
+    @NonNull
+    private static HttpRequest createConditionalRequest(@NonNull HttpRequest request,
+                                                        @Nullable SearchPageCache.Entry cachedPage) {
+        if (cachedPage == null) {
+            return request;
+        }
+        // Bypass the transport's own response cache, which would hide the 304 response.
+        final HttpRequest.Builder builder = request.newBuilder().noCache();
+        if (cachedPage.etag != null) {
+            builder.header("If-None-Match", cachedPage.etag);
+        }
+        if (cachedPage.lastModified != null) {
+            builder.header("If-Modified-Since", cachedPage.lastModified);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get the key used to cache the response to a request.
+     *
+     * @param request Search API request.
+     * @return Cache key. Requests authenticated as different users have different keys.
+     */
+    @NonNull
+    private static String getCacheKey(@NonNull HttpRequest request) {
+        return request.getUsername() != null ? request.getUsername() + '@' + request.getUrl() : request.getUrl();
+    }
+
+    /**
+     * Read the body of a successful response and close it.
+     * The transfer is measured by the transport, which knows when the bytes arrive from the network.
+     *
+     * @param request  HTTP request.
+     * @param response HTTP response.
+     * @return Response body.
+     * @throws IOException Network error or unsuccessful status code.
+     */
+    @NonNull
+    private static String readBody(@NonNull HttpRequest request, @NonNull HttpResponse response) throws IOException {
+        try (HttpResponse r = response) {
+            if (!r.isSuccessful()) {
+                throw new HttpStatusException(r.getCode(), request.getUrl());
+            }
+            return r.getBodyAsString();
+        }
+    }
+    //endregion
+}
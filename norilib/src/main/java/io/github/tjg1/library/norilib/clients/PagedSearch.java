@@ -0,0 +1,306 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.clients;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.Tag;
+
+/**
+ * Implements multi-page searches on top of single-page API requests.
+ * <p/>
+ * Pages are fetched concurrently. When the API's maximum page size allows it, adjacent pages are
+ * fetched with a single request and split back up, so the number of HTTP requests is kept low.
+ * Pages following a next page cursor are fetched one request after another instead, since each
+ * request continues from the cursor returned by the previous one.
+ */
+final class PagedSearch {
+
+    //region Page fetcher interface
+
+    /**
+     * Fetches a single page of results from the API.
+     */
+    interface PageFetcher {
+        /**
+         * Asynchronously fetch a single page of results.
+         *
+         * @param pid      Page number. (zero-indexed, in units of limit)
+         * @param limit    Number of images per page.
+         * @param callback Callback listening for the SearchResult.
+         */
+        void fetchPage(int pid, int limit, @NonNull SearchClient.SearchCallback callback);
+    }
+
+    /**
+     * Fetches a single page of results from the API on the calling thread.
+     */
+    interface SyncPageFetcher {
+        /**
+         * Fetch a single page of results, blocking until it has been received and parsed.
+         *
+         * @param pid   Page number. (zero-indexed, in units of limit)
+         * @param limit Number of images per page.
+         * @return Parsed page.
+         * @throws IOException Network error.
+         */
+        SearchResult fetchPage(int pid, int limit) throws IOException;
+    }
+
+    /**
+     * Fetches pages following the last page of a search result from the API, using its next page cursor.
+     */
+    interface CursorFetcher {
+        /**
+         * Asynchronously fetch pages following the last page of a search result with a single request.
+         *
+         * @param searchResult Search result with the next page cursor and offset to continue from.
+         * @param pageCount    Number of pages to fetch.
+         * @param callback     Callback listening for the SearchResult.
+         */
+        void fetchNextPages(@NonNull SearchResult searchResult, int pageCount,
+                            @NonNull SearchClient.SearchCallback callback);
+    }
+    //endregion
+
+    //region Constructors
+
+    /**
+     * This class only has static methods and should not be instantiated.
+     */
+    private PagedSearch() {
+    }
+    //endregion
+
+    //region Searching
+
+    /**
+     * Asynchronously fetch several consecutive pages of results and merge them in page order.
+     *
+     * @param tags      Search query.
+     * @param fromPage  First page to fetch. (zero-indexed)
+     * @param pageCount Number of pages to fetch.
+     * @param limit     Number of images per page.
+     * @param maxLimit  Maximum page size accepted by the API.
+     * @param fetcher   Used to fetch single pages from the API.
+     * @param callback  Callback listening for the merged SearchResult.
+     */
+    static void search(final String tags, final int fromPage, final int pageCount, int limit,
+                       int maxLimit, @NonNull PageFetcher fetcher, @NonNull final SearchClient.SearchCallback callback) {
+        final int pageLimit = Math.max(1, Math.min(limit, maxLimit));
+        final int count = Math.max(1, pageCount);
+
+        // Fetch this many pages with each request, if the API's maximum page size allows it.
+        final int pagesPerRequest = getPagesPerRequest(fromPage, count, pageLimit, maxLimit);
+        final int requestCount = count / pagesPerRequest;
+        final int firstRequestPage = fromPage / pagesPerRequest;
+
+        final SearchResult[] results = new SearchResult[requestCount];
+        final Object lock = new Object();
+        final int[] pending = {requestCount};
+        final boolean[] failed = {false};
+
+        for (int i = 0; i < requestCount; i++) {
+            final int requestIndex = i;
+            fetcher.fetchPage(firstRequestPage + i, pageLimit * pagesPerRequest, new SearchClient.SearchCallback() {
+                @Override
+                public void onFailure(IOException e) {
+                    synchronized (lock) {
+                        if (failed[0]) {
+                            return;
+                        }
+                        failed[0] = true;
+                    }
+                    callback.onFailure(e);
+                }
+
+                @Override
+                public void onSuccess(SearchResult searchResult) {
+                    synchronized (lock) {
+                        if (failed[0]) {
+                            return;
+                        }
+                        results[requestIndex] = searchResult;
+                        if (--pending[0] > 0) {
+                            return;
+                        }
+                    }
+                    callback.onSuccess(merge(tags, fromPage, count, pageLimit, pagesPerRequest, results));
+                }
+            });
+        }
+    }
+
+    /**
+     * Fetch several consecutive pages of results on the calling thread.
+     * Requests are sent one after another, and sending stops at the end of the results.
+     *
+     * @param tags      Search query.
+     * @param fromPage  First page to fetch. (zero-indexed)
+     * @param pageCount Number of pages to fetch.
+     * @param limit     Number of images per page.
+     * @param maxLimit  Maximum page size accepted by the API.
+     * @param fetcher   Used to fetch single pages from the API on the calling thread.
+     * @return Merged search result.
+     * @throws IOException Network error.
+     */
+    static SearchResult searchSync(String tags, int fromPage, int pageCount, int limit, int maxLimit,
+                                   @NonNull SyncPageFetcher fetcher) throws IOException {
+        final int pageLimit = Math.max(1, Math.min(limit, maxLimit));
+        final int count = Math.max(1, pageCount);
+        final int pagesPerRequest = getPagesPerRequest(fromPage, count, pageLimit, maxLimit);
+        final int firstRequestPage = fromPage / pagesPerRequest;
+
+        final List<SearchResult> results = new ArrayList<>(count / pagesPerRequest);
+        for (int i = 0; i < count / pagesPerRequest; i++) {
+            final SearchResult searchResult = fetcher.fetchPage(firstRequestPage + i, pageLimit * pagesPerRequest);
+            results.add(searchResult);
+            if (searchResult.getImageCount() == 0 || !searchResult.hasNextPage()) {
+                break;
+            }
+        }
+        return merge(tags, fromPage, count, pageLimit, pagesPerRequest, results.toArray(new SearchResult[0]));
+    }
+
+    /**
+     * Get the number of adjacent pages fetched with each request.
+     *
+     * @param fromPage  First page to fetch. (zero-indexed)
+     * @param pageCount Number of pages to fetch.
+     * @param limit     Number of images per page.
+     * @param maxLimit  Maximum page size accepted by the API.
+     * @return As many pages as the API's maximum page size allows, dividing both the first page and the page count.
+     */
+    private static int getPagesPerRequest(int fromPage, int pageCount, int limit, int maxLimit) {
+        int factor = Math.max(1, maxLimit / limit);
+        while (factor > 1 && (fromPage % factor != 0 || pageCount % factor != 0)) {
+            factor--;
+        }
+        return factor;
+    }
+
+    /**
+     * Asynchronously fetch several pages following the last page of a search result, using its next page cursor.
+     * Requests are sent one after another, each continuing from the cursor returned by the previous one.
+     * If a request fails after some pages were received, the pages received so far are returned.
+     *
+     * @param searchResult    Search result to fetch the next pages for. Must have a next page cursor.
+     * @param pageCount       Number of pages to fetch.
+     * @param pagesPerRequest Number of pages fetched by each request, as allowed by the API's maximum page size.
+     * @param fetcher         Used to fetch pages from the API.
+     * @param callback        Callback listening for the merged SearchResult.
+     */
+    static void searchNextPages(@NonNull SearchResult searchResult, int pageCount, int pagesPerRequest,
+                                @NonNull CursorFetcher fetcher, @NonNull SearchClient.SearchCallback callback) {
+        final SearchResult pages = new SearchResult(new Image[0], searchResult.getRequestQuery(),
+                searchResult.getCurrentOffset());
+        pages.setNextPageCursor(searchResult.getNextPageCursor());
+        fetchNextPages(pages, Math.max(1, pageCount), Math.max(1, pagesPerRequest), fetcher, callback);
+    }
+
+    /**
+     * Fetch the next pages of the search result, appending them to it, until enough pages have been fetched.
+     *
+     * @param pages           Pages fetched so far.
+     * @param remainingPages  Number of pages left to fetch.
+     * @param pagesPerRequest Number of pages fetched by each request.
+     * @param fetcher         Used to fetch pages from the API.
+     * @param callback        Callback listening for the merged SearchResult.
+     */
+    private static void fetchNextPages(@NonNull final SearchResult pages, final int remainingPages,
+                                       final int pagesPerRequest, @NonNull final CursorFetcher fetcher,
+                                       @NonNull final SearchClient.SearchCallback callback) {
+        final int requestPageCount = Math.min(remainingPages, pagesPerRequest);
+        fetcher.fetchNextPages(pages, requestPageCount, new SearchClient.SearchCallback() {
+            @Override
+            public void onFailure(IOException e) {
+                if (pages.getImageCount() != 0) {
+                    callback.onSuccess(pages);
+                } else {
+                    callback.onFailure(e);
+                }
+            }
+
+            @Override
+            public void onSuccess(SearchResult page) {
+                pages.addImages(page.getImages(), page.getCurrentOffset(), page.getNextPageCursor());
+                if (!page.hasNextPage() || page.getImageCount() == 0) {
+                    pages.onLastPage();
+                    callback.onSuccess(pages);
+                } else if (remainingPages <= requestPageCount || pages.getNextPageCursor() == null) {
+                    callback.onSuccess(pages);
+                } else {
+                    fetchNextPages(pages, remainingPages - requestPageCount, pagesPerRequest, fetcher, callback);
+                }
+            }
+        });
+    }
+    //endregion
+
+    //region Merging results
+
+    /**
+     * Merge {@link SearchResult}s returned by each request into a single result.
+     *
+     * @param tags            Search query.
+     * @param fromPage        First page fetched.
+     * @param pageCount       Number of pages fetched.
+     * @param limit           Number of images per page.
+     * @param pagesPerRequest Number of pages fetched by each request.
+     * @param results         Results returned by each request, in request order.
+     * @return Merged search result.
+     */
+    private static SearchResult merge(String tags, int fromPage, int pageCount, int limit,
+                                      int pagesPerRequest, SearchResult[] results) {
+        final List<Image> images = new ArrayList<>(pageCount * limit);
+        boolean reachedLastPage = false;
+        int lastPage = fromPage + pageCount - 1;
+        String nextPageCursor = null;
+
+        for (int i = 0; i < results.length; i++) {
+            final Image[] requestImages = results[i].getImages();
+            final int requestFirstPage = fromPage + i * pagesPerRequest;
+
+            // Stop at the first request that came back empty.
+            if (requestImages.length == 0) {
+                reachedLastPage = true;
+                lastPage = Math.max(fromPage, requestFirstPage - 1);
+                break;
+            }
+
+            // Re-number images, as if every page was fetched separately.
+            for (int j = 0; j < requestImages.length; j++) {
+                requestImages[j].searchPage = requestFirstPage + j / limit;
+                requestImages[j].searchPagePosition = j % limit;
+                images.add(requestImages[j]);
+            }
+            nextPageCursor = results[i].getNextPageCursor();
+
+            // APIs return short pages when posts are hidden or deleted, so only trust the end of results they report.
+            if (!results[i].hasNextPage()) {
+                reachedLastPage = true;
+                lastPage = requestFirstPage + (requestImages.length - 1) / limit;
+                break;
+            }
+        }
+
+        final SearchResult searchResult = new SearchResult(images.toArray(new Image[0]),
+                Tag.arrayFromString(tags), lastPage);
+        searchResult.setNextPageCursor(nextPageCursor);
+        if (reachedLastPage) {
+            searchResult.onLastPage();
+        }
+        return searchResult;
+    }
+    //endregion
+}
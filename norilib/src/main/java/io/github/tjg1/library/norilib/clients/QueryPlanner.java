@@ -0,0 +1,250 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.clients;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.Tag;
+
+/**
+ * Rewrites search queries to have the API exclude images hidden by the SafeSearch and tag filter
+ * settings, instead of downloading them only to filter them out on the client.
+ * <p/>
+ * Each {@link SearchClient} knows the syntax and tag count limit of its API. Exclusions that don't
+ * fit in the query are returned in the {@link Plan}, so they can still be applied on the client.
+ */
+public class QueryPlanner {
+
+    //region Constants
+    /**
+     * Tag count limit of APIs that don't limit the number of tags in a query.
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+    /**
+     * Planner that doesn't rewrite queries, used by APIs without negated tag support.
+     */
+    public static final QueryPlanner NONE = new QueryPlanner(0, true, null, null, null);
+    /**
+     * Prefix of SafeSearch rating metatags.
+     */
+    private static final String RATING_METATAG_PREFIX = "rating:";
+    //endregion
+
+    //region Instance fields
+    /**
+     * Maximum number of tags in a query.
+     */
+    private final int maxTagCount;
+    /**
+     * True if rating metatags count towards {@link #maxTagCount}.
+     */
+    private final boolean ratingTagsCounted;
+    /**
+     * Negated metatags excluding each SafeSearch rating, indexed by {@link Image.SafeSearchRating#ordinal()}.
+     * Null for ratings that can't be excluded on the server.
+     */
+    private final String[] ratingExclusions;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new query planner.
+     *
+     * @param maxTagCount           Maximum number of tags in a query, or {@link #UNLIMITED}.
+     * @param ratingTagsCounted     True if rating metatags count towards the tag limit.
+     * @param safeExclusion         Tag excluding {@link Image.SafeSearchRating#S} images. (i.e. "-rating:s")
+     * @param questionableExclusion Tag excluding {@link Image.SafeSearchRating#Q} images.
+     * @param explicitExclusion     Tag excluding {@link Image.SafeSearchRating#E} images.
+     */
+    public QueryPlanner(int maxTagCount, boolean ratingTagsCounted, @Nullable String safeExclusion,
+                        @Nullable String questionableExclusion, @Nullable String explicitExclusion) {
+        this.maxTagCount = maxTagCount;
+        this.ratingTagsCounted = ratingTagsCounted;
+        this.ratingExclusions = new String[Image.SafeSearchRating.values().length];
+        this.ratingExclusions[Image.SafeSearchRating.S.ordinal()] = safeExclusion;
+        this.ratingExclusions[Image.SafeSearchRating.Q.ordinal()] = questionableExclusion;
+        this.ratingExclusions[Image.SafeSearchRating.E.ordinal()] = explicitExclusion;
+    }
+
+    /**
+     * Create a query planner for queries sent to several APIs at once.
+     * Only exclusions understood by all APIs are pushed to the server.
+     *
+     * @param planners Query planners of each API.
+     * @return Query planner using the lowest tag count limit and the rating syntax shared by all APIs.
+     */
+    @NonNull
+    public static QueryPlanner intersect(@NonNull List<QueryPlanner> planners) {
+        if (planners.isEmpty()) {
+            return NONE;
+        }
+
+        final QueryPlanner first = planners.get(0);
+        int maxTagCount = first.maxTagCount;
+        boolean ratingTagsCounted = first.ratingTagsCounted;
+        final String[] ratingExclusions = first.ratingExclusions.clone();
+        for (QueryPlanner planner : planners) {
+            maxTagCount = Math.min(maxTagCount, planner.maxTagCount);
+            ratingTagsCounted |= planner.ratingTagsCounted;
+            for (int i = 0; i < ratingExclusions.length; i++) {
+                if (ratingExclusions[i] != null && !ratingExclusions[i].equals(planner.ratingExclusions[i])) {
+                    ratingExclusions[i] = null;
+                }
+            }
+        }
+        return new QueryPlanner(maxTagCount, ratingTagsCounted,
+                ratingExclusions[Image.SafeSearchRating.S.ordinal()],
+                ratingExclusions[Image.SafeSearchRating.Q.ordinal()],
+                ratingExclusions[Image.SafeSearchRating.E.ordinal()]);
+    }
+    //endregion
+
+    //region Planning
+
+    /**
+     * Rewrite a query to exclude images hidden by the SafeSearch and tag filter settings on the server.
+     * <p/>
+     * SafeSearch exclusions are pushed first, since they usually hide the most images, followed by
+     * filtered tags in the order given, for as long as they fit within the API's tag count limit.
+     * Planning an already rewritten query doesn't add the same exclusions twice.
+     *
+     * @param query             Search query entered by the user.
+     * @param safeSearchRatings SafeSearch ratings the user wants to see.
+     * @param tagFilter         Tags the user doesn't want to see.
+     * @return Rewritten query, and filters that still have to be applied on the client.
+     */
+    @NonNull
+    public Plan plan(@Nullable String query, @NonNull Image.SafeSearchRating[] safeSearchRatings,
+                     @NonNull Tag[] tagFilter) {
+        final List<String> tags = new ArrayList<>();
+        final Set<String> queryTags = new HashSet<>();
+        boolean hasRatingTag = false;
+        for (Tag tag : Tag.arrayFromString(query)) {
+            final String name = tag.getName().toLowerCase(Locale.US);
+            tags.add(tag.getName());
+            queryTags.add(name);
+            hasRatingTag |= name.startsWith(RATING_METATAG_PREFIX) || name.startsWith("-" + RATING_METATAG_PREFIX);
+        }
+        int tagCount = tags.size();
+
+        // Exclude all SafeSearch ratings the user doesn't want to see, or none at all.
+        // Images with unknown ratings can't be excluded on the server, so they are still filtered on the client.
+        Image.SafeSearchRating[] residualRatings = safeSearchRatings;
+        if (!hasRatingTag) {
+            final List<String> ratingTags = new ArrayList<>();
+            final List<Image.SafeSearchRating> allowedRatings = Arrays.asList(safeSearchRatings);
+            boolean canExcludeRatings = true;
+            for (Image.SafeSearchRating rating : Image.SafeSearchRating.values()) {
+                if (rating != Image.SafeSearchRating.U && !allowedRatings.contains(rating)) {
+                    canExcludeRatings &= ratingExclusions[rating.ordinal()] != null;
+                    ratingTags.add(ratingExclusions[rating.ordinal()]);
+                }
+            }
+            final int ratingTagCount = ratingTagsCounted ? ratingTags.size() : 0;
+            if (canExcludeRatings && !ratingTags.isEmpty() && fits(tagCount, ratingTagCount)) {
+                tags.addAll(ratingTags);
+                tagCount += ratingTagCount;
+                if (allowedRatings.contains(Image.SafeSearchRating.U)) {
+                    residualRatings = null;
+                }
+            }
+        } else if (!ratingTagsCounted) {
+            // Rating metatags entered by the user don't count towards the limit either.
+            for (String tag : queryTags) {
+                if (tag.startsWith(RATING_METATAG_PREFIX) || tag.startsWith("-" + RATING_METATAG_PREFIX)) {
+                    tagCount--;
+                }
+            }
+        }
+
+        // Exclude filtered tags, until the tag count limit is reached.
+        final List<Tag> residualTags = new ArrayList<>();
+        for (Tag tag : tagFilter) {
+            final String name = tag.getName().toLowerCase(Locale.US);
+            if (queryTags.contains(name)) {
+                // Tags searched for by the user are never filtered.
+                continue;
+            }
+            if (queryTags.contains("-" + name)) {
+                // Already excluded.
+                continue;
+            }
+            if (!name.isEmpty() && name.charAt(0) != '-' && name.indexOf('*') == -1 && fits(tagCount, 1)) {
+                tags.add("-" + tag.getName());
+                queryTags.add("-" + name);
+                tagCount++;
+            } else {
+                residualTags.add(tag);
+            }
+        }
+
+        final StringBuilder sb = new StringBuilder();
+        for (String tag : tags) {
+            sb.append(tag).append(' ');
+        }
+        return new Plan(sb.toString().trim(), residualRatings, residualTags.toArray(new Tag[0]));
+    }
+
+    /**
+     * Check if tags can be added to a query without exceeding the tag count limit.
+     *
+     * @param tagCount      Number of tags in the query.
+     * @param addedTagCount Number of tags to add.
+     * @return True if the tags fit within the limit.
+     */
+    private boolean fits(int tagCount, int addedTagCount) {
+        return maxTagCount == UNLIMITED || tagCount + addedTagCount <= maxTagCount;
+    }
+    //endregion
+
+    //region Inner class: Plan
+
+    /**
+     * Query rewritten by {@link #plan(String, Image.SafeSearchRating[], Tag[])}.
+     */
+    public static class Plan {
+        /**
+         * Query to send to the API.
+         */
+        @NonNull
+        public final String query;
+        /**
+         * SafeSearch ratings to filter on the client. Null if ratings are filtered by the API.
+         */
+        @Nullable
+        public final Image.SafeSearchRating[] safeSearchRatings;
+        /**
+         * Tags to filter on the client, because they couldn't be excluded by the API.
+         */
+        @NonNull
+        public final Tag[] tagFilter;
+
+        /**
+         * Create a new query plan.
+         *
+         * @param query             Query to send to the API.
+         * @param safeSearchRatings SafeSearch ratings to filter on the client.
+         * @param tagFilter         Tags to filter on the client.
+         */
+        Plan(@NonNull String query, @Nullable Image.SafeSearchRating[] safeSearchRatings, @NonNull Tag[] tagFilter) {
+            this.query = query;
+            this.safeSearchRatings = safeSearchRatings;
+            this.tagFilter = tagFilter;
+        }
+    }
+    //endregion
+}
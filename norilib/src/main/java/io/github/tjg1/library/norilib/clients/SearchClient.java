@@ -11,9 +11,16 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 
 import io.github.tjg1.library.norilib.BuildConfig;
 import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.Tag;
+import io.github.tjg1.library.norilib.http.EndpointHealth;
 
 /**
  * Interface for a client consuming a Danbooru style API.
@@ -63,6 +70,128 @@ public interface SearchClient {
      * @param callback Callback listening for the SearchResult returned in the background.
      */
     void search(String tags, int pid, SearchCallback callback);
+
+    /**
+     * Asynchronously fetch the page following the last page included in the given SearchResult.
+     * <p/>
+     * APIs supporting keyset pagination fetch images relative to the last image received
+     * (see {@link SearchResult#getNextPageCursor()}), other APIs fetch the next page by number.
+     * The returned SearchResult's offset is always set to the next page number.
+     *
+     * @param searchResult Search result to fetch the next page for.
+     * @param callback     Callback listening for the SearchResult returned in the background.
+     */
+    default void searchNextPage(SearchResult searchResult, SearchCallback callback) {
+        search(Tag.stringFromArray(searchResult.getRequestQuery()), searchResult.getCurrentOffset() + 1, callback);
+    }
+
+    /**
+     * Asynchronously fetch several pages following the last page included in the given SearchResult,
+     * using the default page size. Used to fetch more images at once when most of them are filtered out.
+     * <p/>
+     * Pages are fetched with as few requests as the API's maximum page size allows. Pages following
+     * a next page cursor (see {@link SearchResult#getNextPageCursor()}) are fetched one request after another.
+     * The returned SearchResult's offset is set to the last page fetched.
+     *
+     * @param searchResult Search result to fetch the next pages for.
+     * @param pageCount    Number of pages to fetch.
+     * @param callback     Callback listening for the SearchResult returned in the background.
+     */
+    default void searchNextPages(SearchResult searchResult, int pageCount, SearchCallback callback) {
+        if (pageCount <= 1) {
+            searchNextPage(searchResult, callback);
+        } else if (searchResult.getNextPageCursor() != null) {
+            // Each page continues from the cursor returned with the previous one.
+            PagedSearch.searchNextPages(searchResult, pageCount, 1,
+                    (result, pages, pageCallback) -> searchNextPage(result, pageCallback), callback);
+        } else {
+            search(Tag.stringFromArray(searchResult.getRequestQuery()), searchResult.getCurrentOffset() + 1, pageCount, callback);
+        }
+    }
+
+    /**
+     * Fetch several consecutive pages of results at once, using the default page size.
+     *
+     * @param tags      Search query. A space-separated list of tags.
+     * @param fromPage  First page to fetch. (zero-indexed)
+     * @param pageCount Number of pages to fetch.
+     * @return A {@link io.github.tjg1.library.norilib.SearchResult} containing images from all pages, in page order.
+     * @throws IOException Network error.
+     */
+    default SearchResult search(String tags, int fromPage, int pageCount) throws IOException {
+        return search(tags, fromPage, pageCount, getDefaultLimit());
+    }
+
+    /**
+     * Fetch several consecutive pages of results at once.
+     * <p/>
+     * Page numbers are counted in units of the given page size. The returned
+     * {@link io.github.tjg1.library.norilib.SearchResult}'s offset is set to the last page fetched and each
+     * {@link io.github.tjg1.library.norilib.Image} keeps the page number and position it would have had if the
+     * pages were fetched one at a time.
+     *
+     * @param tags      Search query. A space-separated list of tags.
+     * @param fromPage  First page to fetch. (zero-indexed)
+     * @param pageCount Number of pages to fetch.
+     * @param limit     Number of images per page. Capped to {@link #getMaxLimit()}.
+     * @return A {@link io.github.tjg1.library.norilib.SearchResult} containing images from all pages, in page order.
+     * @throws IOException Network error.
+     */
+    SearchResult search(String tags, int fromPage, int pageCount, int limit) throws IOException;
+
+    /**
+     * Asynchronously fetch several consecutive pages of results at once, using the default page size.
+     *
+     * @param tags      Search query. A space-separated list of tags.
+     * @param fromPage  First page to fetch. (zero-indexed)
+     * @param pageCount Number of pages to fetch.
+     * @param callback  Callback listening for the merged SearchResult returned in the background.
+     */
+    default void search(String tags, int fromPage, int pageCount, SearchCallback callback) {
+        search(tags, fromPage, pageCount, getDefaultLimit(), callback);
+    }
+
+    /**
+     * Asynchronously fetch several consecutive pages of results at once.
+     *
+     * @param tags      Search query. A space-separated list of tags.
+     * @param fromPage  First page to fetch. (zero-indexed)
+     * @param pageCount Number of pages to fetch.
+     * @param limit     Number of images per page. Capped to {@link #getMaxLimit()}.
+     * @param callback  Callback listening for the merged SearchResult returned in the background.
+     * @see #search(String, int, int, int)
+     */
+    void search(String tags, int fromPage, int pageCount, int limit, SearchCallback callback);
+    //endregion
+
+    //region Page size
+
+    /**
+     * Get the number of images fetched per page by {@link #search(String, int)}.
+     *
+     * @return Default page size.
+     */
+    int getDefaultLimit();
+
+    /**
+     * Get the largest page size accepted by the API.
+     *
+     * @return Maximum page size.
+     */
+    int getMaxLimit();
+    //endregion
+
+    //region Query planning
+
+    /**
+     * Get the query planner used to exclude images hidden by the user's SafeSearch and tag filter
+     * settings on the server, instead of filtering them after download.
+     *
+     * @return Query planner aware of this API's query syntax and tag count limit.
+     */
+    default QueryPlanner getQueryPlanner() {
+        return QueryPlanner.NONE;
+    }
     //endregion
 
     //region Default query
@@ -119,6 +248,22 @@ public interface SearchClient {
          */
         void onSuccess(SearchResult searchResult);
     }
+
+    /**
+     * Callback that also receives partial results from clients searching several services at once
+     * (see {@link FederatedSearchClient}), as each service responds.
+     * <p/>
+     * Partial results are delivered before {@link #onSuccess(SearchResult)}, which still receives
+     * the complete SearchResult, including images already delivered as partial results.
+     */
+    interface StreamingSearchCallback extends SearchCallback {
+        /**
+         * Called when one of the services has responded.
+         *
+         * @param partialResult Images received from the service and not delivered in earlier partial results.
+         */
+        void onPartialResult(SearchResult partialResult);
+    }
     //endregion
 
     //region API Settings getter + inner class
@@ -173,6 +318,8 @@ public interface SearchClient {
                 username = null;
                 password = null;
             }
+            federatedServices = in.createTypedArray(CREATOR);
+            mirrors = Collections.unmodifiableList(in.createStringArrayList());
         }
 
         @Override
@@ -193,6 +340,8 @@ public interface SearchClient {
             } else {
                 dest.writeByte((byte) 0x00);
             }
+            dest.writeTypedArray(federatedServices, flags);
+            dest.writeStringList(mirrors);
         }
         //endregion
 
@@ -217,6 +366,14 @@ public interface SearchClient {
          * API authentication password/API key.
          */
         private final String password;
+        /**
+         * Services searched by a {@link APIType#FEDERATED} client. Null for other API types.
+         */
+        private final Settings[] federatedServices;
+        /**
+         * Endpoint URLs of mirrors serving the same API, requests fail over to. Never null.
+         */
+        private final List<String> mirrors;
         //endregion
 
         //region Constructors
@@ -225,11 +382,46 @@ public interface SearchClient {
         }
 
         public Settings(APIType apiType, String name, String endpoint, String username, String password) {
+            this(apiType, name, endpoint, username, password, null);
+        }
+
+        /**
+         * Create settings for a service with mirrors.
+         *
+         * @param apiType  API type.
+         * @param name     Human-readable service name.
+         * @param endpoint API server endpoint URL.
+         * @param username API authentication username. (optional)
+         * @param password API authentication password/API key. (optional)
+         * @param mirrors  Endpoint URLs of mirrors serving the same API, requests fail over to
+         *                 when the endpoint is down. (optional)
+         */
+        public Settings(APIType apiType, String name, String endpoint, String username, String password,
+                        List<String> mirrors) {
             this.apiType = apiType;
             this.name = name;
             this.endpoint = endpoint;
             this.username = username;
             this.password = password;
+            this.federatedServices = null;
+            this.mirrors = mirrors != null ?
+                    Collections.unmodifiableList(new ArrayList<>(mirrors)) : Collections.<String>emptyList();
+        }
+
+        /**
+         * Create settings for a {@link FederatedSearchClient} searching several services at once.
+         *
+         * @param name              Human-readable name. (i.e. "All services")
+         * @param federatedServices Settings of the services to search.
+         */
+        public Settings(String name, Settings... federatedServices) {
+            this.apiType = APIType.FEDERATED;
+            this.name = name;
+            this.endpoint = null;
+            this.username = null;
+            this.password = null;
+            this.federatedServices = federatedServices.clone();
+            this.mirrors = Collections.emptyList();
         }
         //endregion
 
@@ -269,16 +461,62 @@ public interface SearchClient {
         public String getPassword() {
             return password;
         }
+
+        /**
+         * Get the settings of the services searched by a {@link APIType#FEDERATED} client.
+         *
+         * @return Settings of the federated services. Empty for other API types.
+         */
+        public Settings[] getFederatedServices() {
+            return federatedServices != null ? federatedServices.clone() : new Settings[0];
+        }
+
+        /**
+         * Get the endpoint URLs of mirrors serving the same API.
+         *
+         * @return Mirror endpoint URLs. Empty if the service has no mirrors.
+         */
+        public List<String> getMirrors() {
+            return mirrors;
+        }
+        //endregion
+
+        //region Equality
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Settings settings = (Settings) o;
+
+            return apiType == settings.apiType && Objects.equals(name, settings.name) &&
+                    Objects.equals(endpoint, settings.endpoint) &&
+                    Objects.equals(username, settings.username) &&
+                    Objects.equals(password, settings.password) &&
+                    Arrays.equals(federatedServices, settings.federatedServices) &&
+                    mirrors.equals(settings.mirrors);
+        }
+
+        @Override
+        public int hashCode() {
+            return (Objects.hash(apiType, name, endpoint, username, password) * 31 +
+                    Arrays.hashCode(federatedServices)) * 31 + mirrors.hashCode();
+        }
         //endregion
 
         //region SearchClient deserialization
 
         /**
          * Create a {@link io.github.tjg1.library.norilib.clients.SearchClient} from this {@link io.github.tjg1.library.norilib.clients.SearchClient.Settings} object.
+         * Use {@link SearchClientRegistry#get(Context, Settings)} to re-use existing clients instead.
          *
          * @return A {@link io.github.tjg1.library.norilib.clients.SearchClient} created using settings from this object.
          */
         public SearchClient createSearchClient(Context context) {
+            if (apiType != APIType.FEDERATED) {
+                EndpointHealth.getInstance().setMirrors(endpoint, mirrors);
+            }
             switch (apiType) {
                 case DANBOARD:
                     return new Danbooru(context, name, endpoint, username, password);
@@ -294,6 +532,8 @@ public interface SearchClient {
                     return new Flickr(context, name, endpoint);
                 case FLICKR_USER:
                     return new FlickrUser(context, name, endpoint);
+                case FEDERATED:
+                    return new FederatedSearchClient(context, this);
                 default:
                     return null;
             }
@@ -312,7 +552,11 @@ public interface SearchClient {
             SHIMMIE,
             E621,
             FLICKR,
-            FLICKR_USER
+            FLICKR_USER,
+            /**
+             * Searches several other services at once. Not stored in the service settings database.
+             */
+            FEDERATED
         }
         //endregion
     }
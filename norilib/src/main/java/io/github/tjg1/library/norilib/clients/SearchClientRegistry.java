@@ -0,0 +1,105 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.clients;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+
+/**
+ * Process-wide registry of {@link SearchClient} instances, keyed by their {@link SearchClient.Settings}.
+ * <p/>
+ * Handing out shared clients lets per-client state (caches, rate limiters, open connections)
+ * survive navigation between Activities. {@link SearchClient}s only hold immutable configuration
+ * and the application {@link Context}, so they are safe to share between threads.
+ */
+public final class SearchClientRegistry {
+
+    //region Static fields
+    /**
+     * Clients created so far, keyed by the settings used to create them.
+     */
+    private static final ConcurrentMap<SearchClient.Settings, SearchClient> clients = new ConcurrentHashMap<>();
+    //endregion
+
+    //region Constructors
+
+    /**
+     * This class only has static methods and should not be instantiated.
+     */
+    private SearchClientRegistry() {
+    }
+    //endregion
+
+    //region Getting clients
+
+    /**
+     * Get a shared {@link SearchClient} for the given {@link SearchClient.Settings}, creating one if needed.
+     *
+     * @param context  Android context. Only the application context is retained.
+     * @param settings Search client settings.
+     * @return Shared search client. Null if the API type is not supported.
+     */
+    @Nullable
+    public static SearchClient get(@NonNull Context context, @NonNull SearchClient.Settings settings) {
+        SearchClient client = clients.get(settings);
+        if (client == null) {
+            client = settings.createSearchClient(context.getApplicationContext());
+            if (client != null) {
+                final SearchClient existing = clients.putIfAbsent(settings, client);
+                if (existing != null) {
+                    // Another thread created the client first.
+                    client = existing;
+                }
+            }
+        }
+        return client;
+    }
+
+    /**
+     * Forget the client created for the given settings. Should be called when a service is
+     * edited or removed, so its state doesn't outlive its configuration.
+     *
+     * @param settings Search client settings.
+     */
+    public static void remove(@NonNull SearchClient.Settings settings) {
+        // Federated clients searching the service hold on to its client too.
+        for (SearchClient.Settings other : clients.keySet()) {
+            if (Arrays.asList(other.getFederatedServices()).contains(settings)) {
+                clients.remove(other);
+            }
+        }
+        if (clients.remove(settings) == null || settings.getApiType() == SearchClient.Settings.APIType.FEDERATED) {
+            return;
+        }
+
+        // Drop the mirrors and health state of the endpoint, unless another client still uses it.
+        // Cached pages are keyed by request URL, so they are never served for different settings.
+        for (SearchClient.Settings other : clients.keySet()) {
+            if (Objects.equals(settings.getEndpoint(), other.getEndpoint())) {
+                return;
+            }
+        }
+        EndpointHealth.getInstance().forget(settings.getEndpoint());
+    }
+
+    /**
+     * Forget all shared clients.
+     */
+    public static void clear() {
+        clients.clear();
+    }
+    //endregion
+}
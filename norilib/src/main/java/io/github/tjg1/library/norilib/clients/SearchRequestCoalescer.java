@@ -0,0 +1,194 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.clients;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.SearchResult;
+
+/**
+ * Merges identical page requests that are in flight at the same time.
+ * <p/>
+ * Requests are identified by the API endpoint, the user, the normalised search query, the page and
+ * the page size. Callers asking for a page that is already being fetched are not sent to the
+ * network: they wait for the same response and parse, and receive their own copy of the result.
+ */
+final class SearchRequestCoalescer {
+
+    //region Request interface
+
+    /**
+     * Performs the actual API request.
+     */
+    interface Request {
+        /**
+         * Asynchronously fetch and parse a page of results.
+         *
+         * @param callback Callback listening for the SearchResult.
+         */
+        void execute(@NonNull SearchClient.SearchCallback callback);
+    }
+    //endregion
+
+    //region Static fields
+    /**
+     * Callbacks waiting for each request in flight, mapped to the request keys.
+     */
+    private static final Map<String, List<SearchClient.SearchCallback>> inFlightRequests = new HashMap<>();
+    //endregion
+
+    //region Constructors
+
+    /**
+     * This class only has static methods and should not be instantiated.
+     */
+    private SearchRequestCoalescer() {
+    }
+    //endregion
+
+    //region Request keys
+
+    /**
+     * Create the key identifying a page request.
+     *
+     * @param endpoint API endpoint.
+     * @param username Username used to authenticate with the API. Null if not authenticated.
+     * @param tags     Search query. A space-separated list of tags.
+     * @param page     Page requested. (page number, offset or cursor, as sent to the API)
+     * @param limit    Images per page.
+     * @return Request key.
+     */
+    @NonNull
+    static String createKey(@NonNull String endpoint, @Nullable String username, @Nullable String tags,
+                            @NonNull String page, int limit) {
+        return endpoint + '\n' + (username != null ? username : "") + '\n' + normaliseQuery(tags) +
+                '\n' + page + '\n' + limit;
+    }
+
+    /**
+     * Normalise a search query, so the same tags searched in a different order or with extra
+     * whitespace share a request key.
+     *
+     * @param tags Search query. A space-separated list of tags.
+     * @return Sorted tags separated with single spaces.
+     */
+    @NonNull
+    static String normaliseQuery(@Nullable String tags) {
+        if (tags == null) {
+            return "";
+        }
+
+        final String trimmed = tags.trim();
+        if (trimmed.isEmpty()) {
+            return "";
+        }
+
+        final String[] tagArray = trimmed.split("\\s+");
+        Arrays.sort(tagArray);
+        final StringBuilder query = new StringBuilder(trimmed.length());
+        for (String tag : tagArray) {
+            if (query.length() > 0) {
+                query.append(' ');
+            }
+            query.append(tag);
+        }
+        return query.toString();
+    }
+    //endregion
+
+    //region Executing requests
+
+    /**
+     * Execute a request, unless an identical request is already in flight.
+     *
+     * @param key      Request key. (see {@link #createKey(String, String, String, String, int)})
+     * @param callback Callback listening for the SearchResult.
+     * @param request  Request to execute if no identical request is in flight.
+     */
+    static void execute(@NonNull final String key, @NonNull SearchClient.SearchCallback callback,
+                        @NonNull Request request) {
+        synchronized (inFlightRequests) {
+            final List<SearchClient.SearchCallback> callbacks = inFlightRequests.get(key);
+            if (callbacks != null) {
+                // Wait for the request already in flight.
+                callbacks.add(callback);
+                return;
+            }
+            final List<SearchClient.SearchCallback> newCallbacks = new ArrayList<>(1);
+            newCallbacks.add(callback);
+            inFlightRequests.put(key, newCallbacks);
+        }
+
+        request.execute(new SearchClient.SearchCallback() {
+            @Override
+            public void onFailure(IOException e) {
+                for (SearchClient.SearchCallback callback : complete(key)) {
+                    callback.onFailure(e);
+                }
+            }
+
+            @Override
+            public void onSuccess(SearchResult searchResult) {
+                final List<SearchClient.SearchCallback> callbacks = complete(key);
+
+                // Copy the result before any callback gets to filter it.
+                final SearchResult[] results = new SearchResult[callbacks.size()];
+                results[0] = searchResult;
+                for (int i = 1; i < results.length; i++) {
+                    results[i] = copy(searchResult);
+                }
+                for (int i = 0; i < results.length; i++) {
+                    callbacks.get(i).onSuccess(results[i]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Remove a request from the list of requests in flight.
+     *
+     * @param key Request key.
+     * @return Callbacks waiting for the request.
+     */
+    @NonNull
+    private static List<SearchClient.SearchCallback> complete(@NonNull String key) {
+        synchronized (inFlightRequests) {
+            return inFlightRequests.remove(key);
+        }
+    }
+
+    /**
+     * Create a deep copy of a search result, so callers can filter their results independently.
+     *
+     * @param searchResult Search result to copy.
+     * @return Copy of the search result.
+     */
+    @NonNull
+    private static SearchResult copy(@NonNull SearchResult searchResult) {
+        final Image[] images = searchResult.getImages();
+        for (int i = 0; i < images.length; i++) {
+            images[i] = new Image(images[i]);
+        }
+
+        final SearchResult copy = new SearchResult(images, searchResult.getQuery(), searchResult.getCurrentOffset());
+        copy.setNextPageCursor(searchResult.getNextPageCursor());
+        if (!searchResult.hasNextPage()) {
+            copy.onLastPage();
+        }
+        return copy;
+    }
+    //endregion
+}
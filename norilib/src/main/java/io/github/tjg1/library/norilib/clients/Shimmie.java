@@ -12,12 +12,11 @@ import android.net.Uri;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import com.koushikdutta.async.DataEmitter;
-import com.koushikdutta.ion.Ion;
-import com.koushikdutta.ion.Response;
-
 import java.util.Locale;
-import java.util.concurrent.ExecutionException;
+
+import io.github.tjg1.library.norilib.http.EndpointHealth;
+import io.github.tjg1.library.norilib.http.HttpRequest;
+import io.github.tjg1.library.norilib.http.HttpTransports;
 
 /**
  * Client for the Shimmie2 API.
@@ -49,35 +48,26 @@ public class Shimmie extends DanbooruLegacy {
     public static String detectService(@NonNull Context context, @NonNull Uri uri, int timeout) {
         final String endpointUrl = Uri.withAppendedPath(uri, "/api/danbooru/find_posts/index.xml")
                 .toString();
-
-        try {
-            final Response<DataEmitter> response = Ion.with(context)
-                    .load(endpointUrl)
-                    .setTimeout(timeout)
-                    .userAgent(SearchClient.USER_AGENT)
-                    .followRedirect(false)
-                    .noCache()
-                    .asDataEmitter()
-                    .withResponse()
-                    .get();
-
-            // Close the connection.
-            final DataEmitter dataEmitter = response.getResult();
-            if (dataEmitter != null) dataEmitter.close();
-
-            if (response.getHeaders().code() == 200) {
-                return uri.toString();
-            }
-        } catch (InterruptedException | ExecutionException ignored) {
-        }
-        return null;
+        final HttpRequest request = new HttpRequest.Builder(endpointUrl)
+                .timeout(timeout)
+                .followRedirects(false)
+                .noCache()
+                .build();
+        return HttpSearch.isOk(HttpTransports.getDefault(context), request) ? uri.toString() : null;
     }
     //endregion
 
     //region SearchClient methods
+    @Override
+    public QueryPlanner getQueryPlanner() {
+        // Rating metatags are only supported if the optional rating extension is enabled.
+        return new QueryPlanner(QueryPlanner.UNLIMITED, true, null, null, null);
+    }
+
     @Override
     public Settings getSettings() {
-        return new Settings(Settings.APIType.SHIMMIE, name, apiEndpoint, username, password);
+        return new Settings(Settings.APIType.SHIMMIE, name, apiEndpoint, username, password,
+                EndpointHealth.getInstance().getMirrors(apiEndpoint));
     }
     //endregion
 
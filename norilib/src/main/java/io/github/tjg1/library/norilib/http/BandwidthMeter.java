@@ -0,0 +1,223 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Estimates the download throughput of the network link from measured transfers.
+ * <p/>
+ * Each transfer adds a sample, weighted by the square root of its size, so large downloads count for
+ * more without drowning out everything else. The estimate is the weighted median of recent samples,
+ * which is not thrown off by the odd stalled or cached transfer. Small transfers are ignored, as
+ * their duration is dominated by latency rather than bandwidth.
+ */
+public final class BandwidthMeter {
+
+    //region Constants
+    /**
+     * Number of recent samples the estimate is computed from.
+     */
+    private static final int MAX_SAMPLES = 20;
+    /**
+     * Smallest transfer used as a sample, in bytes.
+     */
+    private static final long MIN_SAMPLE_BYTES = 32 * 1024;
+    /**
+     * Shortest transfer used as a sample, in milliseconds. Faster transfers were most likely served
+     * from a cache or buffered before they were measured.
+     */
+    private static final long MIN_SAMPLE_MILLIS = 50;
+    //endregion
+
+    //region Static fields
+    /**
+     * Shared instance.
+     */
+    private static BandwidthMeter instance;
+    //endregion
+
+    //region Instance fields
+    /**
+     * Ring buffer of recent throughput samples, in bits per second.
+     */
+    private final long[] samples = new long[MAX_SAMPLES];
+    /**
+     * Ring buffer of the weights of recent samples.
+     */
+    private final double[] weights = new double[MAX_SAMPLES];
+    /**
+     * Position of the next sample in the ring buffers.
+     */
+    private int sampleIndex = 0;
+    /**
+     * Number of samples in the ring buffers.
+     */
+    private int sampleCount = 0;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new bandwidth meter. Use {@link #getInstance()} to share it with the rest of the app.
+     */
+    public BandwidthMeter() {
+    }
+
+    /**
+     * Get the bandwidth meter fed by all transfers.
+     *
+     * @return Shared instance.
+     */
+    @NonNull
+    public static synchronized BandwidthMeter getInstance() {
+        if (instance == null) {
+            instance = new BandwidthMeter();
+        }
+        return instance;
+    }
+    //endregion
+
+    //region Measurements
+
+    /**
+     * Record a completed transfer.
+     *
+     * @param bytes         Number of bytes transferred.
+     * @param elapsedMillis Time spent transferring the data, in milliseconds. Should not include the
+     *                      time spent waiting for the response headers.
+     */
+    public synchronized void addSample(long bytes, long elapsedMillis) {
+        if (bytes < MIN_SAMPLE_BYTES || elapsedMillis < MIN_SAMPLE_MILLIS) {
+            return;
+        }
+        samples[sampleIndex] = bytes * 8 * 1000 / elapsedMillis;
+        weights[sampleIndex] = Math.sqrt(bytes);
+        sampleIndex = (sampleIndex + 1) % MAX_SAMPLES;
+        sampleCount = Math.min(sampleCount + 1, MAX_SAMPLES);
+    }
+
+    /**
+     * Start measuring a transfer that reports its progress, such as an image download.
+     *
+     * @return Transfer measurement. Call {@link Transfer#finish()} once the transfer is complete.
+     */
+    @NonNull
+    public Transfer startTransfer() {
+        return new Transfer(this);
+    }
+
+    /**
+     * Get the estimated download throughput.
+     *
+     * @return Throughput, in bits per second. -1 if no transfers have been measured yet.
+     */
+    public synchronized long getEstimate() {
+        if (sampleCount == 0) {
+            return -1;
+        }
+
+        // Sort samples by throughput, and find the one at half of the total weight.
+        final Integer[] order = new Integer[sampleCount];
+        double totalWeight = 0;
+        for (int i = 0; i < sampleCount; i++) {
+            order[i] = i;
+            totalWeight += weights[i];
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(samples[a], samples[b]));
+
+        double weight = 0;
+        for (Integer i : order) {
+            weight += weights[i];
+            if (weight >= totalWeight / 2) {
+                return samples[i];
+            }
+        }
+        return samples[order[order.length - 1]];
+    }
+
+    /**
+     * Forget all measurements. Should be called when the device switches to another network.
+     */
+    public synchronized void reset() {
+        sampleIndex = 0;
+        sampleCount = 0;
+    }
+    //endregion
+
+    //region Inner class: Transfer
+
+    /**
+     * Measures a transfer from its progress updates. Only the time between the first and last
+     * update is counted, so the time spent waiting for the server to respond is left out.
+     */
+    public static class Transfer {
+        /**
+         * Bandwidth meter the measurement is added to.
+         */
+        private final BandwidthMeter bandwidthMeter;
+        /**
+         * Time of the first progress update (SystemClock.elapsedRealtime()). -1 before the first update.
+         */
+        private long startTime = -1;
+        /**
+         * Bytes transferred at the first progress update.
+         */
+        private long startBytes;
+        /**
+         * Time of the last progress update.
+         */
+        private long lastTime;
+        /**
+         * Bytes transferred at the last progress update.
+         */
+        private long lastBytes;
+        /**
+         * True once the measurement has been added to the bandwidth meter.
+         */
+        private boolean finished = false;
+
+        /**
+         * Create a new transfer measurement.
+         *
+         * @param bandwidthMeter Bandwidth meter the measurement is added to.
+         */
+        private Transfer(@NonNull BandwidthMeter bandwidthMeter) {
+            this.bandwidthMeter = bandwidthMeter;
+        }
+
+        /**
+         * Record a progress update. May be called on any thread.
+         *
+         * @param bytes Number of bytes transferred so far.
+         */
+        public synchronized void onProgress(long bytes) {
+            lastTime = SystemClock.elapsedRealtime();
+            lastBytes = bytes;
+            if (startTime < 0) {
+                startTime = lastTime;
+                startBytes = bytes;
+            }
+        }
+
+        /**
+         * Add the measurement to the bandwidth meter. Should only be called if the transfer succeeded.
+         */
+        public synchronized void finish() {
+            if (finished || startTime < 0) {
+                return;
+            }
+            finished = true;
+            bandwidthMeter.addSample(lastBytes - startBytes, lastTime - startTime);
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,43 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Thrown instead of sending a request when the circuit breaker of the API endpoint and all its
+ * mirrors is open, because they have been failing. See {@link EndpointHealth}.
+ */
+public class CircuitOpenException extends IOException {
+
+    /**
+     * Time until the endpoint will be tried again, in milliseconds.
+     */
+    private final long retryAfterMillis;
+
+    /**
+     * Create a new exception.
+     *
+     * @param host             Host name of the endpoint.
+     * @param retryAfterMillis Time until the endpoint will be tried again, in milliseconds.
+     */
+    public CircuitOpenException(String host, long retryAfterMillis) {
+        super(String.format(Locale.US, "%s is not responding, retrying in %d s.", host,
+                (retryAfterMillis + 999) / 1000));
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Get the time until the endpoint will be tried again.
+     *
+     * @return Delay, in milliseconds. 0 if a probe request is already in flight.
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,759 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracks the health and response times of API endpoints and their mirrors.
+ * <p/>
+ * Each endpoint has a circuit breaker. The circuit opens when the endpoint fails several requests
+ * in a row, or when too many recent requests failed or were slow. While the circuit is open,
+ * requests are routed to the endpoint's mirrors or fail straight away, instead of waiting for a
+ * dead server to time out. Once the open period is over, the circuit is half-open: a single probe
+ * request is let through, and closes the circuit again if it succeeds.
+ * <p/>
+ * Response times are also used to decide when a slow request should be hedged, by sending a
+ * duplicate request and using whichever response comes first.
+ */
+public final class EndpointHealth {
+
+    //region Constants
+    /**
+     * Number of consecutive failures after which the circuit opens.
+     */
+    private static final int FAILURE_THRESHOLD = 2;
+    /**
+     * Number of recent request outcomes used to compute the failure and slow call rates.
+     */
+    private static final int OUTCOME_WINDOW = 20;
+    /**
+     * Number of outcomes needed before the failure and slow call rates can open the circuit.
+     */
+    private static final int MIN_WINDOW_CALLS = 5;
+    /**
+     * Share of failed requests that opens the circuit, in percent.
+     */
+    private static final int FAILURE_RATE_THRESHOLD = 50;
+    /**
+     * Response time after which a successful request is counted as slow, in milliseconds.
+     */
+    private static final long SLOW_CALL_MILLIS = 10000;
+    /**
+     * Share of slow requests that opens the circuit, in percent.
+     */
+    private static final int SLOW_CALL_RATE_THRESHOLD = 80;
+    /**
+     * Time the circuit stays open for the first time it opens, in milliseconds.
+     * Doubled each time a probe request fails.
+     */
+    private static final long OPEN_MILLIS = 30000;
+    /**
+     * Longest time the circuit stays open for, in milliseconds.
+     */
+    private static final long MAX_OPEN_MILLIS = 300000;
+    /**
+     * Time after which a probe request that never finished (i.e. was cancelled) stops blocking
+     * further probes, in milliseconds.
+     */
+    private static final long PROBE_TIMEOUT_MILLIS = 30000;
+    /**
+     * Number of recent response times kept for each endpoint.
+     */
+    private static final int LATENCY_SAMPLE_COUNT = 64;
+    /**
+     * Number of response times needed before requests to an endpoint are hedged.
+     */
+    private static final int MIN_HEDGE_SAMPLES = 16;
+    /**
+     * Shortest delay before a request is hedged, in milliseconds.
+     */
+    private static final long MIN_HEDGE_DELAY_MILLIS = 100;
+    /**
+     * Percentile of response times after which requests are hedged.
+     */
+    private static final double HEDGE_PERCENTILE = 0.95;
+    /**
+     * Maximum share of requests that can be hedged, in percent. Caps the extra load caused by
+     * hedging when an endpoint slows down across the board.
+     */
+    private static final int HEDGE_BUDGET_PERCENT = 10;
+    /**
+     * Number of requests after which the hedge budget is reset.
+     */
+    private static final int HEDGE_BUDGET_WINDOW = 200;
+    //endregion
+
+    //region Static fields
+    /**
+     * Shared instance.
+     */
+    private static EndpointHealth instance;
+    //endregion
+
+    //region Instance fields
+    /**
+     * Mirror endpoints, by primary endpoint.
+     */
+    private final Map<String, List<String>> mirrors = new HashMap<>();
+    /**
+     * Health statistics, by endpoint.
+     */
+    private final Map<String, Stats> stats = new HashMap<>();
+    /**
+     * Listeners notified when the state of a circuit changes.
+     */
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * True if slow requests should be hedged.
+     */
+    private boolean hedgingEnabled = false;
+    /**
+     * Requests started since the hedge budget was last reset.
+     */
+    private int requestCount = 0;
+    /**
+     * Hedged requests started since the hedge budget was last reset.
+     */
+    private int hedgeCount = 0;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new endpoint health tracker. Use {@link #getInstance()} to share it with the API clients.
+     */
+    public EndpointHealth() {
+    }
+
+    /**
+     * Get the endpoint health tracker shared by all API clients.
+     *
+     * @return Shared instance.
+     */
+    @NonNull
+    public static synchronized EndpointHealth getInstance() {
+        if (instance == null) {
+            instance = new EndpointHealth();
+        }
+        return instance;
+    }
+    //endregion
+
+    //region Configuration
+
+    /**
+     * Set the mirrors of an API endpoint. Requests to the endpoint fail over to the mirrors, in order.
+     *
+     * @param endpoint API endpoint URL. (i.e. https://danbooru.donmai.us)
+     * @param mirrors  Endpoint URLs of mirrors serving the same API. Null or empty to remove the mirrors.
+     */
+    public synchronized void setMirrors(@Nullable String endpoint, @Nullable List<String> mirrors) {
+        if (endpoint == null) {
+            return;
+        }
+        if (mirrors == null || mirrors.isEmpty()) {
+            this.mirrors.remove(normalizeEndpoint(endpoint));
+        } else {
+            this.mirrors.put(normalizeEndpoint(endpoint), Collections.unmodifiableList(new ArrayList<>(mirrors)));
+        }
+    }
+
+    /**
+     * Get the mirrors of an API endpoint.
+     *
+     * @param endpoint API endpoint URL.
+     * @return Mirror endpoint URLs, as set using {@link #setMirrors(String, List)}. Empty if the
+     * endpoint has no mirrors.
+     */
+    @NonNull
+    public synchronized List<String> getMirrors(@Nullable String endpoint) {
+        final List<String> mirrors = endpoint != null ? this.mirrors.get(normalizeEndpoint(endpoint)) : null;
+        return mirrors != null ? mirrors : Collections.<String>emptyList();
+    }
+
+    /**
+     * Forget the mirrors and health statistics of an API endpoint.
+     * Should be called when the service using the endpoint is edited or removed.
+     *
+     * @param endpoint API endpoint URL. (i.e. https://danbooru.donmai.us)
+     */
+    public synchronized void forget(@Nullable String endpoint) {
+        if (endpoint == null) {
+            return;
+        }
+        final String normalizedEndpoint = normalizeEndpoint(endpoint);
+        final List<String> mirrors = this.mirrors.remove(normalizedEndpoint);
+        for (String candidate : concat(normalizedEndpoint, mirrors != null ? mirrors : Collections.<String>emptyList())) {
+            stats.remove(normalizeEndpoint(candidate));
+        }
+        // Endpoints without mirrors are tracked by origin.
+        final Uri uri = Uri.parse(endpoint);
+        stats.remove(uri.getScheme() + "://" + uri.getEncodedAuthority());
+    }
+
+    /**
+     * Close all circuits and forget the health statistics of all endpoints, keeping their mirrors.
+     * Should be called when the device connects to a network, since failures recorded while it was
+     * offline or on another network say nothing about the endpoints.
+     */
+    public void reset() {
+        final List<String> openEndpoints = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+                if (entry.getValue().state != CircuitState.CLOSED) {
+                    openEndpoints.add(entry.getKey());
+                }
+            }
+            stats.clear();
+        }
+        for (String endpoint : openEndpoints) {
+            notifyStateChanged(endpoint, CircuitState.CLOSED);
+        }
+    }
+
+    /**
+     * Enable or disable request hedging.
+     *
+     * @param hedgingEnabled True if slow requests should be hedged.
+     */
+    public synchronized void setHedgingEnabled(boolean hedgingEnabled) {
+        this.hedgingEnabled = hedgingEnabled;
+    }
+
+    /**
+     * Check if request hedging is enabled.
+     *
+     * @return True if slow requests are hedged.
+     */
+    public synchronized boolean isHedgingEnabled() {
+        return hedgingEnabled;
+    }
+    //endregion
+
+    //region Routing
+
+    /**
+     * Get the endpoints a request can be sent to.
+     *
+     * @param url Request URL.
+     * @return Routes to the primary endpoint and its mirrors. Endpoints with a closed circuit come
+     * first, in the configured order, followed by endpoints that can be probed and endpoints with an
+     * open circuit. Never empty. Use {@link #tryAcquire(Route)} before sending a request.
+     */
+    @NonNull
+    synchronized List<Route> getRoutes(@NonNull String url) {
+        for (Map.Entry<String, List<String>> entry : mirrors.entrySet()) {
+            final String endpoint = entry.getKey();
+            final String path = url.startsWith(endpoint) ? url.substring(endpoint.length()) : null;
+            if (path == null || !(path.isEmpty() || path.startsWith("/") || path.startsWith("?"))) {
+                continue;
+            }
+
+            final long now = SystemClock.elapsedRealtime();
+            final List<Route> closedRoutes = new ArrayList<>();
+            final List<Route> halfOpenRoutes = new ArrayList<>();
+            final List<Route> openRoutes = new ArrayList<>();
+            for (String mirror : concat(endpoint, entry.getValue())) {
+                final String candidate = normalizeEndpoint(mirror);
+                final Route route = new Route(candidate + path, candidate);
+                switch (getState(this.stats.get(candidate), now)) {
+                    case CLOSED:
+                        closedRoutes.add(route);
+                        break;
+                    case HALF_OPEN:
+                        halfOpenRoutes.add(route);
+                        break;
+                    default:
+                        openRoutes.add(route);
+                }
+            }
+            closedRoutes.addAll(halfOpenRoutes);
+            closedRoutes.addAll(openRoutes);
+            return closedRoutes;
+        }
+
+        // Endpoints without mirrors are tracked by origin.
+        final Uri uri = Uri.parse(url);
+        return Collections.singletonList(new Route(url, uri.getScheme() + "://" + uri.getEncodedAuthority()));
+    }
+
+    /**
+     * Ask the circuit breaker of an endpoint for permission to send a request.
+     *
+     * @param route Route the request would be sent to.
+     * @return True if the circuit is closed, or this request is the probe of a half-open circuit.
+     * False if the circuit is open, or another probe is in flight.
+     */
+    boolean tryAcquire(@NonNull Route route) {
+        final boolean permitted;
+        final boolean halfOpened;
+        synchronized (this) {
+            final Stats stats = this.stats.get(route.endpoint);
+            final long now = SystemClock.elapsedRealtime();
+            if (stats == null || stats.state == CircuitState.CLOSED) {
+                return true;
+            }
+            halfOpened = stats.state == CircuitState.OPEN && stats.openUntil <= now;
+            if (halfOpened) {
+                stats.state = CircuitState.HALF_OPEN;
+                stats.probeStartTime = 0;
+            }
+            permitted = stats.state == CircuitState.HALF_OPEN &&
+                    (stats.probeStartTime == 0 || now - stats.probeStartTime >= PROBE_TIMEOUT_MILLIS);
+            if (permitted) {
+                stats.probeStartTime = now;
+            }
+        }
+        if (halfOpened) {
+            notifyStateChanged(route.endpoint, CircuitState.HALF_OPEN);
+        }
+        return permitted;
+    }
+
+    /**
+     * Record a response received from an endpoint.
+     *
+     * @param route         Route the request was sent to.
+     * @param latencyMillis Time until the response headers were received, in milliseconds.
+     */
+    void recordSuccess(@NonNull Route route, long latencyMillis) {
+        final CircuitState newState;
+        synchronized (this) {
+            final Stats stats = getStats(route.endpoint);
+            stats.consecutiveFailures = 0;
+            stats.latencies[stats.latencyIndex] = latencyMillis;
+            stats.latencyIndex = (stats.latencyIndex + 1) % LATENCY_SAMPLE_COUNT;
+            stats.latencyCount = Math.min(stats.latencyCount + 1, LATENCY_SAMPLE_COUNT);
+
+            if (stats.state == CircuitState.CLOSED) {
+                stats.addOutcome(false, latencyMillis >= SLOW_CALL_MILLIS);
+                newState = shouldOpen(stats) ? open(stats, false) : null;
+            } else {
+                // The probe went through: the endpoint is back.
+                stats.state = CircuitState.CLOSED;
+                stats.openMillis = OPEN_MILLIS;
+                newState = CircuitState.CLOSED;
+            }
+        }
+        if (newState != null) {
+            notifyStateChanged(route.endpoint, newState);
+        }
+    }
+
+    /**
+     * Record a failed request: a network error, timeout or server error.
+     *
+     * @param route Route the request was sent to.
+     */
+    void recordFailure(@NonNull Route route) {
+        final CircuitState newState;
+        synchronized (this) {
+            final Stats stats = getStats(route.endpoint);
+            stats.consecutiveFailures++;
+            if (stats.state == CircuitState.CLOSED) {
+                stats.addOutcome(true, false);
+                newState = shouldOpen(stats) ? open(stats, false) : null;
+            } else if (stats.state == CircuitState.HALF_OPEN) {
+                // The probe failed: keep the endpoint out of rotation for longer.
+                newState = open(stats, true);
+            } else {
+                newState = null;
+            }
+        }
+        if (newState != null) {
+            notifyStateChanged(route.endpoint, newState);
+        }
+    }
+    //endregion
+
+    //region Hedging
+
+    /**
+     * Count a new request against the hedge budget.
+     */
+    synchronized void onRequestStarted() {
+        if (++requestCount > HEDGE_BUDGET_WINDOW) {
+            requestCount = 1;
+            hedgeCount = 0;
+        }
+    }
+
+    /**
+     * Get the time after which a request to an endpoint should be hedged.
+     *
+     * @param route Route the request was sent to.
+     * @return Hedge delay, in milliseconds. -1 if hedging is disabled, or not enough response times
+     * have been recorded for the endpoint yet.
+     */
+    synchronized long getHedgeDelay(@NonNull Route route) {
+        final Stats stats = this.stats.get(route.endpoint);
+        if (!hedgingEnabled || stats == null || stats.latencyCount < MIN_HEDGE_SAMPLES) {
+            return -1;
+        }
+        final long[] latencies = Arrays.copyOf(stats.latencies, stats.latencyCount);
+        Arrays.sort(latencies);
+        final int index = Math.min(latencies.length - 1, (int) Math.ceil(latencies.length * HEDGE_PERCENTILE) - 1);
+        return Math.max(MIN_HEDGE_DELAY_MILLIS, latencies[index]);
+    }
+
+    /**
+     * Take a hedge from the hedge budget.
+     *
+     * @return True if the request can be hedged.
+     */
+    synchronized boolean tryHedge() {
+        if (hedgeCount * 100 >= Math.max(requestCount, 10) * HEDGE_BUDGET_PERCENT) {
+            return false;
+        }
+        hedgeCount++;
+        return true;
+    }
+    //endregion
+
+    //region Circuit state
+
+    /**
+     * Get the state of a service's circuit breaker, to show whether it is reachable.
+     *
+     * @param endpoint API endpoint URL. (i.e. https://danbooru.donmai.us)
+     * @return {@link CircuitState#CLOSED} if the endpoint or one of its mirrors is accepting requests,
+     * {@link CircuitState#HALF_OPEN} if requests are only let through to probe whether the service
+     * is back, {@link CircuitState#OPEN} if requests to the service fail straight away.
+     */
+    @NonNull
+    public synchronized CircuitState getState(@Nullable String endpoint) {
+        if (endpoint == null) {
+            return CircuitState.CLOSED;
+        }
+        final long now = SystemClock.elapsedRealtime();
+        final String normalizedEndpoint = normalizeEndpoint(endpoint);
+        final List<String> mirrors = this.mirrors.get(normalizedEndpoint);
+        if (mirrors == null) {
+            // Endpoints without mirrors are tracked by origin.
+            final Uri uri = Uri.parse(endpoint);
+            return getState(stats.get(uri.getScheme() + "://" + uri.getEncodedAuthority()), now);
+        }
+
+        // A service is as healthy as its healthiest mirror.
+        CircuitState state = CircuitState.OPEN;
+        for (String candidate : concat(normalizedEndpoint, mirrors)) {
+            final CircuitState candidateState = getState(stats.get(normalizeEndpoint(candidate)), now);
+            if (candidateState.ordinal() < state.ordinal()) {
+                state = candidateState;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Get the time until the circuit of an endpoint can be probed again.
+     *
+     * @param route Route to the endpoint.
+     * @return Time left in the open state, in milliseconds. 0 if the circuit is not open.
+     */
+    synchronized long getOpenMillisRemaining(@NonNull Route route) {
+        final Stats stats = this.stats.get(route.endpoint);
+        if (stats == null || stats.state != CircuitState.OPEN) {
+            return 0;
+        }
+        return Math.max(0, stats.openUntil - SystemClock.elapsedRealtime());
+    }
+
+    /**
+     * Register a listener notified when the state of a circuit changes.
+     *
+     * @param listener Listener to add.
+     */
+    public void addListener(@NonNull Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregister a listener added using {@link #addListener(Listener)}.
+     *
+     * @param listener Listener to remove.
+     */
+    public void removeListener(@NonNull Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Notify listeners that the state of a circuit has changed.
+     * Must be called without holding the lock, as listeners may query the endpoint health.
+     *
+     * @param endpoint Endpoint URL.
+     * @param state    New circuit state.
+     */
+    private void notifyStateChanged(@NonNull String endpoint, @NonNull CircuitState state) {
+        for (Listener listener : listeners) {
+            listener.onCircuitStateChanged(endpoint, state);
+        }
+    }
+    //endregion
+
+    //region Helper methods
+
+    /**
+     * Get the state of a circuit, as seen by new requests.
+     *
+     * @param stats Health statistics of the endpoint. (optional)
+     * @param now   Current time. (SystemClock.elapsedRealtime())
+     * @return Circuit state. Open circuits whose open period is over are reported as half-open.
+     */
+    @NonNull
+    private static CircuitState getState(@Nullable Stats stats, long now) {
+        if (stats == null) {
+            return CircuitState.CLOSED;
+        }
+        if (stats.state == CircuitState.OPEN && stats.openUntil <= now) {
+            return CircuitState.HALF_OPEN;
+        }
+        return stats.state;
+    }
+
+    /**
+     * Check if the circuit of a healthy endpoint should open.
+     *
+     * @param stats Health statistics of the endpoint.
+     * @return True if the endpoint failed several requests in a row, or too many recent requests
+     * failed or were slow.
+     */
+    private static boolean shouldOpen(@NonNull Stats stats) {
+        if (stats.consecutiveFailures >= FAILURE_THRESHOLD) {
+            return true;
+        }
+        if (stats.outcomeCount < MIN_WINDOW_CALLS) {
+            return false;
+        }
+        return stats.failureCount * 100 >= stats.outcomeCount * FAILURE_RATE_THRESHOLD ||
+                stats.slowCount * 100 >= stats.outcomeCount * SLOW_CALL_RATE_THRESHOLD;
+    }
+
+    /**
+     * Open the circuit of an endpoint.
+     *
+     * @param stats       Health statistics of the endpoint.
+     * @param probeFailed True if the circuit is reopened after a failed probe, doubling the open period.
+     * @return {@link CircuitState#OPEN}
+     */
+    @NonNull
+    private static CircuitState open(@NonNull Stats stats, boolean probeFailed) {
+        if (probeFailed) {
+            stats.openMillis = Math.min(MAX_OPEN_MILLIS, stats.openMillis * 2);
+        }
+        stats.state = CircuitState.OPEN;
+        stats.openUntil = SystemClock.elapsedRealtime() + stats.openMillis;
+        stats.probeStartTime = 0;
+        stats.clearOutcomes();
+        return CircuitState.OPEN;
+    }
+
+    /**
+     * Get the health statistics of an endpoint, creating them if needed.
+     *
+     * @param endpoint Endpoint URL.
+     * @return Health statistics.
+     */
+    @NonNull
+    private Stats getStats(@NonNull String endpoint) {
+        Stats stats = this.stats.get(endpoint);
+        if (stats == null) {
+            stats = new Stats();
+            this.stats.put(endpoint, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Remove the trailing slash from an endpoint URL, so it can be used as a URL prefix.
+     *
+     * @param endpoint Endpoint URL.
+     * @return Normalized endpoint URL.
+     */
+    @NonNull
+    private static String normalizeEndpoint(@NonNull String endpoint) {
+        return endpoint.endsWith("/") ? endpoint.substring(0, endpoint.length() - 1) : endpoint;
+    }
+
+    /**
+     * Prepend an endpoint to the list of its mirrors.
+     *
+     * @param endpoint Primary endpoint.
+     * @param mirrors  Mirror endpoints.
+     * @return List of all endpoints.
+     */
+    @NonNull
+    private static List<String> concat(@NonNull String endpoint, @NonNull List<String> mirrors) {
+        final List<String> endpoints = new ArrayList<>(mirrors.size() + 1);
+        endpoints.add(endpoint);
+        endpoints.addAll(mirrors);
+        return endpoints;
+    }
+    //endregion
+
+    //region Inner classes
+
+    /**
+     * A request URL rewritten to use one of the endpoints serving the API.
+     */
+    static class Route {
+        /**
+         * Request URL.
+         */
+        final String url;
+        /**
+         * Endpoint the request is sent to. Used to track its health.
+         */
+        final String endpoint;
+
+        /**
+         * Create a new route.
+         *
+         * @param url      Request URL.
+         * @param endpoint Endpoint the request is sent to.
+         */
+        Route(@NonNull String url, @NonNull String endpoint) {
+            this.url = url;
+            this.endpoint = endpoint;
+        }
+    }
+
+    /**
+     * Health statistics of a single endpoint.
+     */
+    private static class Stats {
+        /**
+         * State of the endpoint's circuit breaker.
+         */
+        CircuitState state = CircuitState.CLOSED;
+        /**
+         * Number of requests failed in a row.
+         */
+        int consecutiveFailures = 0;
+        /**
+         * Time the open circuit can be probed at (SystemClock.elapsedRealtime()).
+         */
+        long openUntil = 0;
+        /**
+         * Time the circuit stays open for, in milliseconds.
+         */
+        long openMillis = OPEN_MILLIS;
+        /**
+         * Time the probe of a half-open circuit was sent at. 0 if no probe is in flight.
+         */
+        long probeStartTime = 0;
+        /**
+         * Ring buffer of recent request outcomes: true for failed requests.
+         */
+        final boolean[] failures = new boolean[OUTCOME_WINDOW];
+        /**
+         * Ring buffer of recent request outcomes: true for slow requests.
+         */
+        final boolean[] slowCalls = new boolean[OUTCOME_WINDOW];
+        /**
+         * Position of the next outcome in the ring buffers.
+         */
+        int outcomeIndex = 0;
+        /**
+         * Number of outcomes in the ring buffers.
+         */
+        int outcomeCount = 0;
+        /**
+         * Number of failed requests in the ring buffers.
+         */
+        int failureCount = 0;
+        /**
+         * Number of slow requests in the ring buffers.
+         */
+        int slowCount = 0;
+        /**
+         * Ring buffer of recent response times, in milliseconds.
+         */
+        final long[] latencies = new long[LATENCY_SAMPLE_COUNT];
+        /**
+         * Position of the next response time in the ring buffer.
+         */
+        int latencyIndex = 0;
+        /**
+         * Number of response times in the ring buffer.
+         */
+        int latencyCount = 0;
+
+        /**
+         * Add a request outcome to the ring buffers, replacing the oldest one.
+         *
+         * @param failed True if the request failed.
+         * @param slow   True if the request was slow.
+         */
+        void addOutcome(boolean failed, boolean slow) {
+            if (outcomeCount == OUTCOME_WINDOW) {
+                failureCount -= failures[outcomeIndex] ? 1 : 0;
+                slowCount -= slowCalls[outcomeIndex] ? 1 : 0;
+            } else {
+                outcomeCount++;
+            }
+            failures[outcomeIndex] = failed;
+            slowCalls[outcomeIndex] = slow;
+            failureCount += failed ? 1 : 0;
+            slowCount += slow ? 1 : 0;
+            outcomeIndex = (outcomeIndex + 1) % OUTCOME_WINDOW;
+        }
+
+        /**
+         * Forget all request outcomes, so the circuit starts afresh when it closes again.
+         */
+        void clearOutcomes() {
+            outcomeIndex = outcomeCount = failureCount = slowCount = 0;
+        }
+    }
+
+    /**
+     * States of an endpoint's circuit breaker.
+     * Ordered from the most to the least healthy.
+     */
+    public enum CircuitState {
+        /**
+         * The endpoint is healthy, and requests are sent as usual.
+         */
+        CLOSED,
+        /**
+         * The endpoint was failing, and a single probe request is let through to check if it is back.
+         */
+        HALF_OPEN,
+        /**
+         * The endpoint is failing, and requests to it fail straight away.
+         */
+        OPEN
+    }
+
+    /**
+     * Listener notified when the state of a circuit changes.
+     */
+    public interface Listener {
+        /**
+         * Called when the state of an endpoint's circuit changes. May be called on any thread.
+         *
+         * @param endpoint Endpoint URL, or origin for endpoints without mirrors.
+         * @param state    New circuit state.
+         */
+        void onCircuitStateChanged(@NonNull String endpoint, @NonNull CircuitState state);
+    }
+    //endregion
+}
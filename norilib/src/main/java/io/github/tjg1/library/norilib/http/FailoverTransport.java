@@ -0,0 +1,546 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import android.net.Uri;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HttpTransport} wrapping another transport with mirror failover and request hedging.
+ * <p/>
+ * Requests that fail with a network error or a server error are sent again to the next mirror of
+ * the API endpoint (see {@link EndpointHealth#setMirrors(String, List)}). Endpoints whose circuit
+ * breaker is open are skipped, and if no endpoint is left, the request fails straight away with a
+ * {@link CircuitOpenException}, without opening a connection.
+ * <p/>
+ * Attempts sent to a mirror take a token for the mirror's host from the rate limiter, as the
+ * {@link RateLimitedTransport} wrapping this transport only takes a token for the request's own host.
+ * <p/>
+ * When hedging is enabled, an asynchronous request still waiting for a response after the
+ * endpoint's 95th percentile response time is hedged: a duplicate request is sent to the next
+ * mirror (or the same endpoint, if it has no mirrors), and the first response wins. Hedges are
+ * only sent if the rate limiter has a token available straight away (and, for hedges sent to the
+ * same endpoint, one more to spare), and are capped by a budget, so hedging adds little load to the servers.
+ * <p/>
+ * Attempts cancelled by this transport, such as hedges that lost the race, are not counted as
+ * failures of their endpoint.
+ */
+public class FailoverTransport implements HttpTransport {
+
+    //region Static fields
+    /**
+     * Scheduler used to send hedged requests.
+     */
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
+    //endregion
+
+    //region Instance fields
+    /**
+     * Transport sending the requests.
+     */
+    private final HttpTransport transport;
+    /**
+     * Endpoint health tracker choosing where requests are sent.
+     */
+    private final EndpointHealth endpointHealth;
+    /**
+     * Rate limiter attempts sent to mirrors and hedged requests take their tokens from.
+     */
+    private final RateLimiter rateLimiter;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Wrap a transport using the shared {@link EndpointHealth} and {@link RateLimiter}.
+     *
+     * @param transport Transport sending the requests.
+     */
+    public FailoverTransport(@NonNull HttpTransport transport) {
+        this(transport, EndpointHealth.getInstance(), RateLimiter.getInstance());
+    }
+
+    /**
+     * Wrap a transport.
+     *
+     * @param transport      Transport sending the requests.
+     * @param endpointHealth Endpoint health tracker choosing where requests are sent.
+     * @param rateLimiter    Rate limiter attempts sent to mirrors and hedged requests take their tokens from.
+     */
+    public FailoverTransport(@NonNull HttpTransport transport, @NonNull EndpointHealth endpointHealth,
+                             @NonNull RateLimiter rateLimiter) {
+        this.transport = transport;
+        this.endpointHealth = endpointHealth;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Create the scheduler used to send hedged requests.
+     *
+     * @return Scheduler running on a single daemon thread.
+     */
+    private static ScheduledExecutorService createScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "norilib-hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+    //endregion
+
+    //region HttpTransport methods
+    @NonNull
+    @Override
+    public HttpCall newCall(@NonNull HttpRequest request) {
+        return new FailoverCall(request);
+    }
+    //endregion
+
+    //region Helper methods
+
+    /**
+     * Check if a response means the endpoint is failing, and another mirror should be tried.
+     *
+     * @param response HTTP response.
+     * @return True for server errors, except 503, which is retried by {@link RateLimitedTransport}.
+     */
+    private static boolean isServerError(@NonNull HttpResponse response) {
+        return response.getCode() >= 500 && response.getCode() != 503;
+    }
+
+    /**
+     * Get the host of an endpoint.
+     *
+     * @param route Endpoint.
+     * @return Host name. Null for malformed URLs.
+     */
+    @Nullable
+    private static String getHost(@NonNull EndpointHealth.Route route) {
+        return Uri.parse(route.url).getHost();
+    }
+    //endregion
+
+    //region Inner class: Failover call
+
+    /**
+     * {@link HttpCall} sending a request to each mirror in turn, until one of them responds.
+     */
+    private class FailoverCall implements HttpCall {
+        /**
+         * HTTP request.
+         */
+        private final HttpRequest request;
+        /**
+         * Endpoints the request can be sent to, healthiest first.
+         */
+        private final List<EndpointHealth.Route> routes;
+        /**
+         * Attempts in flight.
+         */
+        private final List<HttpCall> calls = new ArrayList<>(2);
+        /**
+         * Index of the next route to send the request to.
+         */
+        private int nextRoute = 0;
+        /**
+         * Scheduled hedged request.
+         */
+        private ScheduledFuture<?> scheduledHedge;
+        /**
+         * True once a response has been delivered, or the call has failed.
+         */
+        private boolean done = false;
+        /**
+         * True if the call was cancelled.
+         */
+        private boolean cancelled = false;
+        /**
+         * True once an attempt was sent using the token taken by the {@link RateLimitedTransport}
+         * wrapping this transport for the request's own host.
+         */
+        private boolean requestTokenUsed = false;
+
+        /**
+         * Create a new call.
+         *
+         * @param request HTTP request.
+         */
+        FailoverCall(@NonNull HttpRequest request) {
+            this.request = request;
+            this.routes = endpointHealth.getRoutes(request.getUrl());
+        }
+
+        @NonNull
+        @Override
+        public HttpResponse execute() throws IOException {
+            endpointHealth.onRequestStarted();
+            IOException lastError = null;
+            HttpResponse lastErrorResponse = null;
+            for (EndpointHealth.Route route : routes) {
+                final long waitMillis;
+                synchronized (this) {
+                    throwIfCancelled(lastErrorResponse);
+                    if (!endpointHealth.tryAcquire(route)) {
+                        continue;
+                    }
+                    waitMillis = reserveToken(route);
+                }
+                sleep(waitMillis, lastErrorResponse);
+                final HttpCall call;
+                synchronized (this) {
+                    throwIfCancelled(lastErrorResponse);
+                    call = newAttempt(route);
+                }
+                final long startTime = SystemClock.elapsedRealtime();
+                try {
+                    final HttpResponse response = call.execute();
+                    if (!isServerError(response)) {
+                        endpointHealth.recordSuccess(route, SystemClock.elapsedRealtime() - startTime);
+                        if (lastErrorResponse != null) {
+                            lastErrorResponse.close();
+                        }
+                        return response;
+                    }
+                    // Keep the error response, in case there is no mirror left to try.
+                    endpointHealth.recordFailure(route);
+                    if (lastErrorResponse != null) {
+                        lastErrorResponse.close();
+                    }
+                    lastErrorResponse = response;
+                } catch (IOException e) {
+                    if (!isAbandoned()) {
+                        endpointHealth.recordFailure(route);
+                    }
+                    lastError = e;
+                } finally {
+                    synchronized (this) {
+                        calls.remove(call);
+                    }
+                }
+            }
+            if (lastErrorResponse != null) {
+                return lastErrorResponse;
+            }
+            throw lastError != null ? lastError : newCircuitOpenException();
+        }
+
+        @Override
+        public void enqueue(@NonNull Callback callback) {
+            endpointHealth.onRequestStarted();
+            final EndpointHealth.Route route;
+            final long waitMillis;
+            synchronized (this) {
+                if (cancelled) {
+                    callback.onFailure(new IOException("Canceled"));
+                    return;
+                }
+                route = nextAvailableRoute();
+                waitMillis = route != null ? reserveToken(route) : 0;
+            }
+            if (route == null) {
+                callback.onFailure(newCircuitOpenException());
+                return;
+            }
+            if (waitMillis > 0) {
+                SCHEDULER.schedule(() -> send(route, callback), waitMillis, TimeUnit.MILLISECONDS);
+            } else {
+                send(route, callback);
+            }
+
+            // Hedge the request, if it takes longer than most requests to this endpoint.
+            final long hedgeDelay = endpointHealth.getHedgeDelay(route);
+            if (hedgeDelay >= 0) {
+                synchronized (this) {
+                    scheduledHedge = SCHEDULER.schedule(() -> hedge(callback), hedgeDelay, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            if (scheduledHedge != null) {
+                scheduledHedge.cancel(false);
+            }
+            for (HttpCall call : calls) {
+                call.cancel();
+            }
+        }
+
+        /**
+         * Send a duplicate of a slow request, if the budget and rate limiter allow it.
+         *
+         * @param callback Callback listening for the first response.
+         */
+        private void hedge(@NonNull Callback callback) {
+            final EndpointHealth.Route route;
+            synchronized (this) {
+                if (done || cancelled) {
+                    return;
+                }
+                // Prefer the next mirror. Endpoints without mirrors are hedged against themselves, but only
+                // if that leaves a token to spare, as the hedge doubles the load on the endpoint.
+                final boolean sameEndpoint = nextRoute >= routes.size();
+                route = sameEndpoint ? routes.get(routes.size() - 1) : routes.get(nextRoute);
+                final boolean acquired = sameEndpoint ? rateLimiter.tryAcquireSpare(getHost(route)) :
+                        rateLimiter.tryAcquire(getHost(route));
+                if (!acquired || !endpointHealth.tryHedge() || !endpointHealth.tryAcquire(route)) {
+                    return;
+                }
+                if (nextRoute < routes.size()) {
+                    nextRoute++;
+                }
+            }
+            send(route, callback);
+        }
+
+        /**
+         * Send an asynchronous attempt to an endpoint.
+         *
+         * @param route    Endpoint to send the request to.
+         * @param callback Callback listening for the first response.
+         */
+        private void send(@NonNull final EndpointHealth.Route route, @NonNull final Callback callback) {
+            final HttpCall call;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (cancelled) {
+                    finish();
+                    call = null;
+                } else {
+                    call = newAttempt(route);
+                }
+            }
+            if (call == null) {
+                callback.onFailure(new IOException("Canceled"));
+                return;
+            }
+            final long startTime = SystemClock.elapsedRealtime();
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull IOException e) {
+                    // Attempts cancelled after another one won, or with the whole call, fail with "Canceled".
+                    if (!isAbandoned()) {
+                        endpointHealth.recordFailure(route);
+                    }
+                    onAttemptFailed(call, e, callback);
+                }
+
+                @Override
+                public void onResponse(@NonNull HttpResponse response) {
+                    // Responses to hedges that lost the race, or to cancelled calls, are not measured.
+                    if (!isAbandoned()) {
+                        if (isServerError(response)) {
+                            endpointHealth.recordFailure(route);
+                        } else {
+                            endpointHealth.recordSuccess(route, SystemClock.elapsedRealtime() - startTime);
+                        }
+                    }
+
+                    synchronized (FailoverCall.this) {
+                        calls.remove(call);
+                        if (done) {
+                            // Another attempt won the race.
+                            response.close();
+                            return;
+                        }
+                        if (isServerError(response) && sendNextOrWait(callback)) {
+                            response.close();
+                            return;
+                        }
+                        finish();
+                    }
+                    callback.onResponse(response);
+                }
+            });
+        }
+
+        /**
+         * Handle a failed attempt: try the next mirror, wait for other attempts in flight, or fail.
+         *
+         * @param call     Failed attempt.
+         * @param e        Exception that caused the failure.
+         * @param callback Callback listening for the first response.
+         */
+        private void onAttemptFailed(@NonNull HttpCall call, @NonNull IOException e, @NonNull Callback callback) {
+            synchronized (this) {
+                calls.remove(call);
+                if (done) {
+                    return;
+                }
+                if (!cancelled && sendNextOrWait(callback)) {
+                    return;
+                }
+                finish();
+            }
+            callback.onFailure(e);
+        }
+
+        /**
+         * Send the request to the next mirror, unless another attempt is still in flight.
+         * Must be called while holding the lock.
+         *
+         * @param callback Callback listening for the first response.
+         * @return True if an attempt is still in flight or was sent. False if there is no mirror left.
+         */
+        private boolean sendNextOrWait(@NonNull Callback callback) {
+            if (!calls.isEmpty()) {
+                return true;
+            }
+            final EndpointHealth.Route route = nextAvailableRoute();
+            if (route == null) {
+                return false;
+            }
+            // Send from the scheduler thread, so the lock is not held while the call is started,
+            // once the rate limiter has a token for the mirror.
+            SCHEDULER.schedule(() -> send(route, callback), reserveToken(route), TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        /**
+         * Take a rate limiter token for an attempt.
+         * The first attempt sent to the request's own host uses the token taken by the
+         * {@link RateLimitedTransport} wrapping this transport. Must be called while holding the lock.
+         *
+         * @param route Endpoint the attempt is sent to.
+         * @return Time to wait before sending the attempt, in milliseconds.
+         */
+        private long reserveToken(@NonNull EndpointHealth.Route route) {
+            final String host = getHost(route);
+            if (!requestTokenUsed && host != null && host.equalsIgnoreCase(Uri.parse(request.getUrl()).getHost())) {
+                requestTokenUsed = true;
+                return 0;
+            }
+            return rateLimiter.reserve(host);
+        }
+
+        /**
+         * Throw an exception if the call was cancelled. Must be called while holding the lock.
+         *
+         * @param lastErrorResponse Error response kept from the previous attempt, closed before throwing.
+         * @throws IOException The call was cancelled.
+         */
+        private void throwIfCancelled(@Nullable HttpResponse lastErrorResponse) throws IOException {
+            if (cancelled) {
+                if (lastErrorResponse != null) {
+                    lastErrorResponse.close();
+                }
+                throw new IOException("Canceled");
+            }
+        }
+
+        /**
+         * Block the calling thread while waiting for a rate limiter token.
+         *
+         * @param millis            Time to wait, in milliseconds.
+         * @param lastErrorResponse Error response kept from the previous attempt, closed if interrupted.
+         * @throws IOException The thread was interrupted.
+         */
+        private void sleep(long millis, @Nullable HttpResponse lastErrorResponse) throws IOException {
+            if (millis <= 0) {
+                return;
+            }
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (lastErrorResponse != null) {
+                    lastErrorResponse.close();
+                }
+                throw new InterruptedIOException("Interrupted while waiting for the rate limiter.");
+            }
+        }
+
+        /**
+         * Get the next route whose circuit breaker lets the request through.
+         * Must be called while holding the lock.
+         *
+         * @return Next route. Null if there is no route left.
+         */
+        @Nullable
+        private EndpointHealth.Route nextAvailableRoute() {
+            while (nextRoute < routes.size()) {
+                final EndpointHealth.Route route = routes.get(nextRoute++);
+                if (endpointHealth.tryAcquire(route)) {
+                    return route;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Create the exception thrown when no endpoint lets the request through.
+         *
+         * @return Exception naming the endpoint, with the time until one of its mirrors can be tried again.
+         */
+        @NonNull
+        private CircuitOpenException newCircuitOpenException() {
+            long retryAfterMillis = Long.MAX_VALUE;
+            for (EndpointHealth.Route route : routes) {
+                retryAfterMillis = Math.min(retryAfterMillis, endpointHealth.getOpenMillisRemaining(route));
+            }
+            return new CircuitOpenException(Uri.parse(request.getUrl()).getHost(), retryAfterMillis);
+        }
+
+        /**
+         * Check if the attempts still in flight were cancelled by this call.
+         *
+         * @return True if a response has already been delivered, or the call was cancelled.
+         */
+        private synchronized boolean isAbandoned() {
+            return done || cancelled;
+        }
+
+        /**
+         * Mark the call as done, and cancel the attempts and hedges still pending.
+         * Must be called while holding the lock.
+         */
+        private void finish() {
+            done = true;
+            if (scheduledHedge != null) {
+                scheduledHedge.cancel(false);
+            }
+            for (HttpCall call : calls) {
+                call.cancel();
+            }
+            calls.clear();
+        }
+
+        /**
+         * Create an attempt sending the request to an endpoint.
+         * Must be called while holding the lock.
+         *
+         * @param route Endpoint to send the request to.
+         * @return New call.
+         */
+        @NonNull
+        private HttpCall newAttempt(@NonNull EndpointHealth.Route route) {
+            final HttpRequest attemptRequest = route.url.equals(request.getUrl()) ?
+                    request : request.newBuilder().url(route.url).build();
+            final HttpCall call = transport.newCall(attemptRequest);
+            calls.add(call);
+            return call;
+        }
+    }
+    //endregion
+}
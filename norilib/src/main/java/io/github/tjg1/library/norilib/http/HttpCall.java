@@ -0,0 +1,57 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * An {@link HttpRequest} prepared by an {@link HttpTransport}. Each call can only be executed once.
+ */
+public interface HttpCall {
+
+    /**
+     * Send the request and block until the response headers are received.
+     *
+     * @return HTTP response. Must be closed by the caller.
+     * @throws IOException Network error, timeout or cancellation.
+     */
+    @NonNull
+    HttpResponse execute() throws IOException;
+
+    /**
+     * Send the request in the background.
+     *
+     * @param callback Callback called on a background thread when the response headers are received.
+     */
+    void enqueue(@NonNull Callback callback);
+
+    /**
+     * Cancel the request. Calls in flight fail with an {@link IOException}.
+     */
+    void cancel();
+
+    /**
+     * Callback listening for the response to an {@link HttpCall}.
+     */
+    interface Callback {
+        /**
+         * Called when the request could not be executed due to cancellation, a connectivity problem or timeout.
+         *
+         * @param e Exception that caused the failure.
+         */
+        void onFailure(@NonNull IOException e);
+
+        /**
+         * Called when the response headers are received. The body can then be read on the same thread.
+         *
+         * @param response HTTP response. Must be closed by the callback.
+         */
+        void onResponse(@NonNull HttpResponse response);
+    }
+}
@@ -0,0 +1,369 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.tjg1.library.norilib.clients.SearchClient;
+
+/**
+ * HTTP request sent using an {@link HttpTransport}. Create new requests using a {@link Builder}.
+ */
+public final class HttpRequest {
+
+    //region Instance fields
+    /**
+     * HTTP method. (i.e. "GET")
+     */
+    private final String method;
+    /**
+     * Request URL.
+     */
+    private final String url;
+    /**
+     * Additional request headers.
+     */
+    private final Map<String, String> headers;
+    /**
+     * Value of the User-Agent header.
+     */
+    private final String userAgent;
+    /**
+     * Username used for HTTP basic authentication. Null if the request is not authenticated.
+     */
+    private final String username;
+    /**
+     * Password used for HTTP basic authentication.
+     */
+    private final String password;
+    /**
+     * Connect and read timeout, in milliseconds. 0 to use the transport's default timeout.
+     */
+    private final int timeoutMillis;
+    /**
+     * True if redirects should be followed.
+     */
+    private final boolean followRedirects;
+    /**
+     * True if the response must not be served from a cache.
+     */
+    private final boolean noCache;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new request from a builder.
+     *
+     * @param builder Request builder.
+     */
+    private HttpRequest(@NonNull Builder builder) {
+        this.method = builder.method;
+        this.url = builder.url;
+        this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(builder.headers));
+        this.userAgent = builder.userAgent;
+        this.username = builder.username;
+        this.password = builder.password;
+        this.timeoutMillis = builder.timeoutMillis;
+        this.followRedirects = builder.followRedirects;
+        this.noCache = builder.noCache;
+    }
+    //endregion
+
+    //region Getters
+
+    /**
+     * Get the HTTP method.
+     *
+     * @return HTTP method. (i.e. "GET")
+     */
+    @NonNull
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Get the request URL.
+     *
+     * @return Request URL.
+     */
+    @NonNull
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Get additional request headers.
+     *
+     * @return Unmodifiable map of header names to values.
+     */
+    @NonNull
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Get the value of the User-Agent header.
+     *
+     * @return User agent.
+     */
+    @NonNull
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    /**
+     * Get the username used for HTTP basic authentication.
+     *
+     * @return Username. Null if the request is not authenticated.
+     */
+    @Nullable
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * Get the password used for HTTP basic authentication.
+     *
+     * @return Password. Null if the request is not authenticated.
+     */
+    @Nullable
+    public String getPassword() {
+        return password;
+    }
+
+    /**
+     * Get the connect and read timeout.
+     *
+     * @return Timeout in milliseconds. 0 to use the transport's default timeout.
+     */
+    public int getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Check if redirects should be followed.
+     *
+     * @return True if redirects should be followed.
+     */
+    public boolean getFollowRedirects() {
+        return followRedirects;
+    }
+
+    /**
+     * Check if the response must not be served from a cache.
+     *
+     * @return True if the response must be fetched from the network.
+     */
+    public boolean isNoCache() {
+        return noCache;
+    }
+    //endregion
+
+    //region Builder
+
+    /**
+     * Create a builder initialised with the values of this request.
+     *
+     * @return New request builder.
+     */
+    @NonNull
+    public Builder newBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * Builder used to create new {@link HttpRequest}s.
+     */
+    public static final class Builder {
+        /**
+         * HTTP method.
+         */
+        private String method = "GET";
+        /**
+         * Request URL.
+         */
+        private String url;
+        /**
+         * Additional request headers.
+         */
+        private final Map<String, String> headers = new LinkedHashMap<>();
+        /**
+         * Value of the User-Agent header.
+         */
+        private String userAgent = SearchClient.USER_AGENT;
+        /**
+         * Username used for HTTP basic authentication.
+         */
+        private String username;
+        /**
+         * Password used for HTTP basic authentication.
+         */
+        private String password;
+        /**
+         * Connect and read timeout, in milliseconds.
+         */
+        private int timeoutMillis = 0;
+        /**
+         * True if redirects should be followed.
+         */
+        private boolean followRedirects = true;
+        /**
+         * True if the response must not be served from a cache.
+         */
+        private boolean noCache = false;
+
+        /**
+         * Create a new GET request builder.
+         *
+         * @param url Request URL.
+         */
+        public Builder(@NonNull String url) {
+            this.url = url;
+        }
+
+        /**
+         * Create a new builder copying the values of an existing request.
+         *
+         * @param request Request to copy.
+         */
+        private Builder(@NonNull HttpRequest request) {
+            this.method = request.method;
+            this.url = request.url;
+            this.headers.putAll(request.headers);
+            this.userAgent = request.userAgent;
+            this.username = request.username;
+            this.password = request.password;
+            this.timeoutMillis = request.timeoutMillis;
+            this.followRedirects = request.followRedirects;
+            this.noCache = request.noCache;
+        }
+
+        /**
+         * Set the request URL.
+         *
+         * @param url Request URL.
+         * @return This builder.
+         */
+        @NonNull
+        public Builder url(@NonNull String url) {
+            this.url = url;
+            return this;
+        }
+
+        /**
+         * Set the HTTP method.
+         *
+         * @param method HTTP method. (i.e. "HEAD")
+         * @return This builder.
+         */
+        @NonNull
+        public Builder method(@NonNull String method) {
+            this.method = method;
+            return this;
+        }
+
+        /**
+         * Set a request header, replacing any previous value.
+         *
+         * @param name  Header name.
+         * @param value Header value.
+         * @return This builder.
+         */
+        @NonNull
+        public Builder header(@NonNull String name, @NonNull String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        /**
+         * Set the value of the User-Agent header. Defaults to {@link SearchClient#USER_AGENT}.
+         *
+         * @param userAgent User agent.
+         * @return This builder.
+         */
+        @NonNull
+        public Builder userAgent(@NonNull String userAgent) {
+            this.userAgent = userAgent;
+            return this;
+        }
+
+        /**
+         * Authenticate the request using HTTP basic authentication.
+         * Ignored if either the username or the password is empty, so optional credentials
+         * can be passed as they are.
+         *
+         * @param username Username.
+         * @param password Password.
+         * @return This builder.
+         */
+        @NonNull
+        public Builder basicAuthentication(@Nullable String username, @Nullable String password) {
+            if (!TextUtils.isEmpty(username) && !TextUtils.isEmpty(password)) {
+                this.username = username;
+                this.password = password;
+            } else {
+                this.username = null;
+                this.password = null;
+            }
+            return this;
+        }
+
+        /**
+         * Set the connect and read timeout.
+         *
+         * @param timeoutMillis Timeout in milliseconds. 0 to use the transport's default timeout.
+         * @return This builder.
+         */
+        @NonNull
+        public Builder timeout(int timeoutMillis) {
+            this.timeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        /**
+         * Set whether redirects should be followed. Enabled by default.
+         *
+         * @param followRedirects True if redirects should be followed.
+         * @return This builder.
+         */
+        @NonNull
+        public Builder followRedirects(boolean followRedirects) {
+            this.followRedirects = followRedirects;
+            return this;
+        }
+
+        /**
+         * Always fetch the response from the network, bypassing any cache.
+         *
+         * @return This builder.
+         */
+        @NonNull
+        public Builder noCache() {
+            this.noCache = true;
+            return this;
+        }
+
+        /**
+         * Create the request.
+         *
+         * @return New HTTP request.
+         */
+        @NonNull
+        public HttpRequest build() {
+            return new HttpRequest(this);
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,81 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response to an {@link HttpRequest}. The body is streamed from the network, so responses must be
+ * closed once they are no longer needed.
+ */
+public interface HttpResponse extends Closeable {
+
+    /**
+     * Get the HTTP status code.
+     *
+     * @return Status code. (i.e. 200)
+     */
+    int getCode();
+
+    /**
+     * Check if the request was successful.
+     *
+     * @return True for 2xx status codes.
+     */
+    default boolean isSuccessful() {
+        return getCode() >= 200 && getCode() < 300;
+    }
+
+    /**
+     * Get the value of a response header.
+     *
+     * @param name Header name. (case-insensitive)
+     * @return Header value. Null if the header is not present.
+     */
+    @Nullable
+    String getHeader(@NonNull String name);
+
+    /**
+     * Get the response body. Can only be read once.
+     *
+     * @return Response body stream.
+     * @throws IOException Network error.
+     */
+    @NonNull
+    InputStream getBody() throws IOException;
+
+    /**
+     * Read the whole response body as an UTF-8 string.
+     *
+     * @return Response body.
+     * @throws IOException Network error.
+     */
+    @NonNull
+    default String getBodyAsString() throws IOException {
+        try (InputStream body = getBody()) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
+    /**
+     * Release the connection used to receive the response.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,41 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Thrown when an API responds with an unsuccessful HTTP status code.
+ */
+public class HttpStatusException extends IOException {
+
+    /**
+     * HTTP status code.
+     */
+    private final int code;
+
+    /**
+     * Create a new exception.
+     *
+     * @param code HTTP status code.
+     * @param url  Request URL. The query string is left out of the message, as it may contain API keys.
+     */
+    public HttpStatusException(int code, String url) {
+        super(String.format(Locale.US, "HTTP %d: %s", code, url.indexOf('?') != -1 ? url.substring(0, url.indexOf('?')) : url));
+        this.code = code;
+    }
+
+    /**
+     * Get the HTTP status code.
+     *
+     * @return Status code. (i.e. 503)
+     */
+    public int getCode() {
+        return code;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import androidx.annotation.NonNull;
+
+/**
+ * HTTP client used by the API clients to send requests.
+ * <p/>
+ * Decouples the API clients from a single HTTP library: {@link IonTransport} is used by default,
+ * {@link OkHttpTransport} pools connections and multiplexes requests to the same host over HTTP/2,
+ * and tests can replace either with an in-process implementation
+ * (see {@link HttpTransports#setDefault(HttpTransport)}).
+ */
+public interface HttpTransport {
+
+    /**
+     * Prepare a request to be sent.
+     *
+     * @param request HTTP request.
+     * @return Call used to execute or cancel the request.
+     */
+    @NonNull
+    HttpCall newCall(@NonNull HttpRequest request);
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Holds the {@link HttpTransport} used by newly created API clients.
+ */
+public final class HttpTransports {
+
+    //region Static fields
+    /**
+     * Transport used by new API clients. Null until first used, or reset.
+     */
+    private static HttpTransport defaultTransport;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * This class only has static methods and should not be instantiated.
+     */
+    private HttpTransports() {
+    }
+    //endregion
+
+    //region Default transport
+
+    /**
+     * Get the transport used by new API clients.
+     *
+     * @param context Android context.
+     * @return Transport set using {@link #setDefault(HttpTransport)}, or a shared {@link IonTransport},
+     * wrapped in a {@link FailoverTransport} and a {@link RateLimitedTransport}.
+     */
+    @NonNull
+    public static synchronized HttpTransport getDefault(@NonNull Context context) {
+        if (defaultTransport == null) {
+            defaultTransport = wrap(new IonTransport(context));
+        }
+        return defaultTransport;
+    }
+
+    /**
+     * Replace the transport used by API clients created from now on.
+     * Clients shared by {@link io.github.tjg1.library.norilib.clients.SearchClientRegistry} keep
+     * the transport they were created with.
+     *
+     * @param transport Transport to use. Null to go back to the default {@link IonTransport}.
+     *                  Requests are rate limited using the shared {@link RateLimiter}, and fail over
+     *                  to mirrors using the shared {@link EndpointHealth}.
+     */
+    public static synchronized void setDefault(@Nullable HttpTransport transport) {
+        defaultTransport = transport != null ? wrap(transport) : null;
+    }
+
+    /**
+     * Wrap a transport with mirror failover and rate limiting.
+     *
+     * @param transport Transport sending the requests.
+     * @return Wrapped transport.
+     */
+    @NonNull
+    private static HttpTransport wrap(@NonNull HttpTransport transport) {
+        return new RateLimitedTransport(new FailoverTransport(transport));
+    }
+    //endregion
+}
@@ -0,0 +1,233 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.koushikdutta.async.future.Future;
+import com.koushikdutta.ion.Ion;
+import com.koushikdutta.ion.Response;
+import com.koushikdutta.ion.builder.Builders;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link HttpTransport} sending requests using the Ion library.
+ * <p/>
+ * Ion reads the whole response body before completing the request, so response bodies are
+ * already buffered in memory when they're handed to the caller. Transfers are measured by the
+ * {@link BandwidthMeter} from Ion's progress updates while the body is downloaded.
+ */
+public class IonTransport implements HttpTransport {
+
+    //region Instance fields
+    /**
+     * Android context.
+     */
+    private final Context context;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new transport using the shared Ion instance.
+     *
+     * @param context Android context.
+     */
+    public IonTransport(@NonNull Context context) {
+        this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+    }
+    //endregion
+
+    //region HttpTransport methods
+    @NonNull
+    @Override
+    public HttpCall newCall(@NonNull HttpRequest request) {
+        return new IonCall(request);
+    }
+    //endregion
+
+    //region Inner class: Ion call
+
+    /**
+     * {@link HttpCall} backed by an Ion request future.
+     */
+    private class IonCall implements HttpCall {
+        /**
+         * HTTP request.
+         */
+        private final HttpRequest request;
+        /**
+         * Future of the request in flight. Null until the call is executed.
+         */
+        private Future<Response<InputStream>> future;
+        /**
+         * True if the call was cancelled.
+         */
+        private boolean cancelled = false;
+        /**
+         * Measurement of the response body download.
+         */
+        private final BandwidthMeter.Transfer transfer = BandwidthMeter.getInstance().startTransfer();
+
+        /**
+         * Create a new call.
+         *
+         * @param request HTTP request.
+         */
+        IonCall(@NonNull HttpRequest request) {
+            this.request = request;
+        }
+
+        @NonNull
+        @Override
+        public HttpResponse execute() throws IOException {
+            try {
+                return toHttpResponse(start().get());
+            } catch (InterruptedException | ExecutionException e) {
+                // Normalise exception to IOException, so callers are not tied to a single HTTP library.
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void enqueue(@NonNull Callback callback) {
+            start().setCallback((e, response) -> {
+                if (e == null) {
+                    try {
+                        callback.onResponse(toHttpResponse(response));
+                        return;
+                    } catch (IOException ioe) {
+                        e = ioe;
+                    }
+                }
+                callback.onFailure(e instanceof IOException ? (IOException) e : new IOException(e));
+            });
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel();
+            }
+        }
+
+        /**
+         * Start the request.
+         *
+         * @return Future completed when the response has been received.
+         */
+        private synchronized Future<Response<InputStream>> start() {
+            if (future != null) {
+                throw new IllegalStateException("Call already executed.");
+            }
+
+            final Builders.Any.B builder = Ion.with(context)
+                    .load(request.getMethod(), request.getUrl())
+                    // Call callbacks on Ion's I/O thread instead of the main thread.
+                    .setHandler(null)
+                    .userAgent(request.getUserAgent())
+                    .followRedirect(request.getFollowRedirects())
+                    .progressHandler((downloaded, total) -> transfer.onProgress(downloaded));
+            if (request.getTimeoutMillis() > 0) {
+                builder.setTimeout(request.getTimeoutMillis());
+            }
+            if (request.isNoCache()) {
+                builder.noCache();
+            }
+            if (request.getUsername() != null && request.getPassword() != null) {
+                builder.basicAuthentication(request.getUsername(), request.getPassword());
+            }
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                builder.setHeader(header.getKey(), header.getValue());
+            }
+
+            future = builder.asInputStream().withResponse();
+            if (cancelled) {
+                future.cancel();
+            }
+            return future;
+        }
+
+        /**
+         * Convert an Ion response into a {@link HttpResponse}.
+         *
+         * @param response Ion response.
+         * @return HTTP response.
+         * @throws IOException Network error returned by Ion.
+         */
+        @NonNull
+        private HttpResponse toHttpResponse(@NonNull Response<InputStream> response) throws IOException {
+            if (response.getException() != null) {
+                throw response.getException() instanceof IOException ?
+                        (IOException) response.getException() : new IOException(response.getException());
+            }
+            transfer.finish();
+            return new IonResponse(response);
+        }
+    }
+    //endregion
+
+    //region Inner class: Ion response
+
+    /**
+     * {@link HttpResponse} wrapping an Ion response.
+     */
+    private static class IonResponse implements HttpResponse {
+        /**
+         * Ion response.
+         */
+        private final Response<InputStream> response;
+
+        /**
+         * Create a new response.
+         *
+         * @param response Ion response.
+         */
+        IonResponse(@NonNull Response<InputStream> response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getCode() {
+            return response.getHeaders().code();
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(@NonNull String name) {
+            return response.getHeaders().getHeaders().get(name);
+        }
+
+        @NonNull
+        @Override
+        public InputStream getBody() {
+            final InputStream body = response.getResult();
+            return body != null ? body : new ByteArrayInputStream(new byte[0]);
+        }
+
+        @Override
+        public void close() {
+            final InputStream body = response.getResult();
+            if (body != null) {
+                try {
+                    body.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,95 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import androidx.annotation.NonNull;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response body stream reporting the number of bytes read to a {@link BandwidthMeter.Transfer}.
+ * The transfer is finished once the end of the stream is reached, so bodies that are only read
+ * partially are not measured.
+ */
+final class MeteredInputStream extends FilterInputStream {
+
+    //region Instance fields
+    /**
+     * Transfer measurement the bytes read are reported to.
+     */
+    private final BandwidthMeter.Transfer transfer;
+    /**
+     * Number of bytes read so far.
+     */
+    private long bytesRead = 0;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Wrap a response body stream.
+     *
+     * @param in       Response body stream.
+     * @param transfer Transfer measurement the bytes read are reported to.
+     */
+    MeteredInputStream(@NonNull InputStream in, @NonNull BandwidthMeter.Transfer transfer) {
+        super(in);
+        this.transfer = transfer;
+    }
+    //endregion
+
+    //region InputStream methods
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+        onRead(b != -1 ? 1 : -1);
+        return b;
+    }
+
+    @Override
+    public int read(@NonNull byte[] b, int off, int len) throws IOException {
+        final int read = super.read(b, off, len);
+        onRead(read);
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        final long skipped = super.skip(n);
+        if (skipped > 0) {
+            bytesRead += skipped;
+            transfer.onProgress(bytesRead);
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        // Bytes read again after a reset would be counted twice.
+        return false;
+    }
+    //endregion
+
+    //region Helper methods
+
+    /**
+     * Report bytes read to the transfer measurement.
+     *
+     * @param read Number of bytes read. -1 at the end of the stream.
+     */
+    private void onRead(int read) {
+        if (read > 0) {
+            bytesRead += read;
+            transfer.onProgress(bytesRead);
+        } else if (read == -1) {
+            transfer.finish();
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,244 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.CacheControl;
+import okhttp3.ConnectionPool;
+import okhttp3.Credentials;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * {@link HttpTransport} sending requests using OkHttp.
+ * <p/>
+ * Connections are kept alive in a shared pool, and requests to the same host are multiplexed over
+ * a single HTTP/2 connection when the server supports it. Unlike {@link IonTransport}, response
+ * bodies are streamed from the network as they are read, and the {@link BandwidthMeter} measures
+ * them from the first byte read to the end of the body.
+ * <p/>
+ * OkHttp is not a runtime dependency of this library: apps using this transport have to add
+ * {@code com.squareup.okhttp3:okhttp} (3.12.x) to their own dependencies.
+ */
+public class OkHttpTransport implements HttpTransport {
+
+    //region Constants
+    /**
+     * Maximum number of idle connections kept in the pool.
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    /**
+     * Time idle connections are kept alive for, in minutes.
+     */
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    /**
+     * Default connect and read timeout, in milliseconds.
+     */
+    private static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+    //endregion
+
+    //region Instance fields
+    /**
+     * OkHttp client sending the requests.
+     */
+    private final OkHttpClient client;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new transport with its own connection pool.
+     */
+    public OkHttpTransport() {
+        this(new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .connectTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .readTimeout(DEFAULT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)
+                .build());
+    }
+
+    /**
+     * Create a new transport using the given OkHttp client.
+     *
+     * @param client OkHttp client. Its connection pool and dispatcher are shared by all requests.
+     */
+    public OkHttpTransport(@NonNull OkHttpClient client) {
+        this.client = client;
+    }
+    //endregion
+
+    //region HttpTransport methods
+    @NonNull
+    @Override
+    public HttpCall newCall(@NonNull HttpRequest request) {
+        // Clients derived from the shared client reuse its connection pool and dispatcher.
+        OkHttpClient client = this.client;
+        if (request.getTimeoutMillis() > 0 || !request.getFollowRedirects()) {
+            final OkHttpClient.Builder builder = client.newBuilder()
+                    .followRedirects(request.getFollowRedirects())
+                    .followSslRedirects(request.getFollowRedirects());
+            if (request.getTimeoutMillis() > 0) {
+                builder.connectTimeout(request.getTimeoutMillis(), TimeUnit.MILLISECONDS)
+                        .readTimeout(request.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            }
+            client = builder.build();
+        }
+
+        final Request.Builder builder = new Request.Builder()
+                .url(request.getUrl())
+                .method(request.getMethod(), null)
+                .header("User-Agent", request.getUserAgent());
+        if (request.isNoCache()) {
+            builder.cacheControl(CacheControl.FORCE_NETWORK);
+        }
+        if (request.getUsername() != null && request.getPassword() != null) {
+            builder.header("Authorization", Credentials.basic(request.getUsername(), request.getPassword()));
+        }
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+
+        return new OkHttpCall(client.newCall(builder.build()));
+    }
+    //endregion
+
+    //region Inner class: OkHttp call
+
+    /**
+     * {@link HttpCall} wrapping an OkHttp call.
+     */
+    private static class OkHttpCall implements HttpCall {
+        /**
+         * OkHttp call.
+         */
+        private final Call call;
+
+        /**
+         * Create a new call.
+         *
+         * @param call OkHttp call.
+         */
+        OkHttpCall(@NonNull Call call) {
+            this.call = call;
+        }
+
+        @NonNull
+        @Override
+        public HttpResponse execute() throws IOException {
+            return new OkHttpResponse(call.execute());
+        }
+
+        @Override
+        public void enqueue(@NonNull final Callback callback) {
+            call.enqueue(new okhttp3.Callback() {
+                @Override
+                public void onFailure(@NonNull Call call, @NonNull IOException e) {
+                    callback.onFailure(e);
+                }
+
+                @Override
+                public void onResponse(@NonNull Call call, @NonNull Response response) {
+                    callback.onResponse(new OkHttpResponse(response));
+                }
+            });
+        }
+
+        @Override
+        public void cancel() {
+            call.cancel();
+        }
+    }
+    //endregion
+
+    //region Inner class: OkHttp response
+
+    /**
+     * {@link HttpResponse} wrapping an OkHttp response.
+     */
+    private static class OkHttpResponse implements HttpResponse {
+        /**
+         * OkHttp response.
+         */
+        private final Response response;
+
+        /**
+         * Create a new response.
+         *
+         * @param response OkHttp response.
+         */
+        OkHttpResponse(@NonNull Response response) {
+            this.response = response;
+        }
+
+        @Override
+        public int getCode() {
+            return response.code();
+        }
+
+        @Nullable
+        @Override
+        public String getHeader(@NonNull String name) {
+            return response.header(name);
+        }
+
+        @NonNull
+        @Override
+        public InputStream getBody() throws IOException {
+            final ResponseBody body = response.body();
+            if (body == null) {
+                throw new IOException("Response has no body.");
+            }
+            return new MeteredInputStream(body.byteStream(), BandwidthMeter.getInstance().startTransfer());
+        }
+
+        @NonNull
+        @Override
+        public String getBodyAsString() throws IOException {
+            final ResponseBody body = response.body();
+            if (body == null) {
+                return "";
+            }
+            final MediaType contentType = body.contentType();
+            final Charset charset = contentType != null ?
+                    contentType.charset(StandardCharsets.UTF_8) : StandardCharsets.UTF_8;
+
+            // Read through the metered stream, so the transfer is measured.
+            try (InputStream in = getBody()) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return new String(out.toByteArray(), charset);
+            }
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+    //endregion
+}
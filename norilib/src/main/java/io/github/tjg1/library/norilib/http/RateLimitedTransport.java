@@ -0,0 +1,384 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HttpTransport} wrapping another transport with per-host rate limiting and retries.
+ * <p/>
+ * Requests take a token from the {@link RateLimiter} before they are sent. Idempotent requests
+ * that fail with HTTP 429 (Too Many Requests) or 503 (Service Unavailable) are retried after the
+ * delay asked for by the server in the {@code Retry-After} header or, if there is none, after an
+ * exponential backoff with full jitter. A 429 response also pauses the host in the rate limiter,
+ * so other requests to the same server wait as well. Requests that reserved their token before
+ * the pause check the pause again once their token is due, and wait for a new token after it.
+ */
+public class RateLimitedTransport implements HttpTransport {
+
+    //region Constants
+    /**
+     * Maximum number of times a request is retried.
+     */
+    private static final int MAX_RETRIES = 3;
+    /**
+     * Backoff before the first retry, in milliseconds. Doubled after each attempt.
+     */
+    private static final long BASE_BACKOFF_MILLIS = 1000;
+    /**
+     * Longest backoff between two attempts, in milliseconds.
+     */
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+    /**
+     * Longest Retry-After delay honoured, in milliseconds. Requests asked to wait for longer fail
+     * straight away, rather than leaving the user staring at a spinner.
+     */
+    private static final long MAX_RETRY_AFTER_MILLIS = 60000;
+    /**
+     * HTTP date format used by the Retry-After header. (RFC 7231)
+     */
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+    //endregion
+
+    //region Static fields
+    /**
+     * Scheduler used to send delayed asynchronous requests. Only hands calls to the wrapped
+     * transport, so a single thread is enough.
+     */
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
+    /**
+     * Random number generator used to add jitter to backoff delays.
+     */
+    private static final Random RANDOM = new Random();
+    //endregion
+
+    //region Instance fields
+    /**
+     * Transport sending the requests.
+     */
+    private final HttpTransport transport;
+    /**
+     * Rate limiter handing out request tokens.
+     */
+    private final RateLimiter rateLimiter;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Wrap a transport using the shared {@link RateLimiter}.
+     *
+     * @param transport Transport sending the requests.
+     */
+    public RateLimitedTransport(@NonNull HttpTransport transport) {
+        this(transport, RateLimiter.getInstance());
+    }
+
+    /**
+     * Wrap a transport.
+     *
+     * @param transport   Transport sending the requests.
+     * @param rateLimiter Rate limiter handing out request tokens.
+     */
+    public RateLimitedTransport(@NonNull HttpTransport transport, @NonNull RateLimiter rateLimiter) {
+        this.transport = transport;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * Create the scheduler used to send delayed requests.
+     *
+     * @return Scheduler running on a single daemon thread.
+     */
+    private static ScheduledExecutorService createScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            final Thread thread = new Thread(runnable, "norilib-rate-limiter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+    //endregion
+
+    //region HttpTransport methods
+    @NonNull
+    @Override
+    public HttpCall newCall(@NonNull HttpRequest request) {
+        return new RateLimitedCall(request);
+    }
+    //endregion
+
+    //region Backoff
+
+    /**
+     * Get the delay before a failed request can be retried.
+     *
+     * @param request  HTTP request.
+     * @param response Response to the request.
+     * @param attempt  Number of attempts made so far. (1 after the first attempt)
+     * @return Delay before the next attempt, in milliseconds, on top of waiting for a rate limiter token.
+     * -1 if the request should not be retried.
+     */
+    private long getRetryDelay(@NonNull HttpRequest request, @NonNull HttpResponse response, int attempt) {
+        final int code = response.getCode();
+        if ((code != 429 && code != 503) || attempt > MAX_RETRIES || !isIdempotent(request)) {
+            return -1;
+        }
+
+        final long retryAfterMillis = parseRetryAfter(response.getHeader("Retry-After"));
+        if (retryAfterMillis > MAX_RETRY_AFTER_MILLIS) {
+            return -1;
+        }
+        final long delayMillis = retryAfterMillis >= 0 ? retryAfterMillis : getBackoff(attempt);
+
+        if (code == 429) {
+            // Hold back every request to the host, not just this one.
+            // The retry then waits for its token like any other request.
+            rateLimiter.pause(getHost(request), delayMillis);
+            return 0;
+        }
+        return delayMillis;
+    }
+
+    /**
+     * Get an exponential backoff delay with full jitter.
+     *
+     * @param attempt Number of attempts made so far. (1 after the first attempt)
+     * @return Random delay between 0 and the exponential backoff, in milliseconds.
+     */
+    private static long getBackoff(int attempt) {
+        final long backoffMillis = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt - 1, 16));
+        // Full jitter keeps clients that failed together from retrying together.
+        return (long) (RANDOM.nextDouble() * backoffMillis);
+    }
+
+    /**
+     * Parse the value of a Retry-After header.
+     *
+     * @param retryAfter Header value: a number of seconds or an HTTP date.
+     * @return Delay, in milliseconds. -1 if the header is missing or malformed.
+     */
+    private static long parseRetryAfter(@Nullable String retryAfter) {
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return -1;
+        }
+        try {
+            return TimeUnit.SECONDS.toMillis(Math.max(0, Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            final long date = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US).parse(retryAfter.trim()).getTime();
+            return Math.max(0, date - System.currentTimeMillis());
+        } catch (ParseException ignored) {
+        }
+        return -1;
+    }
+
+    /**
+     * Check if a request can be sent again without side effects.
+     *
+     * @param request HTTP request.
+     * @return True for GET and HEAD requests.
+     */
+    private static boolean isIdempotent(@NonNull HttpRequest request) {
+        return "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+    }
+
+    /**
+     * Get the host a request is sent to.
+     *
+     * @param request HTTP request.
+     * @return Host name. null for malformed URLs.
+     */
+    @Nullable
+    private static String getHost(@NonNull HttpRequest request) {
+        return Uri.parse(request.getUrl()).getHost();
+    }
+    //endregion
+
+    //region Inner class: Rate limited call
+
+    /**
+     * {@link HttpCall} waiting for a rate limiter token before each attempt.
+     */
+    private class RateLimitedCall implements HttpCall {
+        /**
+         * HTTP request.
+         */
+        private final HttpRequest request;
+        /**
+         * Attempt in flight. Null while waiting for a token.
+         */
+        private HttpCall call;
+        /**
+         * Scheduled attempt waiting for a token.
+         */
+        private ScheduledFuture<?> scheduledAttempt;
+        /**
+         * True if the call was cancelled.
+         */
+        private boolean cancelled = false;
+
+        /**
+         * Create a new call.
+         *
+         * @param request HTTP request.
+         */
+        RateLimitedCall(@NonNull HttpRequest request) {
+            this.request = request;
+        }
+
+        @NonNull
+        @Override
+        public HttpResponse execute() throws IOException {
+            int attempt = 0;
+            long delayMillis = 0;
+            while (true) {
+                sleep(delayMillis + rateLimiter.reserve(getHost(request)));
+                while (rateLimiter.isPaused(getHost(request))) {
+                    // The host was paused while waiting: the token was reserved before the pause.
+                    sleep(rateLimiter.reserve(getHost(request)));
+                }
+                final HttpResponse response = newAttempt().execute();
+                attempt++;
+
+                delayMillis = getRetryDelay(request, response, attempt);
+                if (delayMillis < 0) {
+                    return response;
+                }
+                response.close();
+            }
+        }
+
+        @Override
+        public void enqueue(@NonNull Callback callback) {
+            schedule(0, 0, callback);
+        }
+
+        @Override
+        public synchronized void cancel() {
+            cancelled = true;
+            if (scheduledAttempt != null) {
+                scheduledAttempt.cancel(false);
+            }
+            if (call != null) {
+                call.cancel();
+            }
+        }
+
+        /**
+         * Schedule an asynchronous attempt once a rate limiter token is available.
+         *
+         * @param attempt     Number of attempts made so far.
+         * @param delayMillis Backoff delay before the attempt, in milliseconds.
+         * @param callback    Callback listening for the final response.
+         */
+        private void schedule(final int attempt, long delayMillis, @NonNull final Callback callback) {
+            final long waitMillis = delayMillis + rateLimiter.reserve(getHost(request));
+            synchronized (this) {
+                if (cancelled) {
+                    callback.onFailure(new IOException("Canceled"));
+                    return;
+                }
+                if (waitMillis > 0) {
+                    scheduledAttempt = SCHEDULER.schedule(() -> send(attempt, callback), waitMillis, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+            send(attempt, callback);
+        }
+
+        /**
+         * Send an asynchronous attempt, and schedule a retry if it failed with a retryable status.
+         *
+         * @param attempt  Number of attempts made so far.
+         * @param callback Callback listening for the final response.
+         */
+        private void send(final int attempt, @NonNull final Callback callback) {
+            if (rateLimiter.isPaused(getHost(request))) {
+                // The host was paused while waiting: the token was reserved before the pause.
+                schedule(attempt, 0, callback);
+                return;
+            }
+
+            final HttpCall call;
+            try {
+                call = newAttempt();
+            } catch (IOException e) {
+                callback.onFailure(e);
+                return;
+            }
+
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(@NonNull IOException e) {
+                    callback.onFailure(e);
+                }
+
+                @Override
+                public void onResponse(@NonNull HttpResponse response) {
+                    final long delayMillis = getRetryDelay(request, response, attempt + 1);
+                    if (delayMillis < 0) {
+                        callback.onResponse(response);
+                    } else {
+                        response.close();
+                        schedule(attempt + 1, delayMillis, callback);
+                    }
+                }
+            });
+        }
+
+        /**
+         * Create the call for a new attempt.
+         *
+         * @return Call sending the request through the wrapped transport.
+         * @throws IOException The call was cancelled.
+         */
+        @NonNull
+        private synchronized HttpCall newAttempt() throws IOException {
+            if (cancelled) {
+                throw new IOException("Canceled");
+            }
+            call = transport.newCall(request);
+            return call;
+        }
+
+        /**
+         * Block the calling thread while waiting for a token or backoff delay.
+         *
+         * @param millis Time to wait, in milliseconds.
+         * @throws IOException The thread was interrupted.
+         */
+        private void sleep(long millis) throws IOException {
+            if (millis <= 0) {
+                return;
+            }
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the rate limiter.");
+            }
+        }
+    }
+    //endregion
+}
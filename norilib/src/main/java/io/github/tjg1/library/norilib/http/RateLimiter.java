@@ -0,0 +1,278 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.http;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-host token bucket rate limiter.
+ * <p/>
+ * Each host gets a bucket holding up to {@code burstSize} tokens, refilled at a steady rate. Every
+ * request takes a token: requests are sent straight away while tokens are left, and are delayed
+ * until the next token is due once the bucket is empty. Requests reserve their tokens in order,
+ * so delayed requests are spread out at the refill rate instead of all being released at once.
+ * <p/>
+ * Hosts that respond with HTTP 429 can be paused using {@link #pause(String, long)}. New tokens are
+ * only handed out after the pause. Requests that reserved a token before the pause should check
+ * {@link #isPaused(String)} once their token is due, and reserve a new one if the host is still paused,
+ * so they do not hit the server again before it's ready.
+ */
+public final class RateLimiter {
+
+    //region Constants
+    /**
+     * Requests per second allowed for hosts without a configured rate.
+     */
+    private static final double DEFAULT_REQUESTS_PER_SECOND = 5;
+    /**
+     * Burst size for hosts without a configured rate.
+     */
+    private static final int DEFAULT_BURST_SIZE = 10;
+    //endregion
+
+    //region Static fields
+    /**
+     * Shared instance.
+     */
+    private static RateLimiter instance;
+    //endregion
+
+    //region Instance fields
+    /**
+     * Token buckets, by lower-case host name.
+     */
+    private final Map<String, TokenBucket> buckets = new HashMap<>();
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new rate limiter. Use {@link #getInstance()} to share limits with the API clients.
+     */
+    public RateLimiter() {
+    }
+
+    /**
+     * Get the rate limiter shared by all API clients.
+     *
+     * @return Shared instance.
+     */
+    @NonNull
+    public static synchronized RateLimiter getInstance() {
+        if (instance == null) {
+            instance = new RateLimiter();
+        }
+        return instance;
+    }
+    //endregion
+
+    //region Rate limiting
+
+    /**
+     * Set the request rate allowed for a host.
+     *
+     * @param host              Host name. (i.e. e621.net)
+     * @param requestsPerSecond Sustained number of requests allowed per second.
+     * @param burstSize         Number of requests that can be sent at once after the host was idle.
+     */
+    public synchronized void setRate(@Nullable String host, double requestsPerSecond, int burstSize) {
+        if (host == null || requestsPerSecond <= 0 || burstSize < 1) {
+            return;
+        }
+        getBucket(host).setRate(requestsPerSecond, burstSize);
+    }
+
+    /**
+     * Take a token for a request to the given host.
+     *
+     * @param host Host name.
+     * @return Time to wait before sending the request, in milliseconds. 0 to send it now.
+     */
+    public synchronized long reserve(@Nullable String host) {
+        if (host == null) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(getBucket(host).reserve(System.nanoTime()));
+    }
+
+    /**
+     * Take a token for a request to the given host, only if one is available straight away.
+     *
+     * @param host Host name.
+     * @return True if a token was taken and the request can be sent now.
+     */
+    public synchronized boolean tryAcquire(@Nullable String host) {
+        return host == null || getBucket(host).tryReserve(System.nanoTime(), 0);
+    }
+
+    /**
+     * Take a token for a request to the given host, only if another token is left available
+     * straight away after it. Used for optional requests, which should not hold up the next one.
+     *
+     * @param host Host name.
+     * @return True if a token was taken and the request can be sent now.
+     */
+    public synchronized boolean tryAcquireSpare(@Nullable String host) {
+        return host == null || getBucket(host).tryReserve(System.nanoTime(), 1);
+    }
+
+    /**
+     * Stop sending requests to the given host for a while. No tokens are handed out until the pause
+     * is over. Tokens already reserved keep their time: see {@link #isPaused(String)}.
+     *
+     * @param host        Host name.
+     * @param pauseMillis Time to pause for, in milliseconds.
+     */
+    public synchronized void pause(@Nullable String host, long pauseMillis) {
+        if (host == null || pauseMillis <= 0) {
+            return;
+        }
+        getBucket(host).pauseUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(pauseMillis));
+    }
+
+    /**
+     * Check if the given host is paused. Requests holding a token reserved before the host was paused
+     * should reserve a new token, instead of being sent, while this returns true.
+     *
+     * @param host Host name.
+     * @return True if the host was paused using {@link #pause(String, long)} and the pause isn't over yet.
+     */
+    public synchronized boolean isPaused(@Nullable String host) {
+        if (host == null) {
+            return false;
+        }
+        final TokenBucket bucket = buckets.get(host.toLowerCase(Locale.US));
+        return bucket != null && bucket.isPaused(System.nanoTime());
+    }
+
+    /**
+     * Get the token bucket for a host, creating it with the default rate if needed.
+     *
+     * @param host Host name.
+     * @return Token bucket.
+     */
+    @NonNull
+    private TokenBucket getBucket(@NonNull String host) {
+        final String key = host.toLowerCase(Locale.US);
+        TokenBucket bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new TokenBucket(DEFAULT_REQUESTS_PER_SECOND, DEFAULT_BURST_SIZE);
+            buckets.put(key, bucket);
+        }
+        return bucket;
+    }
+    //endregion
+
+    //region Inner class: Token bucket
+
+    /**
+     * Token bucket for a single host. Not thread-safe: guarded by the {@link RateLimiter}.
+     */
+    private static class TokenBucket {
+        /**
+         * Time between two tokens, in nanoseconds.
+         */
+        private long intervalNanos;
+        /**
+         * Maximum number of tokens stored.
+         */
+        private int burstSize;
+        /**
+         * Time the next token will be available at (System.nanoTime()). When this is in the past,
+         * the bucket holds tokens earned since then, up to {@link #burstSize}.
+         */
+        private long nextTokenNanos = Long.MIN_VALUE;
+        /**
+         * Time the last pause ends at (System.nanoTime()). Long.MIN_VALUE if the bucket was never paused.
+         */
+        private long pausedUntilNanos = Long.MIN_VALUE;
+
+        /**
+         * Create a new, full token bucket.
+         *
+         * @param requestsPerSecond Refill rate.
+         * @param burstSize         Maximum number of tokens stored.
+         */
+        TokenBucket(double requestsPerSecond, int burstSize) {
+            setRate(requestsPerSecond, burstSize);
+        }
+
+        /**
+         * Change the refill rate and burst size.
+         *
+         * @param requestsPerSecond Refill rate.
+         * @param burstSize         Maximum number of tokens stored.
+         */
+        void setRate(double requestsPerSecond, int burstSize) {
+            this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+            this.burstSize = burstSize;
+        }
+
+        /**
+         * Take a token.
+         *
+         * @param now Current time (System.nanoTime()).
+         * @return Time until the token is available, in nanoseconds.
+         */
+        long reserve(long now) {
+            // Tokens earned while idle are capped at the burst size.
+            final long earliest = now - (burstSize - 1) * intervalNanos;
+            if (nextTokenNanos == Long.MIN_VALUE || nextTokenNanos < earliest) {
+                nextTokenNanos = earliest;
+            }
+            final long tokenNanos = nextTokenNanos;
+            nextTokenNanos += intervalNanos;
+            return Math.max(0, tokenNanos - now);
+        }
+
+        /**
+         * Take a token, only if one is available now.
+         *
+         * @param now   Current time (System.nanoTime()).
+         * @param spare Number of tokens that must still be available now after taking one.
+         * @return True if a token was taken.
+         */
+        boolean tryReserve(long now, int spare) {
+            final long earliest = now - (burstSize - 1) * intervalNanos;
+            final long tokenNanos = nextTokenNanos == Long.MIN_VALUE ? earliest : Math.max(nextTokenNanos, earliest);
+            if (tokenNanos + spare * intervalNanos > now) {
+                return false;
+            }
+            nextTokenNanos = tokenNanos + intervalNanos;
+            return true;
+        }
+
+        /**
+         * Hand out no tokens before the given time.
+         *
+         * @param until Time the pause ends (System.nanoTime()).
+         */
+        void pauseUntil(long until) {
+            if (nextTokenNanos == Long.MIN_VALUE || nextTokenNanos < until) {
+                nextTokenNanos = until;
+            }
+            pausedUntilNanos = Math.max(pausedUntilNanos, until);
+        }
+
+        /**
+         * Check if the bucket is paused.
+         *
+         * @param now Current time (System.nanoTime()).
+         * @return True if the last pause ends after the given time.
+         */
+        boolean isPaused(long now) {
+            return pausedUntilNanos != Long.MIN_VALUE && pausedUntilNanos > now;
+        }
+    }
+    //endregion
+}
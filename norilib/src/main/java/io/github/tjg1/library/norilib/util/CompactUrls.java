@@ -0,0 +1,220 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact in-memory encoding of image URLs.
+ * <p/>
+ * URLs are split into a prefix (everything up to the last slash) and a suffix. Prefixes are
+ * stored once in a process-wide table, so each encoded URL only keeps a table index and the suffix.
+ * MD5 hashes embedded in the URL (e.g. "/d3/4e/d34e4cf0….jpg" on Danbooru and Gelbooru) are
+ * replaced with markers, so the image's own md5 is used to rebuild them and most images of a
+ * service share the same prefix.
+ * <p/>
+ * Prefixes can't be removed from the table while encoded URLs may still refer to them, so its size
+ * is bounded. Hosts whose URLs rarely share a prefix (e.g. Flickr's per-server directories) stop
+ * adding prefixes after a while, and their URLs are kept as plain Strings.
+ */
+public final class CompactUrls {
+
+    //region Constants
+    /**
+     * Marker replacing the whole MD5 hash.
+     */
+    private static final char MARKER_MD5 = '\u0000';
+    /**
+     * Marker replacing the first two characters of the MD5 hash.
+     */
+    private static final char MARKER_MD5_DIRECTORY_1 = '\u0001';
+    /**
+     * Marker replacing the third and fourth characters of the MD5 hash.
+     */
+    private static final char MARKER_MD5_DIRECTORY_2 = '\u0002';
+    /**
+     * Maximum number of distinct prefixes. Indices are stored as a single char.
+     */
+    private static final int MAX_PREFIXES = 4096;
+    /**
+     * Number of prefixes a host can add before the reuse of its prefixes is checked.
+     */
+    private static final int MIN_HOST_PREFIXES = 16;
+    /**
+     * Minimum average number of URLs sharing each prefix of a host. Hosts below this ratio don't add new prefixes.
+     */
+    private static final int MIN_URLS_PER_PREFIX = 4;
+    //endregion
+
+    //region Static fields
+    /**
+     * Prefixes, indexed by the first char of the encoded URLs. Replaced on write, so it can be read without locking.
+     */
+    private static volatile String[] prefixes = new String[0];
+    /**
+     * Prefix indices mapped to the prefixes. Guarded by the class lock.
+     */
+    private static final Map<String, Character> prefixIndices = new HashMap<>();
+    /**
+     * Number of URLs encoded and prefixes added for each host, used to measure prefix reuse. Guarded by the class lock.
+     */
+    private static final Map<String, int[]> hostStats = new HashMap<>();
+    //endregion
+
+    //region Constructors
+
+    /**
+     * This class only has static methods and should not be instantiated.
+     */
+    private CompactUrls() {
+    }
+    //endregion
+
+    //region Encoding
+
+    /**
+     * Encode an URL.
+     *
+     * @param url URL to encode.
+     * @param md5 MD5 hash of the image. Used to shorten URLs containing the hash. May be null.
+     * @return Encoded URL. Null if the URL can't be encoded and should be kept as is.
+     */
+    @Nullable
+    public static String encode(@Nullable String url, @Nullable String md5) {
+        if (url == null || containsMarkers(url)) {
+            return null;
+        }
+
+        // Replace the md5 hash with markers.
+        String template = url;
+        if (md5 != null && md5.length() == 32) {
+            template = template.replace("/" + md5.substring(0, 2) + "/" + md5.substring(2, 4) + "/",
+                    "/" + MARKER_MD5_DIRECTORY_1 + "/" + MARKER_MD5_DIRECTORY_2 + "/");
+            template = template.replace(md5, String.valueOf(MARKER_MD5));
+        }
+
+        final int split = template.lastIndexOf('/') + 1;
+        final Character prefixIndex = getPrefixIndex(template.substring(0, split));
+        if (prefixIndex == null) {
+            return null;
+        }
+        return prefixIndex + template.substring(split);
+    }
+
+    /**
+     * Get the index of a prefix, adding it to the prefix table if needed.
+     *
+     * @param prefix URL prefix.
+     * @return Prefix index. Null if the prefix table is full, or the host's prefixes are rarely reused.
+     */
+    @Nullable
+    private static synchronized Character getPrefixIndex(@NonNull String prefix) {
+        final String host = getHost(prefix);
+        int[] stats = hostStats.get(host);
+        if (stats == null) {
+            stats = new int[2];
+            hostStats.put(host, stats);
+        }
+        stats[0]++;
+
+        Character index = prefixIndices.get(prefix);
+        if (index == null) {
+            final String[] oldPrefixes = prefixes;
+            if (oldPrefixes.length >= MAX_PREFIXES ||
+                    (stats[1] >= MIN_HOST_PREFIXES && stats[0] < stats[1] * MIN_URLS_PER_PREFIX)) {
+                return null;
+            }
+            stats[1]++;
+
+            final String[] newPrefixes = new String[oldPrefixes.length + 1];
+            System.arraycopy(oldPrefixes, 0, newPrefixes, 0, oldPrefixes.length);
+            newPrefixes[oldPrefixes.length] = prefix;
+            index = (char) oldPrefixes.length;
+            prefixIndices.put(prefix, index);
+            prefixes = newPrefixes;
+        }
+        return index;
+    }
+
+    /**
+     * Get the scheme and host part of an URL prefix.
+     *
+     * @param prefix URL prefix.
+     * @return Everything up to the first slash after the host name.
+     */
+    @NonNull
+    private static String getHost(@NonNull String prefix) {
+        final int schemeEnd = prefix.indexOf("//");
+        final int hostEnd = prefix.indexOf('/', schemeEnd != -1 ? schemeEnd + 2 : 0);
+        return hostEnd != -1 ? prefix.substring(0, hostEnd) : prefix;
+    }
+
+    /**
+     * Check if the URL contains characters used as markers (and so can't be encoded).
+     *
+     * @param url URL to check.
+     * @return True if the URL contains marker characters.
+     */
+    private static boolean containsMarkers(@NonNull String url) {
+        for (int i = 0; i < url.length(); i++) {
+            if (url.charAt(i) <= MARKER_MD5_DIRECTORY_2) {
+                return true;
+            }
+        }
+        return false;
+    }
+    //endregion
+
+    //region Decoding
+
+    /**
+     * Decode an URL encoded with {@link #encode(String, String)}.
+     *
+     * @param encoded Encoded URL.
+     * @param md5     MD5 hash of the image passed to {@link #encode(String, String)}.
+     * @return Decoded URL. Null if the encoded URL is null.
+     */
+    @Nullable
+    public static String decode(@Nullable String encoded, @Nullable String md5) {
+        if (encoded == null) {
+            return null;
+        }
+
+        final String prefix = prefixes[encoded.charAt(0)];
+        final StringBuilder url = new StringBuilder(prefix.length() + encoded.length() + 32);
+        appendExpanded(url, prefix, md5);
+        appendExpanded(url, encoded.substring(1), md5);
+        return url.toString();
+    }
+
+    /**
+     * Append a part of the URL, replacing markers with the md5 hash.
+     *
+     * @param url      URL to append to.
+     * @param template URL part, possibly containing markers.
+     * @param md5      MD5 hash of the image.
+     */
+    private static void appendExpanded(@NonNull StringBuilder url, @NonNull String template, @Nullable String md5) {
+        for (int i = 0; i < template.length(); i++) {
+            final char c = template.charAt(i);
+            if (c == MARKER_MD5 && md5 != null) {
+                url.append(md5);
+            } else if (c == MARKER_MD5_DIRECTORY_1 && md5 != null) {
+                url.append(md5, 0, 2);
+            } else if (c == MARKER_MD5_DIRECTORY_2 && md5 != null) {
+                url.append(md5, 2, 4);
+            } else {
+                url.append(c);
+            }
+        }
+    }
+    //endregion
+}
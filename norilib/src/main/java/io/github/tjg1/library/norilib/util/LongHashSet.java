@@ -0,0 +1,203 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.util;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive long values.
+ * <p/>
+ * Uses open addressing with linear probing, so lookups don't box values or allocate entry objects
+ * like {@link java.util.HashSet} does.
+ */
+public class LongHashSet {
+
+    //region Constants
+    /**
+     * Default initial capacity of the hash table.
+     */
+    private static final int DEFAULT_CAPACITY = 64;
+    /**
+     * Value marking empty slots in the hash table. Stored separately if added to the set.
+     */
+    private static final long EMPTY = 0L;
+    //endregion
+
+    //region Instance fields
+    /**
+     * Hash table. Length is always a power of two.
+     */
+    private long[] table;
+    /**
+     * Number of values stored in {@link #table}.
+     */
+    private int size;
+    /**
+     * True if {@link #EMPTY} has been added to the set.
+     */
+    private boolean containsEmpty;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new empty set.
+     */
+    public LongHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new empty set able to hold the given number of values without resizing.
+     *
+     * @param expectedSize Expected number of values.
+     */
+    public LongHashSet(int expectedSize) {
+        table = new long[tableSizeFor(expectedSize)];
+    }
+
+    /**
+     * Create a copy of another set.
+     *
+     * @param other Set to copy.
+     */
+    public LongHashSet(LongHashSet other) {
+        table = other.table.clone();
+        size = other.size;
+        containsEmpty = other.containsEmpty;
+    }
+    //endregion
+
+    //region Set operations
+
+    /**
+     * Add a value to the set.
+     *
+     * @param value Value to add.
+     * @return True if the value was not already present in the set.
+     */
+    public boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsEmpty) {
+                return false;
+            }
+            containsEmpty = true;
+            return true;
+        }
+
+        final int mask = table.length - 1;
+        int i = hash(value) & mask;
+        while (table[i] != EMPTY) {
+            if (table[i] == value) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = value;
+
+        // Keep the load factor at or below 0.5, so probe sequences stay short.
+        if (++size * 2 > table.length) {
+            rehash(table.length * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Check if the set contains the given value.
+     *
+     * @param value Value to look up.
+     * @return True if the value is present in the set.
+     */
+    public boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmpty;
+        }
+
+        final int mask = table.length - 1;
+        int i = hash(value) & mask;
+        while (table[i] != EMPTY) {
+            if (table[i] == value) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of values in the set.
+     *
+     * @return Number of values.
+     */
+    public int size() {
+        return containsEmpty ? size + 1 : size;
+    }
+
+    /**
+     * Remove all values from the set.
+     */
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+        containsEmpty = false;
+    }
+    //endregion
+
+    //region Hash table helpers
+
+    /**
+     * Move all values to a new hash table of given size.
+     *
+     * @param newLength New hash table length. Must be a power of two.
+     */
+    private void rehash(int newLength) {
+        final long[] oldTable = table;
+        final int mask = newLength - 1;
+        table = new long[newLength];
+
+        for (long value : oldTable) {
+            if (value != EMPTY) {
+                int i = hash(value) & mask;
+                while (table[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = value;
+            }
+        }
+    }
+
+    /**
+     * Spread the bits of a value, so sequential IDs don't end up in neighbouring slots.
+     *
+     * @param value Value to hash.
+     * @return Hash code.
+     */
+    private static int hash(long value) {
+        // Finalization step of the MurmurHash3 64-bit hash function.
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) value;
+    }
+
+    /**
+     * Get the hash table length needed to store the given number of values.
+     *
+     * @param expectedSize Expected number of values.
+     * @return Power of two, at least twice the expected size.
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int length = 2;
+        while (length < expectedSize * 2 && length < (1 << 30)) {
+            length <<= 1;
+        }
+        return length;
+    }
+    //endregion
+}
@@ -0,0 +1,136 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.util;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.SearchResult;
+
+/**
+ * Stores pages of {@link Image}s evicted from memory by a windowed {@link SearchResult}.
+ * <p/>
+ * Each page is written to its own file in the given directory, using the compact
+ * {@link SearchResultCodec} format. The images of a page are never changed after it was created:
+ * changed pages are written under a new ID, and the superseded page is deleted. So a page is only
+ * ever written once.
+ */
+public class PageSpillStore {
+
+    //region Instance fields
+    /**
+     * Directory the pages are written to.
+     */
+    private final File directory;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new spill store.
+     *
+     * @param directory Directory the pages are written to. Created when the first page is written.
+     *                  Should not be shared with other stores.
+     */
+    public PageSpillStore(@NonNull File directory) {
+        this.directory = directory;
+    }
+    //endregion
+
+    //region Storing pages
+
+    /**
+     * Write a page to disk, unless it has already been written.
+     *
+     * @param pageId Unique ID of the page.
+     * @param images Images on the page.
+     * @throws IOException Error writing the page.
+     */
+    public synchronized void write(long pageId, @NonNull Image[] images) throws IOException {
+        final File file = getPageFile(pageId);
+        if (file.isFile()) {
+            return;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create directory: " + directory);
+        }
+
+        // Write to a temporary file first, so a partially written page is never read.
+        final File temporaryFile = new File(directory, pageId + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            SearchResultCodec.writeImages(out, images);
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+            throw e;
+        }
+        if (!temporaryFile.renameTo(file)) {
+            throw new IOException("Could not write page file: " + file);
+        }
+    }
+
+    /**
+     * Read a page from disk.
+     *
+     * @param pageId Unique ID of the page.
+     * @return Images on the page.
+     * @throws IOException Error reading the page, or the page has not been written.
+     */
+    @NonNull
+    public synchronized Image[] read(long pageId) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(getPageFile(pageId))))) {
+            return SearchResultCodec.readImages(in);
+        }
+    }
+
+    /**
+     * Remove a page from disk.
+     *
+     * @param pageId Unique ID of the page.
+     */
+    public synchronized void delete(long pageId) {
+        //noinspection ResultOfMethodCallIgnored
+        getPageFile(pageId).delete();
+    }
+
+    /**
+     * Remove all pages from disk.
+     */
+    public synchronized void clear() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    /**
+     * Get the file used to store a page.
+     *
+     * @param pageId Unique ID of the page.
+     * @return Page file.
+     */
+    private File getPageFile(long pageId) {
+        return new File(directory, Long.toString(pageId));
+    }
+    //endregion
+}
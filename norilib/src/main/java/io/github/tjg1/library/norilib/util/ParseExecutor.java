@@ -0,0 +1,292 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.util;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded thread pool used to parse API responses.
+ * <p/>
+ * HTTP transports deliver responses on their I/O threads (Ion uses a single one), so parsing
+ * responses there serialises multi-page and multi-service searches. Responses handed to this executor are parsed in parallel,
+ * on up to one thread per CPU core. When the queue is full, responses are parsed on the calling
+ * thread instead, which slows down the network reads until the parsers catch up.
+ * <p/>
+ * Parse times are recorded and can be read using {@link #getMetrics()}.
+ */
+public final class ParseExecutor implements Executor {
+
+    //region Constants
+    /**
+     * Maximum number of responses waiting to be parsed, per worker thread.
+     */
+    private static final int QUEUE_SIZE_PER_THREAD = 4;
+    /**
+     * Time idle worker threads are kept alive for, in seconds.
+     */
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    //endregion
+
+    //region Static fields
+    /**
+     * Shared instance.
+     */
+    private static ParseExecutor instance;
+    //endregion
+
+    //region Instance fields
+    /**
+     * Thread pool running the parsers.
+     */
+    private final ThreadPoolExecutor executor;
+    /**
+     * Number of tasks parsed.
+     */
+    private final AtomicLong taskCount = new AtomicLong();
+    /**
+     * Number of tasks that threw an exception.
+     */
+    private final AtomicLong failedTaskCount = new AtomicLong();
+    /**
+     * Number of tasks run on the calling thread because the queue was full.
+     */
+    private final AtomicLong callerRunsCount = new AtomicLong();
+    /**
+     * Total time spent parsing, in nanoseconds.
+     */
+    private final AtomicLong totalParseNanos = new AtomicLong();
+    /**
+     * Longest time spent parsing a single task, in nanoseconds.
+     */
+    private final AtomicLong maxParseNanos = new AtomicLong();
+    /**
+     * Total time tasks spent waiting in the queue, in nanoseconds.
+     */
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new parse executor.
+     *
+     * @param threadCount Maximum number of worker threads.
+     */
+    ParseExecutor(int threadCount) {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(threadCount * QUEUE_SIZE_PER_THREAD),
+                runnable -> {
+                    final Thread thread = new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, "norilib-parse-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                (runnable, executor) -> {
+                    // Queue is full: parse on the calling thread.
+                    callerRunsCount.incrementAndGet();
+                    runnable.run();
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the shared parse executor.
+     *
+     * @return Shared instance, with one worker thread per CPU core.
+     */
+    @NonNull
+    public static synchronized ParseExecutor getInstance() {
+        if (instance == null) {
+            instance = new ParseExecutor(Math.max(1, Runtime.getRuntime().availableProcessors()));
+        }
+        return instance;
+    }
+    //endregion
+
+    //region Parsing
+
+    @Override
+    public void execute(@NonNull Runnable task) {
+        final long queuedAt = System.nanoTime();
+        executor.execute(() -> {
+            final long startedAt = System.nanoTime();
+            totalQueueNanos.addAndGet(startedAt - queuedAt);
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                failedTaskCount.incrementAndGet();
+                throw e;
+            } finally {
+                recordParseTime(System.nanoTime() - startedAt);
+            }
+        });
+    }
+
+    /**
+     * Run a parser on a worker thread and pass its result to a callback.
+     *
+     * @param parser   Parser to run.
+     * @param callback Callback called on the worker thread with the parsed value, or the exception
+     *                 thrown by the parser.
+     * @param <T>      Type of the parsed value.
+     */
+    public <T> void parse(@NonNull final Callable<T> parser, @NonNull final Callback<T> callback) {
+        final long queuedAt = System.nanoTime();
+        executor.execute(() -> {
+            final long startedAt = System.nanoTime();
+            totalQueueNanos.addAndGet(startedAt - queuedAt);
+            final T result;
+            try {
+                result = parser.call();
+            } catch (Exception e) {
+                failedTaskCount.incrementAndGet();
+                recordParseTime(System.nanoTime() - startedAt);
+                callback.onFailure(e);
+                return;
+            }
+            // Only time the parser: callbacks may cache or deliver the result.
+            recordParseTime(System.nanoTime() - startedAt);
+            callback.onParsed(result);
+        });
+    }
+
+    /**
+     * Callback receiving the result of a parser run by {@link #parse(Callable, Callback)}.
+     *
+     * @param <T> Type of the parsed value.
+     */
+    public interface Callback<T> {
+        /**
+         * Called when the parser has returned a value.
+         *
+         * @param value Parsed value.
+         */
+        void onParsed(T value);
+
+        /**
+         * Called when the parser has thrown an exception.
+         *
+         * @param e Exception thrown by the parser.
+         */
+        void onFailure(Exception e);
+    }
+
+    /**
+     * Record the time spent running a task.
+     *
+     * @param parseNanos Time spent running the task, in nanoseconds.
+     */
+    private void recordParseTime(long parseNanos) {
+        taskCount.incrementAndGet();
+        totalParseNanos.addAndGet(parseNanos);
+        long max;
+        while (parseNanos > (max = maxParseNanos.get()) && !maxParseNanos.compareAndSet(max, parseNanos)) {
+            // Retry until the maximum is updated, or another thread records a longer parse time.
+        }
+    }
+    //endregion
+
+    //region Metrics
+
+    /**
+     * Get a snapshot of the parse time metrics recorded since the executor was created, or the
+     * metrics were last reset.
+     *
+     * @return Parse time metrics.
+     */
+    @NonNull
+    public Metrics getMetrics() {
+        return new Metrics(taskCount.get(), failedTaskCount.get(), callerRunsCount.get(),
+                totalParseNanos.get(), maxParseNanos.get(), totalQueueNanos.get());
+    }
+
+    /**
+     * Reset the recorded parse time metrics.
+     */
+    public void resetMetrics() {
+        taskCount.set(0);
+        failedTaskCount.set(0);
+        callerRunsCount.set(0);
+        totalParseNanos.set(0);
+        maxParseNanos.set(0);
+        totalQueueNanos.set(0);
+    }
+
+    /**
+     * Parse time metrics recorded by the {@link ParseExecutor}.
+     */
+    public static class Metrics {
+        /**
+         * Number of tasks parsed.
+         */
+        public final long taskCount;
+        /**
+         * Number of tasks that failed to parse.
+         */
+        public final long failedTaskCount;
+        /**
+         * Number of tasks parsed on the calling thread, because all workers were busy.
+         */
+        public final long callerRunsCount;
+        /**
+         * Total time spent parsing, in nanoseconds.
+         */
+        public final long totalParseNanos;
+        /**
+         * Longest time spent parsing a single task, in nanoseconds.
+         */
+        public final long maxParseNanos;
+        /**
+         * Total time tasks spent waiting for a worker thread, in nanoseconds.
+         */
+        public final long totalQueueNanos;
+
+        /**
+         * Create a new metrics snapshot.
+         */
+        Metrics(long taskCount, long failedTaskCount, long callerRunsCount, long totalParseNanos,
+                long maxParseNanos, long totalQueueNanos) {
+            this.taskCount = taskCount;
+            this.failedTaskCount = failedTaskCount;
+            this.callerRunsCount = callerRunsCount;
+            this.totalParseNanos = totalParseNanos;
+            this.maxParseNanos = maxParseNanos;
+            this.totalQueueNanos = totalQueueNanos;
+        }
+
+        /**
+         * Get the average time spent parsing a single task.
+         *
+         * @return Average parse time, in nanoseconds. 0 if no tasks were parsed.
+         */
+        public long getAverageParseNanos() {
+            return taskCount != 0 ? totalParseNanos / taskCount : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%d parsed (%d failed, %d on caller thread), avg %.1f ms, max %.1f ms, queued %.1f ms",
+                    taskCount, failedTaskCount, callerRunsCount, getAverageParseNanos() / 1e6,
+                    maxParseNanos / 1e6, totalQueueNanos / 1e6);
+        }
+    }
+    //endregion
+}
@@ -0,0 +1,392 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.util;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.github.tjg1.library.norilib.SearchResult;
+
+/**
+ * Cache of parsed search result pages, stored along with the HTTP validators (ETag and
+ * Last-Modified) returned by the API.
+ * <p/>
+ * Cached pages are used to send conditional requests: when the API answers with HTTP 304 (Not
+ * Modified), the cached page is decoded from its {@link SearchResultCodec} snapshot instead of
+ * downloading and parsing the response again. Recently used pages are kept in memory, and all pages
+ * are written to the cache directory, so they are still available after the app is restarted.
+ * Only hashes of the cache keys are written to disk, so credentials included in request URLs
+ * are never stored.
+ */
+public class SearchPageCache {
+
+    //region Constants
+    /**
+     * LogCat tag.
+     */
+    private static final String TAG = "norilib.SearchPageCache";
+    /**
+     * Name of the cache subdirectory used to store pages.
+     */
+    private static final String DIRECTORY_NAME = "search_pages";
+    /**
+     * Magic number identifying cache entry files ("NORC").
+     */
+    private static final int MAGIC = 0x4e4f5243;
+    /**
+     * Maximum number of pages kept in memory.
+     */
+    private static final int MAX_MEMORY_ENTRIES = 16;
+    /**
+     * Maximum number of pages kept on disk. Least recently used pages are removed first.
+     */
+    private static final int MAX_DISK_ENTRIES = 64;
+    //endregion
+
+    //region Static fields
+    /**
+     * Shared instance.
+     */
+    private static SearchPageCache instance;
+    //endregion
+
+    //region Instance fields
+    /**
+     * Directory the pages are written to.
+     */
+    private final File directory;
+    /**
+     * Recently used pages, by cache key.
+     */
+    private final Map<String, Entry> memoryCache = new LinkedHashMap<String, Entry>(MAX_MEMORY_ENTRIES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+    /**
+     * Executor used to read and write pages on disk, off the main thread.
+     */
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "norilib-page-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+    //endregion
+
+    //region Constructors
+
+    /**
+     * Create a new page cache.
+     *
+     * @param directory Directory the pages are written to. Created when the first page is written.
+     *                  Should not be shared with other caches.
+     */
+    public SearchPageCache(@NonNull File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the page cache shared by all API clients.
+     *
+     * @param context Android context.
+     * @return Shared instance, storing pages in the app's cache directory.
+     */
+    @NonNull
+    public static synchronized SearchPageCache getInstance(@NonNull Context context) {
+        if (instance == null) {
+            instance = new SearchPageCache(new File(context.getCacheDir(), DIRECTORY_NAME));
+        }
+        return instance;
+    }
+    //endregion
+
+    //region Cache lookups
+
+    /**
+     * Get a cached page, reading it from disk if it is not in memory.
+     * Blocks while the page is read, so should not be called from the main thread.
+     *
+     * @param key Cache key. (i.e. the request URL)
+     * @return Cached page. null if the page is not cached.
+     */
+    @Nullable
+    public Entry get(@NonNull String key) {
+        synchronized (memoryCache) {
+            final Entry entry = memoryCache.get(key);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        final Entry entry = readEntry(key);
+        if (entry != null) {
+            synchronized (memoryCache) {
+                memoryCache.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Get a cached page without blocking the calling thread.
+     *
+     * @param key      Cache key. (i.e. the request URL)
+     * @param callback Callback called with the cached page, or null if the page is not cached.
+     *                 Called on the calling thread for pages in memory, and on a background
+     *                 thread for pages read from disk.
+     */
+    public void get(@NonNull final String key, @NonNull final LookupCallback callback) {
+        final Entry entry;
+        synchronized (memoryCache) {
+            entry = memoryCache.get(key);
+        }
+        if (entry != null) {
+            callback.onLookup(entry);
+        } else {
+            diskExecutor.execute(() -> callback.onLookup(get(key)));
+        }
+    }
+
+    /**
+     * Add a page to the cache, if the API returned validators that can be used to revalidate it.
+     * The page is encoded on the calling thread and written to disk in the background.
+     *
+     * @param key          Cache key. (i.e. the request URL)
+     * @param etag         Value of the ETag response header.
+     * @param lastModified Value of the Last-Modified response header.
+     * @param searchResult Parsed page.
+     */
+    public void put(@NonNull final String key, @Nullable String etag, @Nullable String lastModified,
+                    @NonNull SearchResult searchResult) {
+        if (etag == null && lastModified == null) {
+            return;
+        }
+
+        final Entry entry;
+        try {
+            final ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+            SearchResultCodec.write(new DataOutputStream(snapshot), searchResult);
+            entry = new Entry(etag, lastModified, snapshot.toByteArray());
+        } catch (IOException e) {
+            Log.w(TAG, "Could not encode search result page.", e);
+            return;
+        }
+
+        synchronized (memoryCache) {
+            memoryCache.put(key, entry);
+        }
+        diskExecutor.execute(() -> writeEntry(key, entry));
+    }
+
+    /**
+     * Remove all pages from memory and disk.
+     */
+    public void clear() {
+        synchronized (memoryCache) {
+            memoryCache.clear();
+        }
+        diskExecutor.execute(() -> {
+            final File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        });
+    }
+    //endregion
+
+    //region Disk storage
+
+    /**
+     * Read a page from disk.
+     *
+     * @param key Cache key.
+     * @return Cached page. null if the page is not stored on disk, or could not be read.
+     */
+    @Nullable
+    private synchronized Entry readEntry(@NonNull String key) {
+        final String name = getEntryName(key);
+        final File file = new File(directory, name);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || !name.equals(in.readUTF())) {
+                // Written in an older format, which stored the full key.
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+                return null;
+            }
+            final String etag = SearchResultCodec.readString(in);
+            final String lastModified = SearchResultCodec.readString(in);
+            final byte[] snapshot = new byte[in.readInt()];
+            in.readFully(snapshot);
+
+            // Keep recently used pages when the cache is trimmed.
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(etag, lastModified, snapshot);
+        } catch (IOException e) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Write a page to disk, and remove the least recently used pages if there are too many.
+     *
+     * @param key   Cache key.
+     * @param entry Page to write.
+     */
+    private synchronized void writeEntry(@NonNull String key, @NonNull Entry entry) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+
+        // Write to a temporary file first, so a partially written page is never read.
+        final String name = getEntryName(key);
+        final File file = new File(directory, name);
+        final File temporaryFile = new File(directory, name + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temporaryFile)))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(name);
+            SearchResultCodec.writeString(out, entry.etag);
+            SearchResultCodec.writeString(out, entry.lastModified);
+            out.writeInt(entry.snapshot.length);
+            out.write(entry.snapshot);
+        } catch (IOException e) {
+            Log.w(TAG, "Could not write search result page.", e);
+            //noinspection ResultOfMethodCallIgnored
+            temporaryFile.delete();
+            return;
+        }
+        //noinspection ResultOfMethodCallIgnored
+        temporaryFile.renameTo(file);
+
+        final File[] files = directory.listFiles();
+        if (files != null && files.length > MAX_DISK_ENTRIES) {
+            Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+            for (int i = 0; i < files.length - MAX_DISK_ENTRIES; i++) {
+                //noinspection ResultOfMethodCallIgnored
+                files[i].delete();
+            }
+        }
+    }
+
+    /**
+     * Get the name of the file used to store a page. Also written to the file in place of the key,
+     * to tell whether it is in the current format.
+     * Keys are hashed, so credentials included in request URLs are never written to disk.
+     *
+     * @param key Cache key.
+     * @return Page file name.
+     */
+    @NonNull
+    private static String getEntryName(@NonNull String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(String.format(Locale.US, "%02x", b));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is available on all Android versions.
+            throw new IllegalStateException(e);
+        }
+    }
+    //endregion
+
+    //region Inner class: Cache entry
+
+    /**
+     * A cached page, with the validators used to revalidate it.
+     */
+    public static class Entry {
+        /**
+         * Value of the ETag response header. (optional)
+         */
+        public final String etag;
+        /**
+         * Value of the Last-Modified response header. (optional)
+         */
+        public final String lastModified;
+        /**
+         * Snapshot of the parsed page.
+         */
+        private final byte[] snapshot;
+
+        /**
+         * Create a new cache entry.
+         *
+         * @param etag         Value of the ETag response header.
+         * @param lastModified Value of the Last-Modified response header.
+         * @param snapshot     Snapshot of the parsed page.
+         */
+        Entry(@Nullable String etag, @Nullable String lastModified, @NonNull byte[] snapshot) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.snapshot = snapshot;
+        }
+
+        /**
+         * Decode the cached page. Each call returns a new SearchResult, so callers are free to modify it.
+         *
+         * @return Cached search result.
+         * @throws IOException Malformed snapshot.
+         */
+        @NonNull
+        public SearchResult getSearchResult() throws IOException {
+            return SearchResultCodec.read(new DataInputStream(new ByteArrayInputStream(snapshot)));
+        }
+    }
+    //endregion
+
+    //region Lookup callback interface
+
+    /**
+     * Callback receiving the result of an asynchronous cache lookup.
+     */
+    public interface LookupCallback {
+        /**
+         * Called when the lookup has finished.
+         *
+         * @param entry Cached page. null if the page is not cached.
+         */
+        void onLookup(@Nullable Entry entry);
+    }
+    //endregion
+}
@@ -0,0 +1,358 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.tjg1.library.norilib.Image;
+import io.github.tjg1.library.norilib.SearchResult;
+import io.github.tjg1.library.norilib.Tag;
+
+/**
+ * Compact binary snapshot format for {@link SearchResult}s.
+ * <p/>
+ * Unlike {@link android.os.Parcel}s, snapshots are stable across process restarts, so they can be
+ * written to disk and used to restore the search results after the app process has been killed.
+ */
+public interface SearchResultCodec {
+
+    //region Constants
+    /**
+     * Magic number identifying SearchResult snapshots ("NORS").
+     */
+    int MAGIC = 0x4e4f5253;
+    /**
+     * Current version of the snapshot format.
+     * Version 2 stores each distinct tag once, in a table referenced by the images.
+     * Version 3 adds the {@link Image.MediaType} of each image.
+     * Version 4 adds the {@link Image#serviceIndex} of each image.
+     * Version 5 adds the query sent to the API, when it differs from the user's query.
+     */
+    byte VERSION = 5;
+    //endregion
+
+    //region Encoding
+
+    /**
+     * Write a snapshot of a SearchResult.
+     *
+     * @param out          Output to write the snapshot to.
+     * @param searchResult Search result to write.
+     * @throws IOException Error writing to the output.
+     */
+    static void write(DataOutput out, SearchResult searchResult) throws IOException {
+        final Image[] images = searchResult.getImages();
+
+        // Build the tag table.
+        final Map<Tag, Integer> tagIndices = new LinkedHashMap<>();
+        indexTags(tagIndices, searchResult.getQuery());
+        indexTags(tagIndices, searchResult.getRequestQuery());
+        for (Image image : images) {
+            indexTags(tagIndices, image.tags);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(searchResult.getCurrentOffset());
+        out.writeBoolean(searchResult.hasNextPage());
+        writeString(out, searchResult.getNextPageCursor());
+
+        writeTagTable(out, tagIndices);
+        writeTags(out, searchResult.getQuery(), tagIndices);
+        writeTags(out, searchResult.getRequestQuery(), tagIndices);
+
+        out.writeInt(images.length);
+        for (Image image : images) {
+            writeImage(out, image, tagIndices);
+        }
+    }
+
+    /**
+     * Write an array of images, with its own tag table.
+     * Used to store single pages of results, e.g. pages spilled to disk by {@link PageSpillStore}.
+     *
+     * @param out    Output to write the images to.
+     * @param images Images to write.
+     * @throws IOException Error writing to the output.
+     */
+    static void writeImages(DataOutput out, Image[] images) throws IOException {
+        final Map<Tag, Integer> tagIndices = new LinkedHashMap<>();
+        for (Image image : images) {
+            indexTags(tagIndices, image.tags);
+        }
+
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeTagTable(out, tagIndices);
+        out.writeInt(images.length);
+        for (Image image : images) {
+            writeImage(out, image, tagIndices);
+        }
+    }
+
+    /**
+     * Write the tag table.
+     *
+     * @param out        Output to write the tag table to.
+     * @param tagIndices Tag table. Tags mapped to their index.
+     * @throws IOException Error writing to the output.
+     */
+    static void writeTagTable(DataOutput out, Map<Tag, Integer> tagIndices) throws IOException {
+        out.writeInt(tagIndices.size());
+        for (Tag tag : tagIndices.keySet()) {
+            out.writeUTF(tag.getName());
+            out.writeByte(tag.getType() != null ? tag.getType().ordinal() : -1);
+        }
+    }
+
+    /**
+     * Add tags to the tag table.
+     *
+     * @param tagIndices Tag table. Tags mapped to their index.
+     * @param tags       Tags to add. May be null.
+     */
+    static void indexTags(Map<Tag, Integer> tagIndices, Tag[] tags) {
+        if (tags == null) {
+            return;
+        }
+        for (Tag tag : tags) {
+            if (!tagIndices.containsKey(tag)) {
+                tagIndices.put(tag, tagIndices.size());
+            }
+        }
+    }
+
+    /**
+     * Write a single image.
+     *
+     * @param out        Output to write the image to.
+     * @param image      Image to write.
+     * @param tagIndices Tag table. Tags mapped to their index.
+     * @throws IOException Error writing to the output.
+     */
+    static void writeImage(DataOutput out, Image image, Map<Tag, Integer> tagIndices) throws IOException {
+        writeString(out, image.getFileUrl());
+        out.writeInt(image.width);
+        out.writeInt(image.height);
+        writeString(out, image.getPreviewUrl());
+        out.writeInt(image.previewWidth);
+        out.writeInt(image.previewHeight);
+        writeString(out, image.getSampleUrl());
+        out.writeInt(image.sampleWidth);
+        out.writeInt(image.sampleHeight);
+        writeTags(out, image.tags, tagIndices);
+        writeString(out, image.id);
+        out.writeInt(image.serviceIndex);
+        writeString(out, image.parentId);
+        writeString(out, image.getWebUrl());
+        writeString(out, image.pixivId);
+        writeString(out, image.source);
+        writeString(out, image.md5);
+        out.writeByte(image.safeSearchRating != null ? image.safeSearchRating.ordinal() : -1);
+        out.writeInt(image.score != null ? image.score : Image.SCORE_UNKNOWN);
+        out.writeInt(image.searchPage != null ? image.searchPage : -1);
+        out.writeInt(image.searchPagePosition != null ? image.searchPagePosition : -1);
+        out.writeLong(image.getCreatedAtMillis());
+        out.writeByte(image.getMediaType().ordinal());
+    }
+
+    /**
+     * Write an array of tags as indices into the tag table.
+     *
+     * @param out        Output to write the tags to.
+     * @param tags       Tags to write.
+     * @param tagIndices Tag table. Tags mapped to their index.
+     * @throws IOException Error writing to the output.
+     */
+    static void writeTags(DataOutput out, Tag[] tags, Map<Tag, Integer> tagIndices) throws IOException {
+        if (tags == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        out.writeInt(tags.length);
+        for (Tag tag : tags) {
+            out.writeInt(tagIndices.get(tag));
+        }
+    }
+
+    /**
+     * Write a String that may be null.
+     *
+     * @param out   Output to write the String to.
+     * @param value String to write.
+     * @throws IOException Error writing to the output.
+     */
+    static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+    //endregion
+
+    //region Decoding
+
+    /**
+     * Read a SearchResult snapshot.
+     *
+     * @param in Input to read the snapshot from.
+     * @return Search result read from the snapshot.
+     * @throws IOException Error reading from the input or input is not a valid snapshot.
+     */
+    static SearchResult read(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+            throw new IOException("Unsupported SearchResult snapshot format.");
+        }
+
+        final int offset = in.readInt();
+        final boolean hasNextPage = in.readBoolean();
+        final String nextPageCursor = readString(in);
+
+        final Tag[] tagTable = readTagTable(in);
+        final Tag[] query = readTags(in, tagTable);
+        final Tag[] requestQuery = readTags(in, tagTable);
+
+        final Image[] images = new Image[in.readInt()];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = readImage(in, tagTable);
+        }
+
+        final SearchResult searchResult = new SearchResult(images, requestQuery, offset);
+        if (!Arrays.equals(query, requestQuery)) {
+            searchResult.setUserQuery(query);
+        }
+        searchResult.setNextPageCursor(nextPageCursor);
+        if (!hasNextPage) {
+            searchResult.onLastPage();
+        }
+        return searchResult;
+    }
+
+    /**
+     * Read an array of images written using {@link #writeImages(DataOutput, Image[])}.
+     *
+     * @param in Input to read the images from.
+     * @return Images read from the input.
+     * @throws IOException Error reading from the input or input is not in the expected format.
+     */
+    static Image[] readImages(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+            throw new IOException("Unsupported image array format.");
+        }
+
+        final Tag[] tagTable = readTagTable(in);
+        final Image[] images = new Image[in.readInt()];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = readImage(in, tagTable);
+        }
+        return images;
+    }
+
+    /**
+     * Read the tag table.
+     *
+     * @param in Input to read the tag table from.
+     * @return Interned tags, in table order.
+     * @throws IOException Error reading from the input.
+     */
+    static Tag[] readTagTable(DataInput in) throws IOException {
+        final Tag[] tagTable = new Tag[in.readInt()];
+        for (int i = 0; i < tagTable.length; i++) {
+            final String name = in.readUTF();
+            final byte type = in.readByte();
+            tagTable[i] = Tag.valueOf(name, type != -1 ? Tag.Type.values()[type] : null);
+        }
+        return tagTable;
+    }
+
+    /**
+     * Read a single image.
+     *
+     * @param in       Input to read the image from.
+     * @param tagTable Tag table read from the snapshot.
+     * @return Image read from the input.
+     * @throws IOException Error reading from the input.
+     */
+    static Image readImage(DataInput in, Tag[] tagTable) throws IOException {
+        final Image image = new Image();
+        image.setFileUrl(readString(in));
+        image.width = in.readInt();
+        image.height = in.readInt();
+        image.setPreviewUrl(readString(in));
+        image.previewWidth = in.readInt();
+        image.previewHeight = in.readInt();
+        image.setSampleUrl(readString(in));
+        image.sampleWidth = in.readInt();
+        image.sampleHeight = in.readInt();
+        image.tags = readTags(in, tagTable);
+        image.id = readString(in);
+        image.serviceIndex = in.readInt();
+        image.parentId = readString(in);
+        image.setWebUrl(readString(in));
+        image.pixivId = readString(in);
+        image.source = readString(in);
+        image.md5 = readString(in);
+        final byte safeSearchRating = in.readByte();
+        image.safeSearchRating = safeSearchRating != -1 ? Image.SafeSearchRating.values()[safeSearchRating] : null;
+        final int score = in.readInt();
+        image.score = score != Image.SCORE_UNKNOWN ? score : null;
+        final int searchPage = in.readInt();
+        image.searchPage = searchPage != -1 ? searchPage : null;
+        final int searchPagePosition = in.readInt();
+        image.searchPagePosition = searchPagePosition != -1 ? searchPagePosition : null;
+        image.setCreatedAtMillis(in.readLong());
+        final byte mediaType = in.readByte();
+        if (mediaType < 0 || mediaType >= Image.MediaType.values().length) {
+            throw new IOException("Invalid media type in SearchResult snapshot.");
+        }
+        image.setMediaType(Image.MediaType.values()[mediaType]);
+        return image;
+    }
+
+    /**
+     * Read an array of tags written as indices into the tag table.
+     *
+     * @param in       Input to read the tags from.
+     * @param tagTable Tag table read from the snapshot.
+     * @return Tags read from the input.
+     * @throws IOException Error reading from the input or invalid tag index.
+     */
+    static Tag[] readTags(DataInput in, Tag[] tagTable) throws IOException {
+        final int length = in.readInt();
+        if (length == -1) {
+            return null;
+        }
+
+        final Tag[] tags = new Tag[length];
+        for (int i = 0; i < length; i++) {
+            final int index = in.readInt();
+            if (index < 0 || index >= tagTable.length) {
+                throw new IOException("Invalid tag index in SearchResult snapshot.");
+            }
+            tags[i] = tagTable[index];
+        }
+        return tags;
+    }
+
+    /**
+     * Read a String that may be null.
+     *
+     * @param in Input to read the String from.
+     * @return String read from the input.
+     * @throws IOException Error reading from the input.
+     */
+    static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+    //endregion
+}
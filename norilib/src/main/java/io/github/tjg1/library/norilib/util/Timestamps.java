@@ -0,0 +1,386 @@
+/*
+ * This file is part of nori.
+ * Copyright (c) 2014-2016 Tomasz Jan Góralczyk <tomg@fastmail.uk>
+ * License: ISC
+ */
+
+package io.github.tjg1.library.norilib.util;
+
+import androidx.annotation.Nullable;
+
+import java.text.ParseException;
+
+import io.github.tjg1.library.norilib.Image;
+
+/**
+ * Parsers for the timestamp formats returned by the supported APIs.
+ * <p/>
+ * Unlike {@link java.text.SimpleDateFormat}, the parsers are stateless, so they can be called from
+ * multiple threads at once, and don't allocate any objects unless the timestamp is malformed.
+ * Timestamps are returned in milliseconds since the epoch, to be used with
+ * {@link Image#setCreatedAtMillis(long)}.
+ */
+public final class Timestamps {
+
+    //region Constants
+    /**
+     * Month name abbreviations, in lower case, three characters each.
+     */
+    private static final String MONTHS = "janfebmaraprmayjunjulaugsepoctnovdec";
+    /**
+     * Number of milliseconds in a minute.
+     */
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+    /**
+     * Number of milliseconds in a day.
+     */
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+    /**
+     * Largest number of digits accepted in a Unix timestamp. Enough for any date before year 33658.
+     */
+    private static final int MAX_UNIX_TIME_DIGITS = 12;
+    //endregion
+
+    //region Constructors
+
+    /**
+     * This class only has static methods and should not be instantiated.
+     */
+    private Timestamps() {
+    }
+    //endregion
+
+    //region Parsing timestamps
+
+    /**
+     * Parse a timestamp in any of the formats supported by this class.
+     * Used by APIs that don't use the same format across different server implementations.
+     *
+     * @param timestamp Unix timestamp, ISO 8601 timestamp or ctime-like timestamp.
+     * @return Milliseconds since the epoch. {@link Image#CREATED_AT_UNKNOWN} if the timestamp is empty.
+     * @throws ParseException Timestamp is not in a supported format.
+     */
+    public static long parse(@Nullable CharSequence timestamp) throws ParseException {
+        if (timestamp == null || timestamp.length() == 0) {
+            return Image.CREATED_AT_UNKNOWN;
+        } else if (isDigitsOnly(timestamp)) {
+            return parseUnixTime(timestamp);
+        } else if (Character.isLetter(timestamp.charAt(0))) {
+            return parseCtime(timestamp);
+        }
+        return parseIso8601(timestamp);
+    }
+
+    /**
+     * Parse an ISO 8601 timestamp, e.g. "2016-04-02T18:47:12.345-04:00" (Danbooru 2.x, E621).
+     * A space is also accepted between the date and the time, e.g. "2016-04-02 18:47:12" (Danbooru 1.x).
+     * Seconds, fractions of a second and the time zone offset are optional.
+     * Timestamps without a time zone offset are assumed to be in UTC.
+     *
+     * @param timestamp ISO 8601 timestamp.
+     * @return Milliseconds since the epoch. {@link Image#CREATED_AT_UNKNOWN} if the timestamp is empty.
+     * @throws ParseException Timestamp is not in the expected format.
+     */
+    public static long parseIso8601(@Nullable CharSequence timestamp) throws ParseException {
+        if (timestamp == null || timestamp.length() == 0) {
+            return Image.CREATED_AT_UNKNOWN;
+        }
+        final int length = timestamp.length();
+
+        // Date.
+        final int year = parseDigits(timestamp, 0, 4);
+        expect(timestamp, 4, '-');
+        final int month = parseDigits(timestamp, 5, 2);
+        expect(timestamp, 7, '-');
+        final int day = parseDigits(timestamp, 8, 2);
+        if (length == 10) {
+            return toEpochMillis(timestamp, year, month, day, 0, 0, 0, 0, 0);
+        }
+
+        // Time.
+        final char separator = charAt(timestamp, 10);
+        if (separator != 'T' && separator != 't' && separator != ' ') {
+            throw new ParseException("Unparseable timestamp: " + timestamp, 10);
+        }
+        final int hour = parseDigits(timestamp, 11, 2);
+        expect(timestamp, 13, ':');
+        final int minute = parseDigits(timestamp, 14, 2);
+        int position = 16;
+        int second = 0;
+        if (position < length && timestamp.charAt(position) == ':') {
+            second = parseDigits(timestamp, position + 1, 2);
+            position += 3;
+        }
+
+        // Fraction of a second. Digits past milliseconds are ignored.
+        int millis = 0;
+        if (position < length && (timestamp.charAt(position) == '.' || timestamp.charAt(position) == ',')) {
+            final int start = ++position;
+            for (int scale = 100; position < length && isDigit(timestamp.charAt(position)); position++) {
+                millis += (timestamp.charAt(position) - '0') * scale;
+                scale /= 10;
+            }
+            if (position == start) {
+                throw new ParseException("Unparseable timestamp: " + timestamp, position);
+            }
+        }
+
+        // Time zone offset.
+        int offsetMinutes = 0;
+        if (position < length) {
+            final char zone = timestamp.charAt(position);
+            if (zone == 'Z' || zone == 'z') {
+                position++;
+            } else if (zone == '+' || zone == '-') {
+                offsetMinutes = parseDigits(timestamp, position + 1, 2) * 60;
+                position += 3;
+                if (position < length) {
+                    if (timestamp.charAt(position) == ':') {
+                        position++;
+                    }
+                    offsetMinutes += parseDigits(timestamp, position, 2);
+                    position += 2;
+                }
+                if (zone == '-') {
+                    offsetMinutes = -offsetMinutes;
+                }
+            }
+        }
+        if (position != length) {
+            throw new ParseException("Unparseable timestamp: " + timestamp, position);
+        }
+
+        return toEpochMillis(timestamp, year, month, day, hour, minute, second, millis, offsetMinutes);
+    }
+
+    /**
+     * Parse a ctime-like timestamp with a numeric time zone offset,
+     * e.g. "Sat Apr 02 18:47:12 -0400 2016" (Gelbooru).
+     *
+     * @param timestamp ctime-like timestamp.
+     * @return Milliseconds since the epoch. {@link Image#CREATED_AT_UNKNOWN} if the timestamp is empty.
+     * @throws ParseException Timestamp is not in the expected format.
+     */
+    public static long parseCtime(@Nullable CharSequence timestamp) throws ParseException {
+        if (timestamp == null || timestamp.length() == 0) {
+            return Image.CREATED_AT_UNKNOWN;
+        }
+
+        // The day of the week is redundant and ignored.
+        expect(timestamp, 3, ' ');
+        final int month = parseMonth(timestamp, 4);
+        expect(timestamp, 7, ' ');
+
+        // Day of the month has one or two digits.
+        int position = 8;
+        final boolean twoDigitDay = isDigit(charAt(timestamp, position + 1));
+        final int day = parseDigits(timestamp, position, twoDigitDay ? 2 : 1);
+        position += twoDigitDay ? 2 : 1;
+
+        expect(timestamp, position, ' ');
+        final int hour = parseDigits(timestamp, position + 1, 2);
+        expect(timestamp, position + 3, ':');
+        final int minute = parseDigits(timestamp, position + 4, 2);
+        expect(timestamp, position + 6, ':');
+        final int second = parseDigits(timestamp, position + 7, 2);
+        position += 9;
+
+        expect(timestamp, position, ' ');
+        final char sign = charAt(timestamp, position + 1);
+        if (sign != '+' && sign != '-') {
+            throw new ParseException("Unparseable timestamp: " + timestamp, position + 1);
+        }
+        int offsetMinutes = parseDigits(timestamp, position + 2, 2) * 60 + parseDigits(timestamp, position + 4, 2);
+        if (sign == '-') {
+            offsetMinutes = -offsetMinutes;
+        }
+        position += 6;
+
+        expect(timestamp, position, ' ');
+        final int year = parseDigits(timestamp, position + 1, 4);
+        if (position + 5 != timestamp.length()) {
+            throw new ParseException("Unparseable timestamp: " + timestamp, position + 5);
+        }
+
+        return toEpochMillis(timestamp, year, month, day, hour, minute, second, 0, offsetMinutes);
+    }
+
+    /**
+     * Parse a Unix timestamp, e.g. "1459637232" (Moebooru).
+     *
+     * @param timestamp Seconds since the epoch.
+     * @return Milliseconds since the epoch. {@link Image#CREATED_AT_UNKNOWN} if the timestamp is empty.
+     * @throws ParseException Timestamp is not a number of seconds.
+     */
+    public static long parseUnixTime(@Nullable CharSequence timestamp) throws ParseException {
+        if (timestamp == null || timestamp.length() == 0) {
+            return Image.CREATED_AT_UNKNOWN;
+        } else if (timestamp.length() > MAX_UNIX_TIME_DIGITS) {
+            throw new ParseException("Unix timestamp out of range: " + timestamp, 0);
+        }
+
+        long seconds = 0;
+        for (int i = 0; i < timestamp.length(); i++) {
+            final char c = timestamp.charAt(i);
+            if (!isDigit(c)) {
+                throw new ParseException("Unparseable Unix timestamp: " + timestamp, i);
+            }
+            seconds = seconds * 10 + (c - '0');
+        }
+        return seconds * 1000;
+    }
+    //endregion
+
+    //region Helper methods
+
+    /**
+     * Convert a date and time to milliseconds since the epoch.
+     *
+     * @param timestamp     Timestamp being parsed. Used in error messages.
+     * @param year          Year.
+     * @param month         Month (1-12).
+     * @param day           Day of the month (1-31).
+     * @param hour          Hour (0-23).
+     * @param minute        Minute (0-59).
+     * @param second        Second (0-60, to allow for leap seconds).
+     * @param millis        Millisecond (0-999).
+     * @param offsetMinutes Time zone offset from UTC, in minutes.
+     * @return Milliseconds since the epoch.
+     * @throws ParseException One of the fields is out of range.
+     */
+    private static long toEpochMillis(CharSequence timestamp, int year, int month, int day, int hour,
+                                      int minute, int second, int millis, int offsetMinutes) throws ParseException {
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) || hour > 23
+                || minute > 59 || second > 60 || offsetMinutes < -18 * 60 || offsetMinutes > 18 * 60) {
+            throw new ParseException("Timestamp field out of range: " + timestamp, 0);
+        }
+
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + ((hour * 60L + minute) * 60 + second) * 1000 + millis
+                - offsetMinutes * MILLIS_PER_MINUTE;
+    }
+
+    /**
+     * Get the number of days between the epoch and a date in the proleptic Gregorian calendar.
+     * See: http://howardhinnant.github.io/date_algorithms.html#days_from_civil
+     *
+     * @param year  Year.
+     * @param month Month (1-12).
+     * @param day   Day of the month (1-31).
+     * @return Days since 1970-01-01.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        final int era = (year >= 0 ? year : year - 399) / 400;
+        final int yearOfEra = year - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Get the number of days in a month.
+     *
+     * @param year  Year.
+     * @param month Month (1-12).
+     * @return Number of days in the month.
+     */
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+        }
+        return (month == 4 || month == 6 || month == 9 || month == 11) ? 30 : 31;
+    }
+
+    /**
+     * Parse a fixed number of decimal digits.
+     *
+     * @param timestamp Timestamp being parsed.
+     * @param start     Index of the first digit.
+     * @param count     Number of digits.
+     * @return Parsed number.
+     * @throws ParseException Not enough digits at given position.
+     */
+    private static int parseDigits(CharSequence timestamp, int start, int count) throws ParseException {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            final char c = charAt(timestamp, i);
+            if (!isDigit(c)) {
+                throw new ParseException("Unparseable timestamp: " + timestamp, i);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Parse a three letter month name abbreviation.
+     *
+     * @param timestamp Timestamp being parsed.
+     * @param start     Index of the first letter of the month name.
+     * @return Month (1-12).
+     * @throws ParseException Not a valid month name.
+     */
+    private static int parseMonth(CharSequence timestamp, int start) throws ParseException {
+        final char c0 = Character.toLowerCase(charAt(timestamp, start));
+        final char c1 = Character.toLowerCase(charAt(timestamp, start + 1));
+        final char c2 = Character.toLowerCase(charAt(timestamp, start + 2));
+        for (int i = 0; i < MONTHS.length(); i += 3) {
+            if (MONTHS.charAt(i) == c0 && MONTHS.charAt(i + 1) == c1 && MONTHS.charAt(i + 2) == c2) {
+                return i / 3 + 1;
+            }
+        }
+        throw new ParseException("Unparseable timestamp: " + timestamp, start);
+    }
+
+    /**
+     * Check that a timestamp has the expected character at given position.
+     *
+     * @param timestamp Timestamp being parsed.
+     * @param index     Index of the character.
+     * @param expected  Expected character.
+     * @throws ParseException Unexpected character at given position.
+     */
+    private static void expect(CharSequence timestamp, int index, char expected) throws ParseException {
+        if (charAt(timestamp, index) != expected) {
+            throw new ParseException("Unparseable timestamp: " + timestamp, index);
+        }
+    }
+
+    /**
+     * Get the character at given position.
+     *
+     * @param timestamp Timestamp being parsed.
+     * @param index     Index of the character.
+     * @return Character at given index. '\0' if the index is out of bounds.
+     */
+    private static char charAt(CharSequence timestamp, int index) {
+        return index < timestamp.length() ? timestamp.charAt(index) : '\0';
+    }
+
+    /**
+     * Check if a character is an ASCII digit.
+     *
+     * @param c Character to check.
+     * @return True if the character is a digit.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Check if a timestamp only contains ASCII digits.
+     *
+     * @param timestamp Timestamp to check.
+     * @return True if all characters are digits.
+     */
+    private static boolean isDigitsOnly(CharSequence timestamp) {
+        for (int i = 0; i < timestamp.length(); i++) {
+            if (!isDigit(timestamp.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+    //endregion
+}